@@ -23,9 +23,12 @@
  */
 package org.jeasy.flows.action;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Action execution context. This can be used to pass initial parameters to the
@@ -33,26 +36,185 @@ import java.util.concurrent.ConcurrentHashMap;
  * 
  * <strong>Action context instances are thread-safe.</strong>
  * 
+ * The state of a context can be captured with {@link #snapshot()} and restored later
+ * with {@link #restore(Snapshot)}. Snapshots of this implementation copy all entries,
+ * see {@link PersistentActionContext} for constant time snapshots.
+ * 
+ * Values that are expensive to compute and may not be read can be added with
+ * {@link #putLazy(String, Supplier)}: they are computed on first read only.
+ * 
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
 public class ActionContext {
 	
-	private final Map<String, Object> context = new ConcurrentHashMap<>();
+	private final Map<String, Object> context;
+	private DefaultActionReport completedReport; // immutable, racy initialization is benign
+
+	public ActionContext() {
+		this(new ConcurrentHashMap<>());
+	}
+
+	/*
+	 * For subclasses storing their entries elsewhere, which pass an empty map.
+	 */
+	ActionContext(Map<String, Object> context) {
+		this.context = context;
+	}
 
 	public void put(String key, Object value) {
 		context.put(key, value);
 	}
 
 	public Object get(String key) {
-		return context.get(key);
+		return LazyValue.resolve(context.get(key));
 	}
-	
+
+	/**
+	 * Add an entry whose value is computed by the given supplier when it is first read,
+	 * with {@link #get(String)} or {@link #getEntrySet()}. The supplier is called at most
+	 * once, even if the entry is read concurrently or copied to other contexts (like the
+	 * context of a {@link org.jeasy.flows.workflow.ParallelFlowReport}): readers block
+	 * until the value is computed. If the supplier throws an exception, the exception is
+	 * propagated to the reader and the value is computed again on next read.
+	 *
+	 * @param key of the entry
+	 * @param supplier of the value of the entry
+	 */
+	public void putLazy(String key, Supplier<?> supplier) {
+		put(key, new LazyValue(supplier));
+	}
+
+	/**
+	 * Copy all entries of the given context to this context. Lazy entries are copied
+	 * without computing their value, which is shared by both contexts.
+	 *
+	 * @param actionContext to copy entries from
+	 */
+	public void putAll(ActionContext actionContext) {
+		for (Map.Entry<String, Object> entry : actionContext.entries()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Get a read-only view of the entries of this context. The view reflects later
+	 * changes of the context, and iterating over it computes the value of lazy entries.
+	 * Entries cannot be added, removed or changed through the view: use
+	 * {@link #put(String, Object)} instead.
+	 *
+	 * @return a read-only view of the entries of this context
+	 */
 	public Set<Map.Entry<String, Object>> getEntrySet() {
+		return LazyValue.resolving(context::entrySet);
+	}
+
+	/**
+	 * Get the entries of this context without computing the value of lazy entries.
+	 * Lazy entries hold a placeholder value, printed as {@code <lazy>} until the
+	 * entry is read.
+	 *
+	 * @return the entries of this context, with lazy values as is
+	 */
+	public Iterable<Map.Entry<String, Object>> getRawEntries() {
+		return entries();
+	}
+
+	/**
+	 * Create a child of this context. Reads of entries the child does not hold fall back
+	 * to this context, while entries put in the child are only visible to it, so creating
+	 * a child does not copy the entries of this context.
+	 *
+	 * @return a new child context
+	 */
+	public ActionContext newChildContext() {
+		return new ChildActionContext(this);
+	}
+
+	/*
+	 * Whether this context holds an entry for the given key, even one whose value is null.
+	 */
+	boolean containsKey(String key) {
+		return context.containsKey(key);
+	}
+
+	/*
+	 * Entries of this context, with lazy values as is.
+	 */
+	Iterable<Map.Entry<String, Object>> entries() {
 		return context.entrySet();
 	}
 
+	/**
+	 * Capture the current state of this context.
+	 *
+	 * @return a snapshot that can be restored with {@link #restore(Snapshot)}
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this, new HashMap<>(context));
+	}
+
+	/**
+	 * Restore the state captured by a snapshot of this context. Entries added after
+	 * the snapshot was taken are removed.
+	 *
+	 * @param snapshot taken from this context
+	 * @throws IllegalArgumentException if the snapshot was taken from another context
+	 */
+	@SuppressWarnings("unchecked")
+	public void restore(Snapshot snapshot) {
+		Map<String, Object> entries = (Map<String, Object>) snapshot.stateOf(this);
+		context.keySet().retainAll(entries.keySet());
+		context.putAll(entries);
+	}
+
+	/*
+	 * Entries of this context added or changed since the given snapshot was taken,
+	 * values being compared with equals. Removed entries are ignored.
+	 */
+	@SuppressWarnings("unchecked")
+	Map<String, Object> changesSince(Snapshot snapshot) {
+		Map<String, Object> entries = (Map<String, Object>) snapshot.stateOf(this);
+		Map<String, Object> changes = new HashMap<>();
+		for (Map.Entry<String, Object> entry : context.entrySet()) {
+			if (!Objects.equals(entries.get(entry.getKey()), entry.getValue())) {
+				changes.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return changes;
+	}
+
+	DefaultActionReport completedReport() {
+		DefaultActionReport report = completedReport;
+		if (report == null) {
+			report = new DefaultActionReport(ActionStatus.COMPLETED, this);
+			completedReport = report;
+		}
+		return report;
+	}
+
 	@Override
 	public String toString() {
 		return "context=" + context + '}';
 	}
+
+	/**
+	 * Opaque state of an action context captured by {@link ActionContext#snapshot()}.
+	 */
+	public static final class Snapshot {
+
+		private final ActionContext owner;
+		private final Object state;
+
+		Snapshot(ActionContext owner, Object state) {
+			this.owner = owner;
+			this.state = state;
+		}
+
+		Object stateOf(ActionContext actionContext) {
+			if (owner != actionContext) {
+				throw new IllegalArgumentException("The snapshot was taken from another action context");
+			}
+			return state;
+		}
+	}
 }
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A unit of action that completes asynchronously, typically an outbound call made
+ * with a non-blocking client. Flows composing asynchronous actions do not hold a
+ * thread while the action is in progress when they are run with
+ * {@link org.jeasy.flows.engine.WorkFlowEngine#runAsync(org.jeasy.flows.workflow.WorkFlow, ActionContext)}:
+ * the flow is resumed by the thread completing the stage returned by the action.
+ *
+ * Implementations must:
+ *
+ * <ul>
+ *     <li>return quickly without blocking the calling thread</li>
+ *     <li>complete the returned stage with a {@link ActionReport} with a status of
+ *     {@link ActionStatus#FAILED} in case of error (a stage completed exceptionally is
+ *     reported as a failed action)</li>
+ *     <li>make sure the returned stage is completed in a finite amount of time</li>
+ * </ul>
+ *
+ * Asynchronous actions can be used wherever a synchronous {@link Action} is expected,
+ * in which case {@link #execute(ActionContext)} waits for the completion of the action.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public interface AsyncAction extends Action {
+
+    /**
+     * Start the unit of action and return a stage completed with its report.
+     *
+     * @param actionContext context in which this unit of action is being executed
+     * @return a stage completed with the execution report
+     */
+    CompletionStage<ActionReport> executeAsync(ActionContext actionContext);
+
+    /**
+     * Execute the unit of action and wait for its report.
+     *
+     * @param actionContext context in which this unit of action is being executed
+     * @return the execution report
+     */
+    @Override
+    default ActionReport execute(ActionContext actionContext) {
+        try {
+            return executeAsync(actionContext).toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, e);
+        } catch (ExecutionException e) {
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, e.getCause());
+        }
+    }
+}
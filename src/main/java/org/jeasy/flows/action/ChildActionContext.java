@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Context holding its own entries and reading through to a parent context for others.
+ * Snapshots only capture the entries of the child.
+ */
+final class ChildActionContext extends ActionContext {
+
+    private final ActionContext parent;
+
+    ChildActionContext(ActionContext parent) {
+        this.parent = parent;
+    }
+
+    /*
+     * An entry of the child shadows the entry of the parent, even when its value is null
+     * (like a lazy entry computed to null).
+     */
+    @Override
+    public Object get(String key) {
+        return super.containsKey(key) ? super.get(key) : parent.get(key);
+    }
+
+    @Override
+    boolean containsKey(String key) {
+        return super.containsKey(key) || parent.containsKey(key);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> getEntrySet() {
+        return LazyValue.resolving(this::mergedEntries);
+    }
+
+    @Override
+    Iterable<Map.Entry<String, Object>> entries() {
+        return mergedEntries();
+    }
+
+    private Collection<Map.Entry<String, Object>> mergedEntries() {
+        Map<String, Object> entries = new HashMap<>();
+        parent.entries().forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+        super.entries().forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+        return entries.entrySet();
+    }
+
+    @Override
+    public String toString() {
+        Map<String, Object> entries = new HashMap<>();
+        mergedEntries().forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+        return "context=" + entries + '}';
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A circuit breaker action protects a unit of action calling an unhealthy dependency.
+ * It moves between three states:
+ *
+ * <ul>
+ *     <li>{@link State#CLOSED}: calls are executed and their outcomes recorded in a sliding
+ *     window of the last calls. When the window is full and its failure rate reaches the
+ *     threshold, the circuit opens.</li>
+ *     <li>{@link State#OPEN}: calls are rejected immediately with a {@link ActionStatus#FAILED}
+ *     report and a {@link CircuitBreakerOpenException}, until the wait duration elapses.</li>
+ *     <li>{@link State#HALF_OPEN}: a limited number of probe calls are executed. If all of them
+ *     complete, the circuit closes, otherwise it opens again.</li>
+ * </ul>
+ *
+ * The state machine and the sliding window are lock-free.
+ *
+ * <strong>Circuit breaker action instances are thread-safe.</strong>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see CircuitBreakerAction.Builder
+ */
+public class CircuitBreakerAction implements Action {
+
+    /**
+     * Circuit breaker state enumeration.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Action action;
+    private final double failureRateThreshold;
+    private final int slidingWindowSize;
+    private final long waitDurationNanos;
+    private final int permittedProbes;
+
+    private final AtomicReference<Circuit> circuit;
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    CircuitBreakerAction(Action action, double failureRateThreshold, int slidingWindowSize, long waitDurationNanos, int permittedProbes) {
+        this.action = action;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slidingWindowSize = slidingWindowSize;
+        this.waitDurationNanos = waitDurationNanos;
+        this.permittedProbes = permittedProbes;
+        this.circuit = new AtomicReference<>(closed());
+    }
+
+    @Override
+    public String getName() {
+        return action.getName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ActionReport execute(ActionContext actionContext) {
+        Circuit current = acquirePermission();
+        if (current == null) {
+            rejectedCalls.increment();
+            String message = String.format("Circuit breaker of action unit '%s' is open", action.getName());
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, new CircuitBreakerOpenException(message));
+        }
+        ActionReport actionReport = null;
+        try {
+            actionReport = action.execute(actionContext);
+        } catch (RuntimeException e) {
+            actionReport = new DefaultActionReport(ActionStatus.FAILED, actionContext, e);
+        } finally {
+            // an error thrown by the action is rethrown, but still recorded as a failure
+            onResult(current, actionReport == null || ActionStatus.FAILED.equals(actionReport.getStatus()));
+        }
+        return actionReport;
+    }
+
+    /*
+     * Return the circuit under which the call is permitted, or null if it is rejected.
+     */
+    private Circuit acquirePermission() {
+        while (true) {
+            Circuit current = circuit.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current;
+                case OPEN:
+                    if (System.nanoTime() - current.openedAt < waitDurationNanos) {
+                        return null;
+                    }
+                    circuit.compareAndSet(current, halfOpen());
+                    break; // retry with the new state
+                case HALF_OPEN:
+                    return current.probes.incrementAndGet() <= permittedProbes ? current : null;
+                default:
+                    throw new IllegalStateException("Unknown circuit breaker state " + current.state);
+            }
+        }
+    }
+
+    private void onResult(Circuit current, boolean failed) {
+        if (current.state == State.HALF_OPEN) {
+            if (failed) {
+                circuit.compareAndSet(current, open());
+            } else if (current.successes.incrementAndGet() >= permittedProbes) {
+                circuit.compareAndSet(current, closed());
+            }
+            return;
+        }
+        current.window.record(failed);
+        if (current.window.isFull() && current.window.getFailureRate() >= failureRateThreshold) {
+            circuit.compareAndSet(current, open());
+        }
+    }
+
+    /**
+     * Get the current state of the circuit.
+     *
+     * @return state of the circuit
+     */
+    public State getState() {
+        return circuit.get().state;
+    }
+
+    /**
+     * Get the failure rate of the calls in the sliding window of the closed circuit.
+     *
+     * @return failure rate as a percentage, or -1 if the circuit is not closed
+     */
+    public double getFailureRate() {
+        Circuit current = circuit.get();
+        return current.state == State.CLOSED ? current.window.getFailureRate() : -1;
+    }
+
+    /**
+     * Get the number of calls rejected without being executed.
+     *
+     * @return number of rejected calls
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    private Circuit closed() {
+        return new Circuit(State.CLOSED, 0, new SlidingWindow(slidingWindowSize));
+    }
+
+    private Circuit open() {
+        return new Circuit(State.OPEN, System.nanoTime(), null);
+    }
+
+    private Circuit halfOpen() {
+        return new Circuit(State.HALF_OPEN, 0, null);
+    }
+
+    private static class Circuit {
+
+        private final State state;
+        private final long openedAt;
+        private final SlidingWindow window;
+        private final AtomicInteger probes = new AtomicInteger();
+        private final AtomicInteger successes = new AtomicInteger();
+
+        Circuit(State state, long openedAt, SlidingWindow window) {
+            this.state = state;
+            this.openedAt = openedAt;
+            this.window = window;
+        }
+    }
+
+    /*
+     * Count-based sliding window over the outcomes of the last calls. Each slot holds
+     * 0 (empty), 1 (success) or 2 (failure), and counters are adjusted with the outcome
+     * being replaced.
+     */
+    private static class SlidingWindow {
+
+        private static final int EMPTY = 0, SUCCESS = 1, FAILURE = 2;
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicInteger cursor = new AtomicInteger();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        SlidingWindow(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        void record(boolean failed) {
+            int slot = Math.floorMod(cursor.getAndIncrement(), outcomes.length());
+            int outcome = failed ? FAILURE : SUCCESS;
+            int replaced = outcomes.getAndSet(slot, outcome);
+            if (replaced == EMPTY) {
+                calls.incrementAndGet();
+            }
+            if (replaced == FAILURE && !failed) {
+                failures.decrementAndGet();
+            } else if (replaced != FAILURE && failed) {
+                failures.incrementAndGet();
+            }
+        }
+
+        boolean isFull() {
+            return calls.get() >= outcomes.length();
+        }
+
+        double getFailureRate() {
+            int recordedCalls = calls.get();
+            return recordedCalls == 0 ? 0 : failures.get() * 100.0 / recordedCalls;
+        }
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewCircuitBreakerAction
+        }
+
+        public static ExecuteStep aNewCircuitBreakerAction() {
+            return new BuildSteps();
+        }
+
+        public interface ExecuteStep {
+            OpenStep execute(Action action);
+        }
+
+        public interface OpenStep {
+            /**
+             * Open the circuit when the failure rate of the last calls reaches the threshold.
+             *
+             * @param failureRateThreshold failure rate, as a percentage, at which the circuit opens
+             * @param slidingWindowSize number of last calls on which the failure rate is computed
+             * @return the builder instance
+             */
+            WaitStep openWhenFailureRateReaches(double failureRateThreshold, int slidingWindowSize);
+        }
+
+        public interface WaitStep {
+            /**
+             * Keep the circuit open for the given duration before probing the dependency.
+             *
+             * @param waitDuration in the open state
+             * @param unit of the wait duration
+             * @return the builder instance
+             */
+            ProbeStep waitInOpenState(long waitDuration, TimeUnit unit);
+        }
+
+        public interface ProbeStep extends BuildStep {
+            /**
+             * Set the number of probe calls permitted in the half-open state. Defaults to 1.
+             *
+             * @param permittedProbes number of calls that must complete to close the circuit
+             * @return the builder instance
+             */
+            BuildStep probeWith(int permittedProbes);
+        }
+
+        public interface BuildStep {
+            CircuitBreakerAction build();
+        }
+
+        private static class BuildSteps implements ExecuteStep, OpenStep, WaitStep, ProbeStep {
+
+            private Action action;
+            private double failureRateThreshold;
+            private int slidingWindowSize;
+            private long waitDurationNanos;
+            private int permittedProbes;
+
+            BuildSteps() {
+                this.action = new NoOpAction();
+                this.permittedProbes = 1;
+            }
+
+            @Override
+            public OpenStep execute(Action action) {
+                this.action = action;
+                return this;
+            }
+
+            @Override
+            public WaitStep openWhenFailureRateReaches(double failureRateThreshold, int slidingWindowSize) {
+                if (failureRateThreshold <= 0 || failureRateThreshold > 100 || slidingWindowSize < 1) {
+                    throw new IllegalArgumentException("Failure rate threshold must be in (0, 100] and sliding window size must be positive");
+                }
+                this.failureRateThreshold = failureRateThreshold;
+                this.slidingWindowSize = slidingWindowSize;
+                return this;
+            }
+
+            @Override
+            public ProbeStep waitInOpenState(long waitDuration, TimeUnit unit) {
+                this.waitDurationNanos = unit.toNanos(waitDuration);
+                return this;
+            }
+
+            @Override
+            public BuildStep probeWith(int permittedProbes) {
+                if (permittedProbes < 1) {
+                    throw new IllegalArgumentException("The number of permitted probes must be positive");
+                }
+                this.permittedProbes = permittedProbes;
+                return this;
+            }
+
+            @Override
+            public CircuitBreakerAction build() {
+                return new CircuitBreakerAction(this.action, this.failureRateThreshold, this.slidingWindowSize, this.waitDurationNanos, this.permittedProbes);
+            }
+        }
+    }
+}
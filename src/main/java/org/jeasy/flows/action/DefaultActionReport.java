@@ -32,7 +32,7 @@ public class DefaultActionReport implements ActionReport {
 
     private final ActionStatus status;
     private final ActionContext actionContext;
-    private Throwable error;
+    private final Throwable error;
 
     /**
      * Create a new {@link DefaultActionReport}.
@@ -40,8 +40,7 @@ public class DefaultActionReport implements ActionReport {
      * @param status of action
      */
     public DefaultActionReport(ActionStatus status, ActionContext actionContext) {
-        this.status = status;
-        this.actionContext = actionContext;
+        this(status, actionContext, null);
     }
 
     /**
@@ -51,10 +50,23 @@ public class DefaultActionReport implements ActionReport {
      * @param error if any
      */
     public DefaultActionReport(ActionStatus status, ActionContext actionContext, Throwable error) {
-        this(status, actionContext);
+        this.status = status;
+        this.actionContext = actionContext;
         this.error = error;
     }
 
+    /**
+     * Get the report of an action completed successfully in the given context. Reports
+     * are immutable, so the same instance is returned for a given context, which saves
+     * an allocation per successful action.
+     *
+     * @param actionContext of the action
+     * @return a report with a status of {@link ActionStatus#COMPLETED}
+     */
+    public static DefaultActionReport completed(ActionContext actionContext) {
+        return actionContext.completedReport();
+    }
+
     public ActionStatus getStatus() {
         return status;
     }
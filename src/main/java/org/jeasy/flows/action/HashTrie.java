@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable hash array mapped trie. Each update returns a new trie sharing all
+ * untouched nodes with the previous one, so keeping older versions is free.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+final class HashTrie {
+
+    static final HashTrie EMPTY = new HashTrie(new BitmapNode(0, new Object[0]), 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    private HashTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    Object get(String key) {
+        return root.find(key.hashCode(), key, 0);
+    }
+
+    HashTrie put(String key, Object value) {
+        int hash = key.hashCode();
+        Object previous = root.find(hash, key, 0);
+        if (previous == value) {
+            return this;
+        }
+        Node newRoot = root.put(new Leaf(hash, key, value), 0);
+        return new HashTrie(newRoot, previous == null ? size + 1 : size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    List<Map.Entry<String, Object>> entries() {
+        List<Map.Entry<String, Object>> entries = new ArrayList<>(size);
+        root.collect(entries);
+        return entries;
+    }
+
+    private static int index(int hash, int shift) {
+        return (hash >>> shift) & MASK;
+    }
+
+    /*
+     * Create the smallest node holding two slots (leaves or collision nodes)
+     * with different keys, splitting on deeper hash bits while they collide.
+     */
+    private static Node merge(Object first, int firstHash, Leaf second, int shift) {
+        if (firstHash == second.hash) {
+            return ((Leaf) first).collideWith(second);
+        }
+        int firstIndex = index(firstHash, shift);
+        int secondIndex = index(second.hash, shift);
+        if (firstIndex == secondIndex) {
+            return new BitmapNode(1 << firstIndex, new Object[]{merge(first, firstHash, second, shift + BITS)});
+        }
+        Object[] slots = firstIndex < secondIndex ? new Object[]{first, second} : new Object[]{second, first};
+        return new BitmapNode((1 << firstIndex) | (1 << secondIndex), slots);
+    }
+
+    private abstract static class Node {
+
+        abstract Object find(int hash, String key, int shift);
+
+        abstract Node put(Leaf leaf, int shift);
+
+        abstract void collect(List<Map.Entry<String, Object>> entries);
+    }
+
+    private static final class Leaf extends AbstractMap.SimpleImmutableEntry<String, Object> {
+
+        private final int hash;
+
+        Leaf(int hash, String key, Object value) {
+            super(key, value);
+            this.hash = hash;
+        }
+
+        Node collideWith(Leaf leaf) {
+            return new CollisionNode(hash, new Leaf[]{this, leaf});
+        }
+    }
+
+    private static final class BitmapNode extends Node {
+
+        private final int bitmap;
+        private final Object[] slots; // leaves or sub nodes, ordered by hash fragment
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        Object find(int hash, String key, int shift) {
+            int bit = 1 << index(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.hash == hash && leaf.getKey().equals(key) ? leaf.getValue() : null;
+            }
+            return ((Node) slot).find(hash, key, shift + BITS);
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift) {
+            int bit = 1 << index(leaf.hash, shift);
+            int position = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, position);
+                newSlots[position] = leaf;
+                System.arraycopy(slots, position, newSlots, position + 1, slots.length - position);
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+            Object slot = slots[position];
+            Object newSlot;
+            if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                boolean sameKey = existing.hash == leaf.hash && existing.getKey().equals(leaf.getKey());
+                newSlot = sameKey ? leaf : merge(existing, existing.hash, leaf, shift + BITS);
+            } else {
+                newSlot = ((Node) slot).put(leaf, shift + BITS);
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[position] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        @Override
+        void collect(List<Map.Entry<String, Object>> entries) {
+            for (Object slot : slots) {
+                if (slot instanceof Leaf) {
+                    entries.add((Leaf) slot);
+                } else {
+                    ((Node) slot).collect(entries);
+                }
+            }
+        }
+    }
+
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+        private final Leaf[] leaves;
+
+        CollisionNode(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        @Override
+        Object find(int hash, String key, int shift) {
+            if (hash == this.hash) {
+                for (Leaf leaf : leaves) {
+                    if (leaf.getKey().equals(key)) {
+                        return leaf.getValue();
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift) {
+            if (leaf.hash != hash) {
+                return merge(this, hash, leaf, shift);
+            }
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].getKey().equals(leaf.getKey())) {
+                    Leaf[] newLeaves = leaves.clone();
+                    newLeaves[i] = leaf;
+                    return new CollisionNode(hash, newLeaves);
+                }
+            }
+            Leaf[] newLeaves = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+            newLeaves[leaves.length] = leaf;
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        @Override
+        void collect(List<Map.Entry<String, Object>> entries) {
+            for (Leaf leaf : leaves) {
+                entries.add(leaf);
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A hedged action executes a unit of action and, if it has not finished within a
+ * given threshold, starts a second copy of it (the hedge). The first report with a
+ * status of {@link ActionStatus#COMPLETED} wins and the other copy is cancelled.
+ * If both copies fail, the report of the last one to finish is returned.
+ *
+ * The hedging threshold is either fixed or derived from a percentile of the latencies
+ * of original copies observed so far (with a fixed threshold used until enough samples
+ * are recorded). Latencies of hedges are not sampled, as they are only started for slow
+ * executions and would bias the threshold low. Neither are latencies of original copies
+ * interrupted because the hedge won, which are cut short by the cancellation.
+ *
+ * <strong>Both copies are executed concurrently against the same action context, so the
+ * decorated action must be idempotent and safe to run twice.</strong>
+ *
+ * <strong>It is the responsibility of the caller to manage the lifecycle of the
+ * executor service.</strong>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see HedgedAction.Builder
+ */
+public class HedgedAction implements Action {
+
+    private static final int SAMPLES = 256;
+    private static final int MINIMUM_SAMPLES = 32;
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private final Action action;
+    private final ExecutorService executorService;
+    private final long fixedThresholdNanos;
+    private final double percentile;
+
+    private final AtomicLongArray latencies = new AtomicLongArray(SAMPLES);
+    private final AtomicLong recordedLatencies = new AtomicLong();
+    private volatile long percentileThresholdNanos = -1;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder cancellations = new LongAdder();
+
+    HedgedAction(Action action, ExecutorService executorService, long fixedThresholdNanos, double percentile) {
+        this.action = action;
+        this.executorService = executorService;
+        this.fixedThresholdNanos = fixedThresholdNanos;
+        this.percentile = percentile;
+    }
+
+    @Override
+    public String getName() {
+        return action.getName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ActionReport execute(ActionContext actionContext) {
+        executions.increment();
+        long start = System.nanoTime();
+        CompletionService<ActionReport> completionService = new ExecutorCompletionService<>(executorService);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Future<ActionReport> primary = completionService.submit(() -> {
+            ActionReport actionReport = action.execute(actionContext);
+            if (!cancelled.get() || ranToCompletion(actionReport)) {
+                record(System.nanoTime() - start);
+            }
+            return actionReport;
+        });
+        Future<ActionReport> hedge = null;
+        try {
+            Future<ActionReport> first = completionService.poll(getThreshold(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            if (first == null) {
+                hedges.increment();
+                hedge = completionService.submit(() -> action.execute(actionContext));
+                first = completionService.take();
+            }
+            ActionReport actionReport = reportOf(first, actionContext);
+            Future<ActionReport> winner = first;
+            if (hedge != null && ActionStatus.FAILED.equals(actionReport.getStatus())) {
+                winner = completionService.take();
+                actionReport = reportOf(winner, actionContext);
+            }
+            if (hedge != null) {
+                Future<ActionReport> loser = winner == hedge ? primary : hedge;
+                if (loser == primary) {
+                    cancelled.set(true);
+                }
+                if (loser.cancel(true)) {
+                    cancellations.increment();
+                }
+                if (winner == hedge && ActionStatus.COMPLETED.equals(actionReport.getStatus())) {
+                    hedgeWins.increment();
+                }
+            }
+            return actionReport;
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, e);
+        }
+    }
+
+    /**
+     * Get the current hedging threshold.
+     *
+     * @param unit of the returned threshold
+     * @return the delay after which a hedge is started
+     */
+    public long getThreshold(TimeUnit unit) {
+        long threshold = percentileThresholdNanos;
+        return unit.convert(threshold < 0 ? fixedThresholdNanos : threshold, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of executions of this action.
+     *
+     * @return number of executions
+     */
+    public long getExecutionCount() {
+        return executions.sum();
+    }
+
+    /**
+     * Get the number of executions for which a hedge was started.
+     *
+     * @return number of hedges
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * Get the number of executions won by the hedge rather than the original copy.
+     *
+     * @return number of hedges that won
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * Get the number of losing copies that were cancelled before they finished.
+     *
+     * @return number of cancelled copies
+     */
+    public long getCancellationCount() {
+        return cancellations.sum();
+    }
+
+    /**
+     * Get the ratio of executions for which a hedge was started.
+     *
+     * @return the hedge rate, between 0 and 1
+     */
+    public double getHedgeRate() {
+        long executionCount = executions.sum();
+        return executionCount == 0 ? 0 : (double) hedges.sum() / executionCount;
+    }
+
+    private ActionReport reportOf(Future<ActionReport> future, ActionContext actionContext) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, e.getCause());
+        }
+    }
+
+    /*
+     * Tell if a cancelled original copy ignored the interruption and ran to completion, in which
+     * case its latency is not cut short: interrupted actions report a failure.
+     */
+    private static boolean ranToCompletion(ActionReport actionReport) {
+        return actionReport != null && ActionStatus.COMPLETED.equals(actionReport.getStatus());
+    }
+
+    long getSampledLatencies() {
+        return recordedLatencies.get();
+    }
+
+    private void record(long latency) {
+        if (percentile <= 0) {
+            return;
+        }
+        long count = recordedLatencies.getAndIncrement();
+        latencies.set((int) (count % SAMPLES), latency);
+        if (count + 1 >= MINIMUM_SAMPLES && (count + 1) % RECOMPUTE_INTERVAL == 0) {
+            long[] samples = new long[(int) Math.min(count + 1, SAMPLES)];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = latencies.get(i);
+            }
+            Arrays.sort(samples);
+            int index = (int) Math.ceil(percentile / 100 * samples.length) - 1;
+            percentileThresholdNanos = samples[Math.max(0, Math.min(index, samples.length - 1))];
+        }
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewHedgedAction
+        }
+
+        public static ExecuteStep aNewHedgedAction() {
+            return new BuildSteps();
+        }
+
+        public interface ExecuteStep {
+            WithStep execute(Action action);
+        }
+
+        public interface WithStep {
+            /**
+             * A {@link HedgedAction} requires an {@link ExecutorService} to run the
+             * original copy and the hedge concurrently.
+             *
+             * <strong>It is the responsibility of the caller to manage the lifecycle
+             * of the executor service.</strong>
+             *
+             * @param executorService to use to execute copies of the action
+             * @return the builder instance
+             */
+            AfterStep with(ExecutorService executorService);
+        }
+
+        public interface AfterStep {
+            /**
+             * Start a hedge when the original copy has not finished after a fixed delay.
+             *
+             * @param delay before starting a hedge
+             * @param unit of the delay
+             * @return the builder instance
+             */
+            PercentileStep hedgeAfter(long delay, TimeUnit unit);
+        }
+
+        public interface PercentileStep extends BuildStep {
+            /**
+             * Start a hedge when the original copy has not finished after the given
+             * percentile of observed latencies. The fixed delay is used until enough
+             * latencies have been observed.
+             *
+             * @param percentile of observed latencies, between 0 (exclusive) and 100
+             * @return the builder instance
+             */
+            BuildStep orAtPercentile(double percentile);
+        }
+
+        public interface BuildStep {
+            HedgedAction build();
+        }
+
+        private static class BuildSteps implements ExecuteStep, WithStep, AfterStep, PercentileStep {
+
+            private Action action;
+            private ExecutorService executorService;
+            private long thresholdNanos;
+            private double percentile;
+
+            BuildSteps() {
+                this.action = new NoOpAction();
+            }
+
+            @Override
+            public WithStep execute(Action action) {
+                this.action = action;
+                return this;
+            }
+
+            @Override
+            public AfterStep with(ExecutorService executorService) {
+                this.executorService = executorService;
+                return this;
+            }
+
+            @Override
+            public PercentileStep hedgeAfter(long delay, TimeUnit unit) {
+                this.thresholdNanos = unit.toNanos(delay);
+                return this;
+            }
+
+            @Override
+            public BuildStep orAtPercentile(double percentile) {
+                if (percentile <= 0 || percentile > 100) {
+                    throw new IllegalArgumentException("percentile must be between 0 (exclusive) and 100");
+                }
+                this.percentile = percentile;
+                return this;
+            }
+
+            @Override
+            public HedgedAction build() {
+                return new HedgedAction(this.action, this.executorService, this.thresholdNanos, this.percentile);
+            }
+        }
+    }
+}
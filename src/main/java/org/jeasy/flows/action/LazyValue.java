@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Value of a lazy context entry, computed by its supplier on first read and memoized.
+ * Copies of the entry share the same instance, so the value is computed at most once
+ * whatever the number of contexts holding it.
+ */
+final class LazyValue {
+
+    private static final Object UNRESOLVED = new Object();
+
+    private Supplier<?> supplier;
+    private volatile Object value = UNRESOLVED;
+
+    LazyValue(Supplier<?> supplier) {
+        this.supplier = supplier;
+    }
+
+    Object get() {
+        Object result = value;
+        if (result == UNRESOLVED) {
+            synchronized (this) {
+                result = value;
+                if (result == UNRESOLVED) {
+                    result = supplier.get();
+                    value = result;
+                    supplier = null; // release what the supplier captured
+                }
+            }
+        }
+        return result;
+    }
+
+    boolean isResolved() {
+        return value != UNRESOLVED;
+    }
+
+    static Object resolve(Object value) {
+        return value instanceof LazyValue ? ((LazyValue) value).get() : value;
+    }
+
+    static Map.Entry<String, Object> resolve(Map.Entry<String, Object> entry) {
+        return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), resolve(entry.getValue()));
+    }
+
+    /*
+     * Read-only view of the given entries computing lazy values on iteration. Entries
+     * are copied, so that they cannot write through to the underlying map.
+     */
+    static Set<Map.Entry<String, Object>> resolving(Supplier<? extends Collection<Map.Entry<String, Object>>> entries) {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                Iterator<Map.Entry<String, Object>> iterator = entries.get().iterator();
+                return new Iterator<Map.Entry<String, Object>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        return resolve(iterator.next());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.get().size();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        Object result = value;
+        return result == UNRESOLVED ? "<lazy>" : String.valueOf(result);
+    }
+}
@@ -32,13 +32,15 @@ import java.util.UUID;
  */
 public class NoOpAction implements Action {
 
+    private final String name = UUID.randomUUID().toString();
+
     @Override
     public String getName() {
-        return UUID.randomUUID().toString();
+        return name;
     }
 
     @Override
     public ActionReport execute(ActionContext actionContext) {
-        return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+        return DefaultActionReport.completed(actionContext);
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Action context backed by a persistent hash trie. Updates share structure with
+ * previous versions of the context, so {@link #snapshot()} and {@link #restore(Snapshot)}
+ * run in constant time whatever the number of entries, at the price of slightly
+ * slower reads and writes than the default context.
+ *
+ * <strong>Persistent action context instances are thread-safe.</strong>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class PersistentActionContext extends ActionContext {
+
+    private final AtomicReference<HashTrie> entries = new AtomicReference<>(HashTrie.EMPTY);
+
+    public PersistentActionContext() {
+        super(Collections.emptyMap());
+    }
+
+    @Override
+    public void put(String key, Object value) {
+        Objects.requireNonNull(key, "key must not be null");
+        Objects.requireNonNull(value, "value must not be null");
+        entries.updateAndGet(trie -> trie.put(key, value));
+    }
+
+    @Override
+    public Object get(String key) {
+        return LazyValue.resolve(entries.get().get(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Each iteration over the view sees the entries present when it started.
+     */
+    @Override
+    public Set<Map.Entry<String, Object>> getEntrySet() {
+        return LazyValue.resolving(() -> entries.get().entries());
+    }
+
+    @Override
+    boolean containsKey(String key) {
+        return entries.get().get(key) != null;
+    }
+
+    @Override
+    Iterable<Map.Entry<String, Object>> entries() {
+        return entries.get().entries();
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        return new Snapshot(this, entries.get());
+    }
+
+    @Override
+    public void restore(Snapshot snapshot) {
+        entries.set((HashTrie) snapshot.stateOf(this));
+    }
+
+    /*
+     * Constant time when the context has not changed since the snapshot.
+     */
+    @Override
+    Map<String, Object> changesSince(Snapshot snapshot) {
+        HashTrie initialEntries = (HashTrie) snapshot.stateOf(this);
+        HashTrie currentEntries = entries.get();
+        if (currentEntries == initialEntries) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> changes = new HashMap<>();
+        for (Map.Entry<String, Object> entry : currentEntries.entries()) {
+            if (!Objects.equals(initialEntries.get(entry.getKey()), entry.getValue())) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (Map.Entry<String, Object> entry : entries.get().entries()) {
+            joiner.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return "context=" + joiner + '}';
+    }
+}
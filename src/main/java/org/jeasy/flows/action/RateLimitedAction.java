@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
+
+/**
+ * A rate limited action executes a unit of action only if a permit can be acquired
+ * from a {@link RateLimiter}. Depending on its configuration, it either fails fast with
+ * a {@link ActionStatus#FAILED} report when no permit is available, or waits up to a
+ * maximum delay for one.
+ *
+ * When executed asynchronously by an engine, for example in a flow run with
+ * {@link org.jeasy.flows.engine.WorkFlowEngine#runAsync(org.jeasy.flows.workflow.WorkFlow, ActionContext)},
+ * waiting for a permit does not hold a thread: the action is started by the timer of the
+ * engine's {@link ExecutorPools} once its permit is available. A synchronous decorated
+ * action is then executed on the {@link ExecutorPools#IO} pool of the engine, or on its
+ * default pool if it has none, so that it does not delay other timers. Outside of an
+ * engine, the calling thread waits for the permit.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see RateLimitedAction.Builder
+ */
+public class RateLimitedAction implements AsyncAction {
+
+    private final Action action;
+    private final RateLimiter rateLimiter;
+    private final long maxWaitNanos;
+
+    RateLimitedAction(Action action, RateLimiter rateLimiter, long maxWaitNanos) {
+        this.action = action;
+        this.rateLimiter = rateLimiter;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    @Override
+    public String getName() {
+        return action.getName();
+    }
+
+    /**
+     * Execute the unit of action once a permit is available. The calling thread waits for
+     * the permit: units executed on a pool, for example by a parallel flow, should rather be
+     * executed with {@link #executeAsync(ActionContext)} (as flows of an engine run with
+     * {@link org.jeasy.flows.engine.WorkFlowEngine#runAsync(org.jeasy.flows.workflow.WorkFlow, ActionContext)} do),
+     * so that waiting for a permit does not hold a pool thread.
+     *
+     * @param actionContext context in which this unit of action is being executed
+     * @return the execution report
+     */
+    @Override
+    public ActionReport execute(ActionContext actionContext) {
+        long wait = rateLimiter.reserve(maxWaitNanos, TimeUnit.NANOSECONDS);
+        if (wait < 0) {
+            return rejected(actionContext);
+        }
+        return executeAfter(wait, actionContext);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<ActionReport> executeAsync(ActionContext actionContext) {
+        long wait = rateLimiter.reserve(maxWaitNanos, TimeUnit.NANOSECONDS);
+        if (wait < 0) {
+            return CompletableFuture.completedFuture(rejected(actionContext));
+        }
+        if (wait == 0) {
+            return action instanceof AsyncAction
+                    ? ((AsyncAction) action).executeAsync(actionContext)
+                    : CompletableFuture.completedFuture(action.execute(actionContext));
+        }
+        ExecutorPools executorPools = ExecutorPools.current();
+        ExecutorPool pool = executorPools == null ? null
+                : executorPools.get(ExecutorPools.IO) != null ? executorPools.get(ExecutorPools.IO) : executorPools.getDefault();
+        if (pool == null) {
+            // no pool to execute the action on, wait on the calling thread like pooled actions outside of an engine
+            return CompletableFuture.completedFuture(executeAfter(wait, actionContext));
+        }
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        try {
+            executorPools.schedule(() -> permit.complete(null), wait, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(new DefaultActionReport(ActionStatus.FAILED, actionContext, e));
+        }
+        if (action instanceof AsyncAction) {
+            return permit.thenCompose(ignored -> ExecutorPools.within(executorPools, () -> ((AsyncAction) action).executeAsync(actionContext)));
+        }
+        return permit.thenApplyAsync(ignored -> ExecutorPools.within(executorPools, () -> action.execute(actionContext)),
+                pool.getExecutorService());
+    }
+
+    private ActionReport executeAfter(long wait, ActionContext actionContext) {
+        long deadline = System.nanoTime() + wait;
+        while (wait > 0) {
+            LockSupport.parkNanos(this, wait);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return new DefaultActionReport(ActionStatus.FAILED, actionContext, new InterruptedException("Interrupted while waiting for a permit"));
+            }
+            wait = deadline - System.nanoTime();
+        }
+        return action.execute(actionContext);
+    }
+
+    private ActionReport rejected(ActionContext actionContext) {
+        String message = String.format("Rate limit exceeded for action unit '%s'", action.getName());
+        return new DefaultActionReport(ActionStatus.FAILED, actionContext, new RateLimitExceededException(message));
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewRateLimitedAction
+        }
+
+        public static ExecuteStep aNewRateLimitedAction() {
+            return new BuildSteps();
+        }
+
+        public interface ExecuteStep {
+            LimitedByStep execute(Action action);
+        }
+
+        public interface LimitedByStep {
+            /**
+             * Acquire permits from the given rate limiter, which might be shared with other actions.
+             *
+             * @param rateLimiter to acquire permits from
+             * @return the builder instance
+             */
+            WaitStep limitedBy(RateLimiter rateLimiter);
+        }
+
+        public interface WaitStep {
+            /**
+             * Fail immediately when no permit is available.
+             *
+             * @return the builder instance
+             */
+            BuildStep failFast();
+
+            /**
+             * Wait for a permit up to the given delay, and fail if none is available in time.
+             *
+             * @param maxWait maximum delay to wait for a permit
+             * @param unit of the maximum delay
+             * @return the builder instance
+             */
+            BuildStep waitingAtMost(long maxWait, TimeUnit unit);
+        }
+
+        public interface BuildStep {
+            RateLimitedAction build();
+        }
+
+        private static class BuildSteps implements ExecuteStep, LimitedByStep, WaitStep, BuildStep {
+
+            private Action action;
+            private RateLimiter rateLimiter;
+            private long maxWaitNanos;
+
+            BuildSteps() {
+                this.action = new NoOpAction();
+            }
+
+            @Override
+            public LimitedByStep execute(Action action) {
+                this.action = action;
+                return this;
+            }
+
+            @Override
+            public WaitStep limitedBy(RateLimiter rateLimiter) {
+                this.rateLimiter = rateLimiter;
+                return this;
+            }
+
+            @Override
+            public BuildStep failFast() {
+                this.maxWaitNanos = 0;
+                return this;
+            }
+
+            @Override
+            public BuildStep waitingAtMost(long maxWait, TimeUnit unit) {
+                this.maxWaitNanos = unit.toNanos(maxWait);
+                return this;
+            }
+
+            @Override
+            public RateLimitedAction build() {
+                return new RateLimitedAction(this.action, this.rateLimiter, this.maxWaitNanos);
+            }
+        }
+    }
+}
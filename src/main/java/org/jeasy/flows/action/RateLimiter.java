@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free token bucket limiting the rate at which permits are granted, implemented
+ * as a generic cell rate algorithm: a single atomic "theoretical arrival time" is advanced
+ * with a compare-and-set by one emission interval for each permit granted.
+ *
+ * A rate limiter can be shared by several {@link RateLimitedAction}s (for example all
+ * actions calling the same API) across flows and threads.
+ *
+ * <strong>Rate limiter instances are thread-safe.</strong>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrivalTime;
+
+    private final LongAdder grantedPermits = new LongAdder();
+    private final LongAdder rejectedPermits = new LongAdder();
+
+    /**
+     * Create a new {@link RateLimiter}.
+     *
+     * @param permitsPerSecond sustained rate of permits
+     * @param burst maximum number of permits that can be granted at once
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate must be positive and burst must be at least 1");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Acquire a permit if one is available immediately.
+     *
+     * @return true if a permit was acquired, false otherwise
+     */
+    public boolean tryAcquire() {
+        return reserve(0, TimeUnit.NANOSECONDS) >= 0;
+    }
+
+    /**
+     * Reserve a permit if one becomes available within the given delay. The caller
+     * must wait for the returned delay before using the permit.
+     *
+     * @param maxWait maximum delay before the permit becomes available
+     * @param unit of the maximum delay
+     * @return the delay in nanoseconds before the permit can be used, or -1 if no
+     * permit is available within the maximum delay (nothing is reserved in that case)
+     */
+    public long reserve(long maxWait, TimeUnit unit) {
+        long maxWaitNanos = unit.toNanos(maxWait);
+        while (true) {
+            long now = System.nanoTime();
+            long arrivalTime = theoreticalArrivalTime.get();
+            long wait = Math.max(0, arrivalTime - toleranceNanos - now);
+            if (wait > maxWaitNanos) {
+                rejectedPermits.increment();
+                return -1;
+            }
+            long nextArrivalTime = Math.max(arrivalTime, now) + intervalNanos;
+            if (theoreticalArrivalTime.compareAndSet(arrivalTime, nextArrivalTime)) {
+                grantedPermits.increment();
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * Get the number of permits granted so far.
+     *
+     * @return number of granted permits
+     */
+    public long getGrantedPermits() {
+        return grantedPermits.sum();
+    }
+
+    /**
+     * Get the number of permits rejected so far.
+     *
+     * @return number of rejected permits
+     */
+    public long getRejectedPermits() {
+        return rejectedPermits.sum();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent executions with the same key: the first execution of a key runs,
+ * and executions of the same key started while it is in flight wait for it instead of
+ * running. They get a report with the status and error of the running execution, and the
+ * entries it added to or changed in its action context are copied to theirs. An exception
+ * thrown by the running execution is rethrown by the waiting ones, and a running execution
+ * returning no report is reported to them as failed. The running execution takes a
+ * snapshot of its context (see {@link ActionContext#snapshot()}), which is only diffed
+ * against the context when executions waited for it. Values are compared with
+ * {@code equals}: a value mutated in place rather than replaced by the running execution
+ * is not seen as changed, and is therefore not copied to waiting executions.
+ *
+ * Executions are only coalesced while in flight: an execution started after the previous
+ * one of the same key completed runs again. Keys should therefore identify the inputs of
+ * executions, so that waiting executions get the outputs they would have computed.
+ *
+ * @param <K> type of keys
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see SingleFlightAction
+ */
+public class SingleFlight<K> {
+
+    private final Map<K, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalescedExecutions = new LongAdder();
+
+    /**
+     * Run the given action, or wait for the in-flight execution of the same key.
+     *
+     * @param key of the execution
+     * @param actionContext context of the execution
+     * @param action to execute if no execution of the same key is in flight
+     * @return the report of the action, or a report with the outcome of the in-flight execution
+     */
+    public ActionReport execute(K key, ActionContext actionContext, Action action) {
+        Flight flight = new Flight();
+        Flight inFlight = attach(key, flight);
+        if (inFlight != null) {
+            coalescedExecutions.increment();
+            try {
+                return inFlight.outcome.join().applyTo(actionContext);
+            } catch (CompletionException e) {
+                throw rethrow(e);
+            }
+        }
+        executions.increment();
+        ActionContext.Snapshot inputs = actionContext.snapshot();
+        try {
+            ActionReport actionReport = action.execute(actionContext);
+            land(key, flight, actionReport, inputs, actionContext);
+            return actionReport;
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.land();
+            flight.outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Start the given execution, or attach to the in-flight execution of the same key.
+     *
+     * @param key of the execution
+     * @param actionContext context of the execution
+     * @param execution to start if no execution of the same key is in flight
+     * @return a stage completed with the report of the execution, or a report with the outcome of the in-flight execution
+     */
+    public CompletionStage<ActionReport> executeAsync(K key, ActionContext actionContext,
+                                                      Function<ActionContext, CompletionStage<ActionReport>> execution) {
+        Flight flight = new Flight();
+        Flight inFlight = attach(key, flight);
+        if (inFlight != null) {
+            coalescedExecutions.increment();
+            return inFlight.outcome.thenApply(outcome -> outcome.applyTo(actionContext));
+        }
+        executions.increment();
+        ActionContext.Snapshot inputs = actionContext.snapshot();
+        CompletionStage<ActionReport> actionReport;
+        try {
+            actionReport = execution.apply(actionContext);
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.land();
+            flight.outcome.completeExceptionally(e);
+            throw e;
+        }
+        return actionReport.whenComplete((report, error) -> {
+            if (error != null) {
+                flights.remove(key, flight);
+                flight.land();
+                flight.outcome.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                land(key, flight, report, inputs, actionContext);
+            }
+        });
+    }
+
+    /**
+     * Get the number of executions that ran.
+     *
+     * @return number of executions
+     */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /**
+     * Get the number of executions that waited for an in-flight execution instead of running.
+     *
+     * @return number of coalesced executions
+     */
+    public long getCoalescedExecutions() {
+        return coalescedExecutions.sum();
+    }
+
+    /**
+     * Get the number of keys with an execution in flight.
+     *
+     * @return number of in-flight executions
+     */
+    public int getExecutionsInFlight() {
+        return flights.size();
+    }
+
+    /*
+     * Start the given flight, or wait for the in-flight execution of the same key.
+     * Returns null if the given flight was started.
+     */
+    private Flight attach(K key, Flight flight) {
+        while (true) {
+            Flight inFlight = flights.putIfAbsent(key, flight);
+            if (inFlight == null || inFlight.attach()) {
+                return inFlight;
+            }
+            // the in-flight execution already landed and left the flights, try again
+        }
+    }
+
+    private void land(K key, Flight flight, ActionReport actionReport, ActionContext.Snapshot inputs, ActionContext actionContext) {
+        flights.remove(key, flight);
+        boolean waited = flight.land();
+        flight.outcome.complete(waited ? new Outcome(actionReport, actionContext.changesSince(inputs)) : null);
+    }
+
+    private static RuntimeException rethrow(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return e;
+    }
+
+    private static final class Flight {
+
+        private final CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+        // number of waiting executions, -1 once the execution landed
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        private boolean attach() {
+            int count;
+            do {
+                count = waiters.get();
+                if (count < 0) {
+                    return false;
+                }
+            } while (!waiters.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /*
+         * Stop accepting waiters, returns true if executions are waiting.
+         */
+        private boolean land() {
+            return waiters.getAndSet(-1) > 0;
+        }
+    }
+
+    private static final class Outcome {
+
+        private final ActionStatus status;
+        private final Throwable error;
+        private final Map<String, Object> outputs;
+
+        private Outcome(ActionReport actionReport, Map<String, Object> outputs) {
+            this.status = actionReport == null ? ActionStatus.FAILED : actionReport.getStatus();
+            this.error = actionReport == null ? null : actionReport.getError();
+            this.outputs = outputs;
+        }
+
+        private ActionReport applyTo(ActionContext actionContext) {
+            outputs.forEach(actionContext::put);
+            return new DefaultActionReport(status, actionContext, error);
+        }
+    }
+}
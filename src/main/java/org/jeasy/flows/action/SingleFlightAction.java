@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A single-flight action coalesces concurrent executions of a unit of action with the
+ * same values of the given context entries: while an execution is in flight, executions
+ * with the same inputs wait for it and get its status, error and context outputs instead
+ * of executing the action again (see {@link SingleFlight}). Executions missing one of the
+ * entries are never coalesced.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see SingleFlightAction.Builder
+ */
+public class SingleFlightAction implements Action {
+
+    private final Action action;
+    private final String[] keys;
+    private final SingleFlight<List<Object>> singleFlight = new SingleFlight<>();
+
+    SingleFlightAction(Action action, String[] keys) {
+        this.action = action;
+        this.keys = keys;
+    }
+
+    @Override
+    public String getName() {
+        return action.getName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ActionReport execute(ActionContext actionContext) {
+        List<Object> key = new ArrayList<>(keys.length);
+        for (String entry : keys) {
+            Object value = actionContext.get(entry);
+            if (value == null) {
+                return action.execute(actionContext);
+            }
+            key.add(value);
+        }
+        return singleFlight.execute(key, actionContext, action);
+    }
+
+    /**
+     * Get the executions of this action coalesced so far.
+     *
+     * @return the single flight of this action
+     */
+    public SingleFlight<List<Object>> getSingleFlight() {
+        return singleFlight;
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewSingleFlightAction
+        }
+
+        public static ExecuteStep aNewSingleFlightAction() {
+            return new BuildSteps();
+        }
+
+        public interface ExecuteStep {
+            KeyedByStep execute(Action action);
+        }
+
+        public interface KeyedByStep {
+            /**
+             * Coalesce executions with equal values of the given context entries.
+             *
+             * @param keys of the context entries identifying the inputs of the action
+             * @return the builder instance
+             */
+            BuildStep keyedBy(String... keys);
+        }
+
+        public interface BuildStep {
+            SingleFlightAction build();
+        }
+
+        private static class BuildSteps implements ExecuteStep, KeyedByStep, BuildStep {
+
+            private Action action;
+            private String[] keys;
+
+            BuildSteps() {
+                this.action = new NoOpAction();
+            }
+
+            @Override
+            public KeyedByStep execute(Action action) {
+                this.action = action;
+                return this;
+            }
+
+            @Override
+            public BuildStep keyedBy(String... keys) {
+                if (keys.length == 0) {
+                    throw new IllegalArgumentException("At least one context entry must identify the inputs of the action");
+                }
+                this.keys = Arrays.copyOf(keys, keys.length);
+                return this;
+            }
+
+            @Override
+            public SingleFlightAction build() {
+                return new SingleFlightAction(this.action, this.keys);
+            }
+        }
+    }
+}
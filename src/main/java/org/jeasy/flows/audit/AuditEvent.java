@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.audit;
+
+import org.jeasy.flows.action.ActionStatus;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Event of the {@link AuditLog}, as decoded by the {@link AuditLogReader}.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class AuditEvent {
+
+    /**
+     * Type of audit events.
+     */
+    public enum Type {
+        /**
+         * A workflow was started by the engine. The context of the event is the initial action context.
+         */
+        WORKFLOW_STARTED,
+        /**
+         * A workflow run by the engine finished. The context of the event holds the entries
+         * added or changed by the workflow, and entries it removed with a null value.
+         */
+        WORKFLOW_FINISHED,
+        /**
+         * An action executed by a workflow finished.
+         */
+        ACTION_FINISHED
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final long executionId;
+    private final String name;
+    private final String thread;
+    private final ActionStatus status;
+    private final long durationNanos;
+    private final String error;
+    private final Map<String, String> context;
+
+    AuditEvent(Type type, long timestamp, long executionId, String name, String thread,
+               ActionStatus status, long durationNanos, String error, Map<String, String> context) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.executionId = executionId;
+        this.name = name;
+        this.thread = thread;
+        this.status = status;
+        this.durationNanos = durationNanos;
+        this.error = error;
+        this.context = Collections.unmodifiableMap(context);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the time of the event, in milliseconds since the epoch.
+     *
+     * @return time of the event
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the identifier of the workflow execution during which the event occurred,
+     * or zero if the action was executed with an action context that is not the one
+     * of a workflow run by the engine.
+     *
+     * @return the execution identifier
+     */
+    public long getExecutionId() {
+        return executionId;
+    }
+
+    /**
+     * Get the name of the workflow or action.
+     *
+     * @return name of the workflow or action
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * Get the status of the finished workflow or action.
+     *
+     * @return the status, or null if the event is not a finish event or if an exception was thrown
+     */
+    public ActionStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the duration of the workflow or action, in nanoseconds.
+     *
+     * @return the duration, or zero for start events
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Get the error of the finished workflow or action, as its class name followed by its message.
+     *
+     * @return the error or null
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Get context entries of the event, with values converted to strings.
+     *
+     * @return context entries
+     * @see Type
+     */
+    public Map<String, String> getContext() {
+        return context;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(Instant.ofEpochMilli(timestamp)).append(' ')
+                .append(type).append(" #").append(executionId)
+                .append(" '").append(name).append("' thread=").append(thread);
+        if (type != Type.WORKFLOW_STARTED) {
+            builder.append(" status=").append(status).append(" duration=").append(durationNanos / 1000).append("us");
+        }
+        if (error != null) {
+            builder.append(" error=").append(error);
+        }
+        if (!context.isEmpty()) {
+            builder.append(" context=").append(context);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.audit;
+
+import org.jeasy.flows.action.ActionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Binary encoding of audit events:
+ *
+ * <pre>
+ * event   := type:byte timestamp:long executionId:long status:byte durationNanos:long
+ *            name:utf thread:utf hasError:boolean [error:utf] entryCount:int entry*
+ * entry   := key:utf hasValue:boolean [value:utf]
+ * </pre>
+ *
+ * Status is 0 when absent, otherwise the ordinal of the status plus one. Strings are
+ * truncated to {@value #MAX_STRING_LENGTH} characters.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+class AuditEventCodec {
+
+    static final int MAX_STRING_LENGTH = 1024;
+
+    private static final AuditEvent.Type[] TYPES = AuditEvent.Type.values();
+    private static final ActionStatus[] STATUSES = ActionStatus.values();
+
+    private AuditEventCodec() {
+    }
+
+    static byte[] encode(AuditEvent.Type type, long timestamp, long executionId, String name, String thread,
+                         ActionStatus status, long durationNanos, String error, Map<String, String> context) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 32 * context.size());
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(type.ordinal());
+            output.writeLong(timestamp);
+            output.writeLong(executionId);
+            output.writeByte(status == null ? 0 : status.ordinal() + 1);
+            output.writeLong(durationNanos);
+            output.writeUTF(truncate(String.valueOf(name)));
+            output.writeUTF(truncate(thread));
+            writeOptional(output, error);
+            output.writeInt(context.size());
+            for (Map.Entry<String, String> entry : context.entrySet()) {
+                output.writeUTF(truncate(entry.getKey()));
+                writeOptional(output, entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // not thrown by in-memory streams
+        }
+        return bytes.toByteArray();
+    }
+
+    static AuditEvent decode(byte[] event) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(event));
+        AuditEvent.Type type = TYPES[input.readByte()];
+        long timestamp = input.readLong();
+        long executionId = input.readLong();
+        int status = input.readByte();
+        long durationNanos = input.readLong();
+        String name = input.readUTF();
+        String thread = input.readUTF();
+        String error = readOptional(input);
+        int entries = input.readInt();
+        Map<String, String> context = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            context.put(input.readUTF(), readOptional(input));
+        }
+        return new AuditEvent(type, timestamp, executionId, name, thread,
+                status == 0 ? null : STATUSES[status - 1], durationNanos, error, context);
+    }
+
+    private static void writeOptional(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(truncate(value));
+        }
+    }
+
+    private static String readOptional(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static String truncate(String value) {
+        return value.length() > MAX_STRING_LENGTH ? value.substring(0, MAX_STRING_LENGTH) : value;
+    }
+}
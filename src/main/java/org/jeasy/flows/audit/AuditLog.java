@@ -0,0 +1,448 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.audit;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.executor.ExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Execution listener recording workflow starts and ends, action outcomes and context
+ * changes in binary audit files.
+ *
+ * <p>Events are captured by the threads running workflows and handed off through a bounded
+ * lock-free queue to a background thread, which diffs and stringifies context values, encodes
+ * events and appends them to memory-mapped segment files of a fixed size in the audit directory. When a segment is full, the writer rolls over to a
+ * new one and deletes the oldest segments beyond the retention limit. Running workflows are
+ * never blocked by the audit log: when the queue is full, events are dropped and counted.</p>
+ *
+ * <p>Each record of a segment is the length of the event (a 4 byte integer) followed by the
+ * event (see {@link AuditEventCodec}); a zero length marks the end of the segment. Segments
+ * are decoded with the {@link AuditLogReader}.</p>
+ *
+ * <p>Events of a workflow run are correlated by execution identifier through the action
+ * context of the run, which should therefore not be shared by concurrent runs. Context values
+ * are recorded as they are when the writer thread gets to the event, so values mutated in place
+ * (rather than replaced) right after an event might be recorded with their new state. Lazy
+ * context entries are not computed by the audit log: entries not read yet are recorded as
+ * {@code <lazy>}.</p>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see org.jeasy.flows.engine.WorkFlowEngineBuilder#withExecutionListener(ExecutionListener)
+ */
+public class AuditLog implements ExecutionListener, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditLog.class);
+
+    static final String SEGMENT_PREFIX = "audit-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int retainedSegments;
+    private final int queueCapacity;
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedEvents = new AtomicInteger();
+    private final LongAdder recordedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final AtomicLong executionIds = new AtomicLong();
+    private final Map<ActionContext, Execution> executions = new ConcurrentHashMap<>();
+    private final Deque<Path> segments = new ArrayDeque<>(); // accessed by the writer thread only
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile long writtenEvents; // written by the writer thread only
+    private long nextSegment;
+    private MappedByteBuffer segment;
+
+    AuditLog(Path directory, int segmentSize, int retainedSegments, int queueCapacity) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retainedSegments = retainedSegments;
+        this.queueCapacity = queueCapacity;
+        Files.createDirectories(directory);
+        List<Path> existingSegments = AuditLogReader.segments(directory);
+        segments.addAll(existingSegments);
+        nextSegment = existingSegments.isEmpty() ? 0 : AuditLogReader.segmentIndex(existingSegments.get(existingSegments.size() - 1)) + 1;
+        this.writer = new Thread(this::write, "audit-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void beforeWorkFlow(Action workFlow, ActionContext actionContext) {
+        long executionId = executionIds.incrementAndGet();
+        Map<String, Object> initialContext = rawEntries(actionContext);
+        executions.put(actionContext, new Execution(executionId, initialContext));
+        record(AuditEvent.Type.WORKFLOW_STARTED, executionId, workFlow.getName(), null, 0, null, null, initialContext);
+    }
+
+    @Override
+    public void afterWorkFlow(Action workFlow, ActionContext actionContext, ActionReport actionReport, Throwable error) {
+        Execution execution = executions.remove(actionContext);
+        if (execution == null) {
+            return;
+        }
+        record(AuditEvent.Type.WORKFLOW_FINISHED, execution.id, workFlow.getName(), actionReport, System.nanoTime() - execution.start, error,
+                execution.initialContext, rawEntries(actionContext));
+    }
+
+    @Override
+    public void afterAction(Action action, ActionContext actionContext, ActionReport actionReport, Throwable error, long durationNanos) {
+        Execution execution = executions.get(actionContext);
+        record(AuditEvent.Type.ACTION_FINISHED, execution == null ? 0 : execution.id, action.getName(), actionReport, durationNanos, error, null, null);
+    }
+
+    /**
+     * Stop recording events, write queued events and wait for the writer thread to terminate.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the number of events accepted by the audit log.
+     *
+     * @return number of recorded events
+     */
+    public long getRecordedEvents() {
+        return recordedEvents.sum();
+    }
+
+    /**
+     * Get the number of events written to segment files.
+     *
+     * @return number of written events
+     */
+    public long getWrittenEvents() {
+        return writtenEvents;
+    }
+
+    /**
+     * Get the number of events dropped because the queue was full, the audit log was
+     * closed, or the event was larger than a segment.
+     *
+     * @return number of dropped events
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /*
+     * Raw references to context entries, stringified by the writer thread.
+     */
+    private static Map<String, Object> rawEntries(ActionContext actionContext) {
+        Map<String, Object> entries = new HashMap<>();
+        actionContext.getRawEntries().forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+        return entries;
+    }
+
+    /*
+     * Queue an event, waking up the writer thread when the queue was empty. The writer
+     * parks until then, and spins instead while a counted event is being queued.
+     */
+    private void record(AuditEvent.Type type, long executionId, String name, ActionReport actionReport,
+                        long durationNanos, Throwable error, Map<String, Object> initialContext, Map<String, Object> context) {
+        if (closed) {
+            droppedEvents.increment();
+            return;
+        }
+        int queued = queuedEvents.incrementAndGet();
+        if (queued > queueCapacity) {
+            queuedEvents.decrementAndGet();
+            droppedEvents.increment();
+            return;
+        }
+        ActionStatus status = actionReport == null ? null : actionReport.getStatus();
+        Throwable failure = error != null ? error : actionReport == null ? null : actionReport.getError();
+        queue.offer(new Event(type, System.currentTimeMillis(), executionId, name, Thread.currentThread().getName(),
+                status, durationNanos, failure, initialContext, context));
+        recordedEvents.increment();
+        if (queued == 1) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                Event event = queue.poll();
+                if (event == null) {
+                    if (closed) {
+                        break;
+                    }
+                    if (queuedEvents.get() == 0) {
+                        LockSupport.park(this);
+                    } else {
+                        Thread.yield();
+                    }
+                    continue;
+                }
+                queuedEvents.decrementAndGet();
+                append(event.encode());
+            }
+            if (segment != null) {
+                segment.force();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to write audit events in directory {}, audit log stopped", directory, e);
+            closed = true;
+        }
+    }
+
+    private void append(byte[] event) throws IOException {
+        int recordSize = Integer.BYTES + event.length;
+        if (recordSize >= segmentSize) {
+            droppedEvents.increment();
+            return;
+        }
+        if (segment == null || segment.remaining() < recordSize + Integer.BYTES) { // keep room for the end marker
+            roll();
+        }
+        // write the event before its length, so that readers never see a length without its event
+        int position = segment.position();
+        segment.position(position + Integer.BYTES);
+        segment.put(event);
+        segment.putInt(position, event.length);
+        writtenEvents++;
+    }
+
+    private void roll() throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segments.addLast(path);
+        while (segments.size() > retainedSegments) {
+            Files.deleteIfExists(segments.removeFirst());
+        }
+    }
+
+    /*
+     * An event as captured by the thread running the workflow. Context values are
+     * diffed and stringified when the event is encoded by the writer thread.
+     */
+    private static final class Event {
+
+        private final AuditEvent.Type type;
+        private final long timestamp;
+        private final long executionId;
+        private final String name;
+        private final String thread;
+        private final ActionStatus status;
+        private final long durationNanos;
+        private final Throwable failure;
+        private final Map<String, Object> initialContext;
+        private final Map<String, Object> context;
+
+        private Event(AuditEvent.Type type, long timestamp, long executionId, String name, String thread, ActionStatus status,
+                      long durationNanos, Throwable failure, Map<String, Object> initialContext, Map<String, Object> context) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.executionId = executionId;
+            this.name = name;
+            this.thread = thread;
+            this.status = status;
+            this.durationNanos = durationNanos;
+            this.failure = failure;
+            this.initialContext = initialContext;
+            this.context = context;
+        }
+
+        private byte[] encode() {
+            String errorDescription = failure == null ? null : failure.getClass().getName() + ": " + failure.getMessage();
+            return AuditEventCodec.encode(type, timestamp, executionId, name, thread, status, durationNanos, errorDescription, contextOf());
+        }
+
+        /*
+         * The whole context for a start event, the changes since the start for an end event.
+         */
+        private Map<String, String> contextOf() {
+            if (context == null) {
+                return Collections.emptyMap();
+            }
+            Map<String, String> strings = new LinkedHashMap<>();
+            if (initialContext == null) {
+                context.forEach((key, value) -> strings.put(key, String.valueOf(value)));
+                return strings;
+            }
+            Map<String, Object> removed = new HashMap<>(initialContext);
+            for (Map.Entry<String, Object> entry : context.entrySet()) {
+                Object initialValue = removed.remove(entry.getKey());
+                if (!Objects.equals(initialValue, entry.getValue())) {
+                    strings.put(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+            }
+            removed.keySet().forEach(key -> strings.put(key, null));
+            return strings;
+        }
+    }
+
+    private static class Execution {
+
+        private final long id;
+        private final long start = System.nanoTime();
+        private final Map<String, Object> initialContext;
+
+        private Execution(long id, Map<String, Object> initialContext) {
+            this.id = id;
+            this.initialContext = initialContext;
+        }
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewAuditLog
+        }
+
+        public static DirectoryStep aNewAuditLog() {
+            return new BuildSteps();
+        }
+
+        public interface DirectoryStep {
+            BuildStep in(Path directory);
+        }
+
+        public interface BuildStep {
+            /**
+             * Set the size of segment files, 64 MB by default.
+             *
+             * @param bytes size of segment files
+             * @return the builder instance
+             */
+            BuildStep segmentSize(int bytes);
+
+            /**
+             * Set the number of segment files kept in the directory, 16 by default.
+             *
+             * @param segments number of retained segment files
+             * @return the builder instance
+             */
+            BuildStep retainedSegments(int segments);
+
+            /**
+             * Set the maximum number of events waiting to be written, 65536 by default.
+             *
+             * @param events maximum number of queued events
+             * @return the builder instance
+             */
+            BuildStep queueCapacity(int events);
+
+            /**
+             * Create the audit log and start its writer thread.
+             *
+             * @return a new audit log
+             * @throws IOException if the audit directory cannot be created or read
+             */
+            AuditLog build() throws IOException;
+        }
+
+        private static class BuildSteps implements DirectoryStep, BuildStep {
+
+            private Path directory;
+            private int segmentSize = 64 * 1024 * 1024;
+            private int retainedSegments = 16;
+            private int queueCapacity = 65536;
+
+            @Override
+            public BuildStep in(Path directory) {
+                this.directory = directory;
+                return this;
+            }
+
+            @Override
+            public BuildStep segmentSize(int bytes) {
+                if (bytes < 1024) {
+                    throw new IllegalArgumentException("segment size must be at least 1024 bytes");
+                }
+                this.segmentSize = bytes;
+                return this;
+            }
+
+            @Override
+            public BuildStep retainedSegments(int segments) {
+                if (segments < 1) {
+                    throw new IllegalArgumentException("at least one segment must be retained");
+                }
+                this.retainedSegments = segments;
+                return this;
+            }
+
+            @Override
+            public BuildStep queueCapacity(int events) {
+                if (events < 1) {
+                    throw new IllegalArgumentException("queue capacity must be positive");
+                }
+                this.queueCapacity = events;
+                return this;
+            }
+
+            @Override
+            public AuditLog build() throws IOException {
+                return new AuditLog(directory, segmentSize, retainedSegments, queueCapacity);
+            }
+        }
+    }
+}
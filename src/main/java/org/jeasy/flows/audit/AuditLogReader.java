@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.audit;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reader of the segment files written by an {@link AuditLog}. Segments can be read
+ * while the audit log is writing them.
+ *
+ * <p>The reader can be run from the command line to print events of an audit directory:</p>
+ *
+ * <pre>
+ * java org.jeasy.flows.audit.AuditLogReader &lt;directory&gt; [--type TYPE] [--execution ID] [--name TEXT] [--status STATUS]
+ * </pre>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public final class AuditLogReader {
+
+    private AuditLogReader() {
+    }
+
+    /**
+     * Read all events of an audit directory, in the order they were written.
+     *
+     * @param directory of the audit log
+     * @return audit events
+     * @throws IOException if segment files cannot be read
+     */
+    public static List<AuditEvent> read(Path directory) throws IOException {
+        return read(directory, event -> true);
+    }
+
+    /**
+     * Read events of an audit directory matching a filter, in the order they were written.
+     *
+     * @param directory of the audit log
+     * @param filter of events
+     * @return audit events matching the filter
+     * @throws IOException if segment files cannot be read
+     */
+    public static List<AuditEvent> read(Path directory, Predicate<AuditEvent> filter) throws IOException {
+        List<AuditEvent> events = new ArrayList<>();
+        for (Path segment : segments(directory)) {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            while (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) { // end of the segment
+                    break;
+                }
+                byte[] event = new byte[length];
+                buffer.get(event);
+                AuditEvent auditEvent = AuditEventCodec.decode(event);
+                if (filter.test(auditEvent)) {
+                    events.add(auditEvent);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Print events of an audit directory matching the filters given as arguments.
+     *
+     * @param args directory followed by optional filters
+     * @throws IOException if segment files cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println("Usage: AuditLogReader <directory> [--type TYPE] [--execution ID] [--name TEXT] [--status STATUS]");
+            System.exit(1);
+        }
+        Predicate<AuditEvent> filter = event -> true;
+        for (int i = 1; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--type":
+                    filter = filter.and(event -> event.getType().name().equalsIgnoreCase(value));
+                    break;
+                case "--execution":
+                    long executionId = Long.parseLong(value);
+                    filter = filter.and(event -> event.getExecutionId() == executionId);
+                    break;
+                case "--name":
+                    filter = filter.and(event -> event.getName().contains(value));
+                    break;
+                case "--status":
+                    filter = filter.and(event -> event.getStatus() != null && event.getStatus().name().equalsIgnoreCase(value));
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+        read(Paths.get(args[0]), filter).forEach(System.out::println);
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(AuditLogReader::isSegment).sorted().collect(Collectors.toList());
+        }
+    }
+
+    static long segmentIndex(Path segment) {
+        String fileName = segment.getFileName().toString();
+        return Long.parseLong(fileName.substring(AuditLog.SEGMENT_PREFIX.length(), fileName.length() - AuditLog.SEGMENT_SUFFIX.length()));
+    }
+
+    private static boolean isSegment(Path path) {
+        String fileName = path.getFileName().toString();
+        return fileName.startsWith(AuditLog.SEGMENT_PREFIX) && fileName.endsWith(AuditLog.SEGMENT_SUFFIX);
+    }
+}
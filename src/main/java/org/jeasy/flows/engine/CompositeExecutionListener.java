@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.engine;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.executor.ExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Notifies registered listeners in order. A failing listener does not prevent other
+ * listeners from being notified, nor the workflow from running.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+class CompositeExecutionListener implements ExecutionListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompositeExecutionListener.class);
+
+    private final ExecutionListener[] executionListeners;
+
+    CompositeExecutionListener(List<ExecutionListener> executionListeners) {
+        this.executionListeners = executionListeners.toArray(new ExecutionListener[0]);
+    }
+
+    @Override
+    public void beforeWorkFlow(Action workFlow, ActionContext actionContext) {
+        for (ExecutionListener executionListener : executionListeners) {
+            try {
+                executionListener.beforeWorkFlow(workFlow, actionContext);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Execution listener failed before workflow ''{}''", workFlow.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void afterWorkFlow(Action workFlow, ActionContext actionContext, ActionReport actionReport, Throwable error) {
+        for (ExecutionListener executionListener : executionListeners) {
+            try {
+                executionListener.afterWorkFlow(workFlow, actionContext, actionReport, error);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Execution listener failed after workflow ''{}''", workFlow.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void beforeAction(Action action, ActionContext actionContext) {
+        for (ExecutionListener executionListener : executionListeners) {
+            try {
+                executionListener.beforeAction(action, actionContext);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Execution listener failed before action unit ''{}''", action.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void afterAction(Action action, ActionContext actionContext, ActionReport actionReport, Throwable error, long durationNanos) {
+        for (ExecutionListener executionListener : executionListeners) {
+            try {
+                executionListener.afterAction(action, actionContext, actionReport, error, durationNanos);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Execution listener failed after action unit ''{}''", action.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void beforeParallelUnits(String flowName, ActionContext actionContext, int units) {
+        for (ExecutionListener executionListener : executionListeners) {
+            try {
+                executionListener.beforeParallelUnits(flowName, actionContext, units);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Execution listener failed before action units of parallel flow ''{}''", flowName, e);
+            }
+        }
+    }
+
+    @Override
+    public void afterParallelUnits(String flowName, ActionContext actionContext, int units, long submitNanos, long waitNanos, long joinNanos) {
+        for (ExecutionListener executionListener : executionListeners) {
+            try {
+                executionListener.afterParallelUnits(flowName, actionContext, units, submitNanos, waitNanos, joinNanos);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Execution listener failed after action units of parallel flow ''{}''", flowName, e);
+            }
+        }
+    }
+}
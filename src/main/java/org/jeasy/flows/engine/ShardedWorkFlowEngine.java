@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.engine;
+
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.executor.ExecutionPriority;
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
+import org.jeasy.flows.workflow.WorkFlow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Workflow engine partitioning runs by a routing key extracted from their action context,
+ * for example the identifier of the entity a run processes. Each key is hashed to one of a
+ * fixed number of shards, and each shard runs workflows one at a time on its own thread:
+ * runs of the same key never interleave and run in submission order, without locking,
+ * while runs of keys of different shards run in parallel. Running the workflows of a key
+ * on the same thread also keeps the data they use in the caches of the same processor.
+ *
+ * Shards are {@link ExecutorPool}s of a single thread named {@code shard-<index>}, with
+ * an unbounded queue: queue depths (see {@link #getQueueDepth(int)}) tell how far behind
+ * each shard is, and reveal hot keys. Shard queues are ordered by submission, whatever the
+ * priority of runs, which only applies to the tasks runs submit to other pools.
+ *
+ * A workflow run on a shard is run synchronously, including its asynchronous actions, so
+ * that the next run of the shard does not start before it is over. A workflow running
+ * another workflow of the same shard runs it inline; it should not wait for a workflow
+ * of another shard, which might be waiting for it.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see WorkFlowEngineBuilder#buildSharded(int, Function)
+ */
+public class ShardedWorkFlowEngine implements WorkFlowEngine {
+
+    static final String SHARD_POOL_PREFIX = "shard-";
+
+    private final WorkFlowEngine workFlowEngine;
+    private final ExecutorPool[] shards;
+    private final Function<ActionContext, ?> routingKey;
+    private final AtomicInteger pendingRuns = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    ShardedWorkFlowEngine(WorkFlowEngine workFlowEngine, int shards, Function<ActionContext, ?> routingKey) {
+        this.workFlowEngine = workFlowEngine;
+        this.shards = new ExecutorPool[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            this.shards[shard] = workFlowEngine.getExecutorPools().get(SHARD_POOL_PREFIX + shard);
+        }
+        this.routingKey = routingKey;
+    }
+
+    @Override
+    public ActionReport run(WorkFlow workFlow, ActionContext actionContext) {
+        return run(workFlow, actionContext, ExecutionPriority.NORMAL);
+    }
+
+    @Override
+    public ActionReport run(WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        ExecutorPool shard = shards[shardOf(actionContext)];
+        if (ExecutorPool.current() == shard) {
+            return workFlowEngine.run(workFlow, actionContext, executionPriority);
+        }
+        return WorkFlowEngineImpl.await(submit(shard, workFlow, actionContext, executionPriority));
+    }
+
+    @Override
+    public CompletionStage<ActionReport> runAsync(WorkFlow workFlow, ActionContext actionContext) {
+        return runAsync(workFlow, actionContext, ExecutionPriority.NORMAL);
+    }
+
+    @Override
+    public CompletionStage<ActionReport> runAsync(WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        return submit(shards[shardOf(actionContext)], workFlow, actionContext, executionPriority);
+    }
+
+    /**
+     * Get the shard runs of the given action context are assigned to.
+     *
+     * @param actionContext of a run
+     * @return index of the shard
+     * @throws IllegalArgumentException if the routing key of the action context is null
+     */
+    public int shardOf(ActionContext actionContext) {
+        Object key = routingKey.apply(actionContext);
+        if (key == null) {
+            throw new IllegalArgumentException("The routing key of the action context must not be null");
+        }
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Get the number of shards of the engine.
+     *
+     * @return number of shards
+     */
+    public int getShards() {
+        return shards.length;
+    }
+
+    /**
+     * Get the number of runs waiting in the queue of a shard, the running one excluded.
+     *
+     * @param shard index of the shard
+     * @return queue depth of the shard
+     */
+    public int getQueueDepth(int shard) {
+        return shards[shard].getQueuedTasks();
+    }
+
+    /**
+     * Get the queue depths of all shards.
+     *
+     * @return queue depth of each shard, by shard index
+     */
+    public int[] getQueueDepths() {
+        int[] queueDepths = new int[shards.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            queueDepths[shard] = shards[shard].getQueuedTasks();
+        }
+        return queueDepths;
+    }
+
+    /**
+     * Get the number of runs completed by a shard.
+     *
+     * @param shard index of the shard
+     * @return number of completed runs
+     */
+    public long getCompletedRuns(int shard) {
+        return shards[shard].getCompletedTasks();
+    }
+
+    @Override
+    public ExecutorPools getExecutorPools() {
+        return workFlowEngine.getExecutorPools();
+    }
+
+    /**
+     * Stop accepting workflows. Runs already queued in shards are run before the
+     * engine shuts down.
+     */
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (pendingRuns.get() == 0) {
+            workFlowEngine.shutdown();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return workFlowEngine.awaitTermination(timeout, unit);
+    }
+
+    private CompletableFuture<ActionReport> submit(ExecutorPool shard, WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        pendingRuns.incrementAndGet();
+        if (shutdown) {
+            drain();
+            throw new IllegalStateException(String.format("Unable to run workflow '%s', the workflow engine has been shut down", workFlow.getName()));
+        }
+        CompletableFuture<ActionReport> actionReport = new CompletableFuture<>();
+        try {
+            shard.getExecutorService().execute(() -> {
+                try {
+                    actionReport.complete(workFlowEngine.run(workFlow, actionContext, executionPriority));
+                } catch (Throwable e) {
+                    actionReport.completeExceptionally(e);
+                } finally {
+                    drain();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            drain();
+            throw e;
+        }
+        return actionReport;
+    }
+
+    private void drain() {
+        if (pendingRuns.decrementAndGet() == 0 && shutdown) {
+            workFlowEngine.shutdown();
+        }
+    }
+}
@@ -25,11 +25,23 @@ package org.jeasy.flows.engine;
 
 import org.jeasy.flows.action.ActionContext;
 import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.executor.ExecutionPriority;
+import org.jeasy.flows.executor.ExecutorPools;
 import org.jeasy.flows.workflow.WorkFlow;
 
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Interface for a workflow engine.
  *
+ * Only {@link #run(WorkFlow, ActionContext)} must be implemented. By default, the other
+ * methods run workflows synchronously with {@link #run(WorkFlow, ActionContext)} and
+ * ignore execution priorities, and the engine owns no executor pools and has nothing
+ * to shut down.
+ *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
 public interface WorkFlowEngine {
@@ -37,10 +49,85 @@ public interface WorkFlowEngine {
     /**
      * Run the given workflow and return its report.
      *
+     * @throws IllegalStateException if the engine has been shut down
      * @param workFlow to run
      * @param actionContext context in which the workflow will be run
      * @return workflow report
      */
     ActionReport run(WorkFlow workFlow, ActionContext actionContext);
 
+    /**
+     * Run the given workflow with the given priority and return its report. The priority
+     * applies to all the tasks the workflow submits to the executor pools of the engine.
+     *
+     * @throws IllegalStateException if the engine has been shut down
+     * @param workFlow to run
+     * @param actionContext context in which the workflow will be run
+     * @param executionPriority of the execution
+     * @return workflow report
+     * @see WorkFlowEngineBuilder#withPrioritizedScheduling(long, TimeUnit)
+     */
+    default ActionReport run(WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        return run(workFlow, actionContext);
+    }
+
+    /**
+     * Run the given workflow without blocking on {@link org.jeasy.flows.action.AsyncAction}s
+     * and parallel flows. The workflow is run on the calling thread until it reaches an
+     * asynchronous action in progress, and is then resumed by the thread completing it.
+     *
+     * @throws IllegalStateException if the engine has been shut down
+     * @param workFlow to run
+     * @param actionContext context in which the workflow will be run
+     * @return a stage completed with the workflow report
+     */
+    default CompletionStage<ActionReport> runAsync(WorkFlow workFlow, ActionContext actionContext) {
+        return CompletableFuture.completedFuture(run(workFlow, actionContext));
+    }
+
+    /**
+     * Run the given workflow with the given priority without blocking on
+     * {@link org.jeasy.flows.action.AsyncAction}s and parallel flows.
+     *
+     * @throws IllegalStateException if the engine has been shut down
+     * @param workFlow to run
+     * @param actionContext context in which the workflow will be run
+     * @param executionPriority of the execution
+     * @return a stage completed with the workflow report
+     * @see #runAsync(WorkFlow, ActionContext)
+     */
+    default CompletionStage<ActionReport> runAsync(WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        return runAsync(workFlow, actionContext);
+    }
+
+    /**
+     * Get the executor pools owned by this engine, for example to monitor their saturation.
+     *
+     * @return executor pools of the engine
+     */
+    default ExecutorPools getExecutorPools() {
+        return new ExecutorPools(Collections.emptyList());
+    }
+
+    /**
+     * Initiate an orderly shutdown of the engine: workflows already running are allowed
+     * to complete, new workflows are rejected, and the executor pools of the engine are
+     * shut down as soon as the last running workflow completes.
+     */
+    default void shutdown() {
+        // no resources to release by default
+    }
+
+    /**
+     * Wait for running workflows to complete and executor pools to terminate after a shutdown.
+     *
+     * @param timeout maximum time to wait
+     * @param unit of the timeout
+     * @return true if the engine terminated, false if the timeout elapsed before
+     * @throws InterruptedException if interrupted while waiting
+     */
+    default boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return true;
+    }
+
 }
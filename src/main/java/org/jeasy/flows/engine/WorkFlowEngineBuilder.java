@@ -23,6 +23,21 @@
  */
 package org.jeasy.flows.engine;
 
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.SingleFlight;
+import org.jeasy.flows.executor.ExecutionListener;
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
+import org.jeasy.flows.jfr.FlightRecorderEvents;
+import org.jeasy.flows.workflow.EventLoop;
+import org.jeasy.flows.workflow.FlowInterpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
 /**
  * Main entry point to create {@link WorkFlowEngine} instances.
  *
@@ -39,15 +54,228 @@ public class WorkFlowEngineBuilder {
         return new WorkFlowEngineBuilder();
     }
 
+    private final List<ExecutorPool> executorPools = new ArrayList<>();
+    private final List<ExecutionListener> executionListeners = new ArrayList<>();
+    private boolean interpreted;
+    private long blockingThresholdNanos = -1;
+    private long agingNanos = -1;
+    private SingleFlight<List<Object>> singleFlight;
+    private String[] singleFlightKeys = new String[0];
+
     private WorkFlowEngineBuilder() {
     }
 
+    /**
+     * Register a named executor pool with an unbounded queue. Actions assigned to
+     * this pool (see {@link ExecutorPools#onPool(String, org.jeasy.flows.action.Action)})
+     * are executed on its threads.
+     *
+     * @param name of the pool, for example {@link ExecutorPools#CPU} or {@link ExecutorPools#IO}
+     * @param threads maximum number of threads of the pool
+     * @return the builder instance
+     */
+    public WorkFlowEngineBuilder withExecutorPool(String name, int threads) {
+        return withExecutorPool(name, threads, -1);
+    }
+
+    /**
+     * Register a named executor pool with a bounded queue. Actions routed to a
+     * saturated pool fail with a {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @param name of the pool, for example {@link ExecutorPools#CPU} or {@link ExecutorPools#IO}
+     * @param threads maximum number of threads of the pool
+     * @param queueCapacity maximum number of queued tasks, zero to hand off tasks to idle threads only
+     * @return the builder instance
+     */
+    public WorkFlowEngineBuilder withExecutorPool(String name, int threads, int queueCapacity) {
+        return withExecutorPool(new ExecutorPool(name, threads, queueCapacity));
+    }
+
+    /**
+     * Register an executor pool, typically created with {@link ExecutorPool.Builder}
+     * to configure thread naming or caller-runs behaviour on saturation. The engine
+     * owns the pool and shuts it down when the engine is shut down.
+     *
+     * A pool named {@link ExecutorPools#DEFAULT} replaces the default pool of the engine,
+     * which is used by parallel flows that are not given an executor service.
+     *
+     * @param executorPool to register
+     * @return the builder instance
+     */
+    public WorkFlowEngineBuilder withExecutorPool(ExecutorPool executorPool) {
+        this.executorPools.add(executorPool);
+        return this;
+    }
+
+    /**
+     * Register a listener notified of the workflows run by the engine and of the
+     * actions they execute, for example an {@link org.jeasy.flows.audit.AuditLog}.
+     * Exceptions thrown by listeners are logged and ignored.
+     *
+     * @param executionListener to register
+     * @return the builder instance
+     */
+    public WorkFlowEngineBuilder withExecutionListener(ExecutionListener executionListener) {
+        this.executionListeners.add(executionListener);
+        return this;
+    }
+
+    /**
+     * Commit Java Flight Recorder events for the workflows run by the engine, the actions
+     * they execute and the action units of their parallel flows (see {@link FlightRecorderEvents}).
+     * Events are enabled in the settings of recordings; when they are disabled, recording
+     * them costs a volatile read per action. Ignored if the JVM has no flight recorder.
+     *
+     * @return the builder instance
+     */
+    public WorkFlowEngineBuilder withFlightRecorderEvents() {
+        if (FlightRecorderEvents.isAvailable()) {
+            this.executionListeners.add(FlightRecorderEvents.newExecutionListener());
+        }
+        return this;
+    }
+
+    /**
+     * Execute workflows with the {@link FlowInterpreter} instead of recursive calls,
+     * so that the nesting depth of flows is not bounded by the size of thread stacks.
+     *
+     * @return the builder instance
+     */
+    public WorkFlowEngineBuilder withInterpretedExecution() {
+        this.interpreted = true;
+        return this;
+    }
+
+    /**
+     * Run workflows on a single-threaded {@link EventLoop} which interleaves them
+     * cooperatively, instead of handing off action units to executor pools. Actions
+     * running longer than one millisecond on the loop are considered blocking.
+     *
+     * @return the builder instance
+     * @see #withEventLoop(long, TimeUnit)
+     */
+    public WorkFlowEngineBuilder withEventLoop() {
+        return withEventLoop(1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run workflows on a single-threaded {@link EventLoop} which interleaves them
+     * cooperatively, instead of handing off action units to executor pools. Blocking
+     * actions are offloaded to the {@link ExecutorPools#IO} pool if registered, or
+     * to the default pool otherwise.
+     *
+     * @param blockingThreshold execution time above which an action is considered blocking
+     * @param unit of the blocking threshold
+     * @return the builder instance
+     */
+    public WorkFlowEngineBuilder withEventLoop(long blockingThreshold, TimeUnit unit) {
+        this.blockingThresholdNanos = unit.toNanos(blockingThreshold);
+        return this;
+    }
+
+    /**
+     * Order the tasks queued in the default pool of the engine by the priority of the
+     * executions submitting them (see {@link WorkFlowEngine#run(org.jeasy.flows.workflow.WorkFlow, org.jeasy.flows.action.ActionContext, org.jeasy.flows.executor.ExecutionPriority)}),
+     * rather than by submission order. Other pools can be prioritized with
+     * {@link ExecutorPool.Builder#prioritized(long, TimeUnit)}.
+     *
+     * This only applies to the default pool created by the engine: {@link #build()} throws
+     * an {@link IllegalStateException} if a default pool was also registered with
+     * {@link #withExecutorPool(ExecutorPool)} (or another overload), which should then be
+     * prioritized with {@link ExecutorPool.Builder#prioritized(long, TimeUnit)} instead.
+     *
+     * @param aging period after which a queued task catches up with the next higher priority class
+     * @param unit of the aging period
+     * @return the builder instance
+     */
+    public WorkFlowEngineBuilder withPrioritizedScheduling(long aging, TimeUnit unit) {
+        this.agingNanos = unit.toNanos(aging);
+        return this;
+    }
+
+    /**
+     * Coalesce concurrent runs of the same workflow with equal values of the given context
+     * entries: while a run is in flight, runs with the same inputs wait for it and get its
+     * status, error and context outputs instead of running the workflow again. Runs missing
+     * one of the entries are never coalesced. Coalesced runs are not notified to execution
+     * listeners, as they do not run the workflow.
+     *
+     * @param keys of the context entries identifying the inputs of workflows
+     * @return the builder instance
+     * @see SingleFlight
+     */
+    public WorkFlowEngineBuilder withSingleFlight(String... keys) {
+        return withSingleFlight(new SingleFlight<>(), keys);
+    }
+
+    /**
+     * Coalesce concurrent runs of the same workflow with equal values of the given context
+     * entries with the given single flight, which counts executed and coalesced runs.
+     *
+     * @param singleFlight coalescing runs, keyed by the workflow followed by the values of the entries
+     * @param keys of the context entries identifying the inputs of workflows
+     * @return the builder instance
+     * @see #withSingleFlight(String...)
+     */
+    public WorkFlowEngineBuilder withSingleFlight(SingleFlight<List<Object>> singleFlight, String... keys) {
+        if (keys.length == 0) {
+            throw new IllegalArgumentException("At least one context entry must identify the inputs of workflows");
+        }
+        this.singleFlight = singleFlight;
+        this.singleFlightKeys = Arrays.copyOf(keys, keys.length);
+        return this;
+    }
+
     /**
      * Create a new {@link WorkFlowEngine}.
      * 
      * @return a new {@link WorkFlowEngine}.
      */
     public WorkFlowEngine build() {
-        return new WorkFlowEngineImpl();
+        return build(new ArrayList<>(executorPools));
+    }
+
+    /**
+     * Create a new {@link ShardedWorkFlowEngine}, running the workflows of each routing key
+     * one at a time and in submission order on one of the given number of shards.
+     *
+     * @param shards number of shards, each with its own thread
+     * @param routingKey extracting the routing key of a run from its action context
+     * @return a new {@link ShardedWorkFlowEngine}
+     */
+    public ShardedWorkFlowEngine buildSharded(int shards, Function<ActionContext, ?> routingKey) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive");
+        }
+        if (routingKey == null) {
+            throw new IllegalArgumentException("The routing key must not be null");
+        }
+        List<ExecutorPool> pools = new ArrayList<>(executorPools);
+        for (int shard = 0; shard < shards; shard++) {
+            pools.add(ExecutorPool.Builder.aNewExecutorPool(ShardedWorkFlowEngine.SHARD_POOL_PREFIX + shard).threads(1).build());
+        }
+        return new ShardedWorkFlowEngine(build(pools), shards, routingKey);
+    }
+
+    private WorkFlowEngine build(List<ExecutorPool> pools) {
+        boolean hasDefaultPool = pools.stream().anyMatch(pool -> ExecutorPools.DEFAULT.equals(pool.getName()));
+        if (hasDefaultPool && agingNanos >= 0) {
+            throw new IllegalStateException("Prioritized scheduling cannot be applied to a registered default pool, build it with ExecutorPool.Builder#prioritized instead");
+        }
+        if (!hasDefaultPool) {
+            ExecutorPool.Builder defaultPool = ExecutorPool.Builder.aNewExecutorPool(ExecutorPools.DEFAULT);
+            if (agingNanos >= 0) {
+                defaultPool.prioritized(agingNanos, TimeUnit.NANOSECONDS);
+            }
+            pools.add(defaultPool.build());
+        }
+        ExecutionListener executionListener = executionListeners.isEmpty() ? null : new CompositeExecutionListener(executionListeners);
+        ExecutorPools registry = new ExecutorPools(pools, executionListener);
+        EventLoop eventLoop = null;
+        if (blockingThresholdNanos >= 0) {
+            ExecutorPool blockingPool = registry.get(ExecutorPools.IO) != null ? registry.get(ExecutorPools.IO) : registry.getDefault();
+            eventLoop = new EventLoop("event-loop", blockingPool.getExecutorService(), blockingThresholdNanos, TimeUnit.NANOSECONDS);
+        }
+        return new WorkFlowEngineImpl(registry, interpreted, eventLoop, singleFlight, singleFlightKeys);
     }
 }
@@ -25,18 +25,222 @@ package org.jeasy.flows.engine;
 
 import org.jeasy.flows.action.ActionContext;
 import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.SingleFlight;
+import org.jeasy.flows.executor.ExecutionListener;
+import org.jeasy.flows.executor.ExecutionPriority;
+import org.jeasy.flows.executor.ExecutorPools;
+import org.jeasy.flows.workflow.EventLoop;
+import org.jeasy.flows.workflow.FlowInterpreter;
 import org.jeasy.flows.workflow.WorkFlow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 class WorkFlowEngineImpl implements WorkFlowEngine {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WorkFlowEngineImpl.class);
 
+    private final ExecutorPools executorPools;
+    private final boolean interpreted;
+    private final EventLoop eventLoop;
+    private final SingleFlight<List<Object>> singleFlight;
+    private final String[] singleFlightKeys;
+    private final AtomicInteger runningWorkFlows = new AtomicInteger();
+    private final Object drained = new Object();
+    private volatile boolean shutdown;
+
+    WorkFlowEngineImpl() {
+        this(new ExecutorPools(Collections.emptyList()), false, null);
+    }
+
+    WorkFlowEngineImpl(ExecutorPools executorPools, boolean interpreted, EventLoop eventLoop) {
+        this(executorPools, interpreted, eventLoop, null, new String[0]);
+    }
+
+    WorkFlowEngineImpl(ExecutorPools executorPools, boolean interpreted, EventLoop eventLoop,
+                       SingleFlight<List<Object>> singleFlight, String[] singleFlightKeys) {
+        this.executorPools = executorPools;
+        this.interpreted = interpreted;
+        this.eventLoop = eventLoop;
+        this.singleFlight = singleFlight;
+        this.singleFlightKeys = singleFlightKeys;
+    }
+
     public ActionReport run(WorkFlow workFlow, ActionContext actionContext) {
-        LOGGER.info("Running workflow ''{}''", workFlow.getName());
-        return workFlow.execute(actionContext);
+        return run(workFlow, actionContext, ExecutionPriority.NORMAL);
+    }
+
+    @Override
+    public ActionReport run(WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        List<Object> key = singleFlightKey(workFlow, actionContext);
+        if (key == null) {
+            return execute(workFlow, actionContext, executionPriority);
+        }
+        return singleFlight.execute(key, actionContext, context -> execute(workFlow, context, executionPriority));
+    }
+
+    private ActionReport execute(WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        started(workFlow, actionContext);
+        ExecutorPools executorPools = this.executorPools.withExecutionPriority(executionPriority);
+        ActionReport actionReport = null;
+        Throwable error = null;
+        try {
+            if (eventLoop != null && !eventLoop.inEventLoop()) { // on the loop itself, the workflow is run inline
+                actionReport = await(ExecutorPools.within(executorPools, () -> eventLoop.execute(workFlow, actionContext)));
+            } else {
+                actionReport = ExecutorPools.within(executorPools, () -> interpreted || eventLoop != null
+                        ? FlowInterpreter.execute(workFlow, actionContext)
+                        : ExecutorPools.execute(workFlow, actionContext));
+            }
+            return actionReport;
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            finished(workFlow, actionContext, actionReport, error);
+        }
+    }
+
+    @Override
+    public CompletionStage<ActionReport> runAsync(WorkFlow workFlow, ActionContext actionContext) {
+        return runAsync(workFlow, actionContext, ExecutionPriority.NORMAL);
+    }
+
+    @Override
+    public CompletionStage<ActionReport> runAsync(WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        List<Object> key = singleFlightKey(workFlow, actionContext);
+        if (key == null) {
+            return executeAsync(workFlow, actionContext, executionPriority);
+        }
+        return singleFlight.executeAsync(key, actionContext, context -> executeAsync(workFlow, context, executionPriority));
+    }
+
+    private CompletionStage<ActionReport> executeAsync(WorkFlow workFlow, ActionContext actionContext, ExecutionPriority executionPriority) {
+        started(workFlow, actionContext);
+        ExecutorPools executorPools = this.executorPools.withExecutionPriority(executionPriority);
+        CompletionStage<ActionReport> actionReport;
+        try {
+            actionReport = ExecutorPools.within(executorPools, () -> eventLoop != null
+                    ? eventLoop.execute(workFlow, actionContext)
+                    : FlowInterpreter.executeAsync(workFlow, actionContext));
+        } catch (RuntimeException | Error e) {
+            finished(workFlow, actionContext, null, e);
+            throw e;
+        }
+        return actionReport.whenComplete((report, error) -> finished(workFlow, actionContext, report,
+                error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+    }
+
+    /*
+     * Runs are coalesced by workflow and values of the single-flight entries of their
+     * context, runs missing one of these entries are not coalesced. Once the engine is
+     * shut down, runs are not coalesced so that they are rejected.
+     */
+    private List<Object> singleFlightKey(WorkFlow workFlow, ActionContext actionContext) {
+        if (singleFlight == null || shutdown) {
+            return null;
+        }
+        List<Object> key = new ArrayList<>(singleFlightKeys.length + 1);
+        key.add(workFlow);
+        for (String entry : singleFlightKeys) {
+            Object value = actionContext.get(entry);
+            if (value == null) {
+                return null;
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    static ActionReport await(CompletionStage<ActionReport> actionReport) {
+        try {
+            return actionReport.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void started(WorkFlow workFlow, ActionContext actionContext) {
+        runningWorkFlows.incrementAndGet();
+        if (shutdown) {
+            drain();
+            throw new IllegalStateException(String.format("Unable to run workflow '%s', the workflow engine has been shut down", workFlow.getName()));
+        }
+        LOGGER.debug("Running workflow ''{}''", workFlow.getName());
+        ExecutionListener executionListener = executorPools.getExecutionListener();
+        if (executionListener != null) {
+            executionListener.beforeWorkFlow(workFlow, actionContext);
+        }
+    }
+
+    private void finished(WorkFlow workFlow, ActionContext actionContext, ActionReport actionReport, Throwable error) {
+        ExecutionListener executionListener = executorPools.getExecutionListener();
+        if (executionListener != null) {
+            executionListener.afterWorkFlow(workFlow, actionContext, actionReport, error);
+        }
+        drain();
+    }
+
+    private void drain() {
+        if (runningWorkFlows.decrementAndGet() == 0 && shutdown) {
+            terminate();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (runningWorkFlows.get() == 0) {
+            terminate();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (drained) {
+            while (!shutdown || runningWorkFlows.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(drained, remaining);
+            }
+        }
+        if (eventLoop != null && !eventLoop.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        return executorPools.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private void terminate() {
+        if (eventLoop != null) {
+            eventLoop.shutdown();
+        }
+        executorPools.shutdown();
+        synchronized (drained) {
+            drained.notifyAll();
+        }
+    }
+
+    @Override
+    public ExecutorPools getExecutorPools() {
+        return executorPools;
     }
 
 }
@@ -0,0 +1,283 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.executor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An adaptive limit on the number of action units in flight, tuned with an AIMD
+ * (additive increase, multiplicative decrease) algorithm driven by observed latency:
+ *
+ * <ul>
+ *     <li>when a unit fails or takes longer than the latency threshold, the limit is
+ *     multiplied by the backoff ratio</li>
+ *     <li>when a unit completes in time while at least half of the limit is in use,
+ *     the limit is increased by one</li>
+ * </ul>
+ *
+ * The limit is therefore kept around the knee of the latency curve of the downstream
+ * dependency instead of flooding it. A limiter can be dedicated to a single parallel
+ * flow or shared by all flows calling the same downstream.
+ *
+ * <strong>Concurrency limiter instances are thread-safe.</strong>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see AdaptiveConcurrencyLimiter.Builder
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit, maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private long drops;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyThresholdNanos) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+    }
+
+    /**
+     * Acquire a permit if the limit is not reached.
+     *
+     * @return true if a permit was acquired, false otherwise
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Acquire a permit, waiting until the number of units in flight drops below the limit.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Acquire a permit without blocking the calling thread. The returned future is
+     * completed, in the thread releasing a permit, once the number of units in flight
+     * drops below the limit. Permits are granted to waiting futures in arrival order.
+     *
+     * @return a future completed when the permit is acquired
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        synchronized (this) {
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * Release a permit and adjust the limit according to the outcome of the unit.
+     *
+     * @param latency of the unit
+     * @param unit of the latency
+     * @param failed whether the unit has failed
+     */
+    public void release(long latency, TimeUnit unit, boolean failed) {
+        List<CompletableFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            if (failed || unit.toNanos(latency) > latencyThresholdNanos) {
+                drops++;
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if ((inFlight + 1) * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            notifyAll();
+            granted = grantWaiters();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Release a permit of a unit that was never executed, without adjusting the limit.
+     */
+    public void release() {
+        List<CompletableFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            notifyAll();
+            granted = grantWaiters();
+        }
+        complete(granted);
+    }
+
+    private List<CompletableFuture<Void>> grantWaiters() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        while (!waiters.isEmpty() && inFlight < (int) limit) {
+            inFlight++;
+            granted.add(waiters.poll());
+        }
+        return granted;
+    }
+
+    /*
+     * Complete granted waiters outside of the lock, as they run their dependent stages,
+     * and give back the permits of waiters cancelled in the meantime.
+     */
+    private void complete(List<CompletableFuture<Void>> granted) {
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Get the current limit.
+     *
+     * @return maximum number of units in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the number of units currently in flight.
+     *
+     * @return number of units in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Get the number of times the limit was decreased.
+     *
+     * @return number of failed or slow units
+     */
+    public synchronized long getDrops() {
+        return drops;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveConcurrencyLimiter {" +
+                "limit=" + (int) limit +
+                ", inFlight=" + inFlight +
+                ", drops=" + drops +
+                '}';
+    }
+
+    public static class Builder {
+
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 1000;
+        private double backoffRatio = 0.9;
+        private long latencyThresholdNanos = TimeUnit.SECONDS.toNanos(1);
+
+        private Builder() {
+            // force usage of static method aNewAdaptiveConcurrencyLimiter
+        }
+
+        public static Builder aNewAdaptiveConcurrencyLimiter() {
+            return new Builder();
+        }
+
+        /**
+         * Set the limit to start with. Defaults to 20.
+         *
+         * @param initialLimit initial number of units in flight
+         * @return the builder instance
+         */
+        public Builder initialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Set the bounds of the limit. Default to 1 and 1000.
+         *
+         * @param minLimit minimum number of units in flight
+         * @param maxLimit maximum number of units in flight
+         * @return the builder instance
+         */
+        public Builder between(int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Set the ratio applied to the limit when a unit fails or is too slow. Defaults to 0.9.
+         *
+         * @param backoffRatio between 0 and 1 (exclusive)
+         * @return the builder instance
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Set the latency above which a unit is considered too slow. Defaults to 1 second.
+         *
+         * @param latencyThreshold latency above which the limit is decreased
+         * @param unit of the latency threshold
+         * @return the builder instance
+         */
+        public Builder latencyThreshold(long latencyThreshold, TimeUnit unit) {
+            this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+            return this;
+        }
+
+        public AdaptiveConcurrencyLimiter build() {
+            if (minLimit < 1 || maxLimit < minLimit) {
+                throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= maxLimit");
+            }
+            if (backoffRatio <= 0 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("Backoff ratio must be between 0 and 1 (exclusive)");
+            }
+            int limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+            return new AdaptiveConcurrencyLimiter(limit, minLimit, maxLimit, backoffRatio, latencyThresholdNanos);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.executor;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+
+/**
+ * Listener of the execution of workflows and actions by an engine. Listeners are
+ * registered with {@link org.jeasy.flows.engine.WorkFlowEngineBuilder#withExecutionListener(ExecutionListener)}
+ * and notified synchronously by the threads running workflows: implementations must
+ * be thread-safe and return quickly.
+ *
+ * Actions are reported each time a flow of the engine executes them, including
+ * nested flows when workflows are not run by the {@link org.jeasy.flows.workflow.FlowInterpreter}.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public interface ExecutionListener {
+
+    /**
+     * Called before the engine runs a workflow.
+     *
+     * @param workFlow about to run
+     * @param actionContext of the workflow
+     */
+    default void beforeWorkFlow(Action workFlow, ActionContext actionContext) {
+    }
+
+    /**
+     * Called after the engine ran a workflow.
+     *
+     * @param workFlow that ran
+     * @param actionContext of the workflow
+     * @param actionReport report of the workflow, null if an exception was thrown
+     * @param error thrown by the workflow, null if it returned a report
+     */
+    default void afterWorkFlow(Action workFlow, ActionContext actionContext, ActionReport actionReport, Throwable error) {
+    }
+
+    /**
+     * Called before an action is executed.
+     *
+     * @param action about to be executed
+     * @param actionContext of the action
+     */
+    default void beforeAction(Action action, ActionContext actionContext) {
+    }
+
+    /**
+     * Called after an action was executed.
+     *
+     * @param action that was executed
+     * @param actionContext of the action
+     * @param actionReport report of the action, null if an exception was thrown
+     * @param error thrown by the action, null if it returned a report
+     * @param durationNanos execution time of the action in nanoseconds
+     */
+    default void afterAction(Action action, ActionContext actionContext, ActionReport actionReport, Throwable error, long durationNanos) {
+    }
+
+    /**
+     * Called before a parallel flow hands off its action units, on the thread executing the flow.
+     *
+     * @param flowName name of the parallel flow
+     * @param actionContext of the flow
+     * @param units number of action units
+     */
+    default void beforeParallelUnits(String flowName, ActionContext actionContext, int units) {
+    }
+
+    /**
+     * Called after a parallel flow gathered the reports of its action units, or failed
+     * to, on the thread executing the flow.
+     *
+     * @param flowName name of the parallel flow
+     * @param actionContext of the flow
+     * @param units number of action units
+     * @param submitNanos time spent handing off action units to the executor service
+     * @param waitNanos time spent running action units on the calling thread and waiting for the others
+     * @param joinNanos time spent gathering the reports of action units
+     */
+    default void afterParallelUnits(String flowName, ActionContext actionContext, int units, long submitNanos, long waitNanos, long joinNanos) {
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.executor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling attributes of a workflow execution: a {@link Priority} class and an
+ * optional deadline. They follow the execution down to every task it submits to
+ * the executor pools of the engine, which take them into account when prioritized
+ * (see {@link ExecutorPool.Builder#prioritized(long, TimeUnit)}).
+ *
+ * Deadlines are absolute: an instance with a deadline should be created for each
+ * execution.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public final class ExecutionPriority {
+
+    /**
+     * Normal priority without deadline, used by executions that are not given a priority.
+     */
+    public static final ExecutionPriority NORMAL = new ExecutionPriority(Priority.NORMAL, false, 0);
+
+    private final Priority priority;
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+
+    private ExecutionPriority(Priority priority, boolean hasDeadline, long deadlineNanos) {
+        this.priority = priority;
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Create an execution priority without deadline.
+     *
+     * @param priority class of the execution
+     * @return an execution priority
+     */
+    public static ExecutionPriority of(Priority priority) {
+        return priority == Priority.NORMAL ? NORMAL : new ExecutionPriority(priority, false, 0);
+    }
+
+    /**
+     * Create an execution priority whose tasks should be done within the given
+     * time from now. Among tasks with deadlines, the earliest deadline is taken first.
+     *
+     * @param priority class of the execution
+     * @param timeout time from now until the deadline
+     * @param unit of the timeout
+     * @return an execution priority
+     */
+    public static ExecutionPriority of(Priority priority, long timeout, TimeUnit unit) {
+        return new ExecutionPriority(priority, true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Get the priority of the execution running on the current thread.
+     *
+     * @return the current execution priority, {@link #NORMAL} outside of an engine
+     */
+    public static ExecutionPriority current() {
+        ExecutorPools executorPools = ExecutorPools.current();
+        return executorPools == null ? NORMAL : executorPools.getExecutionPriority();
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * Get the deadline of the execution, on the {@link System#nanoTime()} time scale.
+     *
+     * @return the deadline, meaningless if {@link #hasDeadline()} is false
+     */
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionPriority {" +
+                "priority=" + priority +
+                (hasDeadline ? ", deadlineIn=" + TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()) + "ms" : "") +
+                '}';
+    }
+}
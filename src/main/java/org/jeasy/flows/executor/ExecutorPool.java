@@ -0,0 +1,545 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.executor;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named, bounded pool of threads used as a bulkhead: actions routed to different
+ * pools (for example blocking I/O and CPU-bound actions) do not compete for the same
+ * threads.
+ *
+ * When its queue is full, a pool either rejects new tasks or, if configured to,
+ * runs them on the submitting thread. A pool with a queue capacity of zero does not
+ * queue tasks: they are handed off to an idle thread, or the pool is saturated.
+ *
+ * Tasks are queued in submission order, unless the pool is prioritized: tasks are
+ * then ordered by the {@link ExecutionPriority} of the execution submitting them,
+ * earliest deadline first and by priority class otherwise. To avoid starving lower
+ * priority classes, a queued task is ranked like a task of the next higher class
+ * submitted an aging period later.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class ExecutorPool {
+
+    private static final ThreadLocal<ExecutorPool> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final String threadNamePrefix;
+    private final int threads;
+    private final int queueCapacity;
+    private final boolean callerRunsWhenSaturated;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService executorService;
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LongAdder callerRunsTasks = new LongAdder();
+    private final long agingNanos;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder[] scheduledTasks = new LongAdder[Priority.values().length];
+    private final LongAdder[] queueingNanos = new LongAdder[Priority.values().length];
+    private final LongAccumulator[] maximumQueueingNanos = new LongAccumulator[Priority.values().length];
+    private volatile ExecutorPools registry;
+
+    /**
+     * Create a new {@link ExecutorPool}.
+     *
+     * @param name of the pool
+     * @param threads maximum number of threads of the pool
+     * @param queueCapacity maximum number of queued tasks, zero to hand off tasks to idle threads
+     *                      without queueing them, or a negative value for an unbounded queue
+     */
+    public ExecutorPool(String name, int threads, int queueCapacity) {
+        this(name, "easy-flows-" + name, threads, queueCapacity, false);
+    }
+
+    ExecutorPool(String name, String threadNamePrefix, int threads, int queueCapacity, boolean callerRunsWhenSaturated) {
+        this(name, threadNamePrefix, threads, queueCapacity, callerRunsWhenSaturated, -1);
+    }
+
+    ExecutorPool(String name, String threadNamePrefix, int threads, int queueCapacity, boolean callerRunsWhenSaturated, long agingNanos) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads of pool '" + name + "' must be positive");
+        }
+        if (agingNanos >= 0 && queueCapacity >= 0) {
+            throw new IllegalArgumentException("The queue of prioritized pool '" + name + "' cannot be bounded");
+        }
+        this.name = name;
+        this.threadNamePrefix = threadNamePrefix;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.callerRunsWhenSaturated = callerRunsWhenSaturated;
+        this.agingNanos = Math.min(agingNanos, Long.MAX_VALUE / 4); // keeps differences of ranks from overflowing
+        for (int i = 0; i < scheduledTasks.length; i++) {
+            scheduledTasks[i] = new LongAdder();
+            queueingNanos[i] = new LongAdder();
+            maximumQueueingNanos[i] = new LongAccumulator(Math::max, 0);
+        }
+        if (agingNanos >= 0) {
+            this.executor = new PrioritizedExecutor(threads, new PoolThreadFactory(), this::onSaturation);
+        } else {
+            BlockingQueue<Runnable> queue = queueCapacity < 0 ? new LinkedBlockingQueue<>()
+                    : queueCapacity == 0 ? new SynchronousQueue<>() : new LinkedBlockingQueue<>(queueCapacity);
+            this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, new PoolThreadFactory(), this::onSaturation);
+        }
+        this.executor.allowCoreThreadTimeOut(true);
+        this.executorService = Executors.unconfigurableExecutorService(executor);
+    }
+
+    private void onSaturation(Runnable task, ThreadPoolExecutor executor) {
+        if (callerRunsWhenSaturated && !executor.isShutdown()) {
+            callerRunsTasks.increment();
+            task.run();
+            return;
+        }
+        rejectedTasks.increment();
+        throw new RejectedExecutionException("Executor pool '" + name + "' is saturated");
+    }
+
+    /**
+     * Get the pool the current thread belongs to.
+     *
+     * @return the pool of the current thread, or {@code null} if the current thread is not a pool thread
+     */
+    public static ExecutorPool current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Execute the given action on this pool and wait for its report. If the current
+     * thread already belongs to this pool, the action is executed inline.
+     *
+     * @param action to execute
+     * @param actionContext context in which the action is executed
+     * @return the execution report
+     */
+    public ActionReport execute(Action action, ActionContext actionContext) {
+        if (CURRENT.get() == this) {
+            return action.execute(actionContext);
+        }
+        Future<ActionReport> future;
+        ExecutorPools executorPools = ExecutorPools.current();
+        try {
+            future = executor.submit(() -> ExecutorPools.within(executorPools, () -> action.execute(actionContext)));
+        } catch (RejectedExecutionException e) {
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, e);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            String message = String.format("Interrupted while waiting for the result of action unit '%s' on executor pool '%s'", action.getName(), name);
+            throw new RuntimeException(message, e);
+        } catch (ExecutionException e) {
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, e.getCause());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get an executor service backed by this pool. The returned executor service
+     * cannot be reconfigured or shut down, the lifecycle of the pool being managed
+     * by the engine owning it.
+     *
+     * @return an executor service backed by this pool
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Get the number of threads currently alive in this pool. Threads are started
+     * on demand and stopped after being idle for a minute.
+     *
+     * @return number of threads in the pool
+     */
+    public int getCurrentThreads() {
+        return executor.getPoolSize();
+    }
+
+    /**
+     * Get the maximum number of threads of this pool.
+     *
+     * @return maximum number of threads
+     */
+    public int getMaximumThreads() {
+        return threads;
+    }
+
+    /**
+     * Get the number of threads currently executing tasks.
+     *
+     * @return number of active threads
+     */
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Get the maximum number of queued tasks.
+     *
+     * @return queue capacity, or a negative value if the queue is unbounded
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Get the number of tasks waiting for a thread.
+     *
+     * @return number of queued tasks
+     */
+    public int getQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Get the number of tasks completed by this pool.
+     *
+     * @return number of completed tasks
+     */
+    public long getCompletedTasks() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Get the number of tasks rejected because the pool was saturated.
+     *
+     * @return number of rejected tasks
+     */
+    public long getRejectedTasks() {
+        return rejectedTasks.sum();
+    }
+
+    /**
+     * Get the number of tasks run on the submitting thread because the pool was saturated.
+     *
+     * @return number of tasks run by callers
+     */
+    public long getCallerRunsTasks() {
+        return callerRunsTasks.sum();
+    }
+
+    /**
+     * Get the saturation of this pool, defined as the ratio of active threads to
+     * the maximum number of threads.
+     *
+     * @return saturation of the pool, between 0 and 1
+     */
+    public double getSaturation() {
+        return (double) getActiveThreads() / threads;
+    }
+
+    /**
+     * Check if tasks are ordered by the priority of their execution rather than
+     * by submission order.
+     *
+     * @return true if this pool is prioritized
+     */
+    public boolean isPrioritized() {
+        return agingNanos >= 0;
+    }
+
+    /**
+     * Get the number of tasks of the given priority class taken from the queue by
+     * the threads of this pool. Only tracked by prioritized pools.
+     *
+     * @param priority class of the tasks
+     * @return number of scheduled tasks
+     */
+    public long getScheduledTasks(Priority priority) {
+        return scheduledTasks[priority.ordinal()].sum();
+    }
+
+    /**
+     * Get the average time tasks of the given priority class waited in the queue.
+     * Only tracked by prioritized pools.
+     *
+     * @param priority class of the tasks
+     * @param unit of the returned delay
+     * @return average queueing delay
+     */
+    public long getAverageQueueingDelay(Priority priority, TimeUnit unit) {
+        long tasks = scheduledTasks[priority.ordinal()].sum();
+        return tasks == 0 ? 0 : unit.convert(queueingNanos[priority.ordinal()].sum() / tasks, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the longest time a task of the given priority class waited in the queue.
+     * Only tracked by prioritized pools.
+     *
+     * @param priority class of the tasks
+     * @param unit of the returned delay
+     * @return maximum queueing delay
+     */
+    public long getMaximumQueueingDelay(Priority priority, TimeUnit unit) {
+        return unit.convert(maximumQueueingNanos[priority.ordinal()].get(), TimeUnit.NANOSECONDS);
+    }
+
+    void setRegistry(ExecutorPools registry) {
+        this.registry = registry;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorPool {" +
+                "name=" + name +
+                ", activeThreads=" + getActiveThreads() +
+                ", maximumThreads=" + threads +
+                ", queuedTasks=" + getQueuedTasks() +
+                ", rejectedTasks=" + getRejectedTasks() +
+                ", callerRunsTasks=" + getCallerRunsTasks() +
+                '}';
+    }
+
+    private class PrioritizedExecutor extends ThreadPoolExecutor {
+
+        PrioritizedExecutor(int threads, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+            super(threads, threads, 60, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<>(16, (first, second) -> ((PrioritizedTask<?>) first).compareTo((PrioritizedTask<?>) second)),
+                    threadFactory, handler);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return new PrioritizedTask<>(callable);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return new PrioritizedTask<>(Executors.callable(runnable, value));
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            super.execute(command instanceof PrioritizedTask ? command : new PrioritizedTask<>(command));
+        }
+    }
+
+    /*
+     * Task ranked when submitted, with the priority of the execution submitting it.
+     * A task wrapping a future is not accounted for if the future is already done
+     * when the task is taken, as happens when the submitter ran it itself.
+     */
+    private class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+
+        private final Future<?> command;
+        private final Priority priority;
+        private final long submitted;
+        private final long rank;
+        private final long order;
+
+        PrioritizedTask(Runnable command) {
+            this(Executors.callable(command, null), command instanceof Future ? (Future<?>) command : null);
+        }
+
+        PrioritizedTask(Callable<T> callable) {
+            this(callable, null);
+        }
+
+        private PrioritizedTask(Callable<T> callable, Future<?> command) {
+            super(callable);
+            this.command = command;
+            ExecutionPriority executionPriority = ExecutionPriority.current();
+            this.priority = executionPriority.getPriority();
+            this.submitted = System.nanoTime();
+            long rank = submitted + priority.ordinal() * agingNanos;
+            if (executionPriority.hasDeadline() && executionPriority.getDeadlineNanos() - rank < 0) {
+                rank = executionPriority.getDeadlineNanos();
+            }
+            this.rank = rank;
+            this.order = sequence.getAndIncrement();
+        }
+
+        @Override
+        public void run() {
+            if (command != null && command.isDone()) {
+                super.run();
+                return;
+            }
+            long queueingDelay = System.nanoTime() - submitted;
+            scheduledTasks[priority.ordinal()].increment();
+            queueingNanos[priority.ordinal()].add(queueingDelay);
+            maximumQueueingNanos[priority.ordinal()].accumulate(queueingDelay);
+            super.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> other) {
+            long difference = rank - other.rank; // nano times must be compared by difference
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+
+    private class PoolThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                CURRENT.set(ExecutorPool.this);
+                ExecutorPools.setCurrent(registry);
+                runnable.run();
+            }, threadNamePrefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static class Builder {
+
+        private final String name;
+        private String threadNamePrefix;
+        private int threads;
+        private int queueCapacity;
+        private boolean callerRunsWhenSaturated;
+        private long agingNanos = -1;
+
+        private Builder(String name) {
+            this.name = name;
+            this.threadNamePrefix = "easy-flows-" + name;
+            this.threads = Runtime.getRuntime().availableProcessors();
+            this.queueCapacity = -1;
+        }
+
+        /**
+         * Create a new builder of executor pools.
+         *
+         * @param name of the pool
+         * @return a new builder
+         */
+        public static Builder aNewExecutorPool(String name) {
+            return new Builder(name);
+        }
+
+        /**
+         * Set the maximum number of threads. Defaults to the number of available processors.
+         *
+         * @param threads maximum number of threads of the pool
+         * @return the builder instance
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Bound the queue of the pool. The queue is unbounded by default. With a
+         * capacity of zero, tasks are handed off to idle threads without being queued.
+         *
+         * @param queueCapacity maximum number of queued tasks
+         * @return the builder instance
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Set the prefix of the names of the threads of the pool. Defaults to
+         * {@code easy-flows-<pool name>}.
+         *
+         * @param threadNamePrefix prefix of thread names
+         * @return the builder instance
+         */
+        public Builder threadNamePrefix(String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+            return this;
+        }
+
+        /**
+         * Run tasks on the submitting thread instead of rejecting them when the pool
+         * is saturated, slowing down submitters rather than failing action units.
+         *
+         * @return the builder instance
+         */
+        public Builder callerRunsWhenSaturated() {
+            this.callerRunsWhenSaturated = true;
+            return this;
+        }
+
+        /**
+         * Order queued tasks by the {@link ExecutionPriority} of the execution submitting
+         * them instead of by submission order. A queued task is ranked like a task of
+         * the next higher priority class submitted one aging period later, so lower
+         * priority classes are not starved. The queue of a prioritized pool is unbounded.
+         *
+         * @param aging period after which a queued task catches up with the next higher priority class
+         * @param unit of the aging period
+         * @return the builder instance
+         */
+        public Builder prioritized(long aging, TimeUnit unit) {
+            this.agingNanos = unit.toNanos(aging);
+            return this;
+        }
+
+        public ExecutorPool build() {
+            return new ExecutorPool(name, threadNamePrefix, threads, queueCapacity, callerRunsWhenSaturated, agingNanos);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.executor;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.action.DefaultActionReport;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the named executor pools owned by a workflow engine, and of the
+ * {@link ExecutionListener} notified of the actions executed by its flows.
+ *
+ * While a workflow is run by an engine, its registry is bound to the running thread
+ * (and to the threads of its pools), so that {@link PooledAction}s executed by flows
+ * are routed to the pool they declare. Threads are only hopped when the pool changes.
+ * Pooled actions executed outside of an engine are executed on the calling thread.
+ *
+ * An execution run with an {@link ExecutionPriority} binds a view of the registry
+ * carrying that priority, which is propagated along with the registry.
+ *
+ * The registry also owns a timer thread, started on first use and stopped with the
+ * pools, on which actions schedule delayed work instead of holding a pool thread.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class ExecutorPools {
+
+    /**
+     * Conventional name of the pool for CPU-bound actions.
+     */
+    public static final String CPU = "cpu";
+
+    /**
+     * Conventional name of the pool for blocking I/O actions.
+     */
+    public static final String IO = "io";
+
+    /**
+     * Name of the pool used by parallel flows that are not given an executor service.
+     */
+    public static final String DEFAULT = "default";
+
+    private static final ThreadLocal<ExecutorPools> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, ExecutorPool> pools;
+    private final ExecutionListener executionListener;
+    private final ExecutionPriority executionPriority;
+    private final Timer timer;
+
+    /**
+     * Create a new {@link ExecutorPools}.
+     *
+     * @param pools to register
+     */
+    public ExecutorPools(List<ExecutorPool> pools) {
+        this(pools, null);
+    }
+
+    /**
+     * Create a new {@link ExecutorPools}.
+     *
+     * @param pools to register
+     * @param executionListener notified of executed actions, might be {@code null}
+     */
+    public ExecutorPools(List<ExecutorPool> pools, ExecutionListener executionListener) {
+        this.pools = new LinkedHashMap<>();
+        this.executionListener = executionListener;
+        this.executionPriority = ExecutionPriority.NORMAL;
+        this.timer = new Timer();
+        for (ExecutorPool pool : pools) {
+            if (this.pools.putIfAbsent(pool.getName(), pool) != null) {
+                throw new IllegalArgumentException(String.format("Duplicate executor pool '%s'", pool.getName()));
+            }
+            pool.setRegistry(this);
+        }
+    }
+
+    private ExecutorPools(ExecutorPools registry, ExecutionPriority executionPriority) {
+        this.pools = registry.pools;
+        this.executionListener = registry.executionListener;
+        this.executionPriority = executionPriority;
+        this.timer = registry.timer;
+    }
+
+    /**
+     * Assign an action to an executor pool.
+     *
+     * @param poolName name of the pool on which the action should be executed
+     * @param action to assign to the pool
+     * @return a pooled action executing the given action on the named pool
+     */
+    public static PooledAction onPool(String poolName, Action action) {
+        return new PooledActionDecorator(poolName, action);
+    }
+
+    /**
+     * Execute the given action, on its declared pool if it is a {@link PooledAction}.
+     *
+     * @param action to execute
+     * @param actionContext context in which the action is executed
+     * @return the execution report
+     */
+    public static ActionReport execute(Action action, ActionContext actionContext) {
+        ExecutorPools registry = CURRENT.get();
+        ExecutionListener listener = registry == null ? null : registry.executionListener;
+        if (listener == null) {
+            return executeOnPool(action, actionContext);
+        }
+        listener.beforeAction(action, actionContext);
+        long start = System.nanoTime();
+        ActionReport actionReport = null;
+        Throwable error = null;
+        try {
+            actionReport = executeOnPool(action, actionContext);
+            return actionReport;
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            listener.afterAction(action, actionContext, actionReport, error, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Start the given asynchronous action, notifying the execution listener of the
+     * engine when it completes.
+     *
+     * @param action to execute
+     * @param actionContext context in which the action is executed
+     * @return a stage completed with the execution report
+     */
+    public static CompletionStage<ActionReport> executeAsync(AsyncAction action, ActionContext actionContext) {
+        ExecutorPools registry = CURRENT.get();
+        ExecutionListener listener = registry == null ? null : registry.executionListener;
+        if (listener == null) {
+            return action.executeAsync(actionContext);
+        }
+        listener.beforeAction(action, actionContext);
+        long start = System.nanoTime();
+        CompletionStage<ActionReport> actionReport;
+        try {
+            actionReport = action.executeAsync(actionContext);
+        } catch (RuntimeException | Error e) {
+            listener.afterAction(action, actionContext, null, e, System.nanoTime() - start);
+            throw e;
+        }
+        return actionReport.whenComplete((report, error) -> listener.afterAction(action, actionContext, report,
+                error instanceof CompletionException && error.getCause() != null ? error.getCause() : error, System.nanoTime() - start));
+    }
+
+    private static ActionReport executeOnPool(Action action, ActionContext actionContext) {
+        if (!(action instanceof PooledAction)) {
+            return action.execute(actionContext);
+        }
+        return route(((PooledAction) action).getExecutorPoolName(), action, actionContext);
+    }
+
+    private static ActionReport route(String poolName, Action action, ActionContext actionContext) {
+        ExecutorPools registry = CURRENT.get();
+        if (registry == null) {
+            return action.execute(actionContext);
+        }
+        ExecutorPool pool = registry.get(poolName);
+        if (pool == null) {
+            IllegalStateException error = new IllegalStateException(String.format("Unknown executor pool '%s' for action unit '%s'", poolName, action.getName()));
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, error);
+        }
+        return pool.execute(action, actionContext);
+    }
+
+    /**
+     * Get the registry bound to the current thread.
+     *
+     * @return the registry of the current thread, or {@code null} if none is bound
+     */
+    public static ExecutorPools current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run the given supplier with the given registry bound to the current thread.
+     *
+     * @param registry to bind to the current thread, might be {@code null}
+     * @param supplier to run
+     * @param <T> type of the result
+     * @return the result of the supplier
+     */
+    public static <T> T within(ExecutorPools registry, Supplier<T> supplier) {
+        ExecutorPools previous = CURRENT.get();
+        if (previous == registry) {
+            return supplier.get();
+        }
+        setCurrent(registry);
+        try {
+            return supplier.get();
+        } finally {
+            setCurrent(previous);
+        }
+    }
+
+    static void setCurrent(ExecutorPools registry) {
+        if (registry == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(registry);
+        }
+    }
+
+    /**
+     * Get a pool by name.
+     *
+     * @param name of the pool
+     * @return the pool or {@code null} if no pool is registered with the given name
+     */
+    public ExecutorPool get(String name) {
+        return pools.get(name);
+    }
+
+    /**
+     * Get the default pool, used by parallel flows that are not given an executor service.
+     *
+     * @return the default pool or {@code null} if no default pool is registered
+     */
+    public ExecutorPool getDefault() {
+        return pools.get(DEFAULT);
+    }
+
+    /**
+     * Get the execution listener notified of executed actions.
+     *
+     * @return the execution listener or {@code null} if none is registered
+     */
+    public ExecutionListener getExecutionListener() {
+        return executionListener;
+    }
+
+    /**
+     * Get the priority of the executions this registry is bound for.
+     *
+     * @return the execution priority
+     */
+    public ExecutionPriority getExecutionPriority() {
+        return executionPriority;
+    }
+
+    /**
+     * Get a view of this registry, sharing its pools and listener, for executions
+     * of the given priority.
+     *
+     * @param executionPriority of the executions
+     * @return a registry carrying the given execution priority
+     */
+    public ExecutorPools withExecutionPriority(ExecutionPriority executionPriority) {
+        return executionPriority == this.executionPriority ? this : new ExecutorPools(this, executionPriority);
+    }
+
+    /**
+     * Run the given task after the given delay on the timer thread of this registry.
+     * Tasks should only hand work off, for example by completing a future, so that
+     * they do not delay each other.
+     *
+     * @param task to run
+     * @param delay after which the task is run
+     * @param unit of the delay
+     * @return a future of the scheduled task
+     * @throws RejectedExecutionException if the registry has been shut down
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return timer.get().schedule(task, delay, unit);
+    }
+
+    /**
+     * Get all registered pools.
+     *
+     * @return registered pools
+     */
+    public Collection<ExecutorPool> getPools() {
+        return Collections.unmodifiableCollection(pools.values());
+    }
+
+    /**
+     * Initiate an orderly shutdown of all pools. Tasks already submitted are executed.
+     */
+    public void shutdown() {
+        pools.values().forEach(ExecutorPool::shutdown);
+        timer.shutdown();
+    }
+
+    /**
+     * Wait for all pools to terminate after a shutdown.
+     *
+     * @param timeout maximum time to wait for all pools, shared by all of them
+     * @param unit of the timeout
+     * @return true if all pools terminated, false if the timeout elapsed before
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorPool pool : pools.values()) {
+            if (!pool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return timer.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Check if all pools have terminated after a shutdown.
+     *
+     * @return true if all pools have terminated
+     */
+    public boolean isTerminated() {
+        for (ExecutorPool pool : pools.values()) {
+            if (!pool.isTerminated()) {
+                return false;
+            }
+        }
+        return timer.isTerminated();
+    }
+
+    /*
+     * Timer thread shared by the views of a registry, started on first use.
+     */
+    private static final class Timer {
+
+        private volatile ScheduledExecutorService scheduler;
+        private boolean shutdown; // guarded by this
+
+        private ScheduledExecutorService get() {
+            ScheduledExecutorService result = scheduler;
+            if (result == null) {
+                synchronized (this) {
+                    if (shutdown) {
+                        throw new RejectedExecutionException("The executor pools have been shut down");
+                    }
+                    result = scheduler;
+                    if (result == null) {
+                        result = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                            Thread thread = new Thread(runnable, "executor-pools-timer");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                        scheduler = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private synchronized void shutdown() {
+            shutdown = true;
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+        }
+
+        private boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            ScheduledExecutorService result = scheduler;
+            return result == null || result.awaitTermination(timeout, unit);
+        }
+
+        private boolean isTerminated() {
+            ScheduledExecutorService result = scheduler;
+            return result == null || result.isTerminated();
+        }
+    }
+
+    private static class PooledActionDecorator implements PooledAction {
+
+        private final String poolName;
+        private final Action action;
+
+        PooledActionDecorator(String poolName, Action action) {
+            this.poolName = poolName;
+            this.action = action;
+        }
+
+        @Override
+        public String getExecutorPoolName() {
+            return poolName;
+        }
+
+        @Override
+        public String getName() {
+            return action.getName();
+        }
+
+        @Override
+        public ActionReport execute(ActionContext actionContext) {
+            return route(poolName, action, actionContext);
+        }
+    }
+}
@@ -0,0 +1,642 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.history;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.executor.ExecutionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * Execution listener keeping a summary of each workflow run in an embedded, file-based
+ * history: name of the workflow, start time, duration, status, type of error, and time spent
+ * in each action (node) of the workflow. The history answers latency percentile queries by
+ * workflow, node and time range, to find which workflow got slower, and in which node.
+ *
+ * <p>Runs are partitioned by start time (one hour by default), each partition being a directory
+ * of segments. Runs of a partition are buffered in memory in columnar form, and handed off to a
+ * background writer as a segment when the partition is over (a run of a later partition was
+ * recorded) or when the buffer is full. A segment is written in two files: the runs, one column
+ * per field, and a rollup of latency histograms per workflow and node.
+ * Partitions older than the retention period (30 days by default) are deleted.</p>
+ *
+ * <p>Queries read the rollups of segments whose runs all fall in the queried time range, and only
+ * scan the runs of segments at the edges of the range, so their cost depends on the number of
+ * partitions queried rather than on the number of runs. Percentiles are computed from
+ * {@link LatencyHistogram}s and are accurate to 3%.</p>
+ *
+ * <p>Runs are correlated with their actions through the action context of the run, which should
+ * therefore not be shared by concurrent runs. Nodes are named after their action, whose name is
+ * read once per action instance. Actions without a name of their own (not overriding
+ * {@link Action#getName()}, like lambdas) are recorded under the {@value #UNNAMED_NODE} node,
+ * so that the number of nodes does not grow with the number of runs.</p>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see org.jeasy.flows.engine.WorkFlowEngineBuilder#withExecutionListener(ExecutionListener)
+ */
+public class ExecutionHistory implements ExecutionListener, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionHistory.class);
+
+    static final String PARTITION_PREFIX = "partition-";
+    static final String RUNS_SUFFIX = ".runs";
+    static final String ROLLUP_SUFFIX = ".rollup";
+
+    /**
+     * Node name of the actions without a name of their own.
+     */
+    public static final String UNNAMED_NODE = "<unnamed>";
+
+    private static final ClassValue<Boolean> NAMED_ACTIONS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("getName").getDeclaringClass() != Action.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private final Path directory;
+    private final long partitionMillis;
+    private final long retentionMillis;
+    private final int segmentRuns;
+    private final Map<ActionContext, Run> runs = new ConcurrentHashMap<>();
+    // node names by action instance, actions of past workflow definitions are collected
+    private final Map<Action, String> nodeNames = Collections.synchronizedMap(new WeakHashMap<>());
+    private final NavigableMap<Long, HistorySegment> openSegments = new TreeMap<>(); // guarded by this
+    private final Map<HistorySegment, Long> pendingSegments = new LinkedHashMap<>(); // guarded by this
+    private final Map<Long, Integer> nextSegments = new HashMap<>(); // guarded by this
+    private final LongAdder recordedRuns = new LongAdder();
+    private final LongAdder droppedRuns = new LongAdder();
+    private final ExecutorService writer;
+    private boolean closed; // guarded by this
+
+    ExecutionHistory(Path directory, long partitionMillis, long retentionMillis, int segmentRuns) throws IOException {
+        this.directory = directory;
+        this.partitionMillis = partitionMillis;
+        this.retentionMillis = retentionMillis;
+        this.segmentRuns = segmentRuns;
+        Files.createDirectories(directory);
+        deleteExpiredPartitions();
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "execution-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void beforeWorkFlow(Action workFlow, ActionContext actionContext) {
+        runs.put(actionContext, new Run(workFlow));
+    }
+
+    @Override
+    public void afterAction(Action action, ActionContext actionContext, ActionReport actionReport, Throwable error, long durationNanos) {
+        Run run = runs.get(actionContext);
+        if (run != null && run.workFlow != action) {
+            run.addNodeDuration(nodeNameOf(action), durationNanos);
+        }
+    }
+
+    @Override
+    public void afterWorkFlow(Action workFlow, ActionContext actionContext, ActionReport actionReport, Throwable error) {
+        Run run = runs.remove(actionContext);
+        if (run == null) {
+            return;
+        }
+        ActionStatus status = actionReport == null ? ActionStatus.FAILED : actionReport.getStatus();
+        Throwable failure = error != null ? error : actionReport == null ? null : actionReport.getError();
+        record(new RunSummary(workFlow.getName(), run.startTime, System.nanoTime() - run.start, status,
+                failure == null ? null : failure.getClass().getName(), run.getNodeDurations()));
+    }
+
+    /**
+     * Record the summary of a run. Runs older than the retention period, or recorded
+     * after the history was closed, are dropped.
+     *
+     * @param run to record
+     */
+    public void record(RunSummary run) {
+        long partition = partitionOf(run.getStartTime());
+        synchronized (this) {
+            if (closed || isExpired(partition, System.currentTimeMillis())) {
+                droppedRuns.increment();
+                return;
+            }
+            HistorySegment segment = openSegments.get(partition);
+            if (segment == null || segment.isShared()) {
+                // a segment scanned by a query is copied on write, queries scan segments outside the lock
+                segment = segment == null ? new HistorySegment() : segment.copy();
+                openSegments.put(partition, segment);
+            }
+            segment.add(run);
+            if (segment.size() >= segmentRuns) {
+                handOff(partition);
+            }
+            // runs of the previous partition may still be recorded, earlier partitions are over
+            while (!openSegments.isEmpty() && openSegments.firstKey() < partition - partitionMillis) {
+                handOff(openSegments.firstKey());
+            }
+        }
+        recordedRuns.increment();
+    }
+
+    /**
+     * Write the runs buffered in memory and wait for them to be written.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            handOffOpenSegments();
+        }
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("Unable to flush execution history in directory {}", directory, e.getCause());
+        }
+    }
+
+    /**
+     * Stop recording runs, write the runs buffered in memory and wait for the writer
+     * thread to terminate.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            // no run may be recorded between the last hand-off and the history being closed
+            closed = true;
+            handOffOpenSegments();
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the latencies of a workflow, or of one of its nodes, in runs started in the given time range.
+     *
+     * @param flowName name of the workflow
+     * @param nodeName name of the node, null for the latencies of whole runs
+     * @param from start of the time range, inclusive
+     * @param to end of the time range, exclusive
+     * @return histogram of latencies
+     * @throws IOException if history files cannot be read
+     */
+    public LatencyHistogram getLatencies(String flowName, String nodeName, Instant from, Instant to) throws IOException {
+        long start = from.toEpochMilli();
+        long end = to.toEpochMilli();
+        String node = nodeName == null ? HistorySegment.RUN : nodeName;
+        LatencyHistogram latencies = new LatencyHistogram();
+        List<Path> segmentFiles;
+        List<HistorySegment> bufferedSegments;
+        synchronized (this) {
+            bufferedSegments = bufferedSegments();
+            segmentFiles = segmentFiles(start, end);
+        }
+        for (HistorySegment segment : bufferedSegments) {
+            segment.addLatencies(flowName, node, start, end, latencies);
+        }
+        for (Path runsFile : segmentFiles) {
+            HistorySegment segment = readSegment(runsFile, start, end, (flow, rollupNode) -> flow.equals(flowName) && rollupNode.equals(node));
+            if (segment != null) {
+                segment.addLatencies(flowName, node, start, end, latencies);
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * Get the names of workflows run in the given time range.
+     *
+     * @param from start of the time range, inclusive
+     * @param to end of the time range, exclusive
+     * @return names of workflows, sorted
+     * @throws IOException if history files cannot be read
+     */
+    public Set<String> getFlowNames(Instant from, Instant to) throws IOException {
+        return getNames(null, from, to);
+    }
+
+    /**
+     * Get the names of the nodes executed by a workflow in runs started in the given time range.
+     *
+     * @param flowName name of the workflow
+     * @param from start of the time range, inclusive
+     * @param to end of the time range, exclusive
+     * @return names of nodes, sorted
+     * @throws IOException if history files cannot be read
+     */
+    public Set<String> getNodeNames(String flowName, Instant from, Instant to) throws IOException {
+        return getNames(flowName, from, to);
+    }
+
+    /**
+     * Get the summaries of the runs of a workflow started in the given time range.
+     *
+     * @param flowName name of the workflow, null for runs of all workflows
+     * @param from start of the time range, inclusive
+     * @param to end of the time range, exclusive
+     * @return summaries of runs, ordered by start time
+     * @throws IOException if history files cannot be read
+     */
+    public List<RunSummary> getRuns(String flowName, Instant from, Instant to) throws IOException {
+        long start = from.toEpochMilli();
+        long end = to.toEpochMilli();
+        List<RunSummary> summaries = new ArrayList<>();
+        List<Path> segmentFiles;
+        List<HistorySegment> bufferedSegments;
+        synchronized (this) {
+            bufferedSegments = bufferedSegments();
+            segmentFiles = segmentFiles(start, end);
+        }
+        for (HistorySegment segment : bufferedSegments) {
+            segment.addRuns(flowName, start, end, summaries);
+        }
+        for (Path runsFile : segmentFiles) {
+            try {
+                HistorySegment.readRuns(runsFile).addRuns(flowName, start, end, summaries);
+            } catch (NoSuchFileException e) {
+                // partition deleted after its retention period
+            }
+        }
+        summaries.sort(Comparator.comparingLong(RunSummary::getStartTime));
+        return summaries;
+    }
+
+    /**
+     * Get the number of runs accepted by the history.
+     *
+     * @return number of recorded runs
+     */
+    public long getRecordedRuns() {
+        return recordedRuns.sum();
+    }
+
+    /**
+     * Get the number of runs dropped because they were older than the retention
+     * period, or recorded after the history was closed.
+     *
+     * @return number of dropped runs
+     */
+    public long getDroppedRuns() {
+        return droppedRuns.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private Set<String> getNames(String flowName, Instant from, Instant to) throws IOException {
+        long start = from.toEpochMilli();
+        long end = to.toEpochMilli();
+        Set<String> names = new TreeSet<>();
+        List<Path> segmentFiles;
+        List<HistorySegment> bufferedSegments;
+        synchronized (this) {
+            bufferedSegments = bufferedSegments();
+            segmentFiles = segmentFiles(start, end);
+        }
+        for (HistorySegment segment : bufferedSegments) {
+            segment.addNames(flowName, start, end, names);
+        }
+        for (Path runsFile : segmentFiles) {
+            HistorySegment segment = readSegment(runsFile, start, end, (flow, node) -> false);
+            if (segment != null) {
+                segment.addNames(flowName, start, end, names);
+            }
+        }
+        return names;
+    }
+
+    /*
+     * Read the rollups of a segment if its runs all fall in [from, to), or its runs if some
+     * of them do. Returns null if none of them does.
+     */
+    private HistorySegment readSegment(Path runsFile, long from, long to, BiPredicate<String, String> loaded) throws IOException {
+        try {
+            HistorySegment segment = HistorySegment.readRollups(rollupFileOf(runsFile), loaded);
+            if (segment.isWithin(from, to)) {
+                return segment;
+            }
+            return segment.overlaps(from, to) ? HistorySegment.readRuns(runsFile) : null;
+        } catch (NoSuchFileException e) {
+            return null; // partition deleted after its retention period
+        }
+    }
+
+    private List<HistorySegment> bufferedSegments() {
+        List<HistorySegment> segments = new ArrayList<>(openSegments.size() + pendingSegments.size());
+        for (HistorySegment segment : openSegments.values()) {
+            segments.add(segment.share());
+        }
+        segments.addAll(pendingSegments.keySet());
+        return segments;
+    }
+
+    /*
+     * Runs files of the written segments of partitions overlapping [from, to).
+     */
+    private List<Path> segmentFiles(long from, long to) throws IOException {
+        List<Path> segmentFiles = new ArrayList<>();
+        for (Map.Entry<Long, Path> partition : partitions().entrySet()) {
+            long partitionStart = partition.getKey();
+            if (partitionStart >= to || partitionStart + partitionMillis <= from) {
+                continue;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(partition.getValue(), "*" + RUNS_SUFFIX)) {
+                files.forEach(segmentFiles::add);
+            } catch (NoSuchFileException e) {
+                // partition deleted after its retention period
+            }
+        }
+        return segmentFiles;
+    }
+
+    private NavigableMap<Long, Path> partitions() throws IOException {
+        NavigableMap<Long, Path> partitions = new TreeMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, PARTITION_PREFIX + "*")) {
+            for (Path path : paths) {
+                try {
+                    partitions.put(Long.parseLong(path.getFileName().toString().substring(PARTITION_PREFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    // not a partition directory
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /*
+     * Name of the node of the given action, stable across runs: the name of decorated
+     * actions delegating to an unnamed one would otherwise change on every call.
+     */
+    private String nodeNameOf(Action action) {
+        return nodeNames.computeIfAbsent(action, key -> NAMED_ACTIONS.get(key.getClass()) ? key.getName() : UNNAMED_NODE);
+    }
+
+    private void handOffOpenSegments() {
+        while (!openSegments.isEmpty()) {
+            handOff(openSegments.firstKey());
+        }
+    }
+
+    private void handOff(long partition) {
+        HistorySegment segment = openSegments.remove(partition);
+        int index = nextSegments.computeIfAbsent(partition, this::firstSegmentIndex);
+        nextSegments.put(partition, index + 1);
+        pendingSegments.put(segment, partition);
+        writer.execute(() -> write(partition, index, segment));
+    }
+
+    private int firstSegmentIndex(long partition) {
+        Path partitionDirectory = partitionDirectory(partition);
+        int index = 0;
+        if (Files.isDirectory(partitionDirectory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(partitionDirectory, "*" + RUNS_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    index = Math.max(index, Integer.parseInt(name.substring(0, name.length() - RUNS_SUFFIX.length())) + 1);
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.warn("Unable to list segments of partition directory {}", partitionDirectory, e);
+            }
+        }
+        return index;
+    }
+
+    private void write(long partition, int index, HistorySegment segment) {
+        Path partitionDirectory = partitionDirectory(partition);
+        Path runsFile = partitionDirectory.resolve(String.format("%06d%s", index, RUNS_SUFFIX));
+        try {
+            Files.createDirectories(partitionDirectory);
+            Path runsTemporaryFile = partitionDirectory.resolve(runsFile.getFileName() + ".tmp");
+            Path rollupTemporaryFile = partitionDirectory.resolve(rollupFileOf(runsFile).getFileName() + ".tmp");
+            segment.write(runsTemporaryFile, rollupTemporaryFile);
+            synchronized (this) {
+                // the rollup file first, so that queries never see a runs file without its rollup
+                Files.move(rollupTemporaryFile, rollupFileOf(runsFile), StandardCopyOption.ATOMIC_MOVE);
+                Files.move(runsTemporaryFile, runsFile, StandardCopyOption.ATOMIC_MOVE);
+                pendingSegments.remove(segment);
+            }
+            deleteExpiredPartitions();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to write history segment {}, {} runs lost", runsFile, segment.size(), e);
+            droppedRuns.add(segment.size());
+            synchronized (this) {
+                pendingSegments.remove(segment);
+            }
+        }
+    }
+
+    private void deleteExpiredPartitions() throws IOException {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Path> partition : partitions().entrySet()) {
+            if (!isExpired(partition.getKey(), now)) {
+                break;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(partition.getValue())) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(partition.getValue());
+        }
+    }
+
+    private boolean isExpired(long partition, long now) {
+        return partition + partitionMillis <= now - retentionMillis;
+    }
+
+    private long partitionOf(long startTime) {
+        return Math.floorDiv(startTime, partitionMillis) * partitionMillis;
+    }
+
+    private Path partitionDirectory(long partition) {
+        return directory.resolve(String.format("%s%020d", PARTITION_PREFIX, partition));
+    }
+
+    private static Path rollupFileOf(Path runsFile) {
+        String name = runsFile.getFileName().toString();
+        return runsFile.resolveSibling(name.substring(0, name.length() - RUNS_SUFFIX.length()) + ROLLUP_SUFFIX);
+    }
+
+    private static class Run {
+
+        private final Action workFlow;
+        private final long startTime = System.currentTimeMillis();
+        private final long start = System.nanoTime();
+        private final Map<String, Long> nodeDurations = new LinkedHashMap<>(); // guarded by this
+
+        private Run(Action workFlow) {
+            this.workFlow = workFlow;
+        }
+
+        private synchronized void addNodeDuration(String name, long durationNanos) {
+            nodeDurations.merge(name, durationNanos, Long::sum);
+        }
+
+        private synchronized Map<String, Long> getNodeDurations() {
+            return new LinkedHashMap<>(nodeDurations);
+        }
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewExecutionHistory
+        }
+
+        public static DirectoryStep aNewExecutionHistory() {
+            return new BuildSteps();
+        }
+
+        public interface DirectoryStep {
+            BuildStep in(Path directory);
+        }
+
+        public interface BuildStep {
+            /**
+             * Set the time span of partitions, one hour by default. Queries on time ranges
+             * aligned on partitions only read rollups.
+             *
+             * @param duration of partitions
+             * @param unit of the duration
+             * @return the builder instance
+             */
+            BuildStep partitionDuration(long duration, TimeUnit unit);
+
+            /**
+             * Set how long partitions are kept, 30 days by default.
+             *
+             * @param duration of the retention period
+             * @param unit of the duration
+             * @return the builder instance
+             */
+            BuildStep retention(long duration, TimeUnit unit);
+
+            /**
+             * Set the maximum number of runs of a partition buffered in memory before
+             * they are written as a segment, 1000000 by default.
+             *
+             * @param runs maximum number of runs of a segment
+             * @return the builder instance
+             */
+            BuildStep segmentRuns(int runs);
+
+            /**
+             * Create the execution history and delete its expired partitions.
+             *
+             * @return a new execution history
+             * @throws IOException if the history directory cannot be created or read
+             */
+            ExecutionHistory build() throws IOException;
+        }
+
+        private static class BuildSteps implements DirectoryStep, BuildStep {
+
+            private Path directory;
+            private long partitionMillis = TimeUnit.HOURS.toMillis(1);
+            private long retentionMillis = TimeUnit.DAYS.toMillis(30);
+            private int segmentRuns = 1_000_000;
+
+            @Override
+            public BuildStep in(Path directory) {
+                this.directory = directory;
+                return this;
+            }
+
+            @Override
+            public BuildStep partitionDuration(long duration, TimeUnit unit) {
+                if (unit.toMillis(duration) < 1) {
+                    throw new IllegalArgumentException("partition duration must be at least 1 millisecond");
+                }
+                this.partitionMillis = unit.toMillis(duration);
+                return this;
+            }
+
+            @Override
+            public BuildStep retention(long duration, TimeUnit unit) {
+                if (unit.toMillis(duration) < 1) {
+                    throw new IllegalArgumentException("retention must be at least 1 millisecond");
+                }
+                this.retentionMillis = unit.toMillis(duration);
+                return this;
+            }
+
+            @Override
+            public BuildStep segmentRuns(int runs) {
+                if (runs < 1) {
+                    throw new IllegalArgumentException("segment runs must be positive");
+                }
+                this.segmentRuns = runs;
+                return this;
+            }
+
+            @Override
+            public ExecutionHistory build() throws IOException {
+                return new ExecutionHistory(directory, partitionMillis, retentionMillis, segmentRuns);
+            }
+        }
+    }
+}
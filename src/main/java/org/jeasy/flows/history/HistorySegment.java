@@ -0,0 +1,411 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.history;
+
+import org.jeasy.flows.action.ActionStatus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * Runs of a partition of the {@link ExecutionHistory}, stored by column, with a rollup
+ * of the latencies of each workflow and each of its nodes.
+ *
+ * A segment is written in two files: the runs file holds the name dictionary followed by
+ * one column per field (start times, durations, workflows, statuses, error types, node
+ * offsets, then nodes and node durations), and the rollup file holds the time range and
+ * size of the segment followed by the latency histograms. Queries covering the whole time
+ * range of a segment only read its rollup file.
+ *
+ * Segments are not thread-safe.
+ */
+final class HistorySegment {
+
+    /**
+     * Node name of the rollups of whole runs.
+     */
+    static final String RUN = "";
+
+    private static final int RUNS_MAGIC = 0x45464852;
+    private static final int ROLLUP_MAGIC = 0x45464855;
+    private static final int VERSION = 1;
+    private static final ActionStatus[] STATUSES = ActionStatus.values();
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    // rollups by flow and node name, histograms not loaded from a rollup file are null
+    private final Map<String, Map<String, LatencyHistogram>> rollups = new LinkedHashMap<>();
+    private int size;
+    private long minStartTime = Long.MAX_VALUE;
+    private long maxStartTime = Long.MIN_VALUE;
+    private long[] startTimes = new long[16];
+    private long[] durations = new long[16];
+    private int[] flows = new int[16];
+    private byte[] statuses = new byte[16];
+    private int[] errors = new int[16];
+    private int[] nodeOffsets = new int[17];
+    private int nodeCount;
+    private int[] nodes = new int[16];
+    private long[] nodeDurations = new long[16];
+    // scanned by a query outside the lock of the history, runs must be added to a copy
+    private boolean shared;
+
+    void add(RunSummary run) {
+        if (size == startTimes.length) {
+            int capacity = size * 2;
+            startTimes = Arrays.copyOf(startTimes, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            flows = Arrays.copyOf(flows, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            errors = Arrays.copyOf(errors, capacity);
+            nodeOffsets = Arrays.copyOf(nodeOffsets, capacity + 1);
+        }
+        if (nodeCount + run.getNodeDurations().size() > nodes.length) {
+            int capacity = Math.max(nodes.length * 2, nodeCount + run.getNodeDurations().size());
+            nodes = Arrays.copyOf(nodes, capacity);
+            nodeDurations = Arrays.copyOf(nodeDurations, capacity);
+        }
+        startTimes[size] = run.getStartTime();
+        durations[size] = run.getDurationNanos();
+        flows[size] = idOf(run.getFlowName());
+        statuses[size] = (byte) run.getStatus().ordinal();
+        errors[size] = run.getErrorType() == null ? -1 : idOf(run.getErrorType());
+        for (Map.Entry<String, Long> node : run.getNodeDurations().entrySet()) {
+            nodes[nodeCount] = idOf(node.getKey());
+            nodeDurations[nodeCount] = node.getValue();
+            nodeCount++;
+            rollup(run.getFlowName(), node.getKey()).record(node.getValue());
+        }
+        rollup(run.getFlowName(), RUN).record(run.getDurationNanos());
+        size++;
+        nodeOffsets[size] = nodeCount;
+        minStartTime = Math.min(minStartTime, run.getStartTime());
+        maxStartTime = Math.max(maxStartTime, run.getStartTime());
+    }
+
+    /*
+     * Mark the segment as scanned by a query, no run may be added to it from now on.
+     */
+    HistorySegment share() {
+        shared = true;
+        return this;
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+
+    /*
+     * Copy of the segment, to which runs may be added.
+     */
+    HistorySegment copy() {
+        HistorySegment copy = new HistorySegment();
+        copy.names.addAll(names);
+        copy.ids.putAll(ids);
+        rollups.forEach((flowName, flowRollups) -> flowRollups.forEach((nodeName, rollup) -> copy.rollup(flowName, nodeName).add(rollup)));
+        copy.size = size;
+        copy.minStartTime = minStartTime;
+        copy.maxStartTime = maxStartTime;
+        copy.startTimes = startTimes.clone();
+        copy.durations = durations.clone();
+        copy.flows = flows.clone();
+        copy.statuses = statuses.clone();
+        copy.errors = errors.clone();
+        copy.nodeOffsets = nodeOffsets.clone();
+        copy.nodeCount = nodeCount;
+        copy.nodes = nodes.clone();
+        copy.nodeDurations = nodeDurations.clone();
+        return copy;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean overlaps(long from, long to) {
+        return size > 0 && minStartTime < to && maxStartTime >= from;
+    }
+
+    boolean isWithin(long from, long to) {
+        return size > 0 && minStartTime >= from && maxStartTime < to;
+    }
+
+    /*
+     * Add the latencies of the given node of the given workflow, in runs started in [from, to).
+     */
+    void addLatencies(String flowName, String nodeName, long from, long to, LatencyHistogram latencies) {
+        if (isWithin(from, to)) {
+            LatencyHistogram rollup = rollups.getOrDefault(flowName, new HashMap<>()).get(nodeName);
+            if (rollup != null) {
+                latencies.add(rollup);
+            }
+            return;
+        }
+        Integer flow = ids.get(flowName);
+        Integer node = RUN.equals(nodeName) ? Integer.valueOf(-1) : ids.get(nodeName);
+        if (flow == null || node == null || !overlaps(from, to)) {
+            return;
+        }
+        for (int run = 0; run < size; run++) {
+            if (flows[run] != flow || startTimes[run] < from || startTimes[run] >= to) {
+                continue;
+            }
+            if (node == -1) {
+                latencies.record(durations[run]);
+                continue;
+            }
+            for (int i = nodeOffsets[run]; i < nodeOffsets[run + 1]; i++) {
+                if (nodes[i] == node) {
+                    latencies.record(nodeDurations[i]);
+                }
+            }
+        }
+    }
+
+    /*
+     * Add the names of workflows, or of the nodes of the given workflow, in runs started in [from, to).
+     */
+    void addNames(String flowName, long from, long to, Set<String> names) {
+        if (isWithin(from, to)) {
+            if (flowName == null) {
+                names.addAll(rollups.keySet());
+            } else {
+                rollups.getOrDefault(flowName, new HashMap<>()).keySet().stream()
+                        .filter(node -> !RUN.equals(node))
+                        .forEach(names::add);
+            }
+            return;
+        }
+        Integer flow = flowName == null ? null : ids.get(flowName);
+        if ((flowName != null && flow == null) || !overlaps(from, to)) {
+            return;
+        }
+        for (int run = 0; run < size; run++) {
+            if (startTimes[run] < from || startTimes[run] >= to) {
+                continue;
+            }
+            if (flow == null) {
+                names.add(this.names.get(flows[run]));
+            } else if (flows[run] == flow) {
+                for (int i = nodeOffsets[run]; i < nodeOffsets[run + 1]; i++) {
+                    names.add(this.names.get(nodes[i]));
+                }
+            }
+        }
+    }
+
+    /*
+     * Add the runs of the given workflow, or of all workflows if null, started in [from, to).
+     */
+    void addRuns(String flowName, long from, long to, List<RunSummary> runs) {
+        Integer flow = flowName == null ? null : ids.get(flowName);
+        if ((flowName != null && flow == null) || !overlaps(from, to)) {
+            return;
+        }
+        for (int run = 0; run < size; run++) {
+            if ((flow != null && flows[run] != flow) || startTimes[run] < from || startTimes[run] >= to) {
+                continue;
+            }
+            runs.add(runAt(run));
+        }
+    }
+
+    void write(Path runsFile, Path rollupFile) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runsFile)))) {
+            output.writeInt(RUNS_MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(names.size());
+            for (String name : names) {
+                output.writeUTF(name);
+            }
+            output.writeInt(size);
+            output.writeInt(nodeCount);
+            for (int run = 0; run < size; run++) {
+                output.writeLong(startTimes[run]);
+            }
+            for (int run = 0; run < size; run++) {
+                output.writeLong(durations[run]);
+            }
+            for (int run = 0; run < size; run++) {
+                output.writeInt(flows[run]);
+            }
+            output.write(statuses, 0, size);
+            for (int run = 0; run < size; run++) {
+                output.writeInt(errors[run]);
+            }
+            for (int run = 0; run <= size; run++) {
+                output.writeInt(nodeOffsets[run]);
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                output.writeInt(nodes[i]);
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                output.writeLong(nodeDurations[i]);
+            }
+        }
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(rollupFile)))) {
+            output.writeInt(ROLLUP_MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(size);
+            output.writeLong(minStartTime);
+            output.writeLong(maxStartTime);
+            int entries = 0;
+            for (Map<String, LatencyHistogram> flowRollups : rollups.values()) {
+                entries += flowRollups.size();
+            }
+            output.writeInt(entries);
+            for (Map.Entry<String, Map<String, LatencyHistogram>> flowRollups : rollups.entrySet()) {
+                for (Map.Entry<String, LatencyHistogram> rollup : flowRollups.getValue().entrySet()) {
+                    output.writeUTF(flowRollups.getKey());
+                    output.writeUTF(rollup.getKey());
+                    rollup.getValue().writeTo(output);
+                }
+            }
+        }
+    }
+
+    /*
+     * Read all runs of a segment, rebuilding its rollups.
+     */
+    static HistorySegment readRuns(Path runsFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(runsFile)))) {
+            checkHeader(input, RUNS_MAGIC, runsFile);
+            String[] dictionary = new String[input.readInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = input.readUTF();
+            }
+            int runs = input.readInt();
+            int nodeCount = input.readInt();
+            long[] startTimes = readLongs(input, runs);
+            long[] durations = readLongs(input, runs);
+            int[] flows = readInts(input, runs);
+            byte[] statuses = new byte[runs];
+            input.readFully(statuses);
+            int[] errors = readInts(input, runs);
+            int[] nodeOffsets = readInts(input, runs + 1);
+            int[] nodes = readInts(input, nodeCount);
+            long[] nodeDurations = readLongs(input, nodeCount);
+            HistorySegment segment = new HistorySegment();
+            for (int run = 0; run < runs; run++) {
+                Map<String, Long> runNodeDurations = new LinkedHashMap<>();
+                for (int i = nodeOffsets[run]; i < nodeOffsets[run + 1]; i++) {
+                    runNodeDurations.put(dictionary[nodes[i]], nodeDurations[i]);
+                }
+                segment.add(new RunSummary(dictionary[flows[run]], startTimes[run], durations[run], STATUSES[statuses[run]],
+                        errors[run] < 0 ? null : dictionary[errors[run]], runNodeDurations));
+            }
+            return segment;
+        }
+    }
+
+    /*
+     * Read the rollups of a segment without its runs, loading only the histograms
+     * of the flow and node names accepted by the given predicate.
+     */
+    static HistorySegment readRollups(Path rollupFile, BiPredicate<String, String> loaded) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(rollupFile)))) {
+            checkHeader(input, ROLLUP_MAGIC, rollupFile);
+            HistorySegment segment = new HistorySegment();
+            segment.size = input.readInt();
+            segment.minStartTime = input.readLong();
+            segment.maxStartTime = input.readLong();
+            int entries = input.readInt();
+            for (int i = 0; i < entries; i++) {
+                String flowName = input.readUTF();
+                String nodeName = input.readUTF();
+                LatencyHistogram histogram = null;
+                if (loaded.test(flowName, nodeName)) {
+                    histogram = LatencyHistogram.readFrom(input);
+                } else {
+                    LatencyHistogram.skip(input);
+                }
+                segment.rollups.computeIfAbsent(flowName, name -> new LinkedHashMap<>()).put(nodeName, histogram);
+            }
+            return segment;
+        }
+    }
+
+    private RunSummary runAt(int run) {
+        Map<String, Long> runNodeDurations = new LinkedHashMap<>();
+        for (int i = nodeOffsets[run]; i < nodeOffsets[run + 1]; i++) {
+            runNodeDurations.put(names.get(nodes[i]), nodeDurations[i]);
+        }
+        return new RunSummary(names.get(flows[run]), startTimes[run], durations[run], STATUSES[statuses[run]],
+                errors[run] < 0 ? null : names.get(errors[run]), runNodeDurations);
+    }
+
+    private LatencyHistogram rollup(String flowName, String nodeName) {
+        return rollups.computeIfAbsent(flowName, name -> new LinkedHashMap<>())
+                .computeIfAbsent(nodeName, name -> new LatencyHistogram());
+    }
+
+    private int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    private static void checkHeader(DataInputStream input, int magic, Path file) throws IOException {
+        if (input.readInt() != magic) {
+            throw new IOException("not a history segment file: " + file);
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported version " + version + " of history segment file: " + file);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream input, int length) throws IOException {
+        long[] values = new long[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = input.readLong();
+        }
+        return values;
+    }
+
+    private static int[] readInts(DataInputStream input, int length) throws IOException {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = input.readInt();
+        }
+        return values;
+    }
+}
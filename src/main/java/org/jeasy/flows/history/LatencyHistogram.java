@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.history;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogram of latencies with log-linear buckets: values are exact below 32ns, and
+ * otherwise rounded to one of 32 buckets per power of two, for a relative error
+ * below 3%. Histograms have a fixed size whatever the number of recorded values,
+ * and are merged by adding their buckets.
+ *
+ * <strong>Latency histograms are not thread-safe.</strong>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add the values recorded by another histogram to this one.
+     *
+     * @param histogram to add
+     */
+    public void add(LatencyHistogram histogram) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] += histogram.counts[bucket];
+        }
+        count += histogram.count;
+        sum += histogram.sum;
+        max = Math.max(max, histogram.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the latency below which the given percentage of recorded latencies fall.
+     *
+     * @param percentile between 0 and 100
+     * @param unit of the returned latency
+     * @return latency at the given percentile, 0 if no latency was recorded
+     */
+    public long getValueAtPercentile(double percentile, TimeUnit unit) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return unit.convert(Math.min(valueOf(bucket), max), TimeUnit.NANOSECONDS);
+            }
+        }
+        return unit.convert(max, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the average of recorded latencies.
+     *
+     * @param unit of the returned latency
+     * @return average latency, 0 if no latency was recorded
+     */
+    public long getMean(TimeUnit unit) {
+        return count == 0 ? 0 : unit.convert(sum / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the highest recorded latency.
+     *
+     * @param unit of the returned latency
+     * @return highest latency, 0 if no latency was recorded
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max, TimeUnit.NANOSECONDS);
+    }
+
+    void writeTo(DataOutput output) throws IOException {
+        int buckets = 0;
+        for (long bucketCount : counts) {
+            if (bucketCount != 0) {
+                buckets++;
+            }
+        }
+        output.writeLong(sum);
+        output.writeLong(max);
+        output.writeInt(buckets);
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (counts[bucket] != 0) {
+                output.writeShort(bucket);
+                output.writeLong(counts[bucket]);
+            }
+        }
+    }
+
+    static LatencyHistogram readFrom(DataInput input) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.sum = input.readLong();
+        histogram.max = input.readLong();
+        int buckets = input.readInt();
+        for (int i = 0; i < buckets; i++) {
+            int bucket = input.readShort();
+            long bucketCount = input.readLong();
+            histogram.counts[bucket] = bucketCount;
+            histogram.count += bucketCount;
+        }
+        return histogram;
+    }
+
+    static void skip(DataInput input) throws IOException {
+        input.readLong();
+        input.readLong();
+        int bytes = input.readInt() * (Short.BYTES + Long.BYTES);
+        while (bytes > 0) {
+            int skipped = input.skipBytes(bytes);
+            if (skipped <= 0) {
+                input.readByte(); // throws EOFException at the end of the input
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /*
+     * Middle of the range of values of a bucket.
+     */
+    private static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >>> 1);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram {" +
+                "count=" + count +
+                ", p50=" + getValueAtPercentile(50, TimeUnit.MICROSECONDS) + "us" +
+                ", p99=" + getValueAtPercentile(99, TimeUnit.MICROSECONDS) + "us" +
+                ", max=" + getMax(TimeUnit.MICROSECONDS) + "us" +
+                '}';
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.history;
+
+import org.jeasy.flows.action.ActionStatus;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Summary of a workflow run kept by the {@link ExecutionHistory}: name of the workflow,
+ * start time, duration, status, type of error if any, and the time spent in each action
+ * (node) of the workflow, in the order actions were first executed. When an action is
+ * executed several times in a run, its durations are added.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class RunSummary {
+
+    private final String flowName;
+    private final long startTime;
+    private final long durationNanos;
+    private final ActionStatus status;
+    private final String errorType;
+    private final Map<String, Long> nodeDurations;
+
+    /**
+     * Create a new run summary.
+     *
+     * @param flowName name of the workflow
+     * @param startTime start time of the run in milliseconds since the epoch
+     * @param durationNanos duration of the run in nanoseconds
+     * @param status of the run
+     * @param errorType class name of the error of the run, null if the run did not fail with an error
+     * @param nodeDurations durations in nanoseconds of the actions of the run, by action name
+     */
+    public RunSummary(String flowName, long startTime, long durationNanos, ActionStatus status,
+                      String errorType, Map<String, Long> nodeDurations) {
+        this.flowName = Objects.requireNonNull(flowName, "flow name must not be null");
+        this.startTime = startTime;
+        this.durationNanos = durationNanos;
+        this.status = Objects.requireNonNull(status, "status must not be null");
+        this.errorType = errorType;
+        this.nodeDurations = Collections.unmodifiableMap(new LinkedHashMap<>(nodeDurations));
+    }
+
+    public String getFlowName() {
+        return flowName;
+    }
+
+    /**
+     * Get the start time of the run.
+     *
+     * @return start time in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public ActionStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the class name of the error of the run.
+     *
+     * @return error type, null if the run did not fail with an error
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+
+    /**
+     * Get the time spent in each action of the run.
+     *
+     * @return durations in nanoseconds by action name, in execution order
+     */
+    public Map<String, Long> getNodeDurations() {
+        return nodeDurations;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(Instant.ofEpochMilli(startTime)).append(" '").append(flowName)
+                .append("' status=").append(status).append(" duration=").append(durationNanos / 1000).append("us");
+        if (errorType != null) {
+            builder.append(" error=").append(errorType);
+        }
+        if (!nodeDurations.isEmpty()) {
+            builder.append(" nodes={");
+            String separator = "";
+            for (Map.Entry<String, Long> node : nodeDurations.entrySet()) {
+                builder.append(separator).append(node.getKey()).append('=').append(node.getValue() / 1000).append("us");
+                separator = ", ";
+            }
+            builder.append('}');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.jfr;
+
+import org.jeasy.flows.executor.ExecutionListener;
+
+/**
+ * Entry point to the Java Flight Recorder events of workflow engines, registered with
+ * {@link org.jeasy.flows.engine.WorkFlowEngineBuilder#withFlightRecorderEvents()}:
+ * <ul>
+ *     <li>{@code org.jeasy.flows.WorkFlow}: workflow run, with its name, status and error type</li>
+ *     <li>{@code org.jeasy.flows.Action}: action executed by a flow, with the name of the workflow,
+ *     the name of the action (node), its status and error type</li>
+ *     <li>{@code org.jeasy.flows.ParallelFlow}: action units of a parallel flow, with the time spent
+ *     handing them off (submit), running and waiting for them (wait), and gathering their reports (join)</li>
+ * </ul>
+ * Events are enabled, and given thresholds, in the settings of recordings like other JFR events.
+ *
+ * This class does not depend on the {@code jdk.jfr} module. Events and their listener are
+ * compiled separately, from {@code src/main/jfr}, and only loaded when the listener is
+ * created: this class can be used on JVMs without flight recorder.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public final class FlightRecorderEvents {
+
+    private static final String LISTENER_CLASS = "org.jeasy.flows.jfr.FlightRecorderListener";
+    private static final boolean AVAILABLE = isFlightRecorderPresent();
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Tell if the JVM provides the flight recorder API.
+     *
+     * @return true if flight recorder events can be committed
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Create an execution listener committing flight recorder events.
+     *
+     * @return a new execution listener, ignoring notifications if the flight recorder is not available
+     */
+    public static ExecutionListener newExecutionListener() {
+        if (AVAILABLE) {
+            try {
+                return (ExecutionListener) Class.forName(LISTENER_CLASS).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // flight recorder not usable, notifications are ignored
+            }
+        }
+        return new ExecutionListener() {
+        };
+    }
+
+    private static boolean isFlightRecorderPresent() {
+        try {
+            ClassLoader classLoader = FlightRecorderEvents.class.getClassLoader();
+            Class.forName("jdk.jfr.Event", false, classLoader);
+            Class.forName(LISTENER_CLASS, false, classLoader);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.load;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of the time spent by a {@link SyntheticAction}.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+@FunctionalInterface
+public interface Distribution {
+
+    /**
+     * Draw a duration from the distribution.
+     *
+     * @param random source of randomness
+     * @return duration in nanoseconds
+     */
+    long nextNanos(Random random);
+
+    /**
+     * Always the same duration.
+     *
+     * @param duration to return
+     * @param unit of the duration
+     * @return a constant distribution
+     */
+    static Distribution constant(long duration, TimeUnit unit) {
+        long nanos = unit.toNanos(duration);
+        return random -> nanos;
+    }
+
+    /**
+     * Durations uniformly distributed between a minimum and a maximum.
+     *
+     * @param min duration, inclusive
+     * @param max duration, exclusive
+     * @param unit of durations
+     * @return a uniform distribution
+     */
+    static Distribution uniform(long min, long max, TimeUnit unit) {
+        if (max <= min) {
+            throw new IllegalArgumentException("max must be greater than min");
+        }
+        long minNanos = unit.toNanos(min);
+        long rangeNanos = unit.toNanos(max) - minNanos;
+        return random -> minNanos + (long) (random.nextDouble() * rangeNanos);
+    }
+
+    /**
+     * Exponentially distributed durations, typical of the time between independent events.
+     *
+     * @param mean duration
+     * @param unit of the duration
+     * @return an exponential distribution
+     */
+    static Distribution exponential(long mean, TimeUnit unit) {
+        long meanNanos = unit.toNanos(mean);
+        return random -> (long) (-meanNanos * Math.log(1 - random.nextDouble()));
+    }
+
+    /**
+     * Log-normally distributed durations, typical of the latencies of remote services:
+     * most durations are close to the median, with a long tail whose length grows with
+     * the given shape (0.5 gives a 99th percentile about 3 times the median, 1 about 10 times).
+     *
+     * @param median duration
+     * @param shape standard deviation of the logarithm of durations
+     * @param unit of the duration
+     * @return a log-normal distribution
+     */
+    static Distribution logNormal(long median, double shape, TimeUnit unit) {
+        if (shape < 0) {
+            throw new IllegalArgumentException("shape must not be negative");
+        }
+        long medianNanos = unit.toNanos(median);
+        return random -> (long) (medianNanos * Math.exp(shape * random.nextGaussian()));
+    }
+}
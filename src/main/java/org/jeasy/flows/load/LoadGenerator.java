@@ -0,0 +1,367 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.load;
+
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.engine.WorkFlowEngine;
+import org.jeasy.flows.history.LatencyHistogram;
+import org.jeasy.flows.workflow.WorkFlow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Load test harness running a workflow with an engine at a fixed arrival rate.
+ *
+ * <p>Load is open-loop: runs are scheduled at regular intervals whatever the time previous
+ * runs take, and handed off to client threads calling {@link WorkFlowEngine#run(WorkFlow, ActionContext)}.
+ * Latencies are measured from the time each run was scheduled to start rather than from the
+ * time it actually started, so that a slow engine delaying runs is not hidden by fewer runs
+ * being measured (coordinated omission).</p>
+ *
+ * <p>Each load step runs for a fixed duration, then waits as long again for runs to complete.
+ * {@link #rampUp(double, double, double)} increases the rate step by step until the engine is
+ * saturated, to find the highest rate the workflow sustains. Workflows can be built with any
+ * of the flow builders, using {@link SyntheticAction}s to simulate work.</p>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class LoadGenerator {
+
+    private final WorkFlowEngine workFlowEngine;
+    private final WorkFlow workFlow;
+    private final Supplier<ActionContext> actionContexts;
+    private final long stepNanos;
+    private final long warmUpNanos;
+    private final int clients;
+    private final long latencyObjectiveNanos;
+
+    LoadGenerator(WorkFlowEngine workFlowEngine, WorkFlow workFlow, Supplier<ActionContext> actionContexts,
+                  long stepNanos, long warmUpNanos, int clients, long latencyObjectiveNanos) {
+        this.workFlowEngine = workFlowEngine;
+        this.workFlow = workFlow;
+        this.actionContexts = actionContexts;
+        this.stepNanos = stepNanos;
+        this.warmUpNanos = warmUpNanos;
+        this.clients = clients;
+        this.latencyObjectiveNanos = latencyObjectiveNanos;
+    }
+
+    /**
+     * Run the workflow at the given rate for the duration of a step, after the warm-up if any.
+     *
+     * @param rate runs per second
+     * @return report of the load step
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public LoadReport run(double rate) throws InterruptedException {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        if (warmUpNanos > 0) {
+            step(rate, warmUpNanos);
+        }
+        return step(rate, stepNanos);
+    }
+
+    /**
+     * Run load steps at increasing rates, until the engine is saturated or the maximum rate is reached.
+     *
+     * @param initialRate rate of the first step, in runs per second
+     * @param increment of the rate between steps, in runs per second
+     * @param maxRate rate of the last step, in runs per second
+     * @return reports of load steps, the last one being saturated if the engine was saturated
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public List<LoadReport> rampUp(double initialRate, double increment, double maxRate) throws InterruptedException {
+        if (initialRate <= 0 || increment <= 0) {
+            throw new IllegalArgumentException("initial rate and increment must be positive");
+        }
+        List<LoadReport> loadReports = new ArrayList<>();
+        if (warmUpNanos > 0) {
+            step(initialRate, warmUpNanos);
+        }
+        for (double rate = initialRate; rate <= maxRate; rate += increment) {
+            LoadReport loadReport = step(rate, stepNanos);
+            loadReports.add(loadReport);
+            if (loadReport.isSaturated()) {
+                break;
+            }
+        }
+        return loadReports;
+    }
+
+    private LoadReport step(double rate, long durationNanos) throws InterruptedException {
+        int runs = (int) Math.max(1, Math.min(Integer.MAX_VALUE, rate * durationNanos / 1e9));
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor clientPool = new ThreadPoolExecutor(clients, clients, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "load-generator-client-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int maxBacklog = 0;
+        long start = System.nanoTime();
+        Step step = new Step(runs, start, rate);
+        try {
+            for (int run = 0; run < runs; run++) {
+                int index = run;
+                long scheduledStart = step.scheduledStart(run);
+                long delay;
+                while ((delay = scheduledStart - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, delay);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                clientPool.execute(() -> step.run(index));
+                maxBacklog = Math.max(maxBacklog, clientPool.getQueue().size());
+            }
+            step.await(start + durationNanos * 2 - System.nanoTime());
+        } finally {
+            clientPool.shutdownNow();
+        }
+        return step.report(rate, maxBacklog);
+    }
+
+    /*
+     * Outcomes of the runs of a load step. Runs not completed at the end of the step are
+     * recorded with the time elapsed since they were scheduled, runs completing later are ignored.
+     */
+    private class Step {
+
+        private final int runs;
+        private final long start;
+        private final double rate;
+        private final CountDownLatch completion;
+        private final LatencyHistogram latencies = new LatencyHistogram(); // guarded by this
+        private final LongAdder failedRuns = new LongAdder();
+        private final LongAccumulator firstCompletion = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator lastCompletion = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        private final boolean[] completed; // guarded by this
+        private boolean over; // guarded by this
+
+        private Step(int runs, long start, double rate) {
+            this.runs = runs;
+            this.start = start;
+            this.rate = rate;
+            this.completion = new CountDownLatch(runs);
+            this.completed = new boolean[runs];
+        }
+
+        private long scheduledStart(int run) {
+            return start + (long) (run * 1e9 / rate);
+        }
+
+        private void run(int run) {
+            boolean failed;
+            try {
+                ActionReport actionReport = workFlowEngine.run(workFlow, actionContexts.get());
+                failed = actionReport == null || actionReport.getStatus() == ActionStatus.FAILED;
+            } catch (Throwable e) {
+                failed = true;
+            }
+            long end = System.nanoTime();
+            synchronized (this) {
+                if (over) {
+                    return;
+                }
+                completed[run] = true;
+                latencies.record(end - scheduledStart(run));
+            }
+            if (failed) {
+                failedRuns.increment();
+            }
+            firstCompletion.accumulate(end);
+            lastCompletion.accumulate(end);
+            completion.countDown();
+        }
+
+        private void await(long timeoutNanos) throws InterruptedException {
+            completion.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized LoadReport report(double rate, int maxBacklog) {
+            over = true;
+            long now = System.nanoTime();
+            for (int run = 0; run < runs; run++) {
+                if (!completed[run]) {
+                    latencies.record(now - scheduledStart(run));
+                }
+            }
+            long completedRuns = runs - completion.getCount();
+            long completionSpan = completedRuns < 2 ? 0 : lastCompletion.get() - firstCompletion.get();
+            return new LoadReport(rate, runs, completedRuns, failedRuns.sum(), completionSpan, maxBacklog,
+                    latencies, latencyObjectiveNanos);
+        }
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewLoadGenerator
+        }
+
+        public static EngineStep aNewLoadGenerator() {
+            return new BuildSteps();
+        }
+
+        public interface EngineStep {
+            WorkFlowStep on(WorkFlowEngine workFlowEngine);
+        }
+
+        public interface WorkFlowStep {
+            BuildStep running(WorkFlow workFlow);
+        }
+
+        public interface BuildStep {
+            /**
+             * Set the supplier of the action context of each run, a new empty context by default.
+             *
+             * @param actionContexts supplier of action contexts
+             * @return the builder instance
+             */
+            BuildStep withContext(Supplier<ActionContext> actionContexts);
+
+            /**
+             * Set the duration of load steps, 10 seconds by default.
+             *
+             * @param duration of load steps
+             * @param unit of the duration
+             * @return the builder instance
+             */
+            BuildStep during(long duration, TimeUnit unit);
+
+            /**
+             * Set the duration of a load step run before measuring, none by default.
+             *
+             * @param duration of the warm-up
+             * @param unit of the duration
+             * @return the builder instance
+             */
+            BuildStep warmUp(long duration, TimeUnit unit);
+
+            /**
+             * Set the number of client threads calling the engine, 256 by default.
+             * Runs scheduled while all clients are busy wait for a client.
+             *
+             * @param clients number of client threads
+             * @return the builder instance
+             */
+            BuildStep clients(int clients);
+
+            /**
+             * Consider the engine saturated when the 99th percentile latency of a load
+             * step exceeds the given objective. None by default.
+             *
+             * @param latency objective of the 99th percentile
+             * @param unit of the latency
+             * @return the builder instance
+             */
+            BuildStep latencyObjective(long latency, TimeUnit unit);
+
+            LoadGenerator build();
+        }
+
+        private static class BuildSteps implements EngineStep, WorkFlowStep, BuildStep {
+
+            private WorkFlowEngine workFlowEngine;
+            private WorkFlow workFlow;
+            private Supplier<ActionContext> actionContexts = ActionContext::new;
+            private long stepNanos = TimeUnit.SECONDS.toNanos(10);
+            private long warmUpNanos;
+            private int clients = 256;
+            private long latencyObjectiveNanos = -1;
+
+            @Override
+            public WorkFlowStep on(WorkFlowEngine workFlowEngine) {
+                this.workFlowEngine = workFlowEngine;
+                return this;
+            }
+
+            @Override
+            public BuildStep running(WorkFlow workFlow) {
+                this.workFlow = workFlow;
+                return this;
+            }
+
+            @Override
+            public BuildStep withContext(Supplier<ActionContext> actionContexts) {
+                this.actionContexts = actionContexts;
+                return this;
+            }
+
+            @Override
+            public BuildStep during(long duration, TimeUnit unit) {
+                if (duration <= 0) {
+                    throw new IllegalArgumentException("duration must be positive");
+                }
+                this.stepNanos = unit.toNanos(duration);
+                return this;
+            }
+
+            @Override
+            public BuildStep warmUp(long duration, TimeUnit unit) {
+                if (duration < 0) {
+                    throw new IllegalArgumentException("warm-up duration must not be negative");
+                }
+                this.warmUpNanos = unit.toNanos(duration);
+                return this;
+            }
+
+            @Override
+            public BuildStep clients(int clients) {
+                if (clients < 1) {
+                    throw new IllegalArgumentException("at least one client is required");
+                }
+                this.clients = clients;
+                return this;
+            }
+
+            @Override
+            public BuildStep latencyObjective(long latency, TimeUnit unit) {
+                if (latency < 0) {
+                    throw new IllegalArgumentException("latency objective must not be negative");
+                }
+                this.latencyObjectiveNanos = unit.toNanos(latency);
+                return this;
+            }
+
+            @Override
+            public LoadGenerator build() {
+                return new LoadGenerator(workFlowEngine, workFlow, actionContexts, stepNanos, warmUpNanos, clients, latencyObjectiveNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.load;
+
+import org.jeasy.flows.history.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of a load step of the {@link LoadGenerator}: runs scheduled at the target rate,
+ * runs completed or failed, throughput, and latencies measured from the time each run was
+ * scheduled to start.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class LoadReport {
+
+    private static final double SATURATION_THRESHOLD = 0.95;
+
+    private final double targetRate;
+    private final long scheduledRuns;
+    private final long completedRuns;
+    private final long failedRuns;
+    private final long completionSpanNanos;
+    private final int maxBacklog;
+    private final LatencyHistogram latencies;
+    private final long latencyObjectiveNanos;
+
+    LoadReport(double targetRate, long scheduledRuns, long completedRuns, long failedRuns, long completionSpanNanos,
+               int maxBacklog, LatencyHistogram latencies, long latencyObjectiveNanos) {
+        this.targetRate = targetRate;
+        this.scheduledRuns = scheduledRuns;
+        this.completedRuns = completedRuns;
+        this.failedRuns = failedRuns;
+        this.completionSpanNanos = completionSpanNanos;
+        this.maxBacklog = maxBacklog;
+        this.latencies = latencies;
+        this.latencyObjectiveNanos = latencyObjectiveNanos;
+    }
+
+    /**
+     * Get the rate at which runs were scheduled.
+     *
+     * @return runs per second
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    public long getScheduledRuns() {
+        return scheduledRuns;
+    }
+
+    /**
+     * Get the number of runs that returned a report or threw an exception before the end of the step.
+     *
+     * @return number of completed runs, including failed runs
+     */
+    public long getCompletedRuns() {
+        return completedRuns;
+    }
+
+    /**
+     * Get the number of runs that returned a failed report or threw an exception.
+     *
+     * @return number of failed runs
+     */
+    public long getFailedRuns() {
+        return failedRuns;
+    }
+
+    /**
+     * Get the number of runs that did not complete before the end of the step.
+     *
+     * @return number of incomplete runs
+     */
+    public long getIncompleteRuns() {
+        return scheduledRuns - completedRuns;
+    }
+
+    /**
+     * Get the rate at which runs completed, between the first and the last completion.
+     *
+     * @return runs per second
+     */
+    public double getThroughput() {
+        if (completedRuns < 2 || completionSpanNanos <= 0) {
+            return completedRuns == scheduledRuns ? targetRate : 0;
+        }
+        return (completedRuns - 1) * 1e9 / completionSpanNanos;
+    }
+
+    /**
+     * Get the highest number of runs waiting for a client thread.
+     *
+     * @return maximum backlog
+     */
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    /**
+     * Get the latencies of runs, from the time they were scheduled to start to the time they
+     * completed, or to the end of the step for runs that did not complete. Time spent waiting
+     * for a client thread is included, so that latencies are not underestimated when the engine
+     * falls behind.
+     *
+     * @return histogram of latencies
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Tell if the engine could not sustain the target rate: some runs did not complete
+     * before the end of the step, the throughput was more than 5% below the target rate,
+     * or the 99th percentile latency exceeded the latency objective if any.
+     *
+     * @return true if the engine was saturated
+     */
+    public boolean isSaturated() {
+        return getIncompleteRuns() > 0
+                || getThroughput() < targetRate * SATURATION_THRESHOLD
+                || (latencyObjectiveNanos >= 0 && latencies.getValueAtPercentile(99, TimeUnit.NANOSECONDS) > latencyObjectiveNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LoadReport {rate=%.1f/s, throughput=%.1f/s, runs=%d, failed=%d, incomplete=%d, " +
+                        "p50=%dus, p90=%dus, p99=%dus, p99.9=%dus, max=%dus, maxBacklog=%d, saturated=%s}",
+                targetRate, getThroughput(), scheduledRuns, failedRuns, getIncompleteRuns(),
+                latencies.getValueAtPercentile(50, TimeUnit.MICROSECONDS),
+                latencies.getValueAtPercentile(90, TimeUnit.MICROSECONDS),
+                latencies.getValueAtPercentile(99, TimeUnit.MICROSECONDS),
+                latencies.getValueAtPercentile(99.9, TimeUnit.MICROSECONDS),
+                latencies.getMax(TimeUnit.MICROSECONDS), maxBacklog, isSaturated());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.load;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Action simulating work for load tests: it waits (as for I/O), then burns CPU, for
+ * durations drawn from the given distributions, and fails with the given probability.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see LoadGenerator
+ */
+public class SyntheticAction implements Action {
+
+    private static final Distribution NONE = Distribution.constant(0, TimeUnit.NANOSECONDS);
+
+    private final String name;
+    private final Distribution waitTime;
+    private final Distribution cpuTime;
+    private final double failureRate;
+    private volatile long sink; // keeps the JIT from removing CPU work
+
+    SyntheticAction(String name, Distribution waitTime, Distribution cpuTime, double failureRate) {
+        this.name = name;
+        this.waitTime = waitTime;
+        this.cpuTime = cpuTime;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public ActionReport execute(ActionContext actionContext) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long waitNanos = waitTime.nextNanos(random);
+        long deadline = System.nanoTime() + waitNanos;
+        while (waitNanos > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(this, waitNanos);
+            waitNanos = deadline - System.nanoTime();
+        }
+        long cpuNanos = cpuTime.nextNanos(random);
+        if (cpuNanos > 0) {
+            long end = System.nanoTime() + cpuNanos;
+            long value = random.nextLong();
+            while (System.nanoTime() < end) {
+                for (int i = 0; i < 64; i++) {
+                    value ^= value << 13;
+                    value ^= value >>> 7;
+                    value ^= value << 17;
+                }
+            }
+            sink = value;
+        }
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext,
+                    new IllegalStateException(String.format("Synthetic failure of action '%s'", name)));
+        }
+        return DefaultActionReport.completed(actionContext);
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewSyntheticAction
+        }
+
+        public static BuildStep aNewSyntheticAction() {
+            return new BuildSteps();
+        }
+
+        public interface BuildStep {
+            BuildStep named(String name);
+
+            /**
+             * Set the distribution of the time the action waits without using CPU, none by default.
+             *
+             * @param distribution of wait times
+             * @return the builder instance
+             */
+            BuildStep waiting(Distribution distribution);
+
+            /**
+             * Set the distribution of the CPU time used by the action, none by default.
+             *
+             * @param distribution of CPU times
+             * @return the builder instance
+             */
+            BuildStep computing(Distribution distribution);
+
+            /**
+             * Set the probability that the action fails, 0 by default.
+             *
+             * @param failureRate between 0 and 1
+             * @return the builder instance
+             */
+            BuildStep failing(double failureRate);
+
+            SyntheticAction build();
+        }
+
+        private static class BuildSteps implements BuildStep {
+
+            private String name = "synthetic-action-" + UUID.randomUUID();
+            private Distribution waitTime = NONE;
+            private Distribution cpuTime = NONE;
+            private double failureRate;
+
+            @Override
+            public BuildStep named(String name) {
+                this.name = name;
+                return this;
+            }
+
+            @Override
+            public BuildStep waiting(Distribution distribution) {
+                this.waitTime = distribution;
+                return this;
+            }
+
+            @Override
+            public BuildStep computing(Distribution distribution) {
+                this.cpuTime = distribution;
+                return this;
+            }
+
+            @Override
+            public BuildStep failing(double failureRate) {
+                if (failureRate < 0 || failureRate > 1) {
+                    throw new IllegalArgumentException("failure rate must be between 0 and 1");
+                }
+                this.failureRate = failureRate;
+                return this;
+            }
+
+            @Override
+            public SyntheticAction build() {
+                return new SyntheticAction(name, waitTime, cpuTime, failureRate);
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.registry;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionReportPredicate;
+import org.jeasy.flows.workflow.ConditionalFlow;
+import org.jeasy.flows.workflow.SwitchFlow;
+import org.jeasy.flows.workflow.WorkFlow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.jeasy.flows.workflow.ConditionalFlow.Builder.aNewConditionalFlow;
+import static org.jeasy.flows.workflow.ParallelFlow.Builder.aNewParallelFlow;
+import static org.jeasy.flows.workflow.RepeatFlow.Builder.aNewRepeatFlow;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+import static org.jeasy.flows.workflow.SwitchFlow.Builder.aNewSwitchFlow;
+
+/**
+ * Validates, optimizes and compiles flow definitions into workflows built with
+ * the fluent builders.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+class FlowCompiler {
+
+    private static final Map<String, ActionReportPredicate> PREDICATES = new HashMap<>();
+
+    static {
+        PREDICATES.put("COMPLETED", ActionReportPredicate.COMPLETED);
+        PREDICATES.put("FAILED", ActionReportPredicate.FAILED);
+        PREDICATES.put("ALWAYS_TRUE", ActionReportPredicate.ALWAYS_TRUE);
+        PREDICATES.put("ALWAYS_FALSE", ActionReportPredicate.ALWAYS_FALSE);
+    }
+
+    private final Map<String, Action> actions;
+
+    FlowCompiler(Map<String, Action> actions) {
+        this.actions = actions;
+    }
+
+    /**
+     * Check that definitions are well-formed, that references resolve to an action
+     * or another definition and that definitions do not reference each other in a cycle.
+     */
+    void validate(Map<String, FlowNode> definitions) {
+        for (Map.Entry<String, FlowNode> definition : definitions.entrySet()) {
+            if (actions.containsKey(definition.getKey())) {
+                throw new FlowDefinitionException(String.format("Flow definition '%s' has the same name as an action", definition.getKey()));
+            }
+            validate(definition.getKey(), definition.getValue(), definitions);
+        }
+        Map<String, Boolean> visited = new HashMap<>(); // false while visiting, true once visited
+        for (String name : definitions.keySet()) {
+            checkCycles(name, definitions, visited, new ArrayList<>());
+        }
+    }
+
+    private void validate(String flow, FlowNode node, Map<String, FlowNode> definitions) {
+        switch (node.kind) {
+            case REFERENCE:
+                if (!actions.containsKey(node.value) && !definitions.containsKey(node.value)) {
+                    throw new FlowDefinitionException(String.format("Unknown action or flow '%s' in flow definition '%s'", node.value, flow));
+                }
+                break;
+            case SEQUENTIAL:
+            case PARALLEL:
+                check(!node.children.isEmpty(), flow, "a " + node.kind.name().toLowerCase() + " flow requires at least one action");
+                break;
+            case REPEAT:
+                check(node.children.size() == 1, flow, "a repeat flow requires one action");
+                check(node.value == null ? node.times > 0 : PREDICATES.containsKey(node.value), flow,
+                        "a repeat flow requires a positive number of times or a known predicate");
+                break;
+            case CONDITIONAL:
+                check(node.children.size() == 2 || node.children.size() == 3, flow, "a conditional flow requires an action, a then branch and an optional otherwise branch");
+                check(PREDICATES.containsKey(node.value), flow, "unknown predicate '" + node.value + "', expected one of " + PREDICATES.keySet());
+                break;
+            case SWITCH:
+                check(!node.keys.isEmpty(), flow, "a switch flow requires at least one case");
+                check(node.children.size() == node.keys.size() || node.children.size() == node.keys.size() + 1, flow, "malformed switch cases");
+                break;
+            default:
+                throw new FlowDefinitionException(String.format("Unknown node kind %s in flow definition '%s'", node.kind, flow));
+        }
+        for (FlowNode child : node.children) {
+            validate(flow, child, definitions);
+        }
+    }
+
+    private void check(boolean condition, String flow, String message) {
+        if (!condition) {
+            throw new FlowDefinitionException(String.format("Invalid flow definition '%s': %s", flow, message));
+        }
+    }
+
+    private void checkCycles(String name, Map<String, FlowNode> definitions, Map<String, Boolean> visited, List<String> path) {
+        Boolean state = visited.get(name);
+        if (Boolean.TRUE.equals(state)) {
+            return;
+        }
+        path.add(name);
+        if (Boolean.FALSE.equals(state)) {
+            throw new FlowDefinitionException("Cyclic flow definitions: " + String.join(" -> ", path));
+        }
+        visited.put(name, false);
+        List<String> references = new ArrayList<>();
+        collectFlowReferences(definitions.get(name), definitions, references);
+        for (String reference : references) {
+            checkCycles(reference, definitions, visited, path);
+        }
+        visited.put(name, true);
+        path.remove(path.size() - 1);
+    }
+
+    private void collectFlowReferences(FlowNode node, Map<String, FlowNode> definitions, List<String> references) {
+        if (node.kind == FlowNode.Kind.REFERENCE && definitions.containsKey(node.value)) {
+            references.add(node.value);
+        }
+        node.children.forEach(child -> collectFlowReferences(child, definitions, references));
+    }
+
+    /**
+     * Simplify a definition without changing its behaviour: nested sequential (and
+     * parallel) flows are flattened into their parent, and nested single-action
+     * sequential or parallel flows, as well as nested flows repeated once, are
+     * replaced by their action.
+     */
+    FlowNode optimize(FlowNode node) {
+        return optimize(node, true);
+    }
+
+    private FlowNode optimize(FlowNode node, boolean root) {
+        List<FlowNode> children = new ArrayList<>(node.children.size());
+        for (FlowNode child : node.children) {
+            FlowNode optimized = optimize(child, false);
+            if ((node.kind == FlowNode.Kind.SEQUENTIAL || node.kind == FlowNode.Kind.PARALLEL) && optimized.kind == node.kind) {
+                children.addAll(optimized.children);
+            } else {
+                children.add(optimized);
+            }
+        }
+        if (!root) {
+            boolean singleChild = (node.kind == FlowNode.Kind.SEQUENTIAL || node.kind == FlowNode.Kind.PARALLEL) && children.size() == 1;
+            boolean repeatedOnce = node.kind == FlowNode.Kind.REPEAT && node.value == null && node.times == 1;
+            if (singleChild || repeatedOnce) {
+                return children.get(0);
+            }
+        }
+        return FlowNode.of(node.kind, node.value, node.times, node.keys, children);
+    }
+
+    /**
+     * Compile validated definitions into workflows. References to other definitions
+     * are resolved to the same workflow instance.
+     */
+    Map<String, WorkFlow> compile(Map<String, FlowNode> definitions) {
+        Map<String, WorkFlow> flows = new HashMap<>((int) (definitions.size() / 0.75f) + 1);
+        for (String name : definitions.keySet()) {
+            compileDefinition(name, definitions, flows);
+        }
+        return flows;
+    }
+
+    private WorkFlow compileDefinition(String name, Map<String, FlowNode> definitions, Map<String, WorkFlow> flows) {
+        WorkFlow flow = flows.get(name);
+        if (flow == null) {
+            FlowNode node = definitions.get(name);
+            Action action = compile(node, name, definitions, flows);
+            flow = action instanceof WorkFlow && node.kind != FlowNode.Kind.REFERENCE
+                    ? (WorkFlow) action
+                    : aNewSequentialFlow().named(name).execute(action).build();
+            flows.put(name, flow);
+        }
+        return flow;
+    }
+
+    private Action compile(FlowNode node, String name, Map<String, FlowNode> definitions, Map<String, WorkFlow> flows) {
+        List<Action> children = new ArrayList<>(node.children.size());
+        for (int i = 0; i < node.children.size(); i++) {
+            children.add(compile(node.children.get(i), name + "/" + i, definitions, flows));
+        }
+        switch (node.kind) {
+            case REFERENCE:
+                return definitions.containsKey(node.value) ? compileDefinition(node.value, definitions, flows) : actions.get(node.value);
+            case SEQUENTIAL:
+                return aNewSequentialFlow().named(name).execute(children).build();
+            case PARALLEL:
+                return aNewParallelFlow().named(name).execute(children.toArray(new Action[0])).build();
+            case REPEAT:
+                return node.value == null
+                        ? aNewRepeatFlow().named(name).repeat(children.get(0)).times(node.times).build()
+                        : aNewRepeatFlow().named(name).repeat(children.get(0)).until(PREDICATES.get(node.value)).build();
+            case CONDITIONAL:
+                ConditionalFlow.Builder.OtherwiseStep conditional = aNewConditionalFlow().named(name)
+                        .execute(children.get(0))
+                        .when(PREDICATES.get(node.value))
+                        .then(children.get(1));
+                return children.size() > 2 ? conditional.otherwise(children.get(2)).build() : conditional.build();
+            case SWITCH:
+                SwitchFlow.Builder.CaseStep cases = aNewSwitchFlow().named(name).on(node.value);
+                SwitchFlow.Builder.OtherwiseStep switchFlow = null;
+                for (int i = 0; i < node.keys.size(); i++) {
+                    switchFlow = cases.when(node.keys.get(i), children.get(i));
+                    cases = switchFlow;
+                }
+                return node.hasDefaultCase() ? switchFlow.otherwise(children.get(children.size() - 1)).build() : switchFlow.build();
+            default:
+                throw new FlowDefinitionException(String.format("Unknown node kind %s in flow definition '%s'", node.kind, name));
+        }
+    }
+}
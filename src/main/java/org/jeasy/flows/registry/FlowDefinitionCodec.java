@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot format of validated and optimized flow definitions:
+ *
+ * <pre>
+ * snapshot   := magic:int version:short length:int payload crc32:long
+ * payload    := stringCount:varint string* definitionCount:varint definition*
+ * definition := name:varint node
+ * node       := kind:byte value:varint times:varint keyCount:varint key:varint* childCount:varint node*
+ * </pre>
+ *
+ * Strings (references, predicates, keys and names) are stored once in a string table and
+ * referenced by index (plus one, zero meaning no value).
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+class FlowDefinitionCodec {
+
+    private static final int MAGIC = 0x45464C57; // "EFLW"
+    private static final short VERSION = 1;
+    private static final int MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024;
+
+    private FlowDefinitionCodec() {
+    }
+
+    static void encode(Map<String, FlowNode> definitions, OutputStream outputStream) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (Map.Entry<String, FlowNode> definition : definitions.entrySet()) {
+            intern(definition.getKey(), strings);
+            collectStrings(definition.getValue(), strings);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        writeVarInt(payload, strings.size());
+        for (String string : strings.keySet()) {
+            payload.writeUTF(string);
+        }
+        writeVarInt(payload, definitions.size());
+        for (Map.Entry<String, FlowNode> definition : definitions.entrySet()) {
+            writeVarInt(payload, strings.get(definition.getKey()));
+            writeNode(payload, definition.getValue(), strings);
+        }
+        payload.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeInt(bytes.size());
+        bytes.writeTo(output);
+        output.writeLong(crc.getValue());
+        output.flush();
+    }
+
+    static Map<String, FlowNode> decode(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readInt() != MAGIC) {
+            throw new FlowDefinitionException("Not a flow definition snapshot");
+        }
+        short version = input.readShort();
+        if (version != VERSION) {
+            throw new FlowDefinitionException("Unsupported flow definition snapshot version " + version);
+        }
+        byte[] bytes = readPayload(input, input.readInt());
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (input.readLong() != crc.getValue()) {
+            throw new FlowDefinitionException("Corrupted flow definition snapshot");
+        }
+
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            String[] strings = new String[readCount(payload, bytes.length)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = payload.readUTF();
+            }
+            int count = readCount(payload, bytes.length);
+            Map<String, FlowNode> definitions = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = strings[readVarInt(payload)];
+                definitions.put(name, readNode(payload, strings));
+            }
+            return definitions;
+        } catch (EOFException | ArrayIndexOutOfBoundsException e) {
+            throw new FlowDefinitionException("Malformed flow definition snapshot", e);
+        }
+    }
+
+    private static void collectStrings(FlowNode node, Map<String, Integer> strings) {
+        if (node.value != null) {
+            intern(node.value, strings);
+        }
+        node.keys.forEach(key -> intern(key, strings));
+        node.children.forEach(child -> collectStrings(child, strings));
+    }
+
+    private static void intern(String string, Map<String, Integer> strings) {
+        strings.putIfAbsent(string, strings.size());
+    }
+
+    private static void writeNode(DataOutputStream output, FlowNode node, Map<String, Integer> strings) throws IOException {
+        output.writeByte(node.kind.ordinal());
+        writeVarInt(output, node.value == null ? 0 : strings.get(node.value) + 1);
+        writeVarInt(output, node.times);
+        writeVarInt(output, node.keys.size());
+        for (String key : node.keys) {
+            writeVarInt(output, strings.get(key));
+        }
+        writeVarInt(output, node.children.size());
+        for (FlowNode child : node.children) {
+            writeNode(output, child, strings);
+        }
+    }
+
+    private static FlowNode readNode(DataInputStream input, String[] strings) throws IOException {
+        int kind = input.readUnsignedByte();
+        if (kind >= FlowNode.Kind.values().length) {
+            throw new FlowDefinitionException("Unknown node kind " + kind + " in flow definition snapshot");
+        }
+        int value = readVarInt(input);
+        int times = readVarInt(input);
+        int keyCount = readCount(input, input.available());
+        List<String> keys = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            keys.add(strings[readVarInt(input)]);
+        }
+        int childCount = readCount(input, input.available());
+        List<FlowNode> children = new ArrayList<>(childCount);
+        for (int i = 0; i < childCount; i++) {
+            children.add(readNode(input, strings));
+        }
+        return FlowNode.of(FlowNode.Kind.values()[kind], value == 0 ? null : strings[value - 1], times, keys, children);
+    }
+
+    /*
+     * Read the payload without trusting its length: it is bounded, and the buffer only
+     * grows as bytes are actually read.
+     */
+    private static byte[] readPayload(DataInputStream input, int length) throws IOException {
+        if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+            throw new FlowDefinitionException("Invalid payload length " + length + " in flow definition snapshot");
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(Math.min(length, 8192));
+        byte[] buffer = new byte[8192];
+        int remaining = length;
+        while (remaining > 0) {
+            int read = input.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new FlowDefinitionException("Truncated flow definition snapshot");
+            }
+            payload.write(buffer, 0, read);
+            remaining -= read;
+        }
+        return payload.toByteArray();
+    }
+
+    /*
+     * Read a number of elements, each of which takes at least one of the remaining bytes.
+     */
+    private static int readCount(DataInputStream input, int remainingBytes) throws IOException {
+        int count = readVarInt(input);
+        if (count < 0 || count > remainingBytes) {
+            throw new FlowDefinitionException("Invalid element count " + count + " in flow definition snapshot");
+        }
+        return count;
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new FlowDefinitionException("Malformed variable-length integer in flow definition snapshot");
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.registry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive descent parser of the textual flow definition format described in
+ * {@link WorkFlowRegistry}.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+class FlowDefinitionParser {
+
+    private final String input;
+    private int position, line = 1, column = 1;
+
+    private FlowDefinitionParser(String input) {
+        this.input = input;
+    }
+
+    /**
+     * Parse flow definitions.
+     *
+     * @return definitions by name, in declaration order
+     */
+    static Map<String, FlowNode> parse(String input) {
+        return new FlowDefinitionParser(input).definitions();
+    }
+
+    private Map<String, FlowNode> definitions() {
+        Map<String, FlowNode> definitions = new LinkedHashMap<>();
+        skipWhitespaceAndComments();
+        while (position < input.length()) {
+            int definitionLine = line;
+            expectKeyword("flow");
+            String name = identifier();
+            expect('=');
+            FlowNode node = expression();
+            if (definitions.put(name, node) != null) {
+                throw new FlowDefinitionException(String.format("Duplicate flow definition '%s' at line %d", name, definitionLine));
+            }
+            if (peek() == ';') {
+                expect(';');
+            }
+            skipWhitespaceAndComments();
+        }
+        return definitions;
+    }
+
+    private FlowNode expression() {
+        String identifier = identifier();
+        if (peek() != '(') {
+            return FlowNode.reference(identifier);
+        }
+        expect('(');
+        FlowNode node;
+        switch (identifier) {
+            case "sequential":
+                node = FlowNode.sequential(expressions());
+                break;
+            case "parallel":
+                node = FlowNode.parallel(expressions());
+                break;
+            case "repeat":
+                node = repeat();
+                break;
+            case "conditional":
+                node = conditional();
+                break;
+            case "switch":
+                node = switchOn();
+                break;
+            default:
+                throw error(String.format("Unknown flow type '%s'", identifier));
+        }
+        expect(')');
+        return node;
+    }
+
+    private List<FlowNode> expressions() {
+        List<FlowNode> nodes = new ArrayList<>();
+        nodes.add(expression());
+        while (peek() == ',') {
+            expect(',');
+            nodes.add(expression());
+        }
+        return nodes;
+    }
+
+    private FlowNode repeat() {
+        FlowNode child = expression();
+        expect(',');
+        if (Character.isDigit(peek())) {
+            return FlowNode.repeatTimes(child, integer());
+        }
+        return FlowNode.repeatWhile(child, identifier());
+    }
+
+    private FlowNode conditional() {
+        List<FlowNode> children = new ArrayList<>();
+        children.add(expression());
+        expect(',');
+        String predicate = identifier();
+        expect(',');
+        children.add(expression());
+        if (peek() == ',') {
+            expect(',');
+            children.add(expression());
+        }
+        return FlowNode.conditional(predicate, children);
+    }
+
+    private FlowNode switchOn() {
+        String contextKey = peek() == '"' ? string() : identifier();
+        List<String> keys = new ArrayList<>();
+        List<FlowNode> children = new ArrayList<>();
+        FlowNode defaultCase = null;
+        while (peek() == ',') {
+            expect(',');
+            if (defaultCase != null) {
+                throw error("The 'otherwise' case must be the last case of a switch");
+            }
+            if (peek() == '"') {
+                String key = string();
+                if (keys.contains(key)) {
+                    throw error(String.format("Duplicate case '%s'", key));
+                }
+                expect(':');
+                keys.add(key);
+                children.add(expression());
+            } else {
+                expectKeyword("otherwise");
+                expect(':');
+                defaultCase = expression();
+            }
+        }
+        if (defaultCase != null) {
+            children.add(defaultCase);
+        }
+        return FlowNode.switchOn(contextKey, keys, children);
+    }
+
+    private String identifier() {
+        skipWhitespaceAndComments();
+        int start = position;
+        if (position < input.length() && Character.isJavaIdentifierStart(input.charAt(position))) {
+            while (position < input.length() && isIdentifierPart(input.charAt(position))) {
+                advance();
+            }
+        }
+        if (start == position) {
+            throw error("Expected an identifier but found " + found());
+        }
+        return input.substring(start, position);
+    }
+
+    private int integer() {
+        skipWhitespaceAndComments();
+        int start = position;
+        while (position < input.length() && Character.isDigit(input.charAt(position))) {
+            advance();
+        }
+        try {
+            return Integer.parseInt(input.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("Expected an integer but found " + found());
+        }
+    }
+
+    private String string() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (position < input.length() && input.charAt(position) != '"') {
+            char character = input.charAt(position);
+            if (character == '\\' && position + 1 < input.length()) {
+                advance();
+                character = input.charAt(position);
+            }
+            value.append(character);
+            advance();
+        }
+        if (position >= input.length()) {
+            throw error("Unterminated string");
+        }
+        advance();
+        return value.toString();
+    }
+
+    private void expectKeyword(String keyword) {
+        int keywordLine = line, keywordColumn = column;
+        String identifier = identifier();
+        if (!identifier.equals(keyword)) {
+            throw new FlowDefinitionException(String.format("Expected '%s' but found '%s' at line %d, column %d", keyword, identifier, keywordLine, keywordColumn));
+        }
+    }
+
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw error(String.format("Expected '%s' but found %s", expected, found()));
+        }
+        advance();
+    }
+
+    private char peek() {
+        skipWhitespaceAndComments();
+        return position < input.length() ? input.charAt(position) : '\0';
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (position < input.length()) {
+            char character = input.charAt(position);
+            if (character == '#') {
+                while (position < input.length() && input.charAt(position) != '\n') {
+                    advance();
+                }
+            } else if (Character.isWhitespace(character)) {
+                advance();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void advance() {
+        if (input.charAt(position++) == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+    }
+
+    private static boolean isIdentifierPart(char character) {
+        return Character.isJavaIdentifierPart(character) || character == '.' || character == '-';
+    }
+
+    private String found() {
+        return position < input.length() ? "'" + input.charAt(position) + "'" : "end of input";
+    }
+
+    private FlowDefinitionException error(String message) {
+        return new FlowDefinitionException(String.format("%s at line %d, column %d", message, line, column));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.registry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Node of a flow definition tree, as parsed from the textual format or decoded from
+ * a binary snapshot. Nodes are immutable.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+final class FlowNode {
+
+    enum Kind {
+        /** Reference to an action of the catalog or to another flow definition */
+        REFERENCE,
+        /** Children executed in sequence */
+        SEQUENTIAL,
+        /** Children executed in parallel */
+        PARALLEL,
+        /** Single child repeated a number of times or while a predicate holds */
+        REPEAT,
+        /** Initial child, predicate, child on success and optional child on failure */
+        CONDITIONAL,
+        /** Context key, case keys, one child per case and an optional default child */
+        SWITCH
+    }
+
+    final Kind kind;
+    final String value; // reference name, predicate name or switch context key
+    final int times;
+    final List<String> keys;
+    final List<FlowNode> children;
+
+    private FlowNode(Kind kind, String value, int times, List<String> keys, List<FlowNode> children) {
+        this.kind = kind;
+        this.value = value;
+        this.times = times;
+        this.keys = Collections.unmodifiableList(keys);
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    static FlowNode reference(String name) {
+        return new FlowNode(Kind.REFERENCE, name, 0, Collections.emptyList(), Collections.emptyList());
+    }
+
+    static FlowNode sequential(List<FlowNode> children) {
+        return new FlowNode(Kind.SEQUENTIAL, null, 0, Collections.emptyList(), children);
+    }
+
+    static FlowNode parallel(List<FlowNode> children) {
+        return new FlowNode(Kind.PARALLEL, null, 0, Collections.emptyList(), children);
+    }
+
+    static FlowNode repeatTimes(FlowNode child, int times) {
+        return new FlowNode(Kind.REPEAT, null, times, Collections.emptyList(), Collections.singletonList(child));
+    }
+
+    static FlowNode repeatWhile(FlowNode child, String predicate) {
+        return new FlowNode(Kind.REPEAT, predicate, 0, Collections.emptyList(), Collections.singletonList(child));
+    }
+
+    static FlowNode conditional(String predicate, List<FlowNode> children) {
+        return new FlowNode(Kind.CONDITIONAL, predicate, 0, Collections.emptyList(), children);
+    }
+
+    static FlowNode switchOn(String contextKey, List<String> keys, List<FlowNode> children) {
+        return new FlowNode(Kind.SWITCH, contextKey, 0, keys, children);
+    }
+
+    static FlowNode of(Kind kind, String value, int times, List<String> keys, List<FlowNode> children) {
+        return new FlowNode(kind, value, times, keys, children);
+    }
+
+    boolean hasDefaultCase() {
+        return kind == Kind.SWITCH && children.size() > keys.size();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof FlowNode)) {
+            return false;
+        }
+        FlowNode that = (FlowNode) other;
+        return kind == that.kind && times == that.times && Objects.equals(value, that.value)
+                && keys.equals(that.keys) && children.equals(that.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, value, times, keys, children);
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.REFERENCE ? value : kind.name().toLowerCase() + (value == null ? "" : "[" + value + "]") + children;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.registry;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.workflow.WorkFlow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of workflows declared in a textual format and compiled with the fluent builders.
+ *
+ * <p>Each definition names a flow composed of actions from the catalog given to the registry
+ * and of other flow definitions:</p>
+ *
+ * <pre>
+ * # comments start with a hash
+ * flow onboarding = sequential(createAccount, parallel(sendEmail, sendSms), audit);
+ * flow retry      = repeat(callPartner, FAILED);          # repeat while the predicate holds
+ * flow batch      = repeat(importChunk, 3);               # repeat a fixed number of times
+ * flow payment    = conditional(charge, COMPLETED, ship, refund);
+ * flow routing    = switch(country, "FR": onboarding, "US": payment, otherwise: audit);
+ * </pre>
+ *
+ * <p>Predicates are {@code COMPLETED}, {@code FAILED}, {@code ALWAYS_TRUE} and {@code ALWAYS_FALSE}.
+ * A switch selects its case with the value of the given context key. Parallel flows run
+ * on the default executor pool of the engine.</p>
+ *
+ * <p>Definitions are validated (unknown references, cyclic definitions, malformed flows) and
+ * optimized (nested sequential and parallel flows are flattened) before being compiled.
+ * Loading new definitions replaces the workflows atomically: concurrent lookups see either
+ * all previous workflows or all new ones. Validated definitions can be saved in a compact
+ * binary snapshot which is loaded without parsing them again.</p>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public class WorkFlowRegistry {
+
+    private final FlowCompiler compiler;
+    private volatile State state = new State(Collections.emptyMap(), Collections.emptyMap());
+
+    /**
+     * Create a new {@link WorkFlowRegistry}.
+     *
+     * @param actions catalog of actions that definitions can reference, by name
+     */
+    public WorkFlowRegistry(Map<String, Action> actions) {
+        this.compiler = new FlowCompiler(new HashMap<>(actions));
+    }
+
+    /**
+     * Load flow definitions. Definitions replace previously loaded ones with the same name.
+     *
+     * @param definitions in the textual format
+     * @throws FlowDefinitionException if definitions are invalid, in which case
+     * previously loaded workflows are left unchanged
+     */
+    public void load(String definitions) {
+        Map<String, FlowNode> parsed = FlowDefinitionParser.parse(definitions);
+        Map<String, FlowNode> optimized = new LinkedHashMap<>();
+        parsed.forEach((name, node) -> optimized.put(name, compiler.optimize(node)));
+        install(optimized);
+    }
+
+    /**
+     * Load flow definitions. The reader is not closed.
+     *
+     * @param reader of definitions in the textual format
+     * @throws IOException if definitions cannot be read
+     */
+    public void load(Reader reader) throws IOException {
+        StringBuilder definitions = new StringBuilder();
+        char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            definitions.append(buffer, 0, read);
+        }
+        load(definitions.toString());
+    }
+
+    /**
+     * Load flow definitions from a binary snapshot written by {@link #saveSnapshot(OutputStream)}.
+     * The input stream is not closed.
+     *
+     * @param inputStream of the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public void loadSnapshot(InputStream inputStream) throws IOException {
+        install(FlowDefinitionCodec.decode(inputStream));
+    }
+
+    /**
+     * Save loaded flow definitions in a binary snapshot. The output stream is not closed.
+     *
+     * @param outputStream of the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void saveSnapshot(OutputStream outputStream) throws IOException {
+        FlowDefinitionCodec.encode(state.definitions, outputStream);
+    }
+
+    /**
+     * Get a workflow by name.
+     *
+     * @param name of the workflow
+     * @return the workflow or null if there is no workflow with this name
+     */
+    public WorkFlow get(String name) {
+        return state.flows.get(name);
+    }
+
+    /**
+     * Get names of loaded workflows.
+     *
+     * @return unmodifiable set of names
+     */
+    public Set<String> getNames() {
+        return state.definitions.keySet();
+    }
+
+    private synchronized void install(Map<String, FlowNode> definitions) {
+        Map<String, FlowNode> merged = new LinkedHashMap<>(state.definitions);
+        merged.putAll(definitions);
+        compiler.validate(merged);
+        state = new State(merged, compiler.compile(merged));
+    }
+
+    private static class State {
+
+        private final Map<String, FlowNode> definitions;
+        private final Map<String, WorkFlow> flows;
+
+        private State(Map<String, FlowNode> definitions, Map<String, WorkFlow> flows) {
+            this.definitions = Collections.unmodifiableMap(definitions);
+            this.flows = flows;
+        }
+    }
+}
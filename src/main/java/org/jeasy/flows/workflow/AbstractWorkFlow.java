@@ -23,6 +23,8 @@
  */
 package org.jeasy.flows.workflow;
 
+import org.jeasy.flows.action.ActionContext;
+
 abstract class AbstractWorkFlow implements WorkFlow {
 
     private final String name;
@@ -34,4 +36,14 @@ abstract class AbstractWorkFlow implements WorkFlow {
     public String getName() {
         return name;
     }
+
+    /**
+     * Create the frame used by the {@link FlowInterpreter} to execute this flow
+     * iteratively.
+     *
+     * @return a new frame, or null if this flow is executed as a single action
+     */
+    FlowInterpreter.Frame newFrame(ActionContext actionContext) {
+        return null;
+    }
 }
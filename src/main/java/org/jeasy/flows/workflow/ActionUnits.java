@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.executor.ExecutorPools;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Single entry point used by flows to execute their action units.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+final class ActionUnits {
+
+    private ActionUnits() {
+    }
+
+    /**
+     * Execute an action unit of a flow on the current thread, or on its declared
+     * executor pool if it is a {@link org.jeasy.flows.executor.PooledAction}. Units
+     * are interpreted when the calling thread runs a flow with the {@link FlowInterpreter}.
+     */
+    static ActionReport execute(Action action, ActionContext actionContext) {
+        return FlowInterpreter.isActive() ? FlowInterpreter.execute(action, actionContext) : ExecutorPools.execute(action, actionContext);
+    }
+
+    /**
+     * Execute an action unit, restoring the action context to its state before the
+     * execution if the unit fails or throws an exception.
+     */
+    static ActionReport executeWithRollback(Action action, ActionContext actionContext) {
+        ActionContext.Snapshot snapshot = actionContext.snapshot();
+        ActionReport actionReport;
+        try {
+            actionReport = execute(action, actionContext);
+        } catch (RuntimeException | Error e) {
+            actionContext.restore(snapshot);
+            throw e;
+        }
+        rollbackIfFailed(actionReport, actionContext, snapshot);
+        return actionReport;
+    }
+
+    /**
+     * Restore a snapshot of the action context if the given report is a failure.
+     */
+    static void rollbackIfFailed(ActionReport actionReport, ActionContext actionContext, ActionContext.Snapshot snapshot) {
+        if (snapshot != null && actionReport != null && actionReport.getStatus() == ActionStatus.FAILED) {
+            actionContext.restore(snapshot);
+        }
+    }
+
+    /**
+     * Create a task executing an action unit on another thread. The executor pools
+     * bound to the calling thread, as well as the interpreted execution mode, are
+     * propagated to the thread running the task.
+     */
+    static Callable<ActionReport> task(Action action, ActionContext actionContext) {
+        ExecutorPools executorPools = ExecutorPools.current();
+        boolean interpreted = FlowInterpreter.isActive();
+        return () -> ExecutorPools.within(executorPools, () -> interpreted
+                ? FlowInterpreter.execute(action, actionContext)
+                : ExecutorPools.execute(action, actionContext));
+    }
+
+    /**
+     * Execute an action unit without waiting for it. Asynchronous actions are started on
+     * the calling thread, other units (including flows, whose asynchronous units are then
+     * started by the executor thread) are submitted to the executor.
+     */
+    static CompletableFuture<ActionReport> executeAsync(Action action, ActionContext actionContext, Executor executor) {
+        if (action instanceof AsyncAction) {
+            return ExecutorPools.executeAsync((AsyncAction) action, actionContext).toCompletableFuture();
+        }
+        ExecutorPools executorPools = ExecutorPools.current();
+        return CompletableFuture.supplyAsync(() -> ExecutorPools.within(executorPools,
+                () -> FlowInterpreter.executeAsync(action, actionContext)), executor)
+                .thenCompose(stage -> stage);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+/**
+ * Condition on which a {@link ParallelFlow} completes. By default, a parallel flow
+ * waits for all its action units. Other policies complete the flow as soon as enough
+ * units have successfully completed, or as soon as this can no longer happen, and
+ * cancel the remaining units.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see ParallelFlowReport#getUnits(ParallelFlowReport.UnitState)
+ */
+public final class CompletionPolicy {
+
+    private static final int ALL = -1;
+    private static final int QUORUM = 0;
+
+    private static final CompletionPolicy ALL_UNITS = new CompletionPolicy("all", ALL);
+    private static final CompletionPolicy MAJORITY = new CompletionPolicy("quorum", QUORUM);
+    private static final CompletionPolicy ANY = new CompletionPolicy("any", 1);
+
+    private final String name;
+    private final int successes;
+
+    private CompletionPolicy(String name, int successes) {
+        this.name = name;
+        this.successes = successes;
+    }
+
+    /**
+     * Wait for all action units. The flow fails if one of the units fails.
+     *
+     * @return a policy waiting for all units
+     */
+    public static CompletionPolicy all() {
+        return ALL_UNITS;
+    }
+
+    /**
+     * Complete the flow with the first successful action unit, for example to read
+     * from the fastest replica.
+     *
+     * @return a policy completing on the first success
+     */
+    public static CompletionPolicy any() {
+        return ANY;
+    }
+
+    /**
+     * Complete the flow once the given number of action units have successfully completed.
+     *
+     * @param successes number of successful units required, must be positive
+     * @return a policy completing on the first successes
+     */
+    public static CompletionPolicy firstSuccessful(int successes) {
+        if (successes < 1) {
+            throw new IllegalArgumentException("The number of required successful units must be positive");
+        }
+        return successes == 1 ? ANY : new CompletionPolicy("first " + successes + " successful", successes);
+    }
+
+    /**
+     * Complete the flow once a majority of action units have successfully completed,
+     * for example to acknowledge a replicated write.
+     *
+     * @return a policy completing on a majority of successes
+     */
+    public static CompletionPolicy quorum() {
+        return MAJORITY;
+    }
+
+    boolean waitsForAll() {
+        return successes == ALL;
+    }
+
+    int requiredSuccesses(int units) {
+        switch (successes) {
+            case ALL:
+                return units;
+            case QUORUM:
+                return units / 2 + 1;
+            default:
+                return successes;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
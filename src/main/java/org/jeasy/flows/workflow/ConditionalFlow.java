@@ -26,6 +26,12 @@ package org.jeasy.flows.workflow;
 import org.jeasy.flows.action.*;
 
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A conditional flow is defined by 4 artifacts:
@@ -37,6 +43,19 @@ import java.util.UUID;
  *     <li>The action to execute if the predicate is not satisfied (optional)</li>
  * </ul>
  *
+ * A conditional flow can optionally be executed speculatively: the initial action and
+ * both branches are started concurrently, the report of the branch selected by the
+ * predicate is kept and the other branch is cancelled. This turns the latency of the
+ * flow from initial + branch into max(initial, branch), at the price of executing a
+ * branch whose result is discarded.
+ *
+ * <strong>Speculative execution must only be used when both branches are free of side
+ * effects, since they run concurrently with the initial action against the same
+ * action context.</strong>
+ *
+ * A conditional flow can also roll back a failed branch: the action context is
+ * snapshotted once the initial action is done and restored if the selected branch fails.
+ *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  * @see ConditionalFlow.Builder
  */
@@ -44,30 +63,198 @@ public class ConditionalFlow extends AbstractWorkFlow {
 
     private final Action initialActionUnit, nextOnPredicateSuccess, nextOnPredicateFailure;
     private final ActionReportPredicate predicate;
+    private final ExecutorService speculativeExecutor;
+    private final boolean rollbackOnFailure;
+
+    private final LongAdder speculativeExecutions = new LongAdder();
+    private final LongAdder discardedBranches = new LongAdder();
+    private final LongAdder wastedBranchNanos = new LongAdder();
 
     ConditionalFlow(String name, Action initialActionUnit, Action nextOnPredicateSuccess, Action nextOnPredicateFailure, ActionReportPredicate predicate) {
+        this(name, initialActionUnit, nextOnPredicateSuccess, nextOnPredicateFailure, predicate, null, false);
+    }
+
+    ConditionalFlow(String name, Action initialActionUnit, Action nextOnPredicateSuccess, Action nextOnPredicateFailure, ActionReportPredicate predicate, ExecutorService speculativeExecutor, boolean rollbackOnFailure) {
         super(name);
         this.initialActionUnit = initialActionUnit;
         this.nextOnPredicateSuccess = nextOnPredicateSuccess;
         this.nextOnPredicateFailure = nextOnPredicateFailure;
         this.predicate = predicate;
+        this.speculativeExecutor = speculativeExecutor;
+        this.rollbackOnFailure = rollbackOnFailure;
     }
 
     /**
      * {@inheritDoc}
      */
     public ActionReport execute(ActionContext actionContext) {
-        ActionReport jobReport = initialActionUnit.execute(actionContext);
+        if (speculativeExecutor != null) {
+            return executeSpeculatively(actionContext);
+        }
+        ActionReport jobReport = ActionUnits.execute(initialActionUnit, actionContext);
         if (predicate.apply(jobReport)) {
-            jobReport = nextOnPredicateSuccess.execute(actionContext);
+            jobReport = executeBranch(nextOnPredicateSuccess, actionContext);
         } else {
-            if (nextOnPredicateFailure != null && !(nextOnPredicateFailure instanceof NoOpAction)) { // else is optional
-                jobReport = nextOnPredicateFailure.execute(actionContext);
+            if (hasFailureBranch()) { // else is optional
+                jobReport = executeBranch(nextOnPredicateFailure, actionContext);
             }
         }
         return jobReport;
     }
 
+    private ActionReport executeBranch(Action branch, ActionContext actionContext) {
+        return rollbackOnFailure ? ActionUnits.executeWithRollback(branch, actionContext) : ActionUnits.execute(branch, actionContext);
+    }
+
+    /**
+     * Get the number of speculative executions of this flow.
+     *
+     * @return number of speculative executions
+     */
+    public long getSpeculativeExecutionCount() {
+        return speculativeExecutions.sum();
+    }
+
+    /**
+     * Get the number of branches that were started speculatively and then discarded
+     * because the predicate selected the other branch.
+     *
+     * @return number of discarded branches
+     */
+    public long getDiscardedBranchCount() {
+        return discardedBranches.sum();
+    }
+
+    /**
+     * Get the time spent executing discarded branches.
+     *
+     * @param unit of the returned time
+     * @return time spent executing discarded branches
+     */
+    public long getWastedBranchTime(TimeUnit unit) {
+        return unit.convert(wastedBranchNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    FlowInterpreter.Frame newFrame(ActionContext actionContext) {
+        if (speculativeExecutor != null) {
+            return null; // branches run concurrently, the flow is executed as a single action
+        }
+        return new FlowInterpreter.Frame() {
+            private int step;
+            private ActionContext.Snapshot snapshot;
+
+            @Override
+            Action advance(ActionReport unitReport) {
+                switch (step++) {
+                    case 0:
+                        return initialActionUnit;
+                    case 1:
+                        boolean success = predicate.apply(unitReport);
+                        if (!success && !hasFailureBranch()) {
+                            return complete(unitReport);
+                        }
+                        if (rollbackOnFailure) {
+                            snapshot = actionContext.snapshot();
+                        }
+                        return success ? nextOnPredicateSuccess : nextOnPredicateFailure;
+                    default:
+                        ActionUnits.rollbackIfFailed(unitReport, actionContext, snapshot);
+                        return complete(unitReport);
+                }
+            }
+        };
+    }
+
+    private boolean hasFailureBranch() {
+        return nextOnPredicateFailure != null && !(nextOnPredicateFailure instanceof NoOpAction);
+    }
+
+    private ActionReport executeSpeculatively(ActionContext actionContext) {
+        speculativeExecutions.increment();
+        SpeculativeBranch onSuccess = new SpeculativeBranch(nextOnPredicateSuccess, actionContext);
+        SpeculativeBranch onFailure = hasFailureBranch() ? new SpeculativeBranch(nextOnPredicateFailure, actionContext) : null;
+        onSuccess.start();
+        if (onFailure != null) {
+            onFailure.start();
+        }
+
+        SpeculativeBranch selected = null;
+        ActionReport jobReport;
+        try {
+            jobReport = ActionUnits.execute(initialActionUnit, actionContext);
+            selected = predicate.apply(jobReport) ? onSuccess : onFailure;
+        } finally {
+            // discard the other branch, or both if the initial action or the predicate threw
+            if (onSuccess != selected) {
+                onSuccess.discard();
+            }
+            if (onFailure != null && onFailure != selected) {
+                onFailure.discard();
+            }
+        }
+        return selected == null ? jobReport : selected.await();
+    }
+
+    private class SpeculativeBranch {
+
+        private final Action action;
+        private final ActionContext actionContext;
+        private final AtomicBoolean accounted = new AtomicBoolean();
+        private volatile boolean discarded, finished;
+        private volatile long elapsed;
+        private Future<ActionReport> future;
+
+        SpeculativeBranch(Action action, ActionContext actionContext) {
+            this.action = action;
+            this.actionContext = actionContext;
+        }
+
+        void start() {
+            future = speculativeExecutor.submit(ActionUnits.task(context -> run(), actionContext));
+        }
+
+        private ActionReport run() {
+            long start = System.nanoTime();
+            try {
+                return ActionUnits.execute(action, actionContext);
+            } finally {
+                elapsed = System.nanoTime() - start;
+                finished = true;
+                if (discarded) {
+                    account();
+                }
+            }
+        }
+
+        void discard() {
+            discarded = true;
+            discardedBranches.increment();
+            future.cancel(true);
+            if (finished) {
+                account();
+            }
+        }
+
+        private void account() {
+            if (accounted.compareAndSet(false, true)) {
+                wastedBranchNanos.add(elapsed);
+            }
+        }
+
+        ActionReport await() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                String message = String.format("The conditional flow was interrupted while waiting for the result of action unit '%s'", action.getName());
+                throw new RuntimeException(message, e);
+            } catch (ExecutionException e) {
+                return new DefaultActionReport(ActionStatus.FAILED, actionContext, e.getCause());
+            }
+        }
+    }
+
     public static class Builder {
 
         private Builder() {
@@ -99,6 +286,28 @@ public class ConditionalFlow extends AbstractWorkFlow {
         }
 
         public interface BuildStep {
+            /**
+             * Execute the initial action and both branches concurrently, keeping the
+             * report of the branch selected by the predicate and cancelling the other one.
+             * Only use this mode when both branches are free of side effects.
+             *
+             * <strong>It is the responsibility of the caller to manage the lifecycle
+             * of the executor service.</strong>
+             *
+             * @param executorService to use to execute branches speculatively
+             * @return the builder instance
+             */
+            BuildStep speculatively(ExecutorService executorService);
+
+            /**
+             * Snapshot the action context before executing the selected branch and
+             * restore it if the branch fails. Not supported for speculative flows:
+             * {@link #build()} throws an {@link IllegalStateException} if both are set.
+             *
+             * @return the builder instance
+             */
+            BuildStep rollbackOnFailure();
+
             ConditionalFlow build();
         }
 
@@ -107,6 +316,8 @@ public class ConditionalFlow extends AbstractWorkFlow {
             private String name;
             private Action initialActionUnit, nextOnPredicateSuccess, nextOnPredicateFailure;
             private ActionReportPredicate predicate;
+            private ExecutorService speculativeExecutor;
+            private boolean rollbackOnFailure;
 
             BuildSteps() {
                 this.name = UUID.randomUUID().toString();
@@ -146,9 +357,24 @@ public class ConditionalFlow extends AbstractWorkFlow {
                 return this;
             }
 
+            @Override
+            public BuildStep speculatively(ExecutorService executorService) {
+                this.speculativeExecutor = executorService;
+                return this;
+            }
+
+            @Override
+            public BuildStep rollbackOnFailure() {
+                this.rollbackOnFailure = true;
+                return this;
+            }
+
             @Override
             public ConditionalFlow build() {
-                return new ConditionalFlow(this.name, this.initialActionUnit, this.nextOnPredicateSuccess, this.nextOnPredicateFailure, this.predicate);
+                if (this.rollbackOnFailure && this.speculativeExecutor != null) {
+                    throw new IllegalStateException("A speculative conditional flow cannot roll back a failed branch");
+                }
+                return new ConditionalFlow(this.name, this.initialActionUnit, this.nextOnPredicateSuccess, this.nextOnPredicateFailure, this.predicate, this.speculativeExecutor, this.rollbackOnFailure);
             }
         }
     }
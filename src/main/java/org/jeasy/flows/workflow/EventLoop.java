@@ -0,0 +1,410 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.action.BlockingAction;
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
+import org.jeasy.flows.executor.PooledAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-threaded executor of workflows. All executions submitted to an event loop are
+ * driven by the {@link FlowInterpreter} on the thread of the loop, which interleaves them
+ * cooperatively: an execution yields the loop while an {@link AsyncAction} is in progress,
+ * and after a bounded number of consecutive actions. Units of parallel flows are executed
+ * as concurrent executions on the loop thread instead of being handed off to other threads.
+ *
+ * <p>Actions must therefore not block the loop. Actions that block are offloaded to an
+ * executor service and the execution is resumed on the loop once they complete:</p>
+ *
+ * <ul>
+ *     <li>{@link BlockingAction}s and parallel flows with a concurrency limiter are offloaded
+ *     to the blocking executor of the loop</li>
+ *     <li>{@link PooledAction}s are offloaded to their executor pool</li>
+ *     <li>actions found to run longer than the blocking threshold are logged and offloaded
+ *     to the blocking executor on subsequent executions</li>
+ * </ul>
+ *
+ * <p>Stages returned by {@link #execute(Action, ActionContext)} are completed on the loop
+ * thread, so dependent actions registered on them must not block either.</p>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public final class EventLoop {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoop.class);
+
+    private static final int ACTIONS_BEFORE_YIELD = 64;
+    private static final int MAX_DETECTED_BLOCKING_ACTIONS = 1024;
+
+    private final String name;
+    private final Executor blockingExecutor;
+    private final long blockingThresholdNanos;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger runningExecutions = new AtomicInteger();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private final Set<Action> detectedBlockingActions = Collections.newSetFromMap(new IdentityHashMap<>()); // accessed by the loop thread only
+    private final Thread thread;
+    private volatile boolean sleeping, shutdown;
+    private volatile long offloadedActions; // written by the loop thread only
+    private volatile int detectedBlockingActionCount; // written by the loop thread only
+
+    /**
+     * Create and start a new {@link EventLoop}.
+     *
+     * @param name of the loop thread
+     * @param blockingExecutor executor to which blocking actions are offloaded
+     * @param blockingThreshold execution time above which an action is considered blocking
+     * @param unit of the blocking threshold
+     */
+    public EventLoop(String name, Executor blockingExecutor, long blockingThreshold, TimeUnit unit) {
+        this.name = name;
+        this.blockingExecutor = blockingExecutor;
+        this.blockingThresholdNanos = unit.toNanos(blockingThreshold);
+        this.thread = new Thread(this::loop, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Execute an action, typically a workflow, on the loop. The executor pools bound to
+     * the calling thread are bound to the loop thread while the execution runs.
+     *
+     * @param action to execute
+     * @param actionContext context in which the action is executed
+     * @return a stage completed on the loop thread with the report of the execution, or
+     * completed exceptionally if an action throws an exception
+     * @throws RejectedExecutionException if the loop has been shut down
+     */
+    public CompletionStage<ActionReport> execute(Action action, ActionContext actionContext) {
+        runningExecutions.incrementAndGet();
+        if (shutdown) {
+            runningExecutions.decrementAndGet();
+            throw new RejectedExecutionException(String.format("Unable to execute action '%s', the event loop '%s' has been shut down", action.getName(), name));
+        }
+        Execution execution = new Execution(FlowInterpreter.start(action, actionContext), ExecutorPools.current(), null, 0);
+        CompletionStage<ActionReport> actionReport = execution.result.whenComplete((report, throwable) -> {
+            if (runningExecutions.decrementAndGet() == 0 && shutdown) {
+                LockSupport.unpark(thread);
+            }
+        });
+        submit(() -> step(execution));
+        return actionReport;
+    }
+
+    /**
+     * Tell if the calling thread is the thread of this loop.
+     *
+     * @return true if called from the loop thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Stop accepting new executions. The loop thread terminates once running
+     * executions are complete.
+     */
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Wait for the loop thread to terminate after a shutdown.
+     *
+     * @param timeout maximum time to wait
+     * @param unit of the timeout
+     * @return true if the loop terminated, false if the timeout elapsed before
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Tell if the loop thread has terminated.
+     *
+     * @return true if the loop has terminated
+     */
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of executions submitted to the loop and not yet complete.
+     *
+     * @return number of running executions
+     */
+    public int getRunningExecutions() {
+        return runningExecutions.get();
+    }
+
+    /**
+     * Get the number of tasks waiting for the loop thread. This method traverses
+     * the queue of the loop and is intended for monitoring only.
+     *
+     * @return number of queued tasks
+     */
+    public int getQueuedTasks() {
+        return tasks.size();
+    }
+
+    /**
+     * Get the number of actions offloaded from the loop thread.
+     *
+     * @return number of offloaded actions
+     */
+    public long getOffloadedActions() {
+        return offloadedActions;
+    }
+
+    /**
+     * Get the number of actions that were found to block the loop thread.
+     *
+     * @return number of detected blocking actions
+     */
+    public int getDetectedBlockingActions() {
+        return detectedBlockingActionCount;
+    }
+
+    private void submit(Runnable task) {
+        tasks.offer(task);
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void loop() {
+        try {
+            while (true) {
+                Runnable task = tasks.poll();
+                if (task != null) {
+                    task.run();
+                    continue;
+                }
+                if (shutdown && runningExecutions.get() == 0) {
+                    return;
+                }
+                sleeping = true;
+                if (tasks.isEmpty()) { // submitters see the flag and unpark the loop
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+        } catch (Throwable throwable) {
+            LOGGER.error("Event loop ''{}'' terminated unexpectedly", name, throwable);
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    private void step(Execution execution) {
+        ExecutorPools.within(execution.executorPools, () -> {
+            try {
+                advance(execution);
+            } catch (Throwable throwable) {
+                execution.fail(throwable);
+            }
+            return null;
+        });
+    }
+
+    private void advance(Execution execution) {
+        FlowInterpreter interpreter = execution.interpreter;
+        ActionContext actionContext = interpreter.getActionContext();
+        for (int i = 0; i < ACTIONS_BEFORE_YIELD; i++) {
+            Action leaf = interpreter.next();
+            if (leaf == null) {
+                execution.complete(interpreter.getReport());
+                return;
+            }
+            if (leaf instanceof AsyncAction) {
+                CompletableFuture<ActionReport> leafResult = ExecutorPools.executeAsync((AsyncAction) leaf, actionContext).toCompletableFuture();
+                if (!leafResult.isDone()) {
+                    leafResult.whenComplete((actionReport, throwable) -> submit(() -> resume(execution, actionReport, throwable)));
+                    return;
+                }
+                interpreter.resume(FlowInterpreter.reportOf(leafResult, actionContext));
+            } else if (leaf instanceof ParallelFlow && ((ParallelFlow) leaf).isForkable()) {
+                fork(execution, ((ParallelFlow) leaf).getActionUnits());
+                return;
+            } else if (isBlocking(leaf)) {
+                offload(execution, leaf);
+                return;
+            } else {
+                long start = System.nanoTime();
+                ActionReport actionReport = ExecutorPools.execute(leaf, actionContext);
+                long elapsed = System.nanoTime() - start;
+                if (elapsed > blockingThresholdNanos && detectedBlockingActions.size() < MAX_DETECTED_BLOCKING_ACTIONS && detectedBlockingActions.add(leaf)) {
+                    detectedBlockingActionCount++;
+                    LOGGER.warn("Action unit ''{}'' blocked event loop ''{}'' for {}us, it will be offloaded from now on",
+                            leaf.getName(), name, TimeUnit.NANOSECONDS.toMicros(elapsed));
+                }
+                interpreter.resume(actionReport);
+            }
+        }
+        submit(() -> step(execution)); // yield the loop to other executions
+    }
+
+    private boolean isBlocking(Action action) {
+        return action instanceof BlockingAction || action instanceof PooledAction
+                || action instanceof ParallelFlow || detectedBlockingActions.contains(action);
+    }
+
+    private void resume(Execution execution, ActionReport actionReport, Throwable throwable) {
+        execution.interpreter.resume(FlowInterpreter.reportOf(actionReport, throwable, execution.interpreter.getActionContext()));
+        step(execution);
+    }
+
+    private void offload(Execution execution, Action action) {
+        offloadedActions++;
+        ExecutorPools executorPools = execution.executorPools;
+        ActionContext actionContext = execution.interpreter.getActionContext();
+        try {
+            CompletableFuture.supplyAsync(() -> ExecutorPools.within(executorPools, () -> ExecutorPools.execute(action, actionContext)), executorOf(action, executorPools))
+                    .whenComplete((actionReport, throwable) -> submit(() -> resume(execution, actionReport, throwable)));
+        } catch (RejectedExecutionException e) {
+            submit(() -> resume(execution, null, e));
+        }
+    }
+
+    private Executor executorOf(Action action, ExecutorPools executorPools) {
+        if (action instanceof PooledAction && executorPools != null) {
+            ExecutorPool pool = executorPools.get(((PooledAction) action).getExecutorPoolName());
+            if (pool != null) {
+                return pool.getExecutorService();
+            }
+        }
+        return blockingExecutor;
+    }
+
+    private void fork(Execution parent, List<Action> actionUnits) {
+        if (actionUnits.isEmpty()) { // no unit would complete the join, resume the parent right away
+            submit(() -> resume(parent, new ParallelFlowReport(), null));
+            return;
+        }
+        Join join = new Join(parent, actionUnits.size());
+        ActionContext actionContext = parent.interpreter.getActionContext();
+        for (int i = 0; i < actionUnits.size(); i++) {
+            Execution unit = new Execution(FlowInterpreter.start(actionUnits.get(i), actionContext), parent.executorPools, join, i);
+            submit(() -> step(unit));
+        }
+    }
+
+    /*
+     * An execution driven by the loop: either submitted to the loop, or a unit of a parallel flow.
+     */
+    private final class Execution {
+
+        private final FlowInterpreter interpreter;
+        private final ExecutorPools executorPools;
+        private final Join join;
+        private final int index;
+        private final CompletableFuture<ActionReport> result;
+
+        private Execution(FlowInterpreter interpreter, ExecutorPools executorPools, Join join, int index) {
+            this.interpreter = interpreter;
+            this.executorPools = executorPools;
+            this.join = join;
+            this.index = index;
+            this.result = join == null ? new CompletableFuture<>() : null;
+        }
+
+        private void complete(ActionReport actionReport) {
+            if (join == null) {
+                result.complete(actionReport);
+            } else {
+                join.completed(index, actionReport);
+            }
+        }
+
+        private void fail(Throwable throwable) {
+            if (join == null) {
+                result.completeExceptionally(throwable);
+            } else {
+                join.failed(throwable);
+            }
+        }
+    }
+
+    /*
+     * Reports of the units of a parallel flow, the parent execution is resumed when the last unit completes.
+     */
+    private final class Join {
+
+        private final Execution parent;
+        private final ActionReport[] actionReports;
+        private int remaining;
+        private boolean failed;
+
+        private Join(Execution parent, int units) {
+            this.parent = parent;
+            this.actionReports = new ActionReport[units];
+            this.remaining = units;
+        }
+
+        private void completed(int index, ActionReport actionReport) {
+            actionReports[index] = actionReport;
+            if (--remaining == 0 && !failed) {
+                ParallelFlowReport parallelFlowReport = new ParallelFlowReport();
+                parallelFlowReport.addAll(Arrays.asList(actionReports));
+                submit(() -> resume(parent, parallelFlowReport, null));
+            }
+        }
+
+        private void failed(Throwable throwable) {
+            if (!failed) {
+                failed = true;
+                parent.fail(throwable);
+            }
+        }
+    }
+}
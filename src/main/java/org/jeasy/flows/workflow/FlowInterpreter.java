@@ -0,0 +1,333 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.executor.ExecutorPools;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Iterative interpreter of workflows.
+ *
+ * <p>Sequential, conditional, repeat and switch flows are not executed by calling their
+ * {@code execute} method recursively: the interpreter walks the flow tree with an explicit
+ * stack of frames allocated on the heap. The nesting depth of flows is therefore not bounded
+ * by the size of the thread stack. Other actions (including parallel flows, whose units are
+ * interpreted on the threads that run them) are the leaves of the tree and are executed as
+ * usual.</p>
+ *
+ * <p>An interpreter is a suspendable execution of a single flow: {@link #next()} returns the
+ * next leaf action to execute and the execution is suspended until the report of this action
+ * is given back with {@link #resume(ActionReport)}, possibly by another thread. The static
+ * {@link #execute(Action, ActionContext)} method runs an execution to completion on the
+ * calling thread, and {@link #executeAsync(Action, ActionContext)} runs it without waiting
+ * for {@link AsyncAction}s.</p>
+ *
+ * <p>An interpreter is not thread-safe: calls to {@link #next()} and {@link #resume(ActionReport)}
+ * must not be concurrent, but they can be made by different threads as long as the handover
+ * between them is safely published (as it is through an executor or a completion stage).</p>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+public final class FlowInterpreter {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    private final ActionContext actionContext;
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private Action root, pending;
+    private ActionReport report;
+    private boolean done;
+
+    private FlowInterpreter(Action action, Frame frame, ActionContext actionContext) {
+        this.actionContext = actionContext;
+        if (frame == null) { // the action is itself a leaf
+            root = action;
+        } else {
+            frames.push(frame);
+        }
+    }
+
+    /**
+     * Start the execution of an action. No action is executed until {@link #next()} is called.
+     *
+     * @param action to execute, typically a workflow
+     * @param actionContext of the execution
+     * @return the suspended execution
+     */
+    public static FlowInterpreter start(Action action, ActionContext actionContext) {
+        return new FlowInterpreter(action, frameOf(action, actionContext), actionContext);
+    }
+
+    /**
+     * Execute an action to completion on the calling thread. Units of parallel flows
+     * started by this execution are interpreted as well.
+     *
+     * @param action to execute, typically a workflow
+     * @param actionContext of the execution
+     * @return the report of the execution
+     */
+    public static ActionReport execute(Action action, ActionContext actionContext) {
+        Frame frame = frameOf(action, actionContext);
+        if (frame == null && isActive()) { // unit of a leaf action, nothing to interpret
+            return ExecutorPools.execute(action, actionContext);
+        }
+        Boolean previous = ACTIVE.get();
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            FlowInterpreter execution = new FlowInterpreter(action, frame, actionContext);
+            Action leaf;
+            while ((leaf = execution.next()) != null) {
+                execution.resume(ExecutorPools.execute(leaf, actionContext));
+            }
+            return execution.getReport();
+        } finally {
+            if (previous == null) {
+                ACTIVE.remove();
+            }
+        }
+    }
+
+    /**
+     * Execute an action without blocking on {@link AsyncAction}s and parallel flows. The
+     * execution proceeds on the calling thread until it reaches an asynchronous action
+     * that is not yet complete, and is then resumed by the thread completing it.
+     * Synchronous actions reached afterwards run on that thread, so long synchronous
+     * actions should be assigned to an executor pool with
+     * {@link ExecutorPools#onPool(String, Action)}.
+     *
+     * @param action to execute, typically a workflow
+     * @param actionContext of the execution
+     * @return a stage completed with the report of the execution, or completed exceptionally
+     * if a synchronous action throws an exception
+     */
+    public static CompletionStage<ActionReport> executeAsync(Action action, ActionContext actionContext) {
+        AsyncExecution execution = new AsyncExecution(start(action, actionContext), ExecutorPools.current());
+        execution.run();
+        return execution.result;
+    }
+
+    /**
+     * Tell if the calling thread is executing a flow with the interpreter.
+     */
+    static boolean isActive() {
+        return ACTIVE.get() != null;
+    }
+
+    /**
+     * Advance the execution up to the next leaf action to execute.
+     *
+     * @return the next action to execute or null if the execution is complete
+     */
+    public Action next() {
+        if (pending != null || done) {
+            return pending;
+        }
+        if (root != null) {
+            pending = root;
+            root = null;
+            return pending;
+        }
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            Action child = frame.advance(report);
+            if (child == null) { // the frame is complete, its report is given to its parent
+                report = frame.report;
+                frames.pop();
+                continue;
+            }
+            Frame childFrame = frameOf(child, actionContext);
+            if (childFrame == null) {
+                pending = child;
+                return child;
+            }
+            frames.push(childFrame);
+        }
+        done = true;
+        return null;
+    }
+
+    /**
+     * Resume the execution with the report of the action returned by {@link #next()}.
+     *
+     * @param actionReport of the leaf action
+     * @throws IllegalStateException if no action is pending
+     */
+    public void resume(ActionReport actionReport) {
+        if (pending == null) {
+            throw new IllegalStateException("No action is pending, next() must be called before resume()");
+        }
+        pending = null;
+        report = actionReport;
+        if (frames.isEmpty()) {
+            done = true;
+        }
+    }
+
+    /**
+     * Tell if the execution is complete.
+     *
+     * @return true if the execution is complete
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Get the report of a complete execution.
+     *
+     * @return the report of the execution
+     * @throws IllegalStateException if the execution is not complete
+     */
+    public ActionReport getReport() {
+        if (!done) {
+            throw new IllegalStateException("The execution is not complete");
+        }
+        return report;
+    }
+
+    /**
+     * Get the action context of the execution.
+     *
+     * @return the action context
+     */
+    public ActionContext getActionContext() {
+        return actionContext;
+    }
+
+    private static Frame frameOf(Action action, ActionContext actionContext) {
+        return action instanceof AbstractWorkFlow ? ((AbstractWorkFlow) action).newFrame(actionContext) : null;
+    }
+
+    /*
+     * Report of a leaf completed asynchronously: a leaf completed exceptionally is reported as failed.
+     */
+    static ActionReport reportOf(CompletableFuture<ActionReport> leafResult, ActionContext actionContext) {
+        try {
+            return leafResult.join();
+        } catch (CompletionException | CancellationException e) {
+            return reportOf(null, e, actionContext);
+        }
+    }
+
+    static ActionReport reportOf(ActionReport actionReport, Throwable throwable, ActionContext actionContext) {
+        if (throwable == null) {
+            return actionReport;
+        }
+        Throwable error = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        return new DefaultActionReport(ActionStatus.FAILED, actionContext, error);
+    }
+
+    private static CompletionStage<ActionReport> executeLeafAsync(Action action, ActionContext actionContext) {
+        if (action instanceof AsyncAction) {
+            return ExecutorPools.executeAsync((AsyncAction) action, actionContext);
+        }
+        if (action instanceof ParallelFlow) {
+            return ((ParallelFlow) action).executeAsync(actionContext);
+        }
+        return CompletableFuture.completedFuture(ExecutorPools.execute(action, actionContext));
+    }
+
+    /**
+     * Drives an execution, suspending it while an asynchronous leaf is in progress.
+     */
+    private static final class AsyncExecution {
+
+        private final FlowInterpreter interpreter;
+        private final ExecutorPools executorPools;
+        private final CompletableFuture<ActionReport> result = new CompletableFuture<>();
+
+        private AsyncExecution(FlowInterpreter interpreter, ExecutorPools executorPools) {
+            this.interpreter = interpreter;
+            this.executorPools = executorPools;
+        }
+
+        private void run() {
+            ExecutorPools.within(executorPools, () -> {
+                Boolean previous = ACTIVE.get();
+                ACTIVE.set(Boolean.TRUE);
+                try {
+                    drive();
+                } catch (Throwable throwable) {
+                    result.completeExceptionally(throwable);
+                } finally {
+                    if (previous == null) {
+                        ACTIVE.remove();
+                    }
+                }
+                return null;
+            });
+        }
+
+        private void drive() {
+            ActionContext actionContext = interpreter.getActionContext();
+            Action leaf;
+            while ((leaf = interpreter.next()) != null) {
+                CompletableFuture<ActionReport> leafResult = executeLeafAsync(leaf, actionContext).toCompletableFuture();
+                if (!leafResult.isDone()) { // suspend, the thread completing the leaf resumes the execution
+                    leafResult.whenComplete((actionReport, throwable) -> {
+                        interpreter.resume(reportOf(actionReport, throwable, actionContext));
+                        run();
+                    });
+                    return;
+                }
+                interpreter.resume(reportOf(leafResult, actionContext));
+            }
+            result.complete(interpreter.getReport());
+        }
+    }
+
+    /**
+     * State of the execution of a flow. A frame is advanced each time one of its units
+     * completes, and returns the next unit to execute or null once the flow is complete.
+     */
+    abstract static class Frame {
+
+        ActionReport report;
+
+        /**
+         * Advance the frame.
+         *
+         * @param unitReport report of the last unit returned by this frame (ignored on the first call)
+         * @return the next unit to execute or null once the flow is complete
+         */
+        abstract Action advance(ActionReport unitReport);
+
+        Action complete(ActionReport flowReport) {
+            this.report = flowReport;
+            return null;
+        }
+    }
+}
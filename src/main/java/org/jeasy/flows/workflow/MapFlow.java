@@ -0,0 +1,395 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.action.NoOpAction;
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+/**
+ * A map flow executes an action for each element of a collection stored in the
+ * action context and reduces the reports of those executions into a single result.
+ *
+ * The collection (an {@link Iterable}, an array or a {@link Spliterator}) is split into
+ * chunks sized according to the parallelism of the pool processing them: a given
+ * {@link ForkJoinPool}, or else the default executor pool of the engine running the flow,
+ * in which case the thread executing the flow processes chunks too. Each element is
+ * processed in its own child context (see {@link ActionContext#newChildContext()}), which
+ * reads through to the flow context and holds the element under a given key. Reports are
+ * folded into the reduction as soon as they are produced, and partial results of chunks
+ * are merged with a combiner. The result is put in the flow context under a given key.
+ *
+ * The status of a map flow execution is defined as:
+ *
+ * <ul>
+ *     <li>{@link ActionStatus#COMPLETED}: If the action has completed for all elements</li>
+ *     <li>{@link ActionStatus#FAILED}: If the action has failed for one of the elements.
+ *     Remaining elements are skipped and no result is put in the context.</li>
+ * </ul>
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see MapFlow.Builder
+ */
+public class MapFlow extends AbstractWorkFlow {
+
+    private final String sourceKey, elementKey, resultKey;
+    private final Action action;
+    private final Object identity;
+    private final BiFunction<Object, ActionReport, Object> accumulator;
+    private final BinaryOperator<Object> combiner;
+    private final ForkJoinPool forkJoinPool;
+
+    MapFlow(String name, String sourceKey, String elementKey, Action action,
+            Object identity, BiFunction<Object, ActionReport, Object> accumulator, BinaryOperator<Object> combiner,
+            String resultKey, ForkJoinPool forkJoinPool) {
+        super(name);
+        this.sourceKey = sourceKey;
+        this.elementKey = elementKey;
+        this.action = action;
+        this.identity = identity;
+        this.accumulator = accumulator;
+        this.combiner = combiner;
+        this.resultKey = resultKey;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ActionReport execute(ActionContext actionContext) {
+        Spliterator<?> spliterator;
+        try {
+            spliterator = spliterator(actionContext.get(sourceKey));
+        } catch (IllegalArgumentException e) {
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, e);
+        }
+        AtomicReference<ActionReport> failure = new AtomicReference<>();
+        ExecutorPools executorPools = ExecutorPools.current();
+        Object result;
+        if (forkJoinPool != null) {
+            long targetChunkSize = Math.max(1, spliterator.estimateSize() / (forkJoinPool.getParallelism() * 4L));
+            result = forkJoinPool.invoke(new ChunkTask(spliterator, targetChunkSize, actionContext, executorPools, failure));
+        } else {
+            result = reduceOnDefaultPool(spliterator, actionContext, executorPools, failure);
+        }
+        ActionReport failedReport = failure.get();
+        if (failedReport != null) {
+            return new DefaultActionReport(ActionStatus.FAILED, actionContext, failedReport.getError());
+        }
+        actionContext.put(resultKey, result);
+        return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+    }
+
+    /*
+     * Split the collection into chunks up front and hand off all chunks but the first one
+     * to the default pool of the engine. Like a parallel flow, the calling thread reduces
+     * the first chunk, then the chunks no thread of the pool has started yet. Partial
+     * results are combined in the order of chunks.
+     */
+    private Object reduceOnDefaultPool(Spliterator<?> spliterator, ActionContext actionContext, ExecutorPools executorPools,
+                                       AtomicReference<ActionReport> failure) {
+        ExecutorPool defaultPool = executorPools == null ? null : executorPools.getDefault();
+        if (defaultPool == null) {
+            throw new IllegalStateException("No fork/join pool was given to the map flow and it is not run by a workflow engine with a default executor pool");
+        }
+        long targetChunkSize = Math.max(1, spliterator.estimateSize() / ((defaultPool.getMaximumThreads() + 1) * 4L));
+        List<Spliterator<?>> chunks = new ArrayList<>();
+        split(spliterator, targetChunkSize, chunks);
+        List<FutureTask<Object>> tasks = new ArrayList<>(chunks.size());
+        for (Spliterator<?> chunk : chunks) {
+            tasks.add(new FutureTask<>(new ChunkTask(chunk, targetChunkSize, actionContext, executorPools, failure)::reduce));
+        }
+        try {
+            for (int index = 1; index < tasks.size(); index++) {
+                defaultPool.getExecutorService().execute(tasks.get(index));
+            }
+        } catch (RuntimeException | Error e) {
+            tasks.forEach(task -> task.cancel(true));
+            throw e;
+        }
+        tasks.get(0).run();
+        for (int index = tasks.size() - 1; index > 0; index--) {
+            tasks.get(index).run();
+        }
+        Object result = null;
+        for (int index = 0; index < tasks.size(); index++) {
+            Object partialResult;
+            try {
+                partialResult = tasks.get(index).get();
+            } catch (InterruptedException e) {
+                tasks.forEach(task -> task.cancel(true));
+                throw new RuntimeException("The map flow was interrupted while waiting for the result of a chunk", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Unable to reduce a chunk of the map flow", e.getCause());
+            }
+            result = index == 0 ? partialResult : combiner.apply(result, partialResult);
+        }
+        return result;
+    }
+
+    private static void split(Spliterator<?> spliterator, long targetChunkSize, List<Spliterator<?>> chunks) {
+        Spliterator<?> prefix;
+        if (spliterator.estimateSize() > targetChunkSize && (prefix = spliterator.trySplit()) != null) {
+            split(prefix, targetChunkSize, chunks);
+            split(spliterator, targetChunkSize, chunks);
+        } else {
+            chunks.add(spliterator);
+        }
+    }
+
+    private Spliterator<?> spliterator(Object source) {
+        if (source instanceof Spliterator) {
+            return (Spliterator<?>) source;
+        }
+        if (source instanceof Iterable) {
+            return ((Iterable<?>) source).spliterator();
+        }
+        if (source instanceof Object[]) {
+            return Arrays.spliterator((Object[]) source);
+        }
+        throw new IllegalArgumentException(String.format("Context entry '%s' is not a collection: %s", sourceKey, source));
+    }
+
+    private class ChunkTask extends RecursiveTask<Object> {
+
+        private final Spliterator<?> spliterator;
+        private final long targetChunkSize;
+        private final ActionContext parentContext;
+        private final ExecutorPools executorPools;
+        private final AtomicReference<ActionReport> failure;
+        private Object result;
+
+        ChunkTask(Spliterator<?> spliterator, long targetChunkSize, ActionContext parentContext, ExecutorPools executorPools, AtomicReference<ActionReport> failure) {
+            this.spliterator = spliterator;
+            this.targetChunkSize = targetChunkSize;
+            this.parentContext = parentContext;
+            this.executorPools = executorPools;
+            this.failure = failure;
+        }
+
+        @Override
+        protected Object compute() {
+            Spliterator<?> prefix;
+            if (spliterator.estimateSize() > targetChunkSize && (prefix = spliterator.trySplit()) != null) {
+                ChunkTask left = new ChunkTask(prefix, targetChunkSize, parentContext, executorPools, failure);
+                left.fork();
+                Object right = new ChunkTask(spliterator, targetChunkSize, parentContext, executorPools, failure).compute();
+                return combiner.apply(left.join(), right);
+            }
+            return reduce();
+        }
+
+        /*
+         * Reduce the elements of the chunk, without splitting it any further.
+         */
+        private Object reduce() {
+            result = identity;
+            while (failure.get() == null && spliterator.tryAdvance(this::process)) {
+                // each report is folded into the result by process
+            }
+            return result;
+        }
+
+        private void process(Object element) {
+            ActionContext childContext = parentContext.newChildContext();
+            childContext.put(elementKey, element);
+            ActionReport report;
+            try {
+                report = ExecutorPools.within(executorPools, () -> ActionUnits.execute(action, childContext));
+            } catch (RuntimeException e) {
+                report = new DefaultActionReport(ActionStatus.FAILED, childContext, e);
+            }
+            if (ActionStatus.FAILED.equals(report.getStatus())) {
+                failure.compareAndSet(null, report);
+                return;
+            }
+            result = accumulator.apply(result, report);
+        }
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewMapFlow
+        }
+
+        public static NameStep aNewMapFlow() {
+            return new BuildSteps();
+        }
+
+        public interface NameStep extends OverStep {
+            OverStep named(String name);
+        }
+
+        public interface OverStep {
+            /**
+             * Iterate over the collection stored in the action context under the given key.
+             *
+             * @param sourceKey of the collection, array or spliterator in the context
+             * @return the builder instance
+             */
+            AsStep over(String sourceKey);
+        }
+
+        public interface AsStep {
+            /**
+             * Put each element in its child context under the given key.
+             *
+             * @param elementKey of the element in the child context
+             * @return the builder instance
+             */
+            ExecuteStep as(String elementKey);
+        }
+
+        public interface ExecuteStep {
+            ReduceStep execute(Action action);
+        }
+
+        public interface ReduceStep {
+            /**
+             * Reduce the reports of the executions of the action.
+             *
+             * @param identity of the reduction
+             * @param accumulator folding a report into a partial result
+             * @param combiner merging two partial results
+             * @param <R> type of the result
+             * @return the builder instance
+             */
+            <R> IntoStep reduce(R identity, BiFunction<R, ActionReport, R> accumulator, BinaryOperator<R> combiner);
+        }
+
+        public interface IntoStep {
+            /**
+             * Put the result of the reduction in the action context under the given key.
+             *
+             * @param resultKey of the result in the context
+             * @return the builder instance
+             */
+            WithStep into(String resultKey);
+        }
+
+        public interface WithStep extends BuildStep {
+            /**
+             * Use the given pool to process elements. By default, the flow uses the
+             * default executor pool of the engine running it.
+             *
+             * <strong>It is the responsibility of the caller to manage the lifecycle
+             * of the pool.</strong>
+             *
+             * @param forkJoinPool to use to process elements in parallel
+             * @return the builder instance
+             */
+            BuildStep with(ForkJoinPool forkJoinPool);
+        }
+
+        public interface BuildStep {
+            MapFlow build();
+        }
+
+        private static class BuildSteps implements NameStep, OverStep, AsStep, ExecuteStep, ReduceStep, IntoStep, WithStep, BuildStep {
+
+            private String name;
+            private String sourceKey, elementKey, resultKey;
+            private Action action;
+            private Object identity;
+            private BiFunction<Object, ActionReport, Object> accumulator;
+            private BinaryOperator<Object> combiner;
+            private ForkJoinPool forkJoinPool;
+
+            BuildSteps() {
+                this.name = UUID.randomUUID().toString();
+                this.action = new NoOpAction();
+            }
+
+            @Override
+            public OverStep named(String name) {
+                this.name = name;
+                return this;
+            }
+
+            @Override
+            public AsStep over(String sourceKey) {
+                this.sourceKey = sourceKey;
+                return this;
+            }
+
+            @Override
+            public ExecuteStep as(String elementKey) {
+                this.elementKey = elementKey;
+                return this;
+            }
+
+            @Override
+            public ReduceStep execute(Action action) {
+                this.action = action;
+                return this;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <R> IntoStep reduce(R identity, BiFunction<R, ActionReport, R> accumulator, BinaryOperator<R> combiner) {
+                this.identity = identity;
+                this.accumulator = (BiFunction<Object, ActionReport, Object>) accumulator;
+                this.combiner = (BinaryOperator<Object>) combiner;
+                return this;
+            }
+
+            @Override
+            public WithStep into(String resultKey) {
+                this.resultKey = resultKey;
+                return this;
+            }
+
+            @Override
+            public BuildStep with(ForkJoinPool forkJoinPool) {
+                this.forkJoinPool = forkJoinPool;
+                return this;
+            }
+
+            @Override
+            public MapFlow build() {
+                return new MapFlow(this.name, this.sourceKey, this.elementKey, this.action,
+                        this.identity, this.accumulator, this.combiner, this.resultKey, this.forkJoinPool);
+            }
+        }
+    }
+}
@@ -27,20 +27,25 @@ import org.jeasy.flows.action.ActionStatus;
 import org.jeasy.flows.action.Action;
 import org.jeasy.flows.action.ActionContext;
 import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.executor.AdaptiveConcurrencyLimiter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
 
 /**
  * A parallel flow executes a set of action units in parallel. A {@link ParallelFlow}
- * requires a {@link ExecutorService} to execute action units in parallel using multiple
- * threads.
+ * uses an {@link ExecutorService} to execute action units in parallel using multiple
+ * threads. When no executor service is given, the flow uses the default executor pool
+ * of the engine running it, whose lifecycle is managed by the engine. Rather than
+ * idling while units run, the thread executing the flow runs the first unit itself,
+ * then any unit no thread of the executor service has started yet.
  * 
- * <strong>It is the responsibility of the caller to manage the lifecycle of the
- * executor service.</strong>
+ * <strong>When an executor service is given, it is the responsibility of the caller
+ * to manage its lifecycle.</strong>
  *
  * The status of a parallel flow execution is defined as:
  *
@@ -49,27 +54,68 @@ import java.util.concurrent.ExecutorService;
  *     <li>{@link ActionStatus#FAILED}: If one of the action units has failed</li>
  * </ul>
  *
+ * A parallel flow can also complete before all its action units, as soon as the
+ * condition of its {@link CompletionPolicy} is met (or can no longer be met), in which
+ * case remaining units are cancelled and the flow is completed if the condition was met.
+ *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
 public class ParallelFlow extends AbstractWorkFlow {
 
     private final List<Action> actionUnits = new ArrayList<>();
     private final ParallelFlowExecutor workExecutor;
+    private final CompletionPolicy completionPolicy;
 
     ParallelFlow(String name, List<Action> actionUnits, ParallelFlowExecutor parallelFlowExecutor) {
+        this(name, actionUnits, parallelFlowExecutor, CompletionPolicy.all());
+    }
+
+    ParallelFlow(String name, List<Action> actionUnits, ParallelFlowExecutor parallelFlowExecutor, CompletionPolicy completionPolicy) {
         super(name);
         this.actionUnits.addAll(actionUnits);
         this.workExecutor = parallelFlowExecutor;
+        this.completionPolicy = completionPolicy;
     }
 
     /**
      * {@inheritDoc}
      */
     public ParallelFlowReport execute(ActionContext actionContext) {
-        ParallelFlowReport workFlowReport = new ParallelFlowReport();
-        List<ActionReport> actionReports = workExecutor.executeInParallel(actionUnits, actionContext);
-        workFlowReport.addAll(actionReports);
-        return workFlowReport;
+        if (!completionPolicy.waitsForAll()) {
+            return workExecutor.executeInParallel(actionUnits, actionContext, completionPolicy);
+        }
+        return new ParallelFlowReport(workExecutor.executeInParallel(actionUnits, actionContext));
+    }
+
+    /**
+     * Execute action units in parallel without waiting for them: synchronous units are
+     * submitted to the executor service of the flow, and {@link org.jeasy.flows.action.AsyncAction}s
+     * are started directly and do not hold a thread while in progress. With a completion
+     * policy other than {@link CompletionPolicy#all()}, reports are counted as units
+     * complete and the returned stage is completed as soon as the policy is decided.
+     * With a concurrency limiter, units beyond the limit are started as earlier ones
+     * complete, and no thread is held while waiting for a permit.
+     *
+     * @param actionContext context in which the flow is executed
+     * @return a stage completed with the report of the flow
+     */
+    CompletionStage<ActionReport> executeAsync(ActionContext actionContext) {
+        if (!completionPolicy.waitsForAll()) {
+            return workExecutor.executeInParallelAsync(actionUnits, actionContext, completionPolicy)
+                    .thenApply(parallelFlowReport -> parallelFlowReport);
+        }
+        return workExecutor.executeInParallelAsync(actionUnits, actionContext).thenApply(ParallelFlowReport::new);
+    }
+
+    List<Action> getActionUnits() {
+        return actionUnits;
+    }
+
+    /*
+     * Whether units can be run as independent executions joined once all of them completed.
+     */
+    boolean isForkable() {
+        return completionPolicy.waitsForAll() && !workExecutor.hasConcurrencyLimiter();
     }
 
     public static class Builder {
@@ -90,10 +136,11 @@ public class ParallelFlow extends AbstractWorkFlow {
             WithStep execute(Action... actionUnits);
         }
 
-        public interface WithStep {
+        public interface WithStep extends BuildStep {
             /**
-             *  A {@link ParallelFlow} requires an {@link ExecutorService} to
-             *  execute action units in parallel using multiple threads.
+             *  Use the given {@link ExecutorService} to execute action units in parallel
+             *  using multiple threads. By default, the flow uses the default executor pool
+             *  of the engine running it.
              *  
              *  <strong>It is the responsibility of the caller to manage the lifecycle
              *  of the executor service.</strong>
@@ -105,6 +152,26 @@ public class ParallelFlow extends AbstractWorkFlow {
         }
 
         public interface BuildStep {
+            /**
+             * Limit the number of action units in flight with an adaptive limiter.
+             * Units beyond the limit are submitted as earlier ones complete. By
+             * default, all units are submitted at once.
+             *
+             * @param concurrencyLimiter to use, might be shared between flows
+             * @return the builder instance
+             */
+            BuildStep limitedBy(AdaptiveConcurrencyLimiter concurrencyLimiter);
+
+            /**
+             * Complete the flow as soon as the condition of the given policy is met,
+             * cancelling remaining units. By default, the flow waits for all units.
+             * Cannot be combined with a concurrency limiter.
+             *
+             * @param completionPolicy of the flow
+             * @return the builder instance
+             */
+            BuildStep completeWhen(CompletionPolicy completionPolicy);
+
             ParallelFlow build();
         }
 
@@ -113,10 +180,13 @@ public class ParallelFlow extends AbstractWorkFlow {
             private String name;
             private final List<Action> actions;
             private ExecutorService executorService;
+            private AdaptiveConcurrencyLimiter concurrencyLimiter;
+            private CompletionPolicy completionPolicy;
 
             public BuildSteps() {
                 this.name = UUID.randomUUID().toString();
                 this.actions = new ArrayList<>();
+                this.completionPolicy = CompletionPolicy.all();
             }
 
             @Override
@@ -137,11 +207,33 @@ public class ParallelFlow extends AbstractWorkFlow {
                 return this;
             }
 
+            @Override
+            public BuildStep limitedBy(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+                this.concurrencyLimiter = concurrencyLimiter;
+                return this;
+            }
+
+            @Override
+            public BuildStep completeWhen(CompletionPolicy completionPolicy) {
+                this.completionPolicy = completionPolicy;
+                return this;
+            }
+
             @Override
             public ParallelFlow build() {
+                if (!this.completionPolicy.waitsForAll()) {
+                    if (this.concurrencyLimiter != null) {
+                        throw new IllegalStateException("A parallel flow with a completion policy cannot be limited by a concurrency limiter");
+                    }
+                    if (this.completionPolicy.requiredSuccesses(this.actions.size()) > this.actions.size()) {
+                        String message = String.format("Completion policy '%s' cannot be met by %d action units", this.completionPolicy, this.actions.size());
+                        throw new IllegalArgumentException(message);
+                    }
+                }
                 return new ParallelFlow(
                         this.name, this.actions,
-                        new ParallelFlowExecutor(this.executorService));
+                        new ParallelFlowExecutor(this.name, this.executorService, this.concurrencyLimiter),
+                        this.completionPolicy);
             }
         }
 
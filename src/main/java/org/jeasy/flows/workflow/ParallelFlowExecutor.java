@@ -26,55 +26,643 @@ package org.jeasy.flows.workflow;
 import org.jeasy.flows.action.Action;
 import org.jeasy.flows.action.ActionContext;
 import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.executor.AdaptiveConcurrencyLimiter;
+import org.jeasy.flows.executor.ExecutionListener;
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
 
 class ParallelFlowExecutor {
 
+    private final String flowName;
     private final ExecutorService workExecutor;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
 
     ParallelFlowExecutor(ExecutorService workExecutor) {
+        this(workExecutor, null);
+    }
+
+    ParallelFlowExecutor(ExecutorService workExecutor, AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this(null, workExecutor, concurrencyLimiter);
+    }
+
+    ParallelFlowExecutor(String flowName, ExecutorService workExecutor, AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.flowName = flowName;
         this.workExecutor = workExecutor;
+        this.concurrencyLimiter = concurrencyLimiter;
     }
 
     List<ActionReport> executeInParallel(List<Action> actionUnits, ActionContext actionContext) {
+        ExecutorService workExecutor = resolveWorkExecutor();
+        if (actionUnits.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ExecutionListener listener = executionListener();
+        if (listener == null) {
+            return concurrencyLimiter != null
+                    ? executeWithinLimit(workExecutor, actionUnits, actionContext, null)
+                    : executeInParallel(workExecutor, actionUnits, actionContext, null);
+        }
+        listener.beforeParallelUnits(flowName, actionContext, actionUnits.size());
+        Phases phases = new Phases();
+        try {
+            return concurrencyLimiter != null
+                    ? executeWithinLimit(workExecutor, actionUnits, actionContext, phases)
+                    : executeInParallel(workExecutor, actionUnits, actionContext, phases);
+        } finally {
+            listener.afterParallelUnits(flowName, actionContext, actionUnits.size(), phases.nanos[0], phases.nanos[1], phases.nanos[2]);
+        }
+    }
+
+    private List<ActionReport> executeInParallel(ExecutorService workExecutor, List<Action> actionUnits, ActionContext actionContext, Phases phases) {
         // prepare tasks for parallel submission
-        List<Callable<ActionReport>> tasks = new ArrayList<>(actionUnits.size());
-        actionUnits.forEach(action -> tasks.add(() -> action.execute(actionContext)));
+        int size = actionUnits.size();
+        List<FutureTask<ActionReport>> tasks = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            tasks.add(new FutureTask<>(ActionUnits.task(actionUnits.get(index), actionContext)));
+        }
 
-        // submit action units and wait for results
-        List<Future<ActionReport>> futures;
+        // hand off all units but the first one, a flow with a single unit never hits the executor
         try {
-            futures = this.workExecutor.invokeAll(tasks);
-        } catch (InterruptedException e) {
-            throw new RuntimeException("The parallel flow was interrupted while executing action units", e);
+            for (int index = 1; index < size; index++) {
+                workExecutor.execute(tasks.get(index));
+            }
+        } catch (RuntimeException | Error e) {
+            tasks.forEach(task -> task.cancel(true));
+            throw e;
+        }
+        if (phases != null) {
+            phases.next();
+        }
+
+        // instead of idling, the calling thread runs the first unit, then the units no
+        // thread has started yet, from the tail of the queue (running a started task is a no-op)
+        tasks.get(0).run();
+        for (int index = size - 1; index > 0; index--) {
+            tasks.get(index).run();
         }
-        Map<Action, Future<ActionReport>> workToReportFuturesMap = new HashMap<>();
-        for (int index = 0; index < actionUnits.size(); index++) {
-            workToReportFuturesMap.put(actionUnits.get(index), futures.get(index));
+        if (phases != null) {
+            phases.next();
         }
 
-        // gather reports
-        List<ActionReport> actionReports = new ArrayList<>();
-        for (Map.Entry<Action, Future<ActionReport>> entry : workToReportFuturesMap.entrySet()) {
+        // gather reports, in the order of action units
+        List<ActionReport> actionReports = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
             try {
-                actionReports.add(entry.getValue().get());
+                actionReports.add(tasks.get(index).get());
             } catch (InterruptedException e) {
-                String message = String.format("The parallel flow was interrupted while waiting for the result of action unit '%s'", entry.getKey().getName());
+                tasks.forEach(task -> task.cancel(true));
+                String message = String.format("The parallel flow was interrupted while waiting for the result of action unit '%s'", actionUnits.get(index).getName());
                 throw new RuntimeException(message, e);
             } catch (ExecutionException e) {
-                String message = String.format("Unable to execute action unit '%s'", entry.getKey().getName());
+                String message = String.format("Unable to execute action unit '%s'", actionUnits.get(index).getName());
                 throw new RuntimeException(message, e);
             }
         }
+        if (phases != null) {
+            phases.next();
+        }
 
         return actionReports;
     }
+
+    CompletionStage<List<ActionReport>> executeInParallelAsync(List<Action> actionUnits, ActionContext actionContext) {
+        ExecutorService workExecutor = resolveWorkExecutor();
+        if (concurrencyLimiter != null) {
+            return new LimitedExecution(workExecutor, actionUnits, actionContext).start();
+        }
+        List<CompletableFuture<ActionReport>> futures = new ArrayList<>(actionUnits.size());
+        actionUnits.forEach(action -> futures.add(ActionUnits.executeAsync(action, actionContext, workExecutor)));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(done -> {
+            List<ActionReport> actionReports = new ArrayList<>(futures.size());
+            futures.forEach(future -> actionReports.add(future.join()));
+            return actionReports;
+        });
+    }
+
+    /*
+     * Submit all action units and count their reports as they complete, until enough
+     * units succeeded or too many failed for the policy to be met. Units that have not
+     * started yet are then cancelled, running ones are interrupted. A unit throwing an
+     * exception is counted as failed.
+     */
+    ParallelFlowReport executeInParallel(List<Action> actionUnits, ActionContext actionContext, CompletionPolicy completionPolicy) {
+        ExecutorService workExecutor = resolveWorkExecutor();
+        ExecutionListener listener = executionListener();
+        if (listener == null) {
+            return executeInParallel(workExecutor, actionUnits, actionContext, completionPolicy, null);
+        }
+        listener.beforeParallelUnits(flowName, actionContext, actionUnits.size());
+        Phases phases = new Phases();
+        try {
+            return executeInParallel(workExecutor, actionUnits, actionContext, completionPolicy, phases);
+        } finally {
+            listener.afterParallelUnits(flowName, actionContext, actionUnits.size(), phases.nanos[0], phases.nanos[1], phases.nanos[2]);
+        }
+    }
+
+    private ParallelFlowReport executeInParallel(ExecutorService workExecutor, List<Action> actionUnits, ActionContext actionContext,
+                                                 CompletionPolicy completionPolicy, Phases phases) {
+        int size = actionUnits.size();
+        int required = completionPolicy.requiredSuccesses(size);
+        AtomicIntegerArray states = new AtomicIntegerArray(size); // 0: not started, 1: started, 2: cancelled
+        ActionReport[] actionReports = new ActionReport[size];
+        Map<Future<ActionReport>, Integer> futures = new IdentityHashMap<>(size);
+        CompletionService<ActionReport> completionService = new ExecutorCompletionService<>(workExecutor);
+        int successes = 0, failures = 0;
+        try {
+            for (int index = 0; index < size; index++) {
+                int unit = index;
+                Callable<ActionReport> task = ActionUnits.task(actionUnits.get(index), actionContext);
+                futures.put(completionService.submit(() -> states.compareAndSet(unit, 0, 1) ? task.call() : null), index);
+            }
+            if (phases != null) {
+                phases.next();
+            }
+            while (successes < required && size - failures >= required) {
+                Future<ActionReport> future = completionService.take();
+                int index = futures.get(future);
+                ActionReport actionReport;
+                try {
+                    actionReport = future.get();
+                } catch (ExecutionException e) {
+                    actionReport = new DefaultActionReport(ActionStatus.FAILED, actionContext, e.getCause());
+                }
+                actionReports[index] = actionReport;
+                if (ActionStatus.COMPLETED.equals(actionReport.getStatus())) {
+                    successes++;
+                } else {
+                    failures++;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("The parallel flow was interrupted while executing action units", e);
+        } finally {
+            futures.keySet().forEach(future -> future.cancel(true));
+        }
+        if (phases != null) {
+            phases.next();
+        }
+
+        ParallelFlowReport parallelFlowReport = countedReport(actionReports, states, successes >= required);
+        if (phases != null) {
+            phases.next();
+        }
+        return parallelFlowReport;
+    }
+
+    /*
+     * Asynchronous counterpart of the policy-driven execution: units are started without
+     * waiting for them and their reports are counted by completion callbacks, the returned
+     * stage being completed as soon as the policy is met or can no longer be met. Units
+     * that have not started yet are then cancelled, running synchronous units are interrupted.
+     */
+    CompletionStage<ParallelFlowReport> executeInParallelAsync(List<Action> actionUnits, ActionContext actionContext, CompletionPolicy completionPolicy) {
+        ExecutorService workExecutor = resolveWorkExecutor();
+        ExecutorPools executorPools = ExecutorPools.current();
+        ExecutionListener listener = executionListener();
+        int size = actionUnits.size();
+        PolicyCount count = new PolicyCount(size, completionPolicy.requiredSuccesses(size), actionContext, listener);
+        if (listener != null) {
+            listener.beforeParallelUnits(flowName, actionContext, size);
+        }
+        try {
+            for (int index = 0; index < size && !count.result.isDone(); index++) {
+                int unit = index;
+                Action action = actionUnits.get(index);
+                if (action instanceof AsyncAction) {
+                    count.states.set(unit, 1);
+                    count.start(unit, () -> ExecutorPools.executeAsync((AsyncAction) action, actionContext));
+                } else {
+                    count.submitted(workExecutor.submit(() -> {
+                        if (count.states.compareAndSet(unit, 0, 1)) {
+                            count.start(unit, () -> ExecutorPools.within(executorPools, () -> FlowInterpreter.executeAsync(action, actionContext)));
+                        }
+                    }));
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            count.cancel();
+            throw e;
+        }
+        count.submittedAll();
+        return count.result;
+    }
+
+    private static ParallelFlowReport countedReport(ActionReport[] actionReports, AtomicIntegerArray states, boolean met) {
+        List<ActionReport> countedReports = new ArrayList<>();
+        List<ParallelFlowReport.UnitState> unitStates = new ArrayList<>(actionReports.length);
+        for (int index = 0; index < actionReports.length; index++) {
+            if (actionReports[index] != null) {
+                countedReports.add(actionReports[index]);
+                unitStates.add(ParallelFlowReport.UnitState.COUNTED);
+            } else if (states.compareAndSet(index, 0, 2)) {
+                unitStates.add(ParallelFlowReport.UnitState.CANCELLED);
+            } else {
+                unitStates.add(ParallelFlowReport.UnitState.PENDING);
+            }
+        }
+        return new ParallelFlowReport(countedReports, unitStates, met ? ActionStatus.COMPLETED : ActionStatus.FAILED);
+    }
+
+    boolean hasConcurrencyLimiter() {
+        return concurrencyLimiter != null;
+    }
+
+    private static ExecutionListener executionListener() {
+        ExecutorPools executorPools = ExecutorPools.current();
+        return executorPools == null ? null : executorPools.getExecutionListener();
+    }
+
+    /*
+     * Use the executor service given to the flow if any, otherwise the default
+     * pool of the engine running the flow.
+     */
+    private ExecutorService resolveWorkExecutor() {
+        if (this.workExecutor != null) {
+            return this.workExecutor;
+        }
+        ExecutorPools executorPools = ExecutorPools.current();
+        ExecutorPool defaultPool = executorPools == null ? null : executorPools.getDefault();
+        if (defaultPool == null) {
+            throw new IllegalStateException("No executor service was given to the parallel flow and it is not run by a workflow engine with a default executor pool");
+        }
+        return defaultPool.getExecutorService();
+    }
+
+    /*
+     * Submit action units as long as the limiter grants permits, then submit the
+     * remaining ones as earlier units complete. Permits are released by the tasks
+     * themselves, with the observed latency and status of the unit. The submit phase
+     * covers the first batch of units, later submissions are part of the wait phase.
+     */
+    private List<ActionReport> executeWithinLimit(ExecutorService workExecutor, List<Action> actionUnits, ActionContext actionContext, Phases phases) {
+        int size = actionUnits.size();
+        ActionReport[] actionReports = new ActionReport[size];
+        Map<Future<Integer>, Integer> futures = new IdentityHashMap<>(size);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(workExecutor);
+        int next = 0, running = 0;
+        try {
+            while (next < size || running > 0) {
+                if (next < size && running == 0) {
+                    concurrencyLimiter.acquire();
+                    futures.put(completionService.submit(limitedTask(actionUnits.get(next), next, actionContext, actionReports)), next);
+                    next++;
+                    running++;
+                }
+                while (next < size && concurrencyLimiter.tryAcquire()) {
+                    futures.put(completionService.submit(limitedTask(actionUnits.get(next), next, actionContext, actionReports)), next);
+                    next++;
+                    running++;
+                }
+                if (phases != null && phases.phase == 0) {
+                    phases.next();
+                }
+                Future<Integer> future = completionService.take();
+                running--;
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    String message = String.format("Unable to execute action unit '%s'", actionUnits.get(futures.get(future)).getName());
+                    throw new RuntimeException(message, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("The parallel flow was interrupted while executing action units", e);
+        } finally {
+            for (Future<Integer> future : futures.keySet()) {
+                if (future.cancel(false)) {
+                    concurrencyLimiter.release();
+                }
+            }
+        }
+        if (phases != null) {
+            phases.next();
+        }
+        List<ActionReport> reports = new ArrayList<>(Arrays.asList(actionReports));
+        if (phases != null) {
+            phases.next();
+        }
+        return reports;
+    }
+
+    private Callable<Integer> limitedTask(Action action, int index, ActionContext actionContext, ActionReport[] actionReports) {
+        Callable<ActionReport> task = ActionUnits.task(action, actionContext);
+        return () -> {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                ActionReport actionReport = task.call();
+                actionReports[index] = actionReport;
+                failed = actionReport == null || ActionStatus.FAILED.equals(actionReport.getStatus());
+                return index;
+            } finally {
+                concurrencyLimiter.release(System.nanoTime() - start, TimeUnit.NANOSECONDS, failed);
+            }
+        };
+    }
+
+    /*
+     * Reports of an asynchronous policy-driven execution, counted as units complete.
+     * Counters, phases and submitted tasks are guarded by the instance, the result is
+     * completed (and the listener notified) outside of the lock.
+     */
+    private final class PolicyCount {
+
+        private final int size, required;
+        private final ActionContext actionContext;
+        private final ExecutionListener listener;
+        private final Phases phases;
+        private final AtomicIntegerArray states; // 0: not started, 1: started, 2: cancelled
+        private final ActionReport[] actionReports;
+        private final List<Future<?>> tasks = new ArrayList<>();
+        private final CompletableFuture<ParallelFlowReport> result = new CompletableFuture<>();
+        private int successes, failures;
+        private boolean decided;
+
+        private PolicyCount(int size, int required, ActionContext actionContext, ExecutionListener listener) {
+            this.size = size;
+            this.required = required;
+            this.actionContext = actionContext;
+            this.listener = listener;
+            this.phases = listener == null ? null : new Phases();
+            this.states = new AtomicIntegerArray(size);
+            this.actionReports = new ActionReport[size];
+        }
+
+        private void start(int unit, Supplier<CompletionStage<ActionReport>> execution) {
+            try {
+                execution.get().whenComplete((actionReport, error) -> count(unit, actionReport, error));
+            } catch (RuntimeException | Error e) {
+                count(unit, null, e);
+            }
+        }
+
+        private void submitted(Future<?> task) {
+            synchronized (this) {
+                if (!decided) {
+                    tasks.add(task);
+                    return;
+                }
+            }
+            task.cancel(true);
+        }
+
+        private void submittedAll() {
+            ParallelFlowReport parallelFlowReport;
+            synchronized (this) {
+                if (phases != null && phases.phase == 0) {
+                    phases.next();
+                }
+                parallelFlowReport = decide();
+            }
+            complete(parallelFlowReport);
+        }
+
+        private void count(int unit, ActionReport actionReport, Throwable error) {
+            ParallelFlowReport parallelFlowReport;
+            synchronized (this) {
+                if (decided) {
+                    return;
+                }
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    actionReport = new DefaultActionReport(ActionStatus.FAILED, actionContext, cause);
+                }
+                actionReports[unit] = actionReport;
+                if (actionReport != null && ActionStatus.COMPLETED.equals(actionReport.getStatus())) {
+                    successes++;
+                } else {
+                    failures++;
+                }
+                parallelFlowReport = decide();
+            }
+            complete(parallelFlowReport);
+        }
+
+        private void cancel() {
+            boolean undecided;
+            synchronized (this) {
+                undecided = !decided;
+                decided = true;
+            }
+            tasks.forEach(task -> task.cancel(true));
+            if (undecided && listener != null) {
+                listener.afterParallelUnits(flowName, actionContext, size, phases.nanos[0], phases.nanos[1], phases.nanos[2]);
+            }
+        }
+
+        /*
+         * Build the report once the policy is met or can no longer be met, null otherwise.
+         */
+        private ParallelFlowReport decide() {
+            if (decided || (successes < required && size - failures >= required)) {
+                return null;
+            }
+            decided = true;
+            tasks.forEach(task -> task.cancel(true));
+            if (phases != null) {
+                while (phases.phase < 2) {
+                    phases.next();
+                }
+            }
+            ParallelFlowReport parallelFlowReport = countedReport(actionReports, states, successes >= required);
+            if (phases != null) {
+                phases.next();
+            }
+            return parallelFlowReport;
+        }
+
+        private void complete(ParallelFlowReport parallelFlowReport) {
+            if (parallelFlowReport == null) {
+                return;
+            }
+            if (listener != null) {
+                listener.afterParallelUnits(flowName, actionContext, size, phases.nanos[0], phases.nanos[1], phases.nanos[2]);
+            }
+            result.complete(parallelFlowReport);
+        }
+    }
+
+    /*
+     * Asynchronous counterpart of the execution within the concurrency limit: units are
+     * started as long as the limiter grants permits, then as earlier units complete. When
+     * no unit of the flow is in flight, the next one waits for a permit released by other
+     * flows sharing the limiter, without holding a thread. State is guarded by the instance.
+     */
+    private final class LimitedExecution {
+
+        private final ExecutorService workExecutor;
+        private final List<Action> actionUnits;
+        private final ActionContext actionContext;
+        private final ExecutorPools executorPools = ExecutorPools.current();
+        private final ExecutionListener listener = executionListener();
+        private final Phases phases;
+        private final ActionReport[] actionReports;
+        private final CompletableFuture<List<ActionReport>> result = new CompletableFuture<>();
+        private int next, running, completed;
+
+        private LimitedExecution(ExecutorService workExecutor, List<Action> actionUnits, ActionContext actionContext) {
+            this.workExecutor = workExecutor;
+            this.actionUnits = actionUnits;
+            this.actionContext = actionContext;
+            this.phases = listener == null ? null : new Phases();
+            this.actionReports = new ActionReport[actionUnits.size()];
+        }
+
+        private CompletionStage<List<ActionReport>> start() {
+            if (actionUnits.isEmpty()) {
+                return CompletableFuture.completedFuture(new ArrayList<>());
+            }
+            if (listener != null) {
+                listener.beforeParallelUnits(flowName, actionContext, actionUnits.size());
+            }
+            submit();
+            synchronized (this) {
+                if (phases != null && phases.phase == 0) {
+                    phases.next();
+                }
+            }
+            return result;
+        }
+
+        private void submit() {
+            List<Integer> granted = new ArrayList<>();
+            int waiting = -1;
+            synchronized (this) {
+                if (result.isDone()) {
+                    return;
+                }
+                while (next < actionUnits.size() && concurrencyLimiter.tryAcquire()) {
+                    granted.add(next++);
+                    running++;
+                }
+                if (next < actionUnits.size() && running == 0) {
+                    waiting = next++;
+                    running++;
+                }
+            }
+            granted.forEach(this::execute);
+            if (waiting >= 0) {
+                int index = waiting;
+                concurrencyLimiter.acquireAsync().thenRun(() -> {
+                    if (result.isDone()) {
+                        concurrencyLimiter.release();
+                        return;
+                    }
+                    execute(index);
+                    submit();
+                });
+            }
+        }
+
+        /*
+         * Execute a unit holding a permit, which is released with the latency and status
+         * of the unit, or without adjusting the limit if the unit could not be started.
+         */
+        private void execute(int index) {
+            Action action = actionUnits.get(index);
+            Supplier<CompletionStage<ActionReport>> execution = () -> {
+                long start = System.nanoTime();
+                CompletionStage<ActionReport> stage;
+                try {
+                    stage = ExecutorPools.within(executorPools, () -> action instanceof AsyncAction
+                            ? ExecutorPools.executeAsync((AsyncAction) action, actionContext)
+                            : FlowInterpreter.executeAsync(action, actionContext));
+                } catch (RuntimeException | Error e) {
+                    CompletableFuture<ActionReport> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    stage = failed;
+                }
+                return stage.whenComplete((actionReport, error) -> concurrencyLimiter.release(System.nanoTime() - start, TimeUnit.NANOSECONDS,
+                        error != null || actionReport == null || ActionStatus.FAILED.equals(actionReport.getStatus())));
+            };
+            try {
+                CompletableFuture<ActionReport> future = action instanceof AsyncAction
+                        ? execution.get().toCompletableFuture()
+                        : CompletableFuture.supplyAsync(execution, workExecutor).thenCompose(stage -> stage);
+                future.whenComplete((actionReport, error) -> completed(index, actionReport, error));
+            } catch (RuntimeException | Error e) { // rejected by the executor service
+                concurrencyLimiter.release();
+                completed(index, null, e);
+            }
+        }
+
+        private void completed(int index, ActionReport actionReport, Throwable error) {
+            boolean done;
+            synchronized (this) {
+                running--;
+                if (result.isDone()) {
+                    return;
+                }
+                actionReports[index] = actionReport;
+                done = error != null || ++completed == actionUnits.size();
+                if (done && phases != null) {
+                    while (phases.phase < 2) {
+                        phases.next();
+                    }
+                }
+            }
+            if (!done) {
+                submit();
+                return;
+            }
+            if (error == null) {
+                List<ActionReport> reports = new ArrayList<>(Arrays.asList(actionReports));
+                notifyListener();
+                result.complete(reports);
+            } else {
+                notifyListener();
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                String message = String.format("Unable to execute action unit '%s'", actionUnits.get(index).getName());
+                result.completeExceptionally(new RuntimeException(message, cause));
+            }
+        }
+
+        private void notifyListener() {
+            if (listener != null) {
+                synchronized (this) {
+                    phases.next();
+                }
+                listener.afterParallelUnits(flowName, actionContext, actionUnits.size(), phases.nanos[0], phases.nanos[1], phases.nanos[2]);
+            }
+        }
+    }
+
+    /*
+     * Durations of the submit, wait and join phases of an execution, for the execution listener.
+     */
+    private static final class Phases {
+
+        private final long[] nanos = new long[3];
+        private long mark = System.nanoTime();
+        private int phase;
+
+        private void next() {
+            long now = System.nanoTime();
+            nanos[phase++] = now - mark;
+            mark = now;
+        }
+    }
 }
@@ -28,17 +28,46 @@ import org.jeasy.flows.action.ActionReport;
 import org.jeasy.flows.action.ActionStatus;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Aggregate report of the partial reports of action units executed in a parallel flow.
  *
+ * When the flow has a {@link CompletionPolicy} other than {@link CompletionPolicy#all()},
+ * only the reports of the units counted to decide the outcome of the flow are kept, and
+ * the state of each unit is available with {@link #getUnitStates()}.
+ *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
 public class ParallelFlowReport implements ActionReport {
 
+    /**
+     * State of an action unit when its parallel flow completed.
+     */
+    public enum UnitState {
+
+        /**
+         * The unit completed and its report was counted.
+         */
+        COUNTED,
+
+        /**
+         * The unit was cancelled before it started.
+         */
+        CANCELLED,
+
+        /**
+         * The unit was started but its report was not counted: it was still running
+         * (and was interrupted) or it completed after the outcome of the flow was decided.
+         */
+        PENDING
+
+    }
+
     private final List<ActionReport> reports;
+    private final List<UnitState> unitStates; // null when all units are counted
+    private final ActionStatus status; // null when derived from reports
 
     /**
      * Create a new {@link ParallelFlowReport}.
@@ -53,7 +82,13 @@ public class ParallelFlowReport implements ActionReport {
      * @param reports of works executed in parallel
      */
     public ParallelFlowReport(List<ActionReport> reports) {
+        this(reports, null, null);
+    }
+
+    ParallelFlowReport(List<ActionReport> reports, List<UnitState> unitStates, ActionStatus status) {
         this.reports = reports;
+        this.unitStates = unitStates;
+        this.status = status;
     }
 
     /**
@@ -65,6 +100,33 @@ public class ParallelFlowReport implements ActionReport {
         return reports;
     }
 
+    /**
+     * Get the state of each action unit, in the order units were given to the flow.
+     *
+     * @return states of action units
+     */
+    public List<UnitState> getUnitStates() {
+        return unitStates != null ? unitStates : Collections.nCopies(reports.size(), UnitState.COUNTED);
+    }
+
+    /**
+     * Get the indexes of the action units in the given state, in the order units
+     * were given to the flow.
+     *
+     * @param unitState of the units
+     * @return indexes of the units in the given state
+     */
+    public List<Integer> getUnits(UnitState unitState) {
+        List<UnitState> states = getUnitStates();
+        List<Integer> units = new ArrayList<>();
+        for (int index = 0; index < states.size(); index++) {
+            if (states.get(index) == unitState) {
+                units.add(index);
+            }
+        }
+        return units;
+    }
+
     void add(ActionReport actionReport) {
         reports.add(actionReport);
     }
@@ -82,10 +144,17 @@ public class ParallelFlowReport implements ActionReport {
      *     <li>{@link ActionStatus#COMPLETED}: If all action units have successfully completed</li>
      *     <li>{@link ActionStatus#FAILED}: If one of the action units has failed</li>
      * </ul>
+     *
+     * unless the flow has another {@link CompletionPolicy}, in which case the flow is
+     * completed if the condition of the policy was met.
+     *
      * @return workflow status
      */
     @Override
     public ActionStatus getStatus() {
+        if (status != null) {
+            return status;
+        }
         for (ActionReport report : reports) {
             if (report.getStatus().equals(ActionStatus.FAILED)) {
                 return ActionStatus.FAILED;
@@ -113,7 +182,7 @@ public class ParallelFlowReport implements ActionReport {
     /**
      * The parallel flow context is the union of all partial contexts. In a parallel
      * flow, each action unit should have its own unique keys to avoid key overriding
-     * when merging partial contexts.
+     * when merging partial contexts. Lazy entries are merged without computing their value.
      * 
      * @return the union of all partial contexts
      */
@@ -121,10 +190,7 @@ public class ParallelFlowReport implements ActionReport {
     public ActionContext getActionContext() {
         ActionContext actionContext = new ActionContext();
         for (ActionReport report : reports) {
-            ActionContext partialContext = report.getActionContext();
-            for (Map.Entry<String, Object> entry : partialContext.getEntrySet()) {
-                actionContext.put(entry.getKey(), entry.getValue());
-            }
+            actionContext.putAll(report.getActionContext());
         }
         return actionContext;
     }
@@ -33,6 +33,8 @@ import java.util.UUID;
 
 /**
  * A repeat flow executes an action repeatedly until its report satisfies a given predicate.
+ * When configured to roll back on failure, the action context is restored to its state
+ * before an iteration if that iteration fails.
  *
  * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
  */
@@ -40,11 +42,23 @@ public class RepeatFlow extends AbstractWorkFlow {
 
     private final Action action;
     private final ActionReportPredicate predicate;
+    private final int times;
+    private final boolean rollbackOnFailure;
 
     RepeatFlow(String name, Action action, ActionReportPredicate predicate) {
+        this(name, action, predicate, 0);
+    }
+
+    RepeatFlow(String name, Action action, ActionReportPredicate predicate, int times) {
+        this(name, action, predicate, times, false);
+    }
+
+    RepeatFlow(String name, Action action, ActionReportPredicate predicate, int times, boolean rollbackOnFailure) {
         super(name);
         this.action = action;
         this.predicate = predicate;
+        this.times = times;
+        this.rollbackOnFailure = rollbackOnFailure;
     }
 
     /**
@@ -52,12 +66,44 @@ public class RepeatFlow extends AbstractWorkFlow {
      */
     public ActionReport execute(ActionContext actionContext) {
         ActionReport actionReport;
+        if (times > 0) { // count repetitions per execution so that the flow can be executed more than once
+            actionReport = null;
+            for (int i = 0; i < times; i++) {
+                actionReport = executeIteration(actionContext);
+            }
+            return actionReport;
+        }
         do {
-            actionReport = action.execute(actionContext);
+            actionReport = executeIteration(actionContext);
         } while (predicate.apply(actionReport));
         return actionReport;
     }
 
+    private ActionReport executeIteration(ActionContext actionContext) {
+        return rollbackOnFailure ? ActionUnits.executeWithRollback(action, actionContext) : ActionUnits.execute(action, actionContext);
+    }
+
+    @Override
+    FlowInterpreter.Frame newFrame(ActionContext actionContext) {
+        return new FlowInterpreter.Frame() {
+            private int executions;
+            private ActionContext.Snapshot snapshot;
+
+            @Override
+            Action advance(ActionReport unitReport) {
+                ActionUnits.rollbackIfFailed(unitReport, actionContext, snapshot);
+                if (executions > 0 && (times > 0 ? executions == times : !predicate.apply(unitReport))) {
+                    return complete(unitReport);
+                }
+                executions++;
+                if (rollbackOnFailure) {
+                    snapshot = actionContext.snapshot();
+                }
+                return action;
+            }
+        };
+    }
+
     public static class Builder {
 
         private Builder() {
@@ -82,6 +128,14 @@ public class RepeatFlow extends AbstractWorkFlow {
         }
 
         public interface BuildStep {
+            /**
+             * Snapshot the action context before each repetition and restore it if
+             * the repetition fails.
+             *
+             * @return the builder instance
+             */
+            BuildStep rollbackOnFailure();
+
             RepeatFlow build();
         }
 
@@ -90,6 +144,8 @@ public class RepeatFlow extends AbstractWorkFlow {
             private String name;
             private Action action;
             private ActionReportPredicate predicate;
+            private int times;
+            private boolean rollbackOnFailure;
 
             BuildSteps() {
                 this.name = UUID.randomUUID().toString();
@@ -112,18 +168,28 @@ public class RepeatFlow extends AbstractWorkFlow {
             @Override
             public BuildStep until(ActionReportPredicate predicate) {
                 this.predicate = predicate;
+                this.times = 0;
                 return this;
             }
 
             @Override
             public BuildStep times(int times) {
-                until(ActionReportPredicate.TimesPredicate.times(times));
+                if (times < 1) {
+                    throw new IllegalArgumentException("The number of repetitions must be positive");
+                }
+                this.times = times;
+                return this;
+            }
+
+            @Override
+            public BuildStep rollbackOnFailure() {
+                this.rollbackOnFailure = true;
                 return this;
             }
 
             @Override
             public RepeatFlow build() {
-                return new RepeatFlow(name, action, predicate);
+                return new RepeatFlow(name, action, predicate, times, rollbackOnFailure);
             }
         }
 
@@ -58,16 +58,37 @@ public class SequentialFlow extends AbstractWorkFlow {
      */
     public ActionReport execute(ActionContext actionContext) {
         ActionReport actionReport = null;
-        for (Action action : actionUnits) {
-            actionReport = action.execute(actionContext);
+        for (int i = 0; i < actionUnits.size(); i++) { // indexed to avoid an iterator per execution
+            Action action = actionUnits.get(i);
+            actionReport = ActionUnits.execute(action, actionContext);
             if (actionReport != null && FAILED.equals(actionReport.getStatus())) {
-                LOGGER.info("Action unit ''{}'' has failed, skipping subsequent action units", action.getName());
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Action unit ''{}'' has failed, skipping subsequent action units", action.getName());
+                }
                 break;
             }
         }
         return actionReport;
     }
 
+    @Override
+    FlowInterpreter.Frame newFrame(ActionContext actionContext) {
+        return new FlowInterpreter.Frame() {
+            private int next;
+
+            @Override
+            Action advance(ActionReport unitReport) {
+                if (next > 0 && unitReport != null && FAILED.equals(unitReport.getStatus())) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Action unit ''{}'' has failed, skipping subsequent action units", actionUnits.get(next - 1).getName());
+                    }
+                    return complete(unitReport);
+                }
+                return next < actionUnits.size() ? actionUnits.get(next++) : complete(unitReport);
+            }
+        };
+    }
+
     public static class Builder {
 
         private Builder() {
@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.NoOpAction;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * A switch flow is defined by 3 artifacts:
+ *
+ * <ul>
+ *     <li>A key extractor evaluated once against the action context</li>
+ *     <li>A set of cases mapping keys to the action to execute</li>
+ *     <li>The action to execute if no case matches the key (optional)</li>
+ * </ul>
+ *
+ * Cases are dispatched through a hash table built when the flow is created, so the
+ * cost of selecting a branch does not grow with the number of cases, unlike a chain
+ * of nested {@link ConditionalFlow}s.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ * @see SwitchFlow.Builder
+ */
+public class SwitchFlow extends AbstractWorkFlow {
+
+    private final Function<ActionContext, ?> keyExtractor;
+    private final Map<Object, Action> cases;
+    private final Action defaultAction;
+
+    SwitchFlow(String name, Function<ActionContext, ?> keyExtractor, Map<Object, Action> cases, Action defaultAction) {
+        super(name);
+        this.keyExtractor = keyExtractor;
+        this.cases = new HashMap<>((int) (cases.size() / 0.75f) + 1);
+        this.cases.putAll(cases);
+        this.defaultAction = defaultAction;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ActionReport execute(ActionContext actionContext) {
+        return ActionUnits.execute(select(actionContext), actionContext);
+    }
+
+    Action select(ActionContext actionContext) {
+        Object key = keyExtractor.apply(actionContext);
+        Action action = key == null ? null : cases.get(key);
+        return action == null ? defaultAction : action;
+    }
+
+    @Override
+    FlowInterpreter.Frame newFrame(ActionContext actionContext) {
+        return new FlowInterpreter.Frame() {
+            private boolean selected;
+
+            @Override
+            Action advance(ActionReport unitReport) {
+                if (selected) {
+                    return complete(unitReport);
+                }
+                selected = true;
+                return select(actionContext);
+            }
+        };
+    }
+
+    public static class Builder {
+
+        private Builder() {
+            // force usage of static method aNewSwitchFlow
+        }
+
+        public static NameStep aNewSwitchFlow() {
+            return new BuildSteps();
+        }
+
+        public interface NameStep extends OnStep {
+            OnStep named(String name);
+        }
+
+        public interface OnStep {
+            /**
+             * Switch on the value of the given key in the action context.
+             *
+             * @param contextKey of the value to switch on
+             * @return the builder instance
+             */
+            CaseStep on(String contextKey);
+
+            /**
+             * Switch on the key computed by the given extractor. The extractor is
+             * evaluated once per execution.
+             *
+             * @param keyExtractor computing the key to switch on
+             * @return the builder instance
+             */
+            CaseStep on(Function<ActionContext, ?> keyExtractor);
+        }
+
+        public interface CaseStep {
+            OtherwiseStep when(Object key, Action action);
+        }
+
+        public interface OtherwiseStep extends CaseStep, BuildStep {
+            BuildStep otherwise(Action action);
+        }
+
+        public interface BuildStep {
+            SwitchFlow build();
+        }
+
+        private static class BuildSteps implements NameStep, OnStep, CaseStep, OtherwiseStep, BuildStep {
+
+            private String name;
+            private Function<ActionContext, ?> keyExtractor;
+            private final Map<Object, Action> cases;
+            private Action defaultAction;
+
+            BuildSteps() {
+                this.name = UUID.randomUUID().toString();
+                this.cases = new LinkedHashMap<>();
+                this.defaultAction = new NoOpAction();
+            }
+
+            @Override
+            public OnStep named(String name) {
+                this.name = name;
+                return this;
+            }
+
+            @Override
+            public CaseStep on(String contextKey) {
+                return on(actionContext -> actionContext.get(contextKey));
+            }
+
+            @Override
+            public CaseStep on(Function<ActionContext, ?> keyExtractor) {
+                this.keyExtractor = keyExtractor;
+                return this;
+            }
+
+            @Override
+            public OtherwiseStep when(Object key, Action action) {
+                if (key == null) {
+                    throw new IllegalArgumentException("Case key must not be null, use otherwise to define the default branch");
+                }
+                if (this.cases.putIfAbsent(key, action) != null) {
+                    throw new IllegalArgumentException(String.format("Duplicate case '%s'", key));
+                }
+                return this;
+            }
+
+            @Override
+            public BuildStep otherwise(Action action) {
+                this.defaultAction = action;
+                return this;
+            }
+
+            @Override
+            public SwitchFlow build() {
+                return new SwitchFlow(this.name, this.keyExtractor, this.cases, this.defaultAction);
+            }
+        }
+    }
+}
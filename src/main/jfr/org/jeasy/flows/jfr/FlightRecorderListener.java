@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.jfr;
+
+import jdk.jfr.EventType;
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.executor.ExecutionListener;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Execution listener committing flight recorder events. Events are only created when
+ * their type is enabled in the running recordings, so that a disabled event type costs
+ * a volatile read per notification.
+ *
+ * Synchronous actions and parallel flows are notified before and after their execution
+ * on the same thread, in nested order: their events are kept in thread-local stacks
+ * between both notifications. Asynchronous actions complete on another thread: their
+ * events are kept by action and context until they complete.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+final class FlightRecorderListener implements ExecutionListener {
+
+    private static final EventType WORKFLOW_EVENTS = EventType.getEventType(WorkFlowEvent.class);
+    private static final EventType ACTION_EVENTS = EventType.getEventType(ActionEvent.class);
+    private static final EventType PARALLEL_FLOW_EVENTS = EventType.getEventType(ParallelFlowEvent.class);
+
+    private final Map<ActionContext, Run> runs = new ConcurrentHashMap<>();
+    private final Map<AsyncExecution, ArrayDeque<ActionEvent>> asyncActionEvents = new ConcurrentHashMap<>();
+    private final ThreadLocal<ArrayDeque<Frame<ActionEvent>>> actionFrames = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<ArrayDeque<Frame<ParallelFlowEvent>>> parallelFlowFrames = ThreadLocal.withInitial(ArrayDeque::new);
+
+    @Override
+    public void beforeWorkFlow(Action workFlow, ActionContext actionContext) {
+        if (!WORKFLOW_EVENTS.isEnabled() && !ACTION_EVENTS.isEnabled() && !PARALLEL_FLOW_EVENTS.isEnabled()) {
+            return;
+        }
+        WorkFlowEvent event = null;
+        if (WORKFLOW_EVENTS.isEnabled()) {
+            event = new WorkFlowEvent();
+            event.flowName = workFlow.getName();
+            event.begin();
+        }
+        runs.put(actionContext, new Run(workFlow.getName(), event));
+    }
+
+    @Override
+    public void afterWorkFlow(Action workFlow, ActionContext actionContext, ActionReport actionReport, Throwable error) {
+        Run run = runs.remove(actionContext);
+        if (run == null || run.event == null) {
+            return;
+        }
+        WorkFlowEvent event = run.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.status = statusOf(actionReport);
+            event.errorType = errorTypeOf(actionReport, error);
+            event.commit();
+        }
+    }
+
+    @Override
+    public void beforeAction(Action action, ActionContext actionContext) {
+        if (!ACTION_EVENTS.isEnabled()) {
+            return;
+        }
+        ActionEvent event = new ActionEvent();
+        event.flowName = flowNameOf(actionContext);
+        event.node = action.getName();
+        event.begin();
+        if (action instanceof AsyncAction) {
+            asyncActionEvents.computeIfAbsent(new AsyncExecution(action, actionContext), execution -> new ArrayDeque<>(1))
+                    .addLast(event);
+        } else {
+            actionFrames.get().addLast(new Frame<>(action, actionContext, event));
+        }
+    }
+
+    @Override
+    public void afterAction(Action action, ActionContext actionContext, ActionReport actionReport, Throwable error, long durationNanos) {
+        ActionEvent event;
+        if (action instanceof AsyncAction) {
+            event = removeAsync(new AsyncExecution(action, actionContext));
+        } else {
+            event = pop(actionFrames.get(), action, actionContext);
+        }
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.status = statusOf(actionReport);
+            event.errorType = errorTypeOf(actionReport, error);
+            event.executionTime = durationNanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void beforeParallelUnits(String flowName, ActionContext actionContext, int units) {
+        if (!PARALLEL_FLOW_EVENTS.isEnabled()) {
+            return;
+        }
+        ParallelFlowEvent event = new ParallelFlowEvent();
+        event.flowName = flowNameOf(actionContext);
+        event.node = flowName;
+        event.units = units;
+        event.begin();
+        parallelFlowFrames.get().addLast(new Frame<>(flowName, actionContext, event));
+    }
+
+    @Override
+    public void afterParallelUnits(String flowName, ActionContext actionContext, int units, long submitNanos, long waitNanos, long joinNanos) {
+        ParallelFlowEvent event = pop(parallelFlowFrames.get(), flowName, actionContext);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.submitTime = submitNanos;
+            event.waitTime = waitNanos;
+            event.joinTime = joinNanos;
+            event.commit();
+        }
+    }
+
+    int getRunningWorkFlows() {
+        return runs.size();
+    }
+
+    int getRunningAsyncActions() {
+        return asyncActionEvents.size();
+    }
+
+    /*
+     * Remove the oldest event of the given asynchronous execution, if one was kept
+     * (its event type might have been enabled after the execution started).
+     */
+    private ActionEvent removeAsync(AsyncExecution execution) {
+        ActionEvent[] event = new ActionEvent[1];
+        asyncActionEvents.computeIfPresent(execution, (key, events) -> {
+            event[0] = events.pollFirst();
+            return events.isEmpty() ? null : events;
+        });
+        return event[0];
+    }
+
+    private String flowNameOf(ActionContext actionContext) {
+        Run run = runs.get(actionContext);
+        return run == null ? null : run.flowName;
+    }
+
+    /*
+     * Pop the event of the given execution from the top of the stack, if it was pushed
+     * (its event type might have been enabled after the execution started).
+     */
+    private static <E> E pop(ArrayDeque<Frame<E>> frames, Object execution, ActionContext actionContext) {
+        Frame<E> frame = frames.peekLast();
+        if (frame == null || frame.execution != execution || frame.actionContext != actionContext) {
+            return null;
+        }
+        frames.removeLast();
+        return frame.event;
+    }
+
+    private static String statusOf(ActionReport actionReport) {
+        return actionReport == null ? ActionStatus.FAILED.name() : String.valueOf(actionReport.getStatus());
+    }
+
+    private static String errorTypeOf(ActionReport actionReport, Throwable error) {
+        Throwable failure = error != null ? error : actionReport == null ? null : actionReport.getError();
+        return failure == null ? null : failure.getClass().getName();
+    }
+
+    private static final class Run {
+
+        private final String flowName;
+        private final WorkFlowEvent event;
+
+        private Run(String flowName, WorkFlowEvent event) {
+            this.flowName = flowName;
+            this.event = event;
+        }
+    }
+
+    /*
+     * Asynchronous execution of an action, identified by the action and its context.
+     */
+    private static final class AsyncExecution {
+
+        private final Action action;
+        private final ActionContext actionContext;
+
+        private AsyncExecution(Action action, ActionContext actionContext) {
+            this.action = action;
+            this.actionContext = actionContext;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof AsyncExecution)) {
+                return false;
+            }
+            AsyncExecution execution = (AsyncExecution) other;
+            return execution.action == action && execution.actionContext == actionContext;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(action) + System.identityHashCode(actionContext);
+        }
+    }
+
+    private static final class Frame<E> {
+
+        private final Object execution;
+        private final ActionContext actionContext;
+        private final E event;
+
+        private Frame(Object execution, ActionContext actionContext, E event) {
+            this.execution = execution;
+            this.actionContext = actionContext;
+            this.event = event;
+        }
+    }
+}
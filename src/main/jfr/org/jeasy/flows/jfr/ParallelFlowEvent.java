@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of the execution of the action units of a parallel flow,
+ * broken down in its submit, wait and join phases.
+ *
+ * @author Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ */
+@Name(ParallelFlowEvent.NAME)
+@Label("Parallel Flow Execution")
+@Category("Easy Flows")
+@Description("Action units of a parallel flow handed off, run and joined")
+@StackTrace(false)
+final class ParallelFlowEvent extends Event {
+
+    static final String NAME = "org.jeasy.flows.ParallelFlow";
+
+    @Label("Flow Name")
+    @Description("Name of the workflow run by the engine")
+    String flowName;
+
+    @Label("Node")
+    @Description("Name of the parallel flow")
+    String node;
+
+    @Label("Units")
+    int units;
+
+    @Label("Submit Time")
+    @Description("Time spent handing off action units to the executor service")
+    @Timespan(Timespan.NANOSECONDS)
+    long submitTime;
+
+    @Label("Wait Time")
+    @Description("Time spent running action units on the calling thread and waiting for the others")
+    @Timespan(Timespan.NANOSECONDS)
+    long waitTime;
+
+    @Label("Join Time")
+    @Description("Time spent gathering the reports of action units")
+    @Timespan(Timespan.NANOSECONDS)
+    long joinTime;
+}
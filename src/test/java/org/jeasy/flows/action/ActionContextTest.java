@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class ActionContextTest {
+
+    @Test
+    public void lazyEntryIsComputedOnceOnFirstRead() throws Exception {
+        // given
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ActionContext actionContext = new ActionContext();
+        actionContext.putLazy("report", () -> "report " + computations.incrementAndGet());
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        // when
+        List<Future<Object>> values = IntStream.range(0, 8)
+                .mapToObj(i -> executorService.submit(() -> {
+                    start.await();
+                    return actionContext.get("report");
+                }))
+                .collect(Collectors.toList());
+        Assertions.assertThat(computations.get()).isZero();
+        start.countDown();
+
+        // then
+        for (Future<Object> value : values) {
+            Assertions.assertThat(value.get(1, TimeUnit.SECONDS)).isEqualTo("report 1");
+        }
+        Assertions.assertThat(computations.get()).isEqualTo(1);
+        executorService.shutdown();
+    }
+
+    @Test
+    public void lazyEntryIsComputedAgainWhenItsSupplierFails() {
+        // given
+        AtomicInteger attempts = new AtomicInteger();
+        ActionContext actionContext = new ActionContext();
+        actionContext.putLazy("report", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("not ready");
+            }
+            return "ready";
+        });
+
+        // when
+        Assertions.assertThatThrownBy(() -> actionContext.get("report")).isInstanceOf(IllegalStateException.class);
+
+        // then
+        Assertions.assertThat(actionContext.get("report")).isEqualTo("ready");
+        Assertions.assertThat(attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void copiedLazyEntriesShareTheirValue() {
+        for (ActionContext source : new ActionContext[]{new ActionContext(), new PersistentActionContext()}) {
+            // given
+            AtomicInteger computations = new AtomicInteger();
+            source.put("count", 1);
+            source.putLazy("total", computations::incrementAndGet);
+            ActionContext copy = new PersistentActionContext();
+
+            // when
+            copy.putAll(source);
+
+            // then
+            Assertions.assertThat(computations.get()).isZero();
+            Assertions.assertThat(copy.getEntrySet()).containsOnly(
+                    new AbstractMap.SimpleImmutableEntry<>("count", 1),
+                    new AbstractMap.SimpleImmutableEntry<>("total", 1));
+            Assertions.assertThat(source.getEntrySet()).containsOnly(
+                    new AbstractMap.SimpleImmutableEntry<>("count", 1),
+                    new AbstractMap.SimpleImmutableEntry<>("total", 1));
+            Assertions.assertThat(computations.get()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void childContextReadsThroughToItsParent() {
+        // given
+        ActionContext parent = new ActionContext();
+        parent.put("currency", "EUR");
+        parent.put("rate", 1);
+        ActionContext child = parent.newChildContext();
+
+        // when
+        child.put("rate", 2);
+        child.put("amount", 10);
+        parent.put("country", "FR");
+
+        // then
+        Assertions.assertThat(child.get("currency")).isEqualTo("EUR");
+        Assertions.assertThat(child.get("country")).isEqualTo("FR");
+        Assertions.assertThat(child.get("rate")).isEqualTo(2);
+        Assertions.assertThat(child.getEntrySet()).containsOnly(
+                new AbstractMap.SimpleImmutableEntry<>("currency", "EUR"),
+                new AbstractMap.SimpleImmutableEntry<>("country", "FR"),
+                new AbstractMap.SimpleImmutableEntry<>("rate", 2),
+                new AbstractMap.SimpleImmutableEntry<>("amount", 10));
+        Assertions.assertThat(parent.get("rate")).isEqualTo(1);
+        Assertions.assertThat(parent.get("amount")).isNull();
+    }
+
+    @Test
+    public void entrySetIsAReadOnlyViewOfTheContext() {
+        // given
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("currency", "EUR");
+        Set<Map.Entry<String, Object>> entrySet = actionContext.getEntrySet();
+
+        // when
+        actionContext.put("country", "FR");
+
+        // then
+        Assertions.assertThat(entrySet).hasSize(2);
+        Assertions.assertThatThrownBy(() -> entrySet.iterator().next().setValue("USD"))
+                .isInstanceOf(UnsupportedOperationException.class);
+        Assertions.assertThatThrownBy(entrySet::clear).isInstanceOf(UnsupportedOperationException.class);
+        Assertions.assertThat(actionContext.get("currency")).isEqualTo("EUR");
+    }
+
+    @Test
+    public void childEntryComputedToNullShadowsTheParentEntry() {
+        // given
+        ActionContext parent = new ActionContext();
+        parent.put("discount", 10);
+        ActionContext child = parent.newChildContext();
+
+        // when
+        child.putLazy("discount", () -> null);
+
+        // then
+        Assertions.assertThat(child.get("discount")).isNull();
+        Assertions.assertThat(parent.get("discount")).isEqualTo(10);
+    }
+}
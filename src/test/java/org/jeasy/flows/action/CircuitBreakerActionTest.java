@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CircuitBreakerActionTest {
+
+    private final AtomicBoolean healthy = new AtomicBoolean(false);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final Action dependency = actionContext -> {
+        calls.incrementAndGet();
+        return healthy.get()
+                ? new DefaultActionReport(ActionStatus.COMPLETED, actionContext)
+                : new DefaultActionReport(ActionStatus.FAILED, actionContext, new Exception("dependency is down"));
+    };
+
+    @Test
+    public void circuitOpensWhenFailureRateReachesThresholdAndRejectsCalls() {
+        // given
+        CircuitBreakerAction action = CircuitBreakerAction.Builder.aNewCircuitBreakerAction()
+                .execute(dependency)
+                .openWhenFailureRateReaches(50, 4)
+                .waitInOpenState(1, TimeUnit.MINUTES)
+                .build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        for (int i = 0; i < 4; i++) {
+            action.execute(actionContext);
+        }
+        ActionReport actionReport = action.execute(actionContext);
+
+        // then
+        Assertions.assertThat(action.getState()).isEqualTo(CircuitBreakerAction.State.OPEN);
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.FAILED);
+        Assertions.assertThat(actionReport.getError()).isInstanceOf(CircuitBreakerOpenException.class);
+        Assertions.assertThat(calls.get()).isEqualTo(4);
+        Assertions.assertThat(action.getRejectedCalls()).isEqualTo(1);
+    }
+
+    @Test
+    public void circuitClosesWhenProbesSucceed() throws InterruptedException {
+        // given
+        CircuitBreakerAction action = CircuitBreakerAction.Builder.aNewCircuitBreakerAction()
+                .execute(dependency)
+                .openWhenFailureRateReaches(100, 2)
+                .waitInOpenState(10, TimeUnit.MILLISECONDS)
+                .probeWith(2)
+                .build();
+        ActionContext actionContext = new ActionContext();
+        action.execute(actionContext);
+        action.execute(actionContext);
+        Assertions.assertThat(action.getState()).isEqualTo(CircuitBreakerAction.State.OPEN);
+
+        // when
+        Thread.sleep(20);
+        healthy.set(true);
+        action.execute(actionContext);
+        Assertions.assertThat(action.getState()).isEqualTo(CircuitBreakerAction.State.HALF_OPEN);
+        action.execute(actionContext);
+
+        // then
+        Assertions.assertThat(action.getState()).isEqualTo(CircuitBreakerAction.State.CLOSED);
+        Assertions.assertThat(action.getFailureRate()).isZero();
+    }
+
+    @Test
+    public void circuitOpensAgainWhenProbeFails() throws InterruptedException {
+        // given
+        CircuitBreakerAction action = CircuitBreakerAction.Builder.aNewCircuitBreakerAction()
+                .execute(dependency)
+                .openWhenFailureRateReaches(100, 1)
+                .waitInOpenState(10, TimeUnit.MILLISECONDS)
+                .build();
+        ActionContext actionContext = new ActionContext();
+        action.execute(actionContext);
+
+        // when
+        Thread.sleep(20);
+        action.execute(actionContext);
+
+        // then
+        Assertions.assertThat(action.getState()).isEqualTo(CircuitBreakerAction.State.OPEN);
+        Assertions.assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void probeThrowingAnErrorIsRecordedAsAFailure() throws InterruptedException {
+        // given
+        AtomicBoolean throwing = new AtomicBoolean(false);
+        CircuitBreakerAction action = CircuitBreakerAction.Builder.aNewCircuitBreakerAction()
+                .execute(context -> {
+                    if (throwing.get()) {
+                        throw new AssertionError("probe crashed");
+                    }
+                    return dependency.execute(context);
+                })
+                .openWhenFailureRateReaches(100, 1)
+                .waitInOpenState(10, TimeUnit.MILLISECONDS)
+                .build();
+        ActionContext actionContext = new ActionContext();
+        action.execute(actionContext);
+
+        // when
+        Thread.sleep(20);
+        throwing.set(true);
+        Assertions.assertThatThrownBy(() -> action.execute(actionContext)).isInstanceOf(AssertionError.class);
+
+        // then
+        Assertions.assertThat(action.getState()).isEqualTo(CircuitBreakerAction.State.OPEN);
+        Thread.sleep(20);
+        throwing.set(false);
+        healthy.set(true);
+        Assertions.assertThat(action.execute(actionContext).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(action.getState()).isEqualTo(CircuitBreakerAction.State.CLOSED);
+    }
+}
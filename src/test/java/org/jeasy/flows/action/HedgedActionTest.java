@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgedActionTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void fastActionIsNotHedged() {
+        // given
+        HedgedAction hedgedAction = HedgedAction.Builder.aNewHedgedAction()
+                .execute(new NoOpAction())
+                .with(executorService)
+                .hedgeAfter(1, TimeUnit.SECONDS)
+                .build();
+
+        // when
+        ActionReport actionReport = hedgedAction.execute(new ActionContext());
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(hedgedAction.getExecutionCount()).isEqualTo(1);
+        Assertions.assertThat(hedgedAction.getHedgeCount()).isZero();
+    }
+
+    @Test
+    public void slowActionIsHedgedAndHedgeWins() {
+        // given
+        SlowFirstCallAction action = new SlowFirstCallAction();
+        HedgedAction hedgedAction = HedgedAction.Builder.aNewHedgedAction()
+                .execute(action)
+                .with(executorService)
+                .hedgeAfter(20, TimeUnit.MILLISECONDS)
+                .build();
+
+        // when
+        ActionReport actionReport = hedgedAction.execute(new ActionContext());
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(hedgedAction.getHedgeCount()).isEqualTo(1);
+        Assertions.assertThat(hedgedAction.getHedgeWinCount()).isEqualTo(1);
+        Assertions.assertThat(hedgedAction.getCancellationCount()).isEqualTo(1);
+        Assertions.assertThat(hedgedAction.getHedgeRate()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void thresholdFollowsObservedPercentile() {
+        // given
+        HedgedAction hedgedAction = HedgedAction.Builder.aNewHedgedAction()
+                .execute(new NoOpAction())
+                .with(executorService)
+                .hedgeAfter(10, TimeUnit.SECONDS)
+                .orAtPercentile(99)
+                .build();
+
+        // when
+        for (int i = 0; i < 64; i++) {
+            hedgedAction.execute(new ActionContext());
+        }
+
+        // then
+        Assertions.assertThat(hedgedAction.getThreshold(TimeUnit.SECONDS)).isLessThan(10);
+    }
+
+    @Test
+    public void thresholdFollowsLatenciesOfOriginalCopiesOnly() throws InterruptedException {
+        // given
+        // original copies keep running after the hedge won, hedges must not queue behind them
+        ThreadPoolExecutor largeExecutorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(64);
+        largeExecutorService.prestartAllCoreThreads();
+        HedgedAction hedgedAction = HedgedAction.Builder.aNewHedgedAction()
+                .execute(new SlowOriginalAction())
+                .with(largeExecutorService)
+                .hedgeAfter(5, TimeUnit.MILLISECONDS)
+                .orAtPercentile(50)
+                .build();
+
+        // when
+        for (int i = 0; i < 32; i++) {
+            hedgedAction.execute(new ActionContext());
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hedgedAction.getThreshold(TimeUnit.MILLISECONDS) < 20 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // then
+        // the slow copy is the first to start, on a loaded machine the hedge might start first
+        Assertions.assertThat(hedgedAction.getHedgeWinCount()).isGreaterThan(24);
+        Assertions.assertThat(hedgedAction.getThreshold(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(20);
+        largeExecutorService.shutdownNow();
+    }
+
+    @Test
+    public void latencyOfAnOriginalInterruptedByTheHedgeIsNotSampled() throws InterruptedException {
+        // given
+        HedgedAction hedgedAction = HedgedAction.Builder.aNewHedgedAction()
+                .execute(new SlowFirstCallAction())
+                .with(executorService)
+                .hedgeAfter(20, TimeUnit.MILLISECONDS)
+                .orAtPercentile(50)
+                .build();
+
+        // when
+        ActionReport actionReport = hedgedAction.execute(new ActionContext());
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.SECONDS);
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(hedgedAction.getCancellationCount()).isEqualTo(1);
+        Assertions.assertThat(hedgedAction.getSampledLatencies()).isZero();
+    }
+
+    /*
+     * The original copy takes 20ms and ignores cancellation, the hedge completes immediately.
+     */
+    static class SlowOriginalAction implements Action {
+
+        private final Set<ActionContext> started = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public ActionReport execute(ActionContext actionContext) {
+            if (started.add(actionContext)) {
+                long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+                while (System.nanoTime() < end) {
+                    // busy wait, ignoring interruption
+                }
+            }
+            return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+        }
+    }
+
+    static class SlowFirstCallAction implements Action {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public ActionReport execute(ActionContext actionContext) {
+            if (calls.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    return new DefaultActionReport(ActionStatus.FAILED, actionContext, e);
+                }
+            }
+            return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+        }
+    }
+}
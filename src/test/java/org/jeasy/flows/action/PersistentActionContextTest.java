@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class PersistentActionContextTest {
+
+    @Test
+    public void entriesAreStoredAndReplaced() {
+        // given
+        PersistentActionContext actionContext = new PersistentActionContext();
+        Map<String, Object> expected = new HashMap<>();
+
+        // when
+        for (int i = 0; i < 10_000; i++) {
+            actionContext.put("key" + i, i);
+            expected.put("key" + i, i);
+        }
+        actionContext.put("key42", "replaced");
+        expected.put("key42", "replaced");
+        actionContext.put("Aa", 1); // "Aa" and "BB" have the same hash code
+        actionContext.put("BB", 2);
+        expected.put("Aa", 1);
+        expected.put("BB", 2);
+
+        // then
+        Assertions.assertThat(actionContext.get("key42")).isEqualTo("replaced");
+        Assertions.assertThat(actionContext.get("Aa")).isEqualTo(1);
+        Assertions.assertThat(actionContext.get("BB")).isEqualTo(2);
+        Assertions.assertThat(actionContext.get("missing")).isNull();
+        Assertions.assertThat(actionContext.getEntrySet()).hasSize(expected.size());
+        Assertions.assertThat(actionContext.getEntrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))).isEqualTo(expected);
+    }
+
+    @Test
+    public void snapshotIsRestored() {
+        // given
+        PersistentActionContext actionContext = new PersistentActionContext();
+        actionContext.put("kept", 1);
+        ActionContext.Snapshot snapshot = actionContext.snapshot();
+        actionContext.put("kept", 2);
+        actionContext.put("added", 3);
+
+        // when
+        actionContext.restore(snapshot);
+
+        // then
+        Assertions.assertThat(actionContext.get("kept")).isEqualTo(1);
+        Assertions.assertThat(actionContext.get("added")).isNull();
+        Assertions.assertThat(actionContext.getEntrySet()).hasSize(1);
+    }
+
+    @Test
+    public void snapshotOfDefaultContextIsRestored() {
+        // given
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("kept", 1);
+        ActionContext.Snapshot snapshot = actionContext.snapshot();
+        actionContext.put("kept", 2);
+        actionContext.put("added", 3);
+
+        // when
+        actionContext.restore(snapshot);
+
+        // then
+        Assertions.assertThat(actionContext.get("kept")).isEqualTo(1);
+        Assertions.assertThat(actionContext.get("added")).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void snapshotOfAnotherContextIsRejected() {
+        new PersistentActionContext().restore(new PersistentActionContext().snapshot());
+    }
+
+    @Test
+    public void snapshotsOfLargeContextsShareStructure() {
+        // given
+        PersistentActionContext actionContext = new PersistentActionContext();
+        for (int i = 0; i < 20_000; i++) {
+            actionContext.put("key" + i, i);
+        }
+
+        // when
+        ActionContext.Snapshot first = actionContext.snapshot();
+        ActionContext.Snapshot second = actionContext.snapshot();
+        for (int i = 0; i < 200; i++) {
+            ActionContext.Snapshot snapshot = actionContext.snapshot();
+            actionContext.put("key0", -i);
+            actionContext.put("attempt", i);
+            actionContext.restore(snapshot);
+        }
+
+        // then
+        Assertions.assertThat(first.stateOf(actionContext)).isSameAs(second.stateOf(actionContext)); // nothing is copied
+        Assertions.assertThat(actionContext.snapshot().stateOf(actionContext)).isSameAs(first.stateOf(actionContext));
+        Assertions.assertThat(actionContext.getEntrySet()).hasSize(20_000);
+        Assertions.assertThat(actionContext.get("key0")).isEqualTo(0);
+        Assertions.assertThat(actionContext.get("attempt")).isNull();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import org.assertj.core.api.Assertions;
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimitedActionTest {
+
+    @Test
+    public void failFastWhenNoPermitIsAvailable() {
+        // given
+        RateLimiter rateLimiter = new RateLimiter(1, 2);
+        RateLimitedAction action = RateLimitedAction.Builder.aNewRateLimitedAction()
+                .execute(new NoOpAction())
+                .limitedBy(rateLimiter)
+                .failFast()
+                .build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        ActionReport first = action.execute(actionContext);
+        ActionReport second = action.execute(actionContext);
+        ActionReport third = action.execute(actionContext);
+
+        // then
+        Assertions.assertThat(first.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(second.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(third.getStatus()).isEqualTo(ActionStatus.FAILED);
+        Assertions.assertThat(third.getError()).isInstanceOf(RateLimitExceededException.class);
+        Assertions.assertThat(rateLimiter.getGrantedPermits()).isEqualTo(2);
+        Assertions.assertThat(rateLimiter.getRejectedPermits()).isEqualTo(1);
+    }
+
+    @Test
+    public void waitForAPermitWhenConfiguredTo() {
+        // given
+        RateLimiter rateLimiter = new RateLimiter(50, 1);
+        RateLimitedAction action = RateLimitedAction.Builder.aNewRateLimitedAction()
+                .execute(new NoOpAction())
+                .limitedBy(rateLimiter)
+                .waitingAtMost(1, TimeUnit.SECONDS)
+                .build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertThat(action.execute(actionContext).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // then
+        Assertions.assertThat(elapsed).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(75));
+        Assertions.assertThat(rateLimiter.getRejectedPermits()).isZero();
+    }
+
+    @Test
+    public void waitForAPermitWithoutHoldingTheCallingThread() throws Exception {
+        // given
+        RateLimiter rateLimiter = new RateLimiter(10, 1);
+        RateLimitedAction action = RateLimitedAction.Builder.aNewRateLimitedAction()
+                .execute(context -> {
+                    context.put("thread", Thread.currentThread().getName());
+                    return new DefaultActionReport(ActionStatus.COMPLETED, context);
+                })
+                .limitedBy(rateLimiter)
+                .waitingAtMost(1, TimeUnit.SECONDS)
+                .build();
+        ExecutorPools executorPools = new ExecutorPools(Collections.singletonList(
+                ExecutorPool.Builder.aNewExecutorPool(ExecutorPools.IO).threadNamePrefix("io-").build()));
+        ActionContext first = new ActionContext();
+        ActionContext second = new ActionContext();
+
+        // when
+        CompletableFuture<ActionReport> firstReport = ExecutorPools.within(executorPools, () -> action.executeAsync(first)).toCompletableFuture();
+        long start = System.nanoTime();
+        CompletableFuture<ActionReport> secondReport = ExecutorPools.within(executorPools, () -> action.executeAsync(second)).toCompletableFuture();
+        long elapsed = System.nanoTime() - start;
+
+        // then
+        Assertions.assertThat(firstReport).isDone();
+        Assertions.assertThat(first.get("thread")).isEqualTo(Thread.currentThread().getName());
+        Assertions.assertThat(elapsed).isLessThan(TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertThat(secondReport).isNotDone();
+        Assertions.assertThat(secondReport.get(1, TimeUnit.SECONDS).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat((String) second.get("thread")).startsWith("io-");
+        Assertions.assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(75));
+
+        // when
+        executorPools.shutdown();
+
+        // then
+        Assertions.assertThat(executorPools.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+    }
+}
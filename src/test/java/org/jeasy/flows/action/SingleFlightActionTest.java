@@ -0,0 +1,249 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.action;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.jeasy.flows.action.SingleFlightAction.Builder.aNewSingleFlightAction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class SingleFlightActionTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void concurrentExecutionsWithTheSameInputsAreCoalesced() throws Exception {
+        // given
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        SingleFlightAction action = aNewSingleFlightAction()
+                .execute(new QuotePrice(calls, release))
+                .keyedBy("product")
+                .build();
+        List<ActionContext> contexts = new ArrayList<>();
+        List<Future<ActionReport>> reports = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 4; i++) {
+            ActionContext actionContext = new ActionContext();
+            actionContext.put("product", "book");
+            contexts.add(actionContext);
+            reports.add(executorService.submit(() -> action.execute(actionContext)));
+        }
+        while (action.getSingleFlight().getCoalescedExecutions() < 3) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        // then
+        for (int i = 0; i < 4; i++) {
+            ActionReport actionReport = reports.get(i).get(1, TimeUnit.SECONDS);
+            assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+            assertThat(actionReport.getActionContext()).isSameAs(contexts.get(i));
+            assertThat(contexts.get(i).get("price")).isEqualTo(42);
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(action.getSingleFlight().getExecutions()).isEqualTo(1);
+        assertThat(action.getSingleFlight().getExecutionsInFlight()).isZero();
+    }
+
+    @Test
+    public void executionsWithDifferentOrMissingInputsAreNotCoalesced() {
+        // given
+        AtomicInteger calls = new AtomicInteger();
+        SingleFlightAction action = aNewSingleFlightAction()
+                .execute(new QuotePrice(calls, new CountDownLatch(0)))
+                .keyedBy("product")
+                .build();
+        ActionContext book = new ActionContext();
+        book.put("product", "book");
+        ActionContext pen = new ActionContext();
+        pen.put("product", "pen");
+
+        // when
+        action.execute(book);
+        action.execute(pen);
+        action.execute(new ActionContext());
+        action.execute(book);
+
+        // then
+        assertThat(calls.get()).isEqualTo(4);
+        assertThat(action.getSingleFlight().getExecutions()).isEqualTo(3);
+        assertThat(action.getSingleFlight().getCoalescedExecutions()).isZero();
+    }
+
+    @Test
+    public void exceptionOfTheInFlightExecutionIsRethrownToCoalescedExecutions() throws Exception {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        Action failing = context -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("service unavailable");
+        };
+        Future<ActionReport> leader = executorService.submit(() -> singleFlight.execute("book", new ActionContext(), failing));
+        started.await();
+        CompletableFuture<ActionReport> follower = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("book", new ActionContext(), new NoOpAction()), executorService);
+        while (singleFlight.getCoalescedExecutions() < 1) {
+            Thread.sleep(1);
+        }
+
+        // when
+        release.countDown();
+
+        // then
+        assertThatThrownBy(() -> leader.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> follower.get(1, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasStackTraceContaining("service unavailable");
+    }
+
+    @Test
+    public void missingReportOfTheInFlightExecutionIsReportedAsFailed() throws Exception {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        Action withoutReport = context -> {
+            started.countDown();
+            await(release);
+            return null;
+        };
+        Future<ActionReport> leader = executorService.submit(() -> singleFlight.execute("book", new ActionContext(), withoutReport));
+        started.await();
+        CompletableFuture<ActionReport> follower = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("book", new ActionContext(), new NoOpAction()), executorService);
+        while (singleFlight.getCoalescedExecutions() < 1) {
+            Thread.sleep(1);
+        }
+
+        // when
+        release.countDown();
+
+        // then
+        assertThat(leader.get(1, TimeUnit.SECONDS)).isNull();
+        assertThat(follower.get(1, TimeUnit.SECONDS).getStatus()).isEqualTo(ActionStatus.FAILED);
+    }
+
+    @Test
+    public void outputsAreNotComputedWithoutWaitingExecutions() {
+        // given
+        AtomicInteger diffs = new AtomicInteger();
+        ActionContext actionContext = new ActionContext() {
+            @Override
+            Map<String, Object> changesSince(Snapshot snapshot) {
+                diffs.incrementAndGet();
+                return super.changesSince(snapshot);
+            }
+        };
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+
+        // when
+        ActionReport actionReport = singleFlight.execute("book", actionContext, new QuotePrice(new AtomicInteger(), new CountDownLatch(0)));
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(diffs.get()).isZero();
+    }
+
+    @Test
+    public void outputsOfPersistentContextsAreCopiedToCoalescedExecutions() throws Exception {
+        // given
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        ActionContext leaderContext = new PersistentActionContext();
+        leaderContext.put("product", "book");
+        ActionContext followerContext = new PersistentActionContext();
+        Future<ActionReport> leader = executorService.submit(() -> singleFlight.execute("book", leaderContext, new QuotePrice(new AtomicInteger(), release)));
+        while (singleFlight.getExecutionsInFlight() < 1) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<ActionReport> follower = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("book", followerContext, new NoOpAction()), executorService);
+        while (singleFlight.getCoalescedExecutions() < 1) {
+            Thread.sleep(1);
+        }
+
+        // when
+        release.countDown();
+
+        // then
+        assertThat(leader.get(1, TimeUnit.SECONDS).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(follower.get(1, TimeUnit.SECONDS).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(followerContext.get("price")).isEqualTo(42);
+        assertThat(followerContext.get("product")).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keysAreMandatory() {
+        aNewSingleFlightAction().execute(new NoOpAction()).keyedBy();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class QuotePrice implements Action {
+
+        private final AtomicInteger calls;
+        private final CountDownLatch release;
+
+        QuotePrice(AtomicInteger calls, CountDownLatch release) {
+            this.calls = calls;
+            this.release = release;
+        }
+
+        @Override
+        public ActionReport execute(ActionContext actionContext) {
+            calls.incrementAndGet();
+            await(release);
+            actionContext.put("price", 42);
+            return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+        }
+    }
+}
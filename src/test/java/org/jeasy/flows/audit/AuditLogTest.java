@@ -0,0 +1,216 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.audit;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.engine.WorkFlowEngine;
+import org.jeasy.flows.workflow.WorkFlow;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jeasy.flows.engine.WorkFlowEngineBuilder.aNewWorkFlowEngine;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+
+public class AuditLogTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void workFlowAndActionEventsAreWrittenAndRead() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        AuditLog auditLog = AuditLog.Builder.aNewAuditLog().in(directory).build();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(auditLog).build();
+        Action greet = named("greet", context -> {
+            context.put("greeting", "hello " + context.get("user"));
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        });
+        Action fail = named("fail", context -> new DefaultActionReport(ActionStatus.FAILED, context, new IllegalStateException("boom")));
+        WorkFlow workFlow = aNewSequentialFlow().named("onboarding").execute(greet).then(fail).build();
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("user", "foo");
+
+        // when
+        workFlowEngine.run(workFlow, actionContext);
+        workFlowEngine.shutdown();
+        auditLog.close();
+        List<AuditEvent> events = AuditLogReader.read(directory);
+
+        // then
+        assertThat(auditLog.getRecordedEvents()).isEqualTo(5);
+        assertThat(auditLog.getWrittenEvents()).isEqualTo(5);
+        assertThat(auditLog.getDroppedEvents()).isZero();
+        assertThat(events).extracting(AuditEvent::getType).containsExactly(
+                AuditEvent.Type.WORKFLOW_STARTED,
+                AuditEvent.Type.ACTION_FINISHED,
+                AuditEvent.Type.ACTION_FINISHED,
+                AuditEvent.Type.ACTION_FINISHED,
+                AuditEvent.Type.WORKFLOW_FINISHED);
+        assertThat(events).extracting(AuditEvent::getName).containsExactly("onboarding", "greet", "fail", "onboarding", "onboarding");
+        assertThat(events).extracting(AuditEvent::getExecutionId).containsOnly(1L);
+        assertThat(events.get(0).getContext()).containsOnlyKeys("user");
+        assertThat(events.get(2).getStatus()).isEqualTo(ActionStatus.FAILED);
+        assertThat(events.get(2).getError()).isEqualTo("java.lang.IllegalStateException: boom");
+        assertThat(events.get(4).getStatus()).isEqualTo(ActionStatus.FAILED);
+        assertThat(events.get(4).getContext()).containsOnlyKeys("greeting").containsEntry("greeting", "hello foo");
+    }
+
+    @Test
+    public void lazyEntriesAreNotComputedByTheAuditLog() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        AuditLog auditLog = AuditLog.Builder.aNewAuditLog().in(directory).build();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(auditLog).build();
+        AtomicInteger calls = new AtomicInteger();
+        WorkFlow workFlow = aNewSequentialFlow().named("report")
+                .execute(named("noop", context -> new DefaultActionReport(ActionStatus.COMPLETED, context)))
+                .build();
+        ActionContext actionContext = new ActionContext();
+        actionContext.putLazy("statement", () -> "statement " + calls.incrementAndGet());
+
+        // when
+        workFlowEngine.run(workFlow, actionContext);
+        workFlowEngine.shutdown();
+        auditLog.close();
+        List<AuditEvent> events = AuditLogReader.read(directory);
+
+        // then
+        assertThat(calls.get()).isZero();
+        assertThat(events.get(0).getContext()).containsEntry("statement", "<lazy>");
+        assertThat(events.get(events.size() - 1).getContext()).isEmpty();
+    }
+
+    @Test
+    public void contextValuesAreStringifiedByTheWriterThreadWokenUpByEvents() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        AuditLog auditLog = AuditLog.Builder.aNewAuditLog().in(directory).build();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(auditLog).build();
+        WorkFlow workFlow = aNewSequentialFlow().named("stringify")
+                .execute(named("noop", context -> new DefaultActionReport(ActionStatus.COMPLETED, context)))
+                .build();
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("thread", new Object() {
+            @Override
+            public String toString() {
+                return Thread.currentThread().getName();
+            }
+        });
+
+        // when
+        workFlowEngine.run(workFlow, actionContext);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (auditLog.getWrittenEvents() < auditLog.getRecordedEvents() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        long writtenBeforeClose = auditLog.getWrittenEvents();
+        workFlowEngine.shutdown();
+        auditLog.close();
+        List<AuditEvent> events = AuditLogReader.read(directory);
+
+        // then
+        assertThat(writtenBeforeClose).isEqualTo(auditLog.getRecordedEvents());
+        assertThat(events.get(0).getContext()).containsEntry("thread", "audit-log-writer");
+    }
+
+    @Test
+    public void segmentsAreRolledAndOldestSegmentsDeleted() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        AuditLog auditLog = AuditLog.Builder.aNewAuditLog().in(directory).segmentSize(1024).retainedSegments(3).build();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(auditLog).build();
+        WorkFlow workFlow = aNewSequentialFlow().named("flow").execute(named("action", context -> new DefaultActionReport(ActionStatus.COMPLETED, context))).build();
+
+        // when
+        for (int i = 0; i < 200; i++) {
+            workFlowEngine.run(workFlow, new ActionContext());
+        }
+        workFlowEngine.shutdown();
+        auditLog.close();
+
+        // then
+        assertThat(AuditLogReader.segments(directory)).hasSize(3);
+        List<AuditEvent> events = AuditLogReader.read(directory);
+        assertThat(events).isNotEmpty().hasSizeLessThan(800);
+        assertThat(events.get(events.size() - 1).getExecutionId()).isEqualTo(200);
+    }
+
+    @Test
+    public void readerFiltersEventsGivenOnTheCommandLine() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        AuditLog auditLog = AuditLog.Builder.aNewAuditLog().in(directory).build();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(auditLog).build();
+        WorkFlow workFlow = aNewSequentialFlow().named("flow")
+                .execute(named("ok", context -> new DefaultActionReport(ActionStatus.COMPLETED, context)))
+                .then(named("ko", context -> new DefaultActionReport(ActionStatus.FAILED, context)))
+                .build();
+        workFlowEngine.run(workFlow, new ActionContext());
+        workFlowEngine.shutdown();
+        auditLog.close();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream standardOutput = System.out;
+
+        // when
+        System.setOut(new PrintStream(output, true));
+        try {
+            AuditLogReader.main(new String[]{directory.toString(), "--type", "action_finished", "--status", "FAILED"});
+        } finally {
+            System.setOut(standardOutput);
+        }
+
+        // then
+        String[] lines = output.toString().trim().split(System.lineSeparator());
+        assertThat(lines).hasSize(2); // the failed action and the sequential flow reporting it
+        assertThat(lines[0]).contains("ACTION_FINISHED #1 'ko'").contains("status=FAILED");
+    }
+
+    private static Action named(String name, Action action) {
+        return new Action() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public ActionReport execute(ActionContext actionContext) {
+                return action.execute(actionContext);
+            }
+        };
+    }
+}
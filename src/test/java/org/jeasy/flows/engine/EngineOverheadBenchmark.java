@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.engine;
+
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.NoOpAction;
+import org.jeasy.flows.executor.ExecutorPools;
+import org.jeasy.flows.history.LatencyHistogram;
+import org.jeasy.flows.workflow.WorkFlow;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.jeasy.flows.engine.WorkFlowEngineBuilder.aNewWorkFlowEngine;
+import static org.jeasy.flows.workflow.ParallelFlow.Builder.aNewParallelFlow;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+
+/**
+ * Compares the overhead of running a workflow of no-op actions with executor pools
+ * and with the event loop. This is a benchmark, not a unit test, and is not run by the
+ * build. Run it from the command line once test classes are compiled:
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/classes:target/test-classes:$(cat target/classpath.txt) org.jeasy.flows.engine.EngineOverheadBenchmark [runs]
+ * </pre>
+ *
+ * Each engine is warmed up, then runs the workflow the given number of times (100 000
+ * by default) from a single client thread. Since actions do nothing, the latency of a
+ * run is the overhead of the engine.
+ */
+public class EngineOverheadBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(new NoOpAction())
+                .then(aNewParallelFlow().execute(new NoOpAction(), new NoOpAction(), new NoOpAction(), new NoOpAction()).build())
+                .then(new NoOpAction())
+                .build();
+
+        WorkFlowEngine poolEngine = aNewWorkFlowEngine().withExecutorPool(ExecutorPools.DEFAULT, 4).build();
+        report("executor pools", measure(poolEngine, workFlow, runs));
+        poolEngine.shutdown();
+        poolEngine.awaitTermination(1, TimeUnit.SECONDS);
+
+        WorkFlowEngine eventLoopEngine = aNewWorkFlowEngine().withEventLoop().build();
+        report("event loop", measure(eventLoopEngine, workFlow, runs));
+        eventLoopEngine.shutdown();
+        eventLoopEngine.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    private static LatencyHistogram measure(WorkFlowEngine workFlowEngine, WorkFlow workFlow, int runs) {
+        for (int i = 0; i < runs / 2; i++) { // warm up
+            run(workFlowEngine, workFlow);
+        }
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            run(workFlowEngine, workFlow);
+            latencies.record(System.nanoTime() - start);
+        }
+        return latencies;
+    }
+
+    private static void run(WorkFlowEngine workFlowEngine, WorkFlow workFlow) {
+        ActionReport actionReport = workFlowEngine.run(workFlow, new ActionContext());
+        if (actionReport.getStatus() != ActionStatus.COMPLETED) {
+            throw new IllegalStateException("The benchmarked workflow has failed", actionReport.getError());
+        }
+    }
+
+    private static void report(String engine, LatencyHistogram latencies) {
+        System.out.printf("%-15s runs=%d p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n", engine, latencies.getCount(),
+                micros(latencies.getValueAtPercentile(50, TimeUnit.NANOSECONDS)),
+                micros(latencies.getValueAtPercentile(99, TimeUnit.NANOSECONDS)),
+                micros(latencies.getValueAtPercentile(99.9, TimeUnit.NANOSECONDS)),
+                micros(latencies.getMax(TimeUnit.NANOSECONDS)));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
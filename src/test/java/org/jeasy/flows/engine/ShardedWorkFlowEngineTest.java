@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.engine;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.workflow.WorkFlow;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.jeasy.flows.engine.WorkFlowEngineBuilder.aNewWorkFlowEngine;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+
+public class ShardedWorkFlowEngineTest {
+
+    @Test
+    public void runsOfTheSameKeyNeverInterleaveAndRunInSubmissionOrder() throws Exception {
+        // given
+        ShardedWorkFlowEngine workFlowEngine = aNewWorkFlowEngine().buildSharded(4, context -> context.get("key"));
+        Map<String, List<Integer>> executions = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger interleavings = new AtomicInteger();
+        WorkFlow workFlow = aNewSequentialFlow().execute(context -> {
+            String key = (String) context.get("key");
+            if (running.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet() > 1) {
+                interleavings.incrementAndGet();
+            }
+            threads.add(Thread.currentThread().getName());
+            executions.computeIfAbsent(key, k -> new ArrayList<>()).add((Integer) context.get("sequence"));
+            Thread.yield();
+            running.get(key).decrementAndGet();
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        }).build();
+
+        // when
+        List<Thread> submitters = new ArrayList<>();
+        List<CompletableFuture<ActionReport>> reports = new CopyOnWriteArrayList<>();
+        for (int k = 0; k < 16; k++) {
+            String key = "entity-" + k;
+            Thread submitter = new Thread(() -> {
+                for (int sequence = 0; sequence < 100; sequence++) {
+                    ActionContext actionContext = new ActionContext();
+                    actionContext.put("key", key);
+                    actionContext.put("sequence", sequence);
+                    reports.add(workFlowEngine.runAsync(workFlow, actionContext).toCompletableFuture());
+                }
+            });
+            submitters.add(submitter);
+            submitter.start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        CompletableFuture.allOf(reports.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        workFlowEngine.shutdown();
+
+        // then
+        assertThat(interleavings).hasValue(0);
+        assertThat(executions).hasSize(16);
+        List<Integer> submissionOrder = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        executions.values().forEach(sequences -> assertThat(sequences).isEqualTo(submissionOrder));
+        assertThat(threads).hasSizeGreaterThan(1).allMatch(thread -> thread.startsWith("easy-flows-shard-"));
+        assertThat(workFlowEngine.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void queueDepthsAreExposedAndQueuedRunsCompleteAfterShutdown() throws Exception {
+        // given
+        ShardedWorkFlowEngine workFlowEngine = aNewWorkFlowEngine().buildSharded(2, context -> context.get("key"));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WorkFlow blocking = aNewSequentialFlow().execute(context -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        }).build();
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("key", "hot");
+        int shard = workFlowEngine.shardOf(actionContext);
+
+        // when
+        List<CompletableFuture<ActionReport>> reports = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            reports.add(workFlowEngine.runAsync(blocking, actionContext).toCompletableFuture());
+        }
+        started.await();
+
+        // then
+        assertThat(workFlowEngine.getShards()).isEqualTo(2);
+        assertThat(workFlowEngine.getQueueDepth(shard)).isEqualTo(3);
+        assertThat(workFlowEngine.getQueueDepths()[1 - shard]).isZero();
+
+        // when
+        workFlowEngine.shutdown();
+        release.countDown();
+
+        // then
+        for (CompletableFuture<ActionReport> report : reports) {
+            assertThat(report.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        }
+        assertThat(workFlowEngine.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(workFlowEngine.getQueueDepth(shard)).isZero();
+        assertThat(workFlowEngine.getCompletedRuns(shard)).isEqualTo(4);
+        assertThatThrownBy(() -> workFlowEngine.run(blocking, actionContext)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void workFlowOfTheSameShardIsRunInline() {
+        // given
+        ShardedWorkFlowEngine[] workFlowEngine = {aNewWorkFlowEngine().buildSharded(1, context -> "key")};
+        WorkFlow inner = aNewSequentialFlow().execute(context -> {
+            context.put("inner-thread", Thread.currentThread().getName());
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        }).build();
+        Action runInner = context -> workFlowEngine[0].run(inner, context);
+        WorkFlow outer = aNewSequentialFlow().execute(runInner).build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        ActionReport actionReport = workFlowEngine[0].run(outer, actionContext);
+        workFlowEngine[0].shutdown();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat((String) actionContext.get("inner-thread")).startsWith("easy-flows-shard-0");
+    }
+}
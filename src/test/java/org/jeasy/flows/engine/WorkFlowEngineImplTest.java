@@ -31,11 +31,22 @@ import static org.jeasy.flows.workflow.ParallelFlow.Builder.aNewParallelFlow;
 import static org.jeasy.flows.workflow.RepeatFlow.Builder.aNewRepeatFlow;
 import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jeasy.flows.action.*;
+import org.jeasy.flows.executor.ExecutionPriority;
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
+import org.jeasy.flows.executor.Priority;
 import org.jeasy.flows.workflow.*;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -57,6 +68,239 @@ public class WorkFlowEngineImplTest {
         Mockito.verify(workFlow).execute(actionContext);
     }
 
+    @Test
+    public void parallelFlowWithoutExecutorServiceUsesDefaultPoolOfTheEngine() throws InterruptedException {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine()
+                .withExecutorPool(ExecutorPool.Builder.aNewExecutorPool(ExecutorPools.DEFAULT)
+                        .threads(2)
+                        .threadNamePrefix("worker")
+                        .callerRunsWhenSaturated()
+                        .build())
+                .build();
+        CountDownLatch handedOff = new CountDownLatch(1);
+        Action awaitHandOff = context -> {
+            try {
+                handedOff.await(1, TimeUnit.SECONDS); // keeps the calling thread from running the other unit
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new RecordThreadWork("thread1").execute(context);
+        };
+        Action recordHandOff = context -> {
+            ActionReport report = new RecordThreadWork("thread2").execute(context);
+            handedOff.countDown();
+            return report;
+        };
+        ParallelFlow parallelFlow = aNewParallelFlow()
+                .execute(awaitHandOff, recordHandOff)
+                .build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        ActionReport actionReport = workFlowEngine.run(parallelFlow, actionContext);
+        workFlowEngine.shutdown();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(actionContext.get("thread1")).isEqualTo(Thread.currentThread().getName());
+        assertThat((String) actionContext.get("thread2")).startsWith("worker-");
+        assertThat(workFlowEngine.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(workFlowEngine.getExecutorPools().isTerminated()).isTrue();
+    }
+
+    @Test
+    public void executionPriorityFollowsTheWorkflowToItsParallelUnits() throws InterruptedException {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine()
+                .withPrioritizedScheduling(100, TimeUnit.MILLISECONDS)
+                .build();
+        String callingThread = Thread.currentThread().getName();
+        AtomicInteger unitsRunByThePool = new AtomicInteger();
+        Action recordPriority = context -> {
+            context.put(Thread.currentThread().getName(), ExecutionPriority.current().getPriority());
+            if (!callingThread.equals(Thread.currentThread().getName())) {
+                unitsRunByThePool.incrementAndGet();
+            }
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        ParallelFlow parallelFlow = aNewParallelFlow()
+                .execute(recordPriority, recordPriority, recordPriority)
+                .build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        ActionReport actionReport = workFlowEngine.run(parallelFlow, actionContext, ExecutionPriority.of(Priority.HIGH));
+        workFlowEngine.shutdown();
+
+        // then
+        ExecutorPool defaultPool = workFlowEngine.getExecutorPools().getDefault();
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(actionContext.getEntrySet()).extracting(Map.Entry::getValue).containsOnly(Priority.HIGH);
+        assertThat(workFlowEngine.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(defaultPool.isPrioritized()).isTrue();
+        // the calling thread runs the first unit and the units no pool thread has started yet
+        assertThat(defaultPool.getScheduledTasks(Priority.HIGH)).isEqualTo(unitsRunByThePool.get());
+        assertThat(defaultPool.getScheduledTasks(Priority.NORMAL)).isZero();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void runAfterShutdownIsRejected() {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().build();
+        workFlowEngine.shutdown();
+
+        // when
+        workFlowEngine.run(aNewSequentialFlow().execute(new NoOpAction()).build(), new ActionContext());
+
+        // then
+        // expected exception
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void prioritizedSchedulingCannotApplyToARegisteredDefaultPool() {
+        aNewWorkFlowEngine()
+                .withExecutorPool(ExecutorPools.DEFAULT, 2)
+                .withPrioritizedScheduling(100, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Test
+    public void engineImplementingOnlyRunGetsDefaultBehaviour() throws Exception {
+        // given
+        WorkFlowEngine workFlowEngine = (workFlow, actionContext) -> workFlow.execute(actionContext);
+        WorkFlow workFlow = aNewSequentialFlow().execute(new RecordThreadWork("leaf")).build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        ActionReport actionReport = workFlowEngine.runAsync(workFlow, actionContext, ExecutionPriority.of(Priority.HIGH))
+                .toCompletableFuture().get(1, TimeUnit.SECONDS);
+        workFlowEngine.shutdown();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(actionContext.get("leaf")).isEqualTo(Thread.currentThread().getName());
+        assertThat(workFlowEngine.getExecutorPools().getPools()).isEmpty();
+        assertThat(workFlowEngine.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void interpretedExecutionRunsDeeplyNestedFlows() {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withInterpretedExecution().build();
+        WorkFlow workFlow = aNewSequentialFlow().execute(new RecordThreadWork("leaf")).build();
+        for (int i = 0; i < 100_000; i++) {
+            workFlow = aNewSequentialFlow().execute(workFlow).build();
+        }
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        ActionReport actionReport = workFlowEngine.run(workFlow, actionContext);
+        workFlowEngine.shutdown();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(actionContext.get("leaf")).isEqualTo(Thread.currentThread().getName());
+    }
+
+    @Test
+    public void runAsyncKeepsTheEngineRunningUntilTheWorkFlowCompletes() throws Exception {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().build();
+        CompletableFuture<ActionReport> remoteReport = new CompletableFuture<>();
+        AsyncAction remoteCall = context -> remoteReport;
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(remoteCall)
+                .then(aNewParallelFlow().execute(new RecordThreadWork("thread1"), new RecordThreadWork("thread2")).build())
+                .build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        CompletableFuture<ActionReport> actionReport = workFlowEngine.runAsync(workFlow, actionContext).toCompletableFuture();
+        workFlowEngine.shutdown();
+
+        // then
+        assertThat(actionReport).isNotDone();
+        assertThat(workFlowEngine.awaitTermination(50, TimeUnit.MILLISECONDS)).isFalse();
+
+        // when
+        remoteReport.complete(new DefaultActionReport(ActionStatus.COMPLETED, actionContext));
+
+        // then
+        assertThat(actionReport.get(1, TimeUnit.SECONDS).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(actionContext.get("thread1")).isNotNull();
+        assertThat(workFlowEngine.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void concurrentRunsOfTheSameWorkFlowWithTheSameInputsAreCoalesced() throws Exception {
+        // given
+        SingleFlight<List<Object>> singleFlight = new SingleFlight<>();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withSingleFlight(singleFlight, "user").build();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(context -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    context.put("greeting", "hello " + context.get("user"));
+                    return new DefaultActionReport(ActionStatus.COMPLETED, context);
+                })
+                .build();
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        List<ActionContext> contexts = new ArrayList<>();
+        List<Future<ActionReport>> actionReports = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            ActionContext actionContext = new ActionContext();
+            actionContext.put("user", "foo");
+            contexts.add(actionContext);
+            actionReports.add(executorService.submit(() -> workFlowEngine.run(workFlow, actionContext)));
+        }
+        while (singleFlight.getCoalescedExecutions() < 2) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        // then
+        for (int i = 0; i < 3; i++) {
+            assertThat(actionReports.get(i).get(1, TimeUnit.SECONDS).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+            assertThat(contexts.get(i).get("greeting")).isEqualTo("hello foo");
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(singleFlight.getExecutions()).isEqualTo(1);
+        executorService.shutdown();
+        workFlowEngine.shutdown();
+    }
+
+    @Test
+    public void eventLoopRunsParallelUnitsWithoutExecutorPools() throws InterruptedException {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withEventLoop().build();
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(new RecordThreadWork("first"))
+                .then(aNewParallelFlow().execute(new RecordThreadWork("unit1"), new RecordThreadWork("unit2")).build())
+                .build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        ActionReport actionReport = workFlowEngine.run(workFlow, actionContext);
+        workFlowEngine.shutdown();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(actionContext.get("unit1")).isEqualTo(actionContext.get("first"));
+        assertThat(actionContext.get("unit2")).isEqualTo(actionContext.get("first"));
+        assertThat(actionContext.get("first")).isNotEqualTo(Thread.currentThread().getName());
+        assertThat(workFlowEngine.getExecutorPools().getDefault().getCompletedTasks()).isZero();
+        assertThat(workFlowEngine.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+    }
+
     /**
      * The following tests are not really unit tests, but serve as examples of how to create a workflow and execute it
      */
@@ -179,6 +423,21 @@ public class WorkFlowEngineImplTest {
 
     }
 
+    static class RecordThreadWork implements Action {
+
+        private final String key;
+
+        RecordThreadWork(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public ActionReport execute(ActionContext actionContext) {
+            actionContext.put(key, Thread.currentThread().getName());
+            return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+        }
+    }
+
     static class WordCountWork implements Action {
 
         private final int partition;
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.executor;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private final AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.Builder.aNewAdaptiveConcurrencyLimiter()
+            .initialLimit(4)
+            .between(2, 8)
+            .backoffRatio(0.5)
+            .latencyThreshold(100, TimeUnit.MILLISECONDS)
+            .build();
+
+    @Test
+    public void permitsAreGrantedUpToTheLimit() {
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertThat(limiter.tryAcquire()).isTrue();
+        }
+        Assertions.assertThat(limiter.tryAcquire()).isFalse();
+        Assertions.assertThat(limiter.getInFlight()).isEqualTo(4);
+    }
+
+    @Test
+    public void limitIncreasesWhenUnitsCompleteInTime() {
+        // given
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire();
+        }
+
+        // when
+        limiter.release(10, TimeUnit.MILLISECONDS, false);
+
+        // then
+        Assertions.assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    public void limitDecreasesWhenUnitsAreSlowOrFailButStaysWithinBounds() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire();
+        }
+
+        // when
+        limiter.release(1, TimeUnit.SECONDS, false);
+        limiter.release(10, TimeUnit.MILLISECONDS, true);
+        limiter.release(10, TimeUnit.MILLISECONDS, true);
+
+        // then
+        Assertions.assertThat(limiter.getLimit()).isEqualTo(2);
+        Assertions.assertThat(limiter.getDrops()).isEqualTo(3);
+        Assertions.assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    public void asynchronousAcquisitionIsGrantedWhenAPermitIsReleased() {
+        // given
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire();
+        }
+
+        // when
+        CompletableFuture<Void> permit = limiter.acquireAsync();
+        boolean grantedAtTheLimit = permit.isDone();
+        limiter.release();
+
+        // then
+        Assertions.assertThat(grantedAtTheLimit).isFalse();
+        Assertions.assertThat(permit).isCompleted();
+        Assertions.assertThat(limiter.getInFlight()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.executor;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ExecutorPoolTest {
+
+    private final ExecutorPool executorPool = ExecutorPool.Builder.aNewExecutorPool("prioritized")
+            .threads(1)
+            .prioritized(1, TimeUnit.MINUTES)
+            .build();
+    private final ExecutorPools executorPools = new ExecutorPools(Collections.singletonList(executorPool));
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        executorPools.shutdown();
+    }
+
+    @Test
+    public void higherPriorityTasksAreTakenFirst() throws Exception {
+        // given
+        blockPool();
+        submit("low-1", ExecutionPriority.of(Priority.LOW));
+        submit("low-2", ExecutionPriority.of(Priority.LOW));
+        submit("normal", ExecutionPriority.NORMAL);
+        submit("high-1", ExecutionPriority.of(Priority.HIGH));
+        submit("high-2", ExecutionPriority.of(Priority.HIGH));
+
+        // when
+        awaitAll();
+
+        // then
+        Assertions.assertThat(executed).containsExactly("high-1", "high-2", "normal", "low-1", "low-2");
+        Assertions.assertThat(executorPool.isPrioritized()).isTrue();
+        Assertions.assertThat(executorPool.getScheduledTasks(Priority.HIGH)).isEqualTo(2);
+        Assertions.assertThat(executorPool.getScheduledTasks(Priority.LOW)).isEqualTo(2);
+        Assertions.assertThat(executorPool.getMaximumQueueingDelay(Priority.LOW, TimeUnit.NANOSECONDS))
+                .isGreaterThanOrEqualTo(executorPool.getAverageQueueingDelay(Priority.LOW, TimeUnit.NANOSECONDS))
+                .isPositive();
+    }
+
+    @Test
+    public void earliestDeadlineIsTakenFirst() throws Exception {
+        // given
+        blockPool();
+        submit("later", ExecutionPriority.of(Priority.NORMAL, 10, TimeUnit.SECONDS));
+        submit("no-deadline", ExecutionPriority.NORMAL);
+        submit("sooner", ExecutionPriority.of(Priority.NORMAL, 10, TimeUnit.MILLISECONDS));
+
+        // when
+        awaitAll();
+
+        // then
+        Assertions.assertThat(executed).containsExactly("sooner", "later", "no-deadline");
+    }
+
+    @Test
+    public void lowerPriorityTasksAreAged() throws Exception {
+        // given
+        ExecutorPool agingPool = ExecutorPool.Builder.aNewExecutorPool("aging")
+                .threads(1)
+                .prioritized(1, TimeUnit.MILLISECONDS)
+                .build();
+        ExecutorPools agingPools = new ExecutorPools(Collections.singletonList(agingPool));
+        ExecutorService executorService = agingPool.getExecutorService();
+        futures.add(executorService.submit(() -> {
+            blocked.await();
+            return null;
+        }));
+        futures.add(ExecutorPools.within(agingPools.withExecutionPriority(ExecutionPriority.of(Priority.LOW)),
+                () -> executorService.submit(() -> executed.add("low"))));
+        Thread.sleep(10); // more than twice the aging period
+        futures.add(ExecutorPools.within(agingPools.withExecutionPriority(ExecutionPriority.of(Priority.HIGH)),
+                () -> executorService.submit(() -> executed.add("high"))));
+
+        // when
+        awaitAll();
+        agingPools.shutdown();
+
+        // then
+        Assertions.assertThat(executed).containsExactly("low", "high");
+    }
+
+    @Test
+    public void poolWithoutQueueHandsOffTasksToIdleThreadsOnly() throws Exception {
+        // given
+        ExecutorPool directPool = new ExecutorPool("direct", 1, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        directPool.getExecutorService().execute(() -> {
+            started.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+
+        // when
+        Throwable rejection = Assertions.catchThrowable(() -> directPool.getExecutorService().execute(() -> { }));
+        released.countDown();
+
+        // then
+        Assertions.assertThat(rejection).isInstanceOf(RejectedExecutionException.class);
+        Assertions.assertThat(directPool.getQueueCapacity()).isZero();
+        directPool.getExecutorService().shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prioritizedPoolCannotHaveABoundedQueue() {
+        ExecutorPool.Builder.aNewExecutorPool("bounded")
+                .queueCapacity(10)
+                .prioritized(1, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Test
+    public void tasksAlreadyRunByTheirSubmitterAreNotAccountedFor() throws Exception {
+        // given
+        blockPool();
+        FutureTask<Boolean> claimed = new FutureTask<>(() -> executed.add("claimed"));
+        FutureTask<Boolean> queued = new FutureTask<>(() -> executed.add("queued"));
+        ExecutorPools.within(executorPools.withExecutionPriority(ExecutionPriority.of(Priority.HIGH)), () -> {
+            executorPool.getExecutorService().execute(claimed);
+            executorPool.getExecutorService().execute(queued);
+            return null;
+        });
+
+        // when
+        claimed.run(); // like a parallel flow running a unit no pool thread has started yet
+        futures.add(claimed);
+        futures.add(queued);
+        awaitAll();
+        executorPool.getExecutorService().submit(() -> null).get(5, TimeUnit.SECONDS); // the queue has been drained
+
+        // then
+        Assertions.assertThat(executed).containsExactly("claimed", "queued");
+        Assertions.assertThat(executorPool.getScheduledTasks(Priority.HIGH)).isEqualTo(1);
+    }
+
+    private void blockPool() {
+        futures.add(executorPool.getExecutorService().submit(() -> {
+            blocked.await();
+            return null;
+        }));
+    }
+
+    private void submit(String name, ExecutionPriority executionPriority) {
+        futures.add(ExecutorPools.within(executorPools.withExecutionPriority(executionPriority),
+                () -> executorPool.getExecutorService().submit(() -> executed.add(name))));
+    }
+
+    private void awaitAll() throws Exception {
+        blocked.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
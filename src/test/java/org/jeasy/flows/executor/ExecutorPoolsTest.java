@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.executor;
+
+import org.assertj.core.api.Assertions;
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.engine.WorkFlowEngine;
+import org.jeasy.flows.workflow.SequentialFlow;
+import org.junit.Test;
+
+import static org.jeasy.flows.engine.WorkFlowEngineBuilder.aNewWorkFlowEngine;
+import static org.jeasy.flows.executor.ExecutorPools.onPool;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+
+public class ExecutorPoolsTest {
+
+    @Test
+    public void actionsAreRoutedToTheirPoolAndHopOnlyWhenThePoolChanges() {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine()
+                .withExecutorPool(ExecutorPools.IO, 2)
+                .withExecutorPool(ExecutorPools.CPU, 1, 10)
+                .build();
+        SequentialFlow sequentialFlow = aNewSequentialFlow()
+                .execute(onPool(ExecutorPools.IO, new RecordThreadAction("read")))
+                .then(new RecordThreadAction("parse"))
+                .then(onPool(ExecutorPools.CPU, new RecordThreadAction("compute")))
+                .build();
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        ActionReport actionReport = workFlowEngine.run(aNewSequentialFlow().execute(onPool(ExecutorPools.IO, sequentialFlow)).build(), actionContext);
+        workFlowEngine.getExecutorPools().shutdown();
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat((String) actionContext.get("read")).startsWith("easy-flows-io-");
+        Assertions.assertThat(actionContext.get("parse")).isEqualTo(actionContext.get("read"));
+        Assertions.assertThat((String) actionContext.get("compute")).startsWith("easy-flows-cpu-");
+        Assertions.assertThat(workFlowEngine.getExecutorPools().get(ExecutorPools.CPU).getRejectedTasks()).isZero();
+    }
+
+    @Test
+    public void pooledActionIsExecutedOnCallingThreadOutsideOfAnEngine() {
+        // given
+        ActionContext actionContext = new ActionContext();
+
+        // when
+        onPool(ExecutorPools.IO, new RecordThreadAction("read")).execute(actionContext);
+
+        // then
+        Assertions.assertThat(actionContext.get("read")).isEqualTo(Thread.currentThread().getName());
+    }
+
+    @Test
+    public void actionAssignedToUnknownPoolFails() {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().build();
+
+        // when
+        ActionReport actionReport = workFlowEngine.run(
+                aNewSequentialFlow().execute(onPool("unknown", new RecordThreadAction("read"))).build(),
+                new ActionContext());
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.FAILED);
+        Assertions.assertThat(actionReport.getError()).isInstanceOf(IllegalStateException.class);
+    }
+
+    static class RecordThreadAction implements Action {
+
+        private final String key;
+
+        RecordThreadAction(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public ActionReport execute(ActionContext actionContext) {
+            actionContext.put(key, Thread.currentThread().getName());
+            return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+        }
+    }
+}
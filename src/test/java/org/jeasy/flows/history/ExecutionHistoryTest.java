@@ -0,0 +1,279 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.history;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.engine.WorkFlowEngine;
+import org.jeasy.flows.workflow.WorkFlow;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.jeasy.flows.engine.WorkFlowEngineBuilder.aNewWorkFlowEngine;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+
+public class ExecutionHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void runsOfTheEngineAreSummarized() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        ExecutionHistory history = ExecutionHistory.Builder.aNewExecutionHistory().in(directory).build();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(history).build();
+        Action fast = named("fast", context -> new DefaultActionReport(ActionStatus.COMPLETED, context));
+        Action slow = named("slow", context -> {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        });
+        Action fail = named("fail", context -> new DefaultActionReport(ActionStatus.FAILED, context, new IllegalStateException("boom")));
+        WorkFlow checkout = aNewSequentialFlow().named("checkout").execute(fast).then(slow).build();
+        WorkFlow refund = aNewSequentialFlow().named("refund").execute(fail).build();
+        Instant from = Instant.now().minusSeconds(1);
+
+        // when
+        for (int i = 0; i < 20; i++) {
+            workFlowEngine.run(checkout, new ActionContext());
+        }
+        workFlowEngine.run(refund, new ActionContext());
+        workFlowEngine.shutdown();
+        Instant to = Instant.now().plusSeconds(1);
+
+        // then
+        assertThat(history.getRecordedRuns()).isEqualTo(21);
+        assertThat(history.getFlowNames(from, to)).containsExactly("checkout", "refund");
+        assertThat(history.getNodeNames("checkout", from, to)).containsExactly("fast", "slow");
+        LatencyHistogram slowLatencies = history.getLatencies("checkout", "slow", from, to);
+        assertThat(slowLatencies.getCount()).isEqualTo(20);
+        assertThat(slowLatencies.getValueAtPercentile(50, TimeUnit.MICROSECONDS)).isGreaterThanOrEqualTo(1900);
+        assertThat(history.getLatencies("checkout", null, from, to).getValueAtPercentile(50, TimeUnit.MICROSECONDS))
+                .isGreaterThanOrEqualTo(slowLatencies.getValueAtPercentile(50, TimeUnit.MICROSECONDS) * 97 / 100);
+        List<RunSummary> refunds = history.getRuns("refund", from, to);
+        assertThat(refunds).hasSize(1);
+        assertThat(refunds.get(0).getStatus()).isEqualTo(ActionStatus.FAILED);
+        assertThat(refunds.get(0).getErrorType()).isEqualTo(IllegalStateException.class.getName());
+        assertThat(refunds.get(0).getNodeDurations()).containsOnlyKeys("fail");
+
+        // when
+        history.close();
+        ExecutionHistory reopened = ExecutionHistory.Builder.aNewExecutionHistory().in(directory).build();
+
+        // then
+        assertThat(reopened.getLatencies("checkout", "slow", from, to).getCount()).isEqualTo(20);
+        assertThat(reopened.getRuns(null, from, to)).hasSize(21);
+        reopened.close();
+    }
+
+    @Test
+    public void latenciesAreQueriedByTimeRangeAcrossPartitions() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        ExecutionHistory history = ExecutionHistory.Builder.aNewExecutionHistory().in(directory)
+                .partitionDuration(1, TimeUnit.HOURS)
+                .build();
+        Instant start = Instant.now().truncatedTo(ChronoUnit.HOURS).minus(3, ChronoUnit.HOURS);
+        // one run per second for three hours, 1ms per run in the first hour, 2ms in the second and 3ms in the third
+        for (int second = 0; second < 3 * 3600; second++) {
+            long durationNanos = TimeUnit.MILLISECONDS.toNanos(1 + second / 3600);
+            history.record(new RunSummary("flow", start.plusSeconds(second).toEpochMilli(), durationNanos,
+                    ActionStatus.COMPLETED, null, Collections.singletonMap("node", durationNanos / 2)));
+        }
+
+        // when
+        history.flush();
+        LatencyHistogram all = history.getLatencies("flow", null, start, start.plus(3, ChronoUnit.HOURS));
+        LatencyHistogram secondHour = history.getLatencies("flow", null, start.plus(1, ChronoUnit.HOURS), start.plus(2, ChronoUnit.HOURS));
+        LatencyHistogram straddling = history.getLatencies("flow", "node", start.plus(90, ChronoUnit.MINUTES), start.plus(150, ChronoUnit.MINUTES));
+
+        // then
+        assertThat(all.getCount()).isEqualTo(3 * 3600);
+        assertThat(all.getValueAtPercentile(50, TimeUnit.MICROSECONDS)).isCloseTo(2000, within(60L));
+        assertThat(all.getValueAtPercentile(99, TimeUnit.MICROSECONDS)).isCloseTo(3000, within(90L));
+        assertThat(secondHour.getCount()).isEqualTo(3600);
+        assertThat(secondHour.getMax(TimeUnit.MICROSECONDS)).isEqualTo(2000);
+        assertThat(straddling.getCount()).isEqualTo(3600);
+        assertThat(straddling.getValueAtPercentile(25, TimeUnit.MICROSECONDS)).isCloseTo(1000, within(30L));
+        assertThat(straddling.getValueAtPercentile(75, TimeUnit.MICROSECONDS)).isCloseTo(1500, within(45L));
+        assertThat(history.getLatencies("flow", null, start.minus(1, ChronoUnit.HOURS), start).getCount()).isZero();
+        assertThat(history.getLatencies("unknown", null, start, start.plus(3, ChronoUnit.HOURS)).getCount()).isZero();
+        history.close();
+    }
+
+    @Test
+    public void queriesOfLargeHistoriesReadRollups() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        ExecutionHistory history = ExecutionHistory.Builder.aNewExecutionHistory().in(directory)
+                .partitionDuration(1, TimeUnit.HOURS)
+                .build();
+        Instant start = Instant.now().truncatedTo(ChronoUnit.HOURS).minus(48, ChronoUnit.HOURS);
+        int runs = 1_000_000;
+        long step = TimeUnit.HOURS.toMillis(48) / runs;
+        for (int run = 0; run < runs; run++) {
+            history.record(new RunSummary("flow", start.toEpochMilli() + run * step, 1000 + run % 1000,
+                    ActionStatus.COMPLETED, null, Collections.emptyMap()));
+        }
+        history.close();
+        ExecutionHistory reopened = ExecutionHistory.Builder.aNewExecutionHistory().in(directory).build();
+
+        // when
+        long queryStart = System.nanoTime();
+        LatencyHistogram latencies = reopened.getLatencies("flow", null, start, start.plus(48, ChronoUnit.HOURS));
+        long queryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queryStart);
+
+        // then
+        assertThat(latencies.getCount()).isEqualTo(runs);
+        assertThat(latencies.getValueAtPercentile(50, TimeUnit.NANOSECONDS)).isCloseTo(1500, within(45L));
+        assertThat(queryMillis).isLessThan(1000);
+        reopened.close();
+    }
+
+    @Test
+    public void partitionsOlderThanTheRetentionPeriodAreDeleted() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        Instant now = Instant.now();
+        ExecutionHistory history = ExecutionHistory.Builder.aNewExecutionHistory().in(directory)
+                .partitionDuration(1, TimeUnit.HOURS)
+                .retention(2, TimeUnit.HOURS)
+                .build();
+        history.record(new RunSummary("flow", now.minus(5, ChronoUnit.HOURS).toEpochMilli(), 1000, ActionStatus.COMPLETED, null, Collections.emptyMap()));
+        Path oldPartition = Files.createDirectories(directory.resolve(String.format("%s%020d",
+                ExecutionHistory.PARTITION_PREFIX, now.truncatedTo(ChronoUnit.HOURS).minus(4, ChronoUnit.HOURS).toEpochMilli())));
+
+        // when
+        history.record(new RunSummary("flow", now.toEpochMilli(), 1000, ActionStatus.COMPLETED, null, Collections.emptyMap()));
+        history.close();
+
+        // then
+        assertThat(history.getRecordedRuns()).isEqualTo(1);
+        assertThat(history.getDroppedRuns()).isEqualTo(1);
+        assertThat(Files.exists(oldPartition)).isFalse();
+        try (Stream<Path> partitions = Files.list(directory)) {
+            assertThat(partitions.collect(Collectors.toList())).hasSize(1);
+        }
+        assertThat(history.getRuns("flow", now.minus(6, ChronoUnit.HOURS), now.plusSeconds(1))).hasSize(1);
+    }
+
+    private static Action named(String name, Action action) {
+        return new Action() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public ActionReport execute(ActionContext actionContext) {
+                return action.execute(actionContext);
+            }
+        };
+    }
+
+    @Test
+    public void unnamedActionsAreRecordedUnderOneNode() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        ExecutionHistory history = ExecutionHistory.Builder.aNewExecutionHistory().in(directory).build();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(history).build();
+        Action lambda = context -> new DefaultActionReport(ActionStatus.COMPLETED, context);
+        WorkFlow workFlow = aNewSequentialFlow().named("flow").execute(lambda).build();
+        Instant from = Instant.now().minusSeconds(1);
+
+        // when
+        workFlowEngine.run(workFlow, new ActionContext());
+        workFlowEngine.run(workFlow, new ActionContext());
+        workFlowEngine.shutdown();
+        Instant to = Instant.now().plusSeconds(1);
+
+        // then
+        assertThat(history.getNodeNames("flow", from, to)).containsExactly(ExecutionHistory.UNNAMED_NODE);
+        assertThat(history.getLatencies("flow", ExecutionHistory.UNNAMED_NODE, from, to).getCount()).isEqualTo(2);
+        history.close();
+    }
+
+    @Test
+    public void runsRecordedAfterAQueryAreNotSeenByIt() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        ExecutionHistory history = ExecutionHistory.Builder.aNewExecutionHistory().in(directory).build();
+        Instant now = Instant.now();
+        history.record(new RunSummary("flow", now.toEpochMilli(), 1000, ActionStatus.COMPLETED, null, Collections.emptyMap()));
+        LatencyHistogram before = history.getLatencies("flow", null, now, now.plusSeconds(1));
+
+        // when
+        history.record(new RunSummary("flow", now.toEpochMilli(), 2000, ActionStatus.COMPLETED, null, Collections.emptyMap()));
+        LatencyHistogram after = history.getLatencies("flow", null, now, now.plusSeconds(1));
+
+        // then
+        assertThat(before.getCount()).isEqualTo(1);
+        assertThat(before.getMax(TimeUnit.NANOSECONDS)).isEqualTo(1000);
+        assertThat(after.getCount()).isEqualTo(2);
+        assertThat(history.getRuns("flow", now, now.plusSeconds(1))).hasSize(2);
+        history.close();
+    }
+
+    @Test
+    public void runsRecordedConcurrentlyWithCloseAreEitherWrittenOrDropped() throws Exception {
+        // given
+        Path directory = temporaryFolder.getRoot().toPath();
+        ExecutionHistory history = ExecutionHistory.Builder.aNewExecutionHistory().in(directory).build();
+        Instant now = Instant.now();
+        Thread recorder = new Thread(() -> {
+            for (int run = 0; run < 10_000; run++) {
+                history.record(new RunSummary("flow", now.toEpochMilli(), 1000, ActionStatus.COMPLETED, null, Collections.emptyMap()));
+            }
+        });
+        recorder.start();
+
+        // when
+        history.close();
+        recorder.join();
+
+        // then
+        assertThat(history.getRecordedRuns() + history.getDroppedRuns()).isEqualTo(10_000);
+        assertThat(history.getRuns("flow", now, now.plusSeconds(1))).hasSize((int) history.getRecordedRuns());
+    }
+}
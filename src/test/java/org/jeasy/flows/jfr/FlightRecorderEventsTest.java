@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.engine.WorkFlowEngine;
+import org.jeasy.flows.workflow.WorkFlow;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jeasy.flows.engine.WorkFlowEngineBuilder.aNewWorkFlowEngine;
+import static org.jeasy.flows.workflow.ParallelFlow.Builder.aNewParallelFlow;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+
+public class FlightRecorderEventsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void workFlowActionAndParallelFlowEventsAreRecorded() throws Exception {
+        // given
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withFlightRecorderEvents().build();
+        WorkFlow workFlow = aNewSequentialFlow().named("checkout")
+                .execute(named("validate", context -> new DefaultActionReport(ActionStatus.COMPLETED, context)))
+                .then(aNewParallelFlow().named("pay-and-ship")
+                        .execute(named("pay", context -> new DefaultActionReport(ActionStatus.COMPLETED, context)),
+                                named("ship", context -> new DefaultActionReport(ActionStatus.FAILED, context, new IllegalStateException("boom"))))
+                        .build())
+                .build();
+        Path file = temporaryFolder.newFile("flows.jfr").toPath();
+
+        // when
+        try (Recording recording = new Recording()) {
+            recording.enable(WorkFlowEvent.NAME);
+            recording.enable(ActionEvent.NAME);
+            recording.enable(ParallelFlowEvent.NAME);
+            recording.start();
+            workFlowEngine.run(workFlow, new ActionContext());
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            workFlowEngine.shutdown();
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        // then
+        List<RecordedEvent> workFlowEvents = eventsNamed(events, WorkFlowEvent.NAME);
+        assertThat(workFlowEvents).hasSize(1);
+        assertThat(workFlowEvents.get(0).getString("flowName")).isEqualTo("checkout");
+        assertThat(workFlowEvents.get(0).getString("status")).isEqualTo("FAILED");
+        assertThat(workFlowEvents.get(0).getString("errorType")).isEqualTo(IllegalStateException.class.getName());
+
+        List<RecordedEvent> actionEvents = eventsNamed(events, ActionEvent.NAME);
+        assertThat(actionEvents).extracting(event -> event.getString("node"))
+                .containsExactlyInAnyOrder("checkout", "validate", "pay-and-ship", "pay", "ship");
+        assertThat(actionEvents).extracting(event -> event.getString("flowName")).containsOnly("checkout");
+        RecordedEvent ship = actionEvents.stream().filter(event -> "ship".equals(event.getString("node"))).findFirst().get();
+        assertThat(ship.getString("status")).isEqualTo("FAILED");
+        assertThat(ship.getString("errorType")).isEqualTo(IllegalStateException.class.getName());
+
+        List<RecordedEvent> parallelFlowEvents = eventsNamed(events, ParallelFlowEvent.NAME);
+        assertThat(parallelFlowEvents).hasSize(1);
+        RecordedEvent parallelFlowEvent = parallelFlowEvents.get(0);
+        assertThat(parallelFlowEvent.getString("flowName")).isEqualTo("checkout");
+        assertThat(parallelFlowEvent.getString("node")).isEqualTo("pay-and-ship");
+        assertThat(parallelFlowEvent.getInt("units")).isEqualTo(2);
+        assertThat(parallelFlowEvent.getDuration().toNanos())
+                .isGreaterThanOrEqualTo(parallelFlowEvent.getLong("submitTime") + parallelFlowEvent.getLong("waitTime"));
+    }
+
+    @Test
+    public void nothingIsKeptWhenEventsAreDisabled() {
+        // given
+        FlightRecorderListener listener = new FlightRecorderListener();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(listener).build();
+        WorkFlow workFlow = aNewSequentialFlow().named("flow")
+                .execute(aNewParallelFlow()
+                        .execute(named("unit", context -> new DefaultActionReport(ActionStatus.COMPLETED, context)),
+                                named("other-unit", context -> new DefaultActionReport(ActionStatus.COMPLETED, context)))
+                        .build())
+                .build();
+
+        // when
+        ActionReport actionReport = workFlowEngine.run(workFlow, new ActionContext());
+        workFlowEngine.shutdown();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(listener.getRunningWorkFlows()).isZero();
+    }
+
+    @Test
+    public void eventsOfAsyncActionsLastUntilTheirCompletion() throws Exception {
+        // given
+        FlightRecorderListener listener = new FlightRecorderListener();
+        WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().withExecutionListener(listener).build();
+        AsyncAction remoteCall = new AsyncAction() {
+            @Override
+            public String getName() {
+                return "remote-call";
+            }
+
+            @Override
+            public CompletionStage<ActionReport> executeAsync(ActionContext actionContext) {
+                return CompletableFuture.supplyAsync(() -> {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                    return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+                });
+            }
+        };
+        WorkFlow workFlow = aNewSequentialFlow().named("flow").execute(remoteCall).build();
+        Path file = temporaryFolder.newFile("async.jfr").toPath();
+
+        // when
+        try (Recording recording = new Recording()) {
+            recording.enable(ActionEvent.NAME);
+            recording.start();
+            workFlowEngine.runAsync(workFlow, new ActionContext()).toCompletableFuture().get();
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            workFlowEngine.shutdown();
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        // then
+        List<RecordedEvent> actionEvents = eventsNamed(events, ActionEvent.NAME);
+        RecordedEvent remoteCallEvent = actionEvents.stream().filter(event -> "remote-call".equals(event.getString("node"))).findFirst().get();
+        assertThat(remoteCallEvent.getString("flowName")).isEqualTo("flow");
+        assertThat(remoteCallEvent.getString("status")).isEqualTo("COMPLETED");
+        assertThat(remoteCallEvent.getDuration().toMillis()).isGreaterThanOrEqualTo(50);
+        assertThat(listener.getRunningAsyncActions()).isZero();
+    }
+
+    private static List<RecordedEvent> eventsNamed(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name)).collect(Collectors.toList());
+    }
+
+    private static Action named(String name, Action action) {
+        return new Action() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public ActionReport execute(ActionContext actionContext) {
+                return action.execute(actionContext);
+            }
+        };
+    }
+}
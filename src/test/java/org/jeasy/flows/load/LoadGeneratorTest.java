@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.load;
+
+import org.jeasy.flows.engine.WorkFlowEngine;
+import org.jeasy.flows.workflow.WorkFlow;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jeasy.flows.engine.WorkFlowEngineBuilder.aNewWorkFlowEngine;
+import static org.jeasy.flows.load.SyntheticAction.Builder.aNewSyntheticAction;
+import static org.jeasy.flows.workflow.ParallelFlow.Builder.aNewParallelFlow;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+
+public class LoadGeneratorTest {
+
+    private final WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().build();
+
+    @After
+    public void tearDown() {
+        workFlowEngine.shutdown();
+    }
+
+    @Test
+    public void sustainableRateIsReportedWithLatencies() throws Exception {
+        // given
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(aNewSyntheticAction().waiting(Distribution.constant(1, TimeUnit.MILLISECONDS)).build())
+                .then(aNewParallelFlow()
+                        .execute(aNewSyntheticAction().waiting(Distribution.uniform(1, 2, TimeUnit.MILLISECONDS)).build(),
+                                aNewSyntheticAction().computing(Distribution.constant(100, TimeUnit.MICROSECONDS)).build())
+                        .build())
+                .build();
+        LoadGenerator loadGenerator = LoadGenerator.Builder.aNewLoadGenerator().on(workFlowEngine).running(workFlow)
+                .during(1, TimeUnit.SECONDS)
+                .build();
+
+        // when
+        LoadReport loadReport = loadGenerator.run(200);
+
+        // then
+        assertThat(loadReport.getScheduledRuns()).isEqualTo(200);
+        assertThat(loadReport.getCompletedRuns()).isEqualTo(200);
+        assertThat(loadReport.getFailedRuns()).isZero();
+        assertThat(loadReport.getThroughput()).isGreaterThan(190);
+        assertThat(loadReport.getLatencies().getCount()).isEqualTo(200);
+        assertThat(loadReport.getLatencies().getValueAtPercentile(50, TimeUnit.MICROSECONDS)).isGreaterThanOrEqualTo(2000);
+        assertThat(loadReport.isSaturated()).isFalse();
+    }
+
+    @Test
+    public void latenciesIncludeTimeWaitingBehindSlowRuns() throws Exception {
+        // given
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(aNewSyntheticAction().waiting(Distribution.constant(10, TimeUnit.MILLISECONDS)).build())
+                .build();
+        LoadGenerator loadGenerator = LoadGenerator.Builder.aNewLoadGenerator().on(workFlowEngine).running(workFlow)
+                .during(500, TimeUnit.MILLISECONDS)
+                .clients(1)
+                .build();
+
+        // when
+        LoadReport loadReport = loadGenerator.run(400);
+
+        // then
+        assertThat(loadReport.getScheduledRuns()).isEqualTo(200);
+        assertThat(loadReport.getIncompleteRuns()).isPositive();
+        assertThat(loadReport.getThroughput()).isLessThan(110);
+        assertThat(loadReport.getMaxBacklog()).isGreaterThan(50);
+        // incomplete runs are recorded with the time elapsed since they were scheduled
+        assertThat(loadReport.getLatencies().getCount()).isEqualTo(200);
+        // the last completed runs were scheduled long before they could start
+        assertThat(loadReport.getLatencies().getMax(TimeUnit.MILLISECONDS)).isGreaterThan(200);
+        assertThat(loadReport.isSaturated()).isTrue();
+    }
+
+    @Test
+    public void rampUpStopsAtSaturation() throws Exception {
+        // given
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(aNewSyntheticAction().waiting(Distribution.constant(10, TimeUnit.MILLISECONDS)).build())
+                .build();
+        LoadGenerator loadGenerator = LoadGenerator.Builder.aNewLoadGenerator().on(workFlowEngine).running(workFlow)
+                .during(500, TimeUnit.MILLISECONDS)
+                .clients(2)
+                .build();
+
+        // when
+        List<LoadReport> loadReports = loadGenerator.rampUp(50, 100, 1000);
+
+        // then
+        assertThat(loadReports).hasSize(3);
+        assertThat(loadReports).extracting(LoadReport::getTargetRate).containsExactly(50.0, 150.0, 250.0);
+        assertThat(loadReports).extracting(LoadReport::isSaturated).containsExactly(false, false, true);
+    }
+
+    @Test
+    public void failuresOfSyntheticActionsAreCounted() throws Exception {
+        // given
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(aNewSyntheticAction().failing(0.5).build())
+                .build();
+        LoadGenerator loadGenerator = LoadGenerator.Builder.aNewLoadGenerator().on(workFlowEngine).running(workFlow)
+                .during(400, TimeUnit.MILLISECONDS)
+                .build();
+
+        // when
+        LoadReport loadReport = loadGenerator.run(500);
+
+        // then
+        assertThat(loadReport.getCompletedRuns()).isEqualTo(200);
+        assertThat(loadReport.getFailedRuns()).isBetween(60L, 140L);
+    }
+
+    @Test
+    public void runsThrowingAnErrorAreCountedAsFailed() throws Exception {
+        // given
+        WorkFlowEngine failingEngine = (workFlow, actionContext) -> {
+            throw new AssertionError("boom");
+        };
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(aNewSyntheticAction().build())
+                .build();
+        LoadGenerator loadGenerator = LoadGenerator.Builder.aNewLoadGenerator().on(failingEngine).running(workFlow)
+                .during(200, TimeUnit.MILLISECONDS)
+                .build();
+
+        // when
+        LoadReport loadReport = loadGenerator.run(100);
+
+        // then
+        assertThat(loadReport.getCompletedRuns()).isEqualTo(20);
+        assertThat(loadReport.getFailedRuns()).isEqualTo(20);
+        assertThat(loadReport.getIncompleteRuns()).isZero();
+    }
+}
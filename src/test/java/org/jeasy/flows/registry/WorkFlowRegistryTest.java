@@ -0,0 +1,216 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.registry;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.engine.WorkFlowEngine;
+import org.jeasy.flows.workflow.WorkFlow;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.jeasy.flows.engine.WorkFlowEngineBuilder.aNewWorkFlowEngine;
+
+public class WorkFlowRegistryTest {
+
+    private final List<String> executions = Collections.synchronizedList(new ArrayList<>());
+    private final WorkFlowEngine workFlowEngine = aNewWorkFlowEngine().build();
+
+    @After
+    public void tearDown() {
+        workFlowEngine.shutdown();
+    }
+
+    @Test
+    public void loadAndRunDefinitions() throws Exception {
+        // given
+        WorkFlowRegistry registry = new WorkFlowRegistry(actions("a", "b", "c", "d"));
+        registry.load(new StringReader(
+                "# sample definitions\n" +
+                "flow inner = parallel(b, c);\n" +
+                "flow main = sequential(a, inner, repeat(d, 2))\n" +
+                "flow routing = switch(region, \"eu\": main, otherwise: a);"));
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("region", "eu");
+
+        // when
+        ActionReport report = workFlowEngine.run(registry.get("routing"), actionContext);
+
+        // then
+        assertThat(report.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(registry.getNames()).containsExactly("inner", "main", "routing");
+        assertThat(executions).hasSize(5);
+        assertThat(executions.get(0)).isEqualTo("a");
+        assertThat(executions.subList(1, 3)).containsExactlyInAnyOrder("b", "c");
+        assertThat(executions.subList(3, 5)).containsExactly("d", "d");
+    }
+
+    @Test
+    public void conditionalDefinition() {
+        // given
+        Map<String, Action> actions = actions("b", "c");
+        actions.put("failing", context -> new DefaultActionReport(ActionStatus.FAILED, context));
+        WorkFlowRegistry registry = new WorkFlowRegistry(actions);
+        registry.load("flow main = conditional(failing, COMPLETED, b, c)");
+
+        // when
+        workFlowEngine.run(registry.get("main"), new ActionContext());
+
+        // then
+        assertThat(executions).containsExactly("c");
+    }
+
+    @Test
+    public void nestedFlowsAreFlattened() {
+        // given
+        FlowCompiler compiler = new FlowCompiler(actions("a", "b", "c"));
+        FlowNode node = FlowDefinitionParser.parse("flow main = sequential(a, sequential(b, parallel(c)), repeat(a, 1))").get("main");
+
+        // when
+        FlowNode optimized = compiler.optimize(node);
+
+        // then
+        assertThat(optimized).isEqualTo(FlowDefinitionParser.parse("flow main = sequential(a, b, c, a)").get("main"));
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws Exception {
+        // given
+        WorkFlowRegistry registry = new WorkFlowRegistry(actions("a", "b"));
+        registry.load("flow main = sequential(a, repeat(b, ALWAYS_FALSE)); flow other = switch(k, \"x\": main)");
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+
+        // when
+        registry.saveSnapshot(snapshot);
+        WorkFlowRegistry restored = new WorkFlowRegistry(actions("a", "b"));
+        restored.loadSnapshot(new ByteArrayInputStream(snapshot.toByteArray()));
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("k", "x");
+        workFlowEngine.run(restored.get("other"), actionContext);
+
+        // then
+        assertThat(restored.getNames()).containsExactly("main", "other");
+        assertThat(executions).containsExactly("a", "b");
+    }
+
+    @Test
+    public void corruptedSnapshotIsRejected() throws Exception {
+        // given
+        WorkFlowRegistry registry = new WorkFlowRegistry(actions("a"));
+        registry.load("flow main = sequential(a, a)");
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        registry.saveSnapshot(snapshot);
+        byte[] bytes = snapshot.toByteArray();
+        bytes[bytes.length / 2] ^= 0x7F;
+
+        // when / then
+        assertThatThrownBy(() -> new WorkFlowRegistry(actions("a")).loadSnapshot(new ByteArrayInputStream(bytes)))
+                .isInstanceOf(FlowDefinitionException.class);
+    }
+
+    @Test
+    public void snapshotWithInvalidPayloadLengthIsRejected() throws Exception {
+        // given
+        WorkFlowRegistry registry = new WorkFlowRegistry(actions("a"));
+        registry.load("flow main = sequential(a, a)");
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        registry.saveSnapshot(snapshot);
+        byte[] huge = snapshot.toByteArray();
+        byte[] negative = snapshot.toByteArray();
+        // the payload length follows the magic number (4 bytes) and the version (2 bytes)
+        huge[6] = 0x7F;
+        negative[6] = (byte) 0x80;
+
+        // when / then
+        for (byte[] bytes : new byte[][]{huge, negative}) {
+            assertThatThrownBy(() -> new WorkFlowRegistry(actions("a")).loadSnapshot(new ByteArrayInputStream(bytes)))
+                    .isInstanceOf(FlowDefinitionException.class)
+                    .hasMessageContaining("payload length");
+        }
+    }
+
+    @Test
+    public void reloadingReplacesDefinitionsAndDependentFlows() {
+        // given
+        WorkFlowRegistry registry = new WorkFlowRegistry(actions("a", "b"));
+        registry.load("flow step = sequential(a); flow main = sequential(step, step)");
+        WorkFlow previous = registry.get("main");
+
+        // when
+        registry.load("flow step = sequential(b)");
+        workFlowEngine.run(registry.get("main"), new ActionContext());
+
+        // then
+        assertThat(registry.get("main")).isNotSameAs(previous);
+        assertThat(executions).containsExactly("b", "b");
+    }
+
+    @Test
+    public void invalidDefinitionsLeaveRegistryUnchanged() {
+        // given
+        WorkFlowRegistry registry = new WorkFlowRegistry(actions("a"));
+        registry.load("flow main = sequential(a)");
+        WorkFlow main = registry.get("main");
+
+        // when / then
+        assertThatThrownBy(() -> registry.load("flow main = sequential(unknown)"))
+                .isInstanceOf(FlowDefinitionException.class)
+                .hasMessageContaining("unknown");
+        assertThatThrownBy(() -> registry.load("flow x = sequential(y); flow y = parallel(a, x)"))
+                .isInstanceOf(FlowDefinitionException.class)
+                .hasMessageContaining("x -> y -> x");
+        assertThatThrownBy(() -> registry.load("flow z = repeat(a, SOMETIMES)"))
+                .isInstanceOf(FlowDefinitionException.class);
+        assertThatThrownBy(() -> registry.load("flow z = sequential(a,"))
+                .isInstanceOf(FlowDefinitionException.class)
+                .hasMessageContaining("line 1");
+        assertThat(registry.get("main")).isSameAs(main);
+        assertThat(registry.getNames()).containsExactly("main");
+    }
+
+    private Map<String, Action> actions(String... names) {
+        Map<String, Action> actions = new HashMap<>();
+        for (String name : names) {
+            actions.put(name, context -> {
+                executions.add(name);
+                return new DefaultActionReport(ActionStatus.COMPLETED, context);
+            });
+        }
+        return actions;
+    }
+}
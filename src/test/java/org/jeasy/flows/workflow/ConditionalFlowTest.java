@@ -23,12 +23,21 @@
  */
 package org.jeasy.flows.workflow;
 
+import org.assertj.core.api.Assertions;
 import org.jeasy.flows.action.Action;
 import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
 import org.jeasy.flows.action.ActionReportPredicate;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.action.PersistentActionContext;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 public class ConditionalFlowTest {
 
     @Test
@@ -81,4 +90,113 @@ public class ConditionalFlowTest {
         Mockito.verify(nextOnPredicateSuccess, Mockito.never()).execute(actionContext);
     }
 
+    @Test
+    public void speculativeExecutionKeepsSelectedBranch() {
+        // given
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Action toExecute = context -> new DefaultActionReport(ActionStatus.FAILED, context);
+        Action nextOnPredicateSuccess = Mockito.mock(Action.class);
+        Action nextOnPredicateFailure = context -> {
+            context.put("branch", "failure");
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        ActionContext actionContext = new ActionContext();
+        ConditionalFlow conditionalFlow = ConditionalFlow.Builder.aNewConditionalFlow()
+                .execute(toExecute)
+                .when(ActionReportPredicate.COMPLETED)
+                .then(nextOnPredicateSuccess)
+                .otherwise(nextOnPredicateFailure)
+                .speculatively(executorService)
+                .build();
+
+        // when
+        ActionReport actionReport = conditionalFlow.execute(actionContext);
+        executorService.shutdown();
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(actionContext.get("branch")).isEqualTo("failure");
+        Assertions.assertThat(conditionalFlow.getSpeculativeExecutionCount()).isEqualTo(1);
+        Assertions.assertThat(conditionalFlow.getDiscardedBranchCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void speculativeBranchesAreDiscardedWhenThePredicateThrows() throws InterruptedException {
+        // given
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Action branch = context -> {
+            try {
+                Thread.sleep(10_000);
+                context.put("branch", "executed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        ActionContext actionContext = new ActionContext();
+        ConditionalFlow conditionalFlow = ConditionalFlow.Builder.aNewConditionalFlow()
+                .execute(context -> new DefaultActionReport(ActionStatus.COMPLETED, context))
+                .when(report -> {
+                    throw new IllegalStateException("broken predicate");
+                })
+                .then(branch)
+                .otherwise(branch)
+                .speculatively(executorService)
+                .build();
+
+        // when
+        Assertions.assertThatThrownBy(() -> conditionalFlow.execute(actionContext))
+                .isInstanceOf(IllegalStateException.class);
+
+        // then
+        executorService.shutdown();
+        Assertions.assertThat(executorService.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(conditionalFlow.getDiscardedBranchCount()).isEqualTo(2);
+        Assertions.assertThat(actionContext.get("branch")).isNull();
+    }
+
+    @Test
+    public void failedBranchIsRolledBack() {
+        // given
+        Action toExecute = context -> {
+            context.put("initial", true);
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        Action nextOnPredicateSuccess = context -> {
+            context.put("branch", "success");
+            return new DefaultActionReport(ActionStatus.FAILED, context);
+        };
+        ConditionalFlow conditionalFlow = ConditionalFlow.Builder.aNewConditionalFlow()
+                .execute(toExecute)
+                .when(ActionReportPredicate.COMPLETED)
+                .then(nextOnPredicateSuccess)
+                .rollbackOnFailure()
+                .build();
+        ActionContext actionContext = new PersistentActionContext();
+        ActionContext interpretedContext = new PersistentActionContext();
+
+        // when
+        ActionReport actionReport = conditionalFlow.execute(actionContext);
+        ActionReport interpretedReport = FlowInterpreter.execute(conditionalFlow, interpretedContext);
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.FAILED);
+        Assertions.assertThat(interpretedReport.getStatus()).isEqualTo(ActionStatus.FAILED);
+        for (ActionContext context : new ActionContext[]{actionContext, interpretedContext}) {
+            Assertions.assertThat(context.get("initial")).isEqualTo(true);
+            Assertions.assertThat(context.get("branch")).isNull();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void speculativeFlowCannotRollBack() {
+        ConditionalFlow.Builder.aNewConditionalFlow()
+                .execute(Mockito.mock(Action.class))
+                .when(ActionReportPredicate.COMPLETED)
+                .then(Mockito.mock(Action.class))
+                .speculatively(Executors.newSingleThreadExecutor())
+                .rollbackOnFailure()
+                .build();
+    }
+
 }
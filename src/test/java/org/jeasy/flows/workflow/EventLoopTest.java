@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.action.BlockingAction;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.jeasy.flows.workflow.ParallelFlow.Builder.aNewParallelFlow;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+
+public class EventLoopTest {
+
+    private final ExecutorService blockingExecutor = Executors.newFixedThreadPool(2);
+    private final ScheduledExecutorService remoteService = Executors.newSingleThreadScheduledExecutor();
+    private final EventLoop eventLoop = new EventLoop("test-loop", blockingExecutor, 50, TimeUnit.MILLISECONDS);
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        eventLoop.shutdown();
+        assertThat(eventLoop.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+        blockingExecutor.shutdown();
+        remoteService.shutdownNow();
+    }
+
+    @Test
+    public void unitsOfParallelFlowsAreExecutedOnTheLoopThread() {
+        // given
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(recordThread())
+                .then(aNewParallelFlow().execute(recordThread(), recordThread(), recordThread()).build())
+                .build();
+
+        // when
+        ActionReport actionReport = eventLoop.execute(workFlow, new ActionContext()).toCompletableFuture().join();
+
+        // then
+        assertThat(actionReport).isInstanceOf(ParallelFlowReport.class);
+        assertThat(((ParallelFlowReport) actionReport).getReports()).hasSize(3);
+        assertThat(threads).containsExactly("test-loop");
+        assertThat(eventLoop.getOffloadedActions()).isZero();
+    }
+
+    @Test
+    public void parallelFlowWithoutUnitsCompletes() throws Exception {
+        // given
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(aNewParallelFlow().execute().build())
+                .then(recordThread())
+                .build();
+
+        // when
+        ActionReport actionReport = eventLoop.execute(workFlow, new ActionContext()).toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(threads).containsExactly("test-loop");
+    }
+
+    @Test
+    public void executionsAreInterleavedWhileAsyncActionsAreInProgress() {
+        // given
+        AsyncAction remoteCall = context -> {
+            CompletableFuture<ActionReport> actionReport = new CompletableFuture<>();
+            remoteService.schedule(() -> actionReport.complete(new DefaultActionReport(ActionStatus.COMPLETED, context)), 100, TimeUnit.MILLISECONDS);
+            return actionReport;
+        };
+        WorkFlow workFlow = aNewSequentialFlow().execute(remoteCall).then(recordThread()).build();
+        List<CompletableFuture<ActionReport>> actionReports = new ArrayList<>();
+
+        // when
+        long start = System.nanoTime();
+        for (int i = 0; i < 500; i++) {
+            actionReports.add(eventLoop.execute(workFlow, new ActionContext()).toCompletableFuture());
+        }
+        CompletableFuture.allOf(actionReports.toArray(new CompletableFuture[0])).join();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // then
+        assertThat(actionReports).allMatch(actionReport -> actionReport.join().getStatus() == ActionStatus.COMPLETED);
+        assertThat(threads).containsExactly("test-loop");
+        assertThat(elapsed).isLessThan(5_000); // 500 calls of 100ms would take 50 seconds if run one after the other
+        assertThat(eventLoop.getRunningExecutions()).isZero();
+    }
+
+    @Test
+    public void declaredBlockingActionsAreOffloaded() {
+        // given
+        BlockingAction blockingAction = context -> {
+            threads.add(Thread.currentThread().getName());
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        WorkFlow workFlow = aNewSequentialFlow().execute(blockingAction).then(recordThread()).build();
+
+        // when
+        ActionReport actionReport = eventLoop.execute(workFlow, new ActionContext()).toCompletableFuture().join();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(threads).hasSize(2).contains("test-loop");
+        assertThat(eventLoop.getOffloadedActions()).isEqualTo(1);
+    }
+
+    @Test
+    public void actionsBlockingTheLoopAreDetectedAndOffloaded() {
+        // given
+        Action slowAction = context -> {
+            threads.add(Thread.currentThread().getName());
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+
+        // when
+        eventLoop.execute(slowAction, new ActionContext()).toCompletableFuture().join();
+        eventLoop.execute(slowAction, new ActionContext()).toCompletableFuture().join();
+
+        // then
+        assertThat(eventLoop.getDetectedBlockingActions()).isEqualTo(1);
+        assertThat(eventLoop.getOffloadedActions()).isEqualTo(1);
+        assertThat(threads).hasSize(2).contains("test-loop");
+    }
+
+    @Test
+    public void executionFailsWhenAnActionThrowsAnException() {
+        // given
+        IllegalStateException error = new IllegalStateException("boom");
+        Action failing = context -> {
+            throw error;
+        };
+        WorkFlow workFlow = aNewParallelFlow().execute(recordThread(), failing).build();
+
+        // when / then
+        assertThatThrownBy(() -> eventLoop.execute(workFlow, new ActionContext()).toCompletableFuture().join())
+                .isInstanceOf(CompletionException.class)
+                .hasCause(error);
+    }
+
+    @Test
+    public void executionsAreRejectedAfterShutdown() {
+        // given
+        eventLoop.shutdown();
+
+        // when / then
+        assertThatThrownBy(() -> eventLoop.execute(recordThread(), new ActionContext()))
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    private Action recordThread() {
+        return context -> {
+            threads.add(Thread.currentThread().getName());
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionReportPredicate;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.AsyncAction;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.jeasy.flows.workflow.ConditionalFlow.Builder.aNewConditionalFlow;
+import static org.jeasy.flows.workflow.ParallelFlow.Builder.aNewParallelFlow;
+import static org.jeasy.flows.workflow.RepeatFlow.Builder.aNewRepeatFlow;
+import static org.jeasy.flows.workflow.SequentialFlow.Builder.aNewSequentialFlow;
+import static org.jeasy.flows.workflow.SwitchFlow.Builder.aNewSwitchFlow;
+
+public class FlowInterpreterTest {
+
+    private static final int DEPTH = 200_000;
+
+    private final List<String> executions = Collections.synchronizedList(new ArrayList<>());
+    private final ScheduledExecutorService remoteService = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        remoteService.shutdownNow();
+    }
+
+    @Test
+    public void deeplyNestedFlowsDoNotOverflowTheStack() {
+        // given
+        WorkFlow workFlow = nest(record("leaf"), DEPTH);
+
+        // when
+        ActionReport report = FlowInterpreter.execute(workFlow, new ActionContext());
+
+        // then
+        assertThat(report.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(executions).containsExactly("leaf");
+        assertThatThrownBy(() -> workFlow.execute(new ActionContext())).isInstanceOf(StackOverflowError.class);
+    }
+
+    @Test
+    public void unitsOfParallelFlowsAreInterpreted() {
+        // given
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        ParallelFlow parallelFlow = aNewParallelFlow()
+                .execute(nest(record("a"), DEPTH), nest(record("b"), DEPTH))
+                .with(executorService)
+                .build();
+
+        // when
+        ActionReport report = FlowInterpreter.execute(parallelFlow, new ActionContext());
+        executorService.shutdown();
+
+        // then
+        assertThat(report.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(executions).containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    public void interpretedFlowsFollowTheSemanticsOfRecursiveExecution() {
+        // given
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("region", "eu");
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(aNewRepeatFlow().repeat(record("repeated")).times(2).build())
+                .then(aNewConditionalFlow()
+                        .execute(fail("failing"))
+                        .when(ActionReportPredicate.COMPLETED)
+                        .then(record("then"))
+                        .otherwise(record("otherwise"))
+                        .build())
+                .then(aNewSwitchFlow().on("region").when("eu", record("eu")).when("us", record("us")).build())
+                .then(fail("stop"))
+                .then(record("skipped"))
+                .build();
+
+        // when
+        ActionReport interpreted = FlowInterpreter.execute(workFlow, actionContext);
+        List<String> interpretedExecutions = new ArrayList<>(executions);
+        executions.clear();
+        ActionReport recursive = workFlow.execute(actionContext);
+
+        // then
+        assertThat(interpretedExecutions).containsExactly("repeated", "repeated", "failing", "otherwise", "eu", "stop");
+        assertThat(executions).isEqualTo(interpretedExecutions);
+        assertThat(interpreted.getStatus()).isEqualTo(ActionStatus.FAILED).isEqualTo(recursive.getStatus());
+    }
+
+    @Test
+    public void executionIsSuspendedUntilTheReportOfThePendingActionIsGiven() {
+        // given
+        Action first = record("first");
+        Action second = record("second");
+        ActionContext actionContext = new ActionContext();
+        FlowInterpreter execution = FlowInterpreter.start(aNewSequentialFlow().execute(first).then(second).build(), actionContext);
+
+        // when
+        Action pending = execution.next();
+
+        // then
+        assertThat(pending).isSameAs(first);
+        assertThat(execution.next()).isSameAs(first);
+        assertThat(execution.isDone()).isFalse();
+        assertThat(executions).isEmpty();
+
+        // when
+        execution.resume(new DefaultActionReport(ActionStatus.COMPLETED, actionContext));
+        Action next = execution.next();
+        ActionReport secondReport = next.execute(actionContext);
+        execution.resume(secondReport);
+
+        // then
+        assertThat(next).isSameAs(second);
+        assertThat(execution.next()).isNull();
+        assertThat(execution.isDone()).isTrue();
+        assertThat(execution.getReport()).isSameAs(secondReport);
+        assertThat(executions).containsExactly("second");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void resumeWithoutPendingActionIsRejected() {
+        FlowInterpreter.start(record("a"), new ActionContext()).resume(null);
+    }
+
+    @Test
+    public void asyncExecutionIsResumedWhenAsyncActionsComplete() {
+        // given
+        WorkFlow workFlow = aNewSequentialFlow()
+                .execute(remoteCall("first", 100))
+                .then(record("local"))
+                .then(aNewConditionalFlow()
+                        .execute(remoteCall("second", 10))
+                        .when(ActionReportPredicate.COMPLETED)
+                        .then(record("then"))
+                        .build())
+                .build();
+
+        // when
+        CompletableFuture<ActionReport> actionReport = FlowInterpreter.executeAsync(workFlow, new ActionContext()).toCompletableFuture();
+
+        // then
+        assertThat(actionReport).isNotDone();
+        assertThat(executions).containsExactly("first");
+        assertThat(actionReport.join().getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(executions).containsExactly("first", "local", "second", "then");
+    }
+
+    @Test
+    public void asyncActionsOfParallelFlowsDoNotHoldThreads() {
+        // given
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Action[] calls = new Action[1000];
+        for (int i = 0; i < calls.length; i++) {
+            calls[i] = remoteCall("call" + i, 200);
+        }
+        ParallelFlow parallelFlow = aNewParallelFlow().execute(calls).with(executorService).build();
+
+        // when
+        long start = System.nanoTime();
+        ActionReport actionReport = FlowInterpreter.executeAsync(parallelFlow, new ActionContext()).toCompletableFuture().join();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executorService.shutdown();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(((ParallelFlowReport) actionReport).getReports()).hasSize(1000);
+        assertThat(executions).hasSize(1000);
+        assertThat(elapsed).isLessThan(10_000); // 1000 calls of 200ms on 2 threads would take 100 seconds if blocking
+    }
+
+    @Test
+    public void asyncActionCompletedExceptionallyIsReportedAsFailed() {
+        // given
+        IllegalStateException error = new IllegalStateException("remote error");
+        AsyncAction failing = context -> {
+            CompletableFuture<ActionReport> actionReport = new CompletableFuture<>();
+            remoteService.schedule(() -> actionReport.completeExceptionally(error), 10, TimeUnit.MILLISECONDS);
+            return actionReport;
+        };
+        WorkFlow workFlow = aNewSequentialFlow().execute(failing).then(record("skipped")).build();
+
+        // when
+        ActionReport actionReport = FlowInterpreter.executeAsync(workFlow, new ActionContext()).toCompletableFuture().join();
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.FAILED);
+        assertThat(actionReport.getError()).isSameAs(error);
+        assertThat(executions).isEmpty();
+    }
+
+    @Test
+    public void asyncActionsCanBeExecutedSynchronously() {
+        // given
+        WorkFlow workFlow = aNewSequentialFlow().execute(remoteCall("remote", 10)).then(record("local")).build();
+
+        // when
+        ActionReport actionReport = workFlow.execute(new ActionContext());
+
+        // then
+        assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        assertThat(executions).containsExactly("remote", "local");
+    }
+
+    private WorkFlow nest(Action action, int depth) {
+        WorkFlow workFlow = aNewSequentialFlow().named("level 0").execute(action).build();
+        for (int i = 1; i < depth; i++) {
+            workFlow = aNewSequentialFlow().named("level " + i).execute(workFlow).build();
+        }
+        return workFlow;
+    }
+
+    private Action record(String name) {
+        return context -> {
+            executions.add(name);
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+    }
+
+    private AsyncAction remoteCall(String name, long latency) {
+        return context -> {
+            executions.add(name);
+            CompletableFuture<ActionReport> actionReport = new CompletableFuture<>();
+            remoteService.schedule(() -> actionReport.complete(new DefaultActionReport(ActionStatus.COMPLETED, context)), latency, TimeUnit.MILLISECONDS);
+            return actionReport;
+        };
+    }
+
+    private Action fail(String name) {
+        return context -> {
+            executions.add(name);
+            return new DefaultActionReport(ActionStatus.FAILED, context);
+        };
+    }
+}
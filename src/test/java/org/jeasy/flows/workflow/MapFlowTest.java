@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.assertj.core.api.Assertions;
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.executor.ExecutorPool;
+import org.jeasy.flows.executor.ExecutorPools;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class MapFlowTest {
+
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+    private final Action square = actionContext -> {
+        threads.add(Thread.currentThread().getName());
+        int number = (int) actionContext.get("number");
+        actionContext.put("square", (long) number * number);
+        return new DefaultActionReport(ActionStatus.COMPLETED, actionContext);
+    };
+    private final ExecutorPools executorPools = new ExecutorPools(Collections.singletonList(new ExecutorPool(ExecutorPools.DEFAULT, 4, -1)));
+    private final ForkJoinPool forkJoinPool = new ForkJoinPool(2);
+
+    @After
+    public void tearDown() {
+        executorPools.shutdown();
+        forkJoinPool.shutdownNow();
+    }
+
+    @Test
+    public void executeActionForEachElementAndReduceResults() {
+        // given
+        List<Integer> numbers = IntStream.rangeClosed(1, 1000).boxed().collect(Collectors.toList());
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("numbers", numbers);
+        MapFlow mapFlow = MapFlow.Builder.aNewMapFlow()
+                .named("sum of squares")
+                .over("numbers")
+                .as("number")
+                .execute(square)
+                .reduce(0L, (sum, report) -> sum + (long) report.getActionContext().get("square"), Long::sum)
+                .into("sumOfSquares")
+                .build();
+
+        // when
+        ActionReport actionReport = ExecutorPools.within(executorPools, () -> mapFlow.execute(actionContext));
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(actionContext.get("sumOfSquares")).isEqualTo(333833500L);
+        Assertions.assertThat(actionContext.get("number")).isNull();
+        Assertions.assertThat(threads).noneMatch(thread -> thread.startsWith("ForkJoinPool"));
+    }
+
+    @Test
+    public void failWhenActionFailsForAnElement() {
+        // given
+        Exception exception = new Exception("odd number");
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("numbers", new Integer[]{2, 4, 5, 6});
+        MapFlow mapFlow = MapFlow.Builder.aNewMapFlow()
+                .over("numbers")
+                .as("number")
+                .execute(context -> (int) context.get("number") % 2 == 0
+                        ? new DefaultActionReport(ActionStatus.COMPLETED, context)
+                        : new DefaultActionReport(ActionStatus.FAILED, context, exception))
+                .reduce(0, (count, report) -> count + 1, Integer::sum)
+                .into("count")
+                .with(forkJoinPool)
+                .build();
+
+        // when
+        ActionReport actionReport = mapFlow.execute(actionContext);
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.FAILED);
+        Assertions.assertThat(actionReport.getError()).isEqualTo(exception);
+        Assertions.assertThat(actionContext.get("count")).isNull();
+    }
+
+    @Test
+    public void failWhenSourceIsNotACollection() {
+        // given
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("numbers", 42);
+        MapFlow mapFlow = MapFlow.Builder.aNewMapFlow()
+                .over("numbers")
+                .as("number")
+                .execute(square)
+                .reduce(0, (count, report) -> count + 1, Integer::sum)
+                .into("count")
+                .build();
+
+        // when
+        ActionReport actionReport = ExecutorPools.within(executorPools, () -> mapFlow.execute(actionContext));
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.FAILED);
+        Assertions.assertThat(actionReport.getError()).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failWithoutAPoolOutsideOfAnEngine() {
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("numbers", new Integer[]{1, 2, 3});
+        MapFlow.Builder.aNewMapFlow()
+                .over("numbers")
+                .as("number")
+                .execute(square)
+                .reduce(0, (count, report) -> count + 1, Integer::sum)
+                .into("count")
+                .build()
+                .execute(actionContext);
+    }
+
+}
@@ -26,13 +26,25 @@ package org.jeasy.flows.workflow;
 import org.assertj.core.api.Assertions;
 import org.jeasy.flows.action.*;
 import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.executor.AdaptiveConcurrencyLimiter;
+import org.jeasy.flows.executor.ExecutionListener;
+import org.jeasy.flows.executor.ExecutorPools;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class ParallelFlowExecutorTest {
 
@@ -51,11 +63,157 @@ public class ParallelFlowExecutorTest {
         executorService.shutdown();
 
         // then
-        Assertions.assertThat(workReports).hasSize(2);
+        Assertions.assertThat(workReports).extracting(ActionReport::getStatus)
+                .containsExactly(ActionStatus.COMPLETED, ActionStatus.FAILED);
         Assertions.assertThat(work1.isExecuted()).isTrue();
         Assertions.assertThat(work2.isExecuted()).isTrue();
     }
 
+    @Test
+    public void testExecuteWithinConcurrencyLimit() {
+
+        // given
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.Builder.aNewAdaptiveConcurrencyLimiter()
+                .initialLimit(2)
+                .between(1, 3)
+                .build();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Action> works = IntStream.range(0, 50).mapToObj(i -> (Action) context -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        }).collect(Collectors.toList());
+        ParallelFlowExecutor parallelFlowExecutor = new ParallelFlowExecutor(executorService, limiter);
+
+        // when
+        List<ActionReport> workReports = parallelFlowExecutor.executeInParallel(works, new ActionContext());
+        executorService.shutdown();
+
+        // then
+        Assertions.assertThat(workReports).hasSize(50).doesNotContainNull();
+        Assertions.assertThat(maxInFlight.get()).isLessThanOrEqualTo(3);
+        Assertions.assertThat(limiter.getLimit()).isEqualTo(3);
+        Assertions.assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    public void testExecuteAsyncWithinConcurrencyLimit() {
+        // given
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.Builder.aNewAdaptiveConcurrencyLimiter()
+                .initialLimit(2)
+                .between(1, 2)
+                .build();
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Action> works = IntStream.range(0, 6).mapToObj(i -> (Action) context -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        }).collect(Collectors.toList());
+        ParallelFlowExecutor parallelFlowExecutor = new ParallelFlowExecutor(executorService, limiter);
+
+        // when
+        CompletableFuture<List<ActionReport>> future = parallelFlowExecutor.executeInParallelAsync(works, new ActionContext()).toCompletableFuture();
+        boolean completedBeforeUnits = future.isDone();
+        released.countDown();
+        List<ActionReport> workReports = future.join();
+        executorService.shutdown();
+
+        // then
+        Assertions.assertThat(completedBeforeUnits).isFalse();
+        Assertions.assertThat(workReports).hasSize(6).doesNotContainNull();
+        Assertions.assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+        Assertions.assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    public void executionListenerIsNotifiedOfUnitsExecutedWithinConcurrencyLimit() {
+        // given
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.Builder.aNewAdaptiveConcurrencyLimiter()
+                .initialLimit(2)
+                .between(1, 2)
+                .build();
+        ExecutionListener listener = Mockito.mock(ExecutionListener.class);
+        ExecutorPools executorPools = new ExecutorPools(Collections.emptyList(), listener);
+        List<Action> works = Arrays.asList(new NoOpAction(), new NoOpAction(), new NoOpAction());
+        ActionContext actionContext = new ActionContext();
+        ParallelFlowExecutor parallelFlowExecutor = new ParallelFlowExecutor("limited", executorService, limiter);
+
+        // when
+        List<ActionReport> workReports = ExecutorPools.within(executorPools, () -> parallelFlowExecutor.executeInParallel(works, actionContext));
+        executorService.shutdown();
+
+        // then
+        Assertions.assertThat(workReports).hasSize(3).doesNotContainNull();
+        Mockito.verify(listener).beforeParallelUnits("limited", actionContext, 3);
+        Mockito.verify(listener).afterParallelUnits(Mockito.eq("limited"), Mockito.eq(actionContext), Mockito.eq(3),
+                Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong());
+    }
+
+    @Test
+    public void singleUnitIsExecutedByTheCallingThread() {
+        // given
+        ExecutorService executorService = Mockito.mock(ExecutorService.class);
+        ActionContext actionContext = new ActionContext();
+        Action work = context -> {
+            context.put("thread", Thread.currentThread().getName());
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        ParallelFlowExecutor parallelFlowExecutor = new ParallelFlowExecutor(executorService);
+
+        // when
+        List<ActionReport> workReports = parallelFlowExecutor.executeInParallel(Collections.singletonList(work), actionContext);
+
+        // then
+        Assertions.assertThat(workReports).extracting(ActionReport::getStatus).containsExactly(ActionStatus.COMPLETED);
+        Assertions.assertThat(actionContext.get("thread")).isEqualTo(Thread.currentThread().getName());
+        Mockito.verifyNoInteractions(executorService);
+    }
+
+    @Test
+    public void unitsNotStartedByThePoolAreExecutedByTheCallingThread() throws Exception {
+        // given
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        CountDownLatch released = new CountDownLatch(1);
+        Future<?> blocker = executorService.submit(() -> {
+            released.await();
+            return null;
+        });
+        ActionContext actionContext = new ActionContext();
+        List<Action> works = IntStream.range(0, 3).mapToObj(i -> (Action) context -> {
+            context.put("work" + i, Thread.currentThread().getName());
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        }).collect(Collectors.toList());
+        ParallelFlowExecutor parallelFlowExecutor = new ParallelFlowExecutor(executorService);
+
+        // when
+        List<ActionReport> workReports = parallelFlowExecutor.executeInParallel(works, actionContext);
+        released.countDown();
+        blocker.get();
+        executorService.shutdown();
+
+        // then
+        Assertions.assertThat(workReports).hasSize(3).extracting(ActionReport::getStatus).containsOnly(ActionStatus.COMPLETED);
+        Assertions.assertThat(actionContext.getEntrySet()).extracting(Map.Entry::getValue)
+                .containsOnly(Thread.currentThread().getName());
+        Assertions.assertThat(executorService.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+    }
+
     static class HelloWorldWork implements Action {
 
         private final String name;
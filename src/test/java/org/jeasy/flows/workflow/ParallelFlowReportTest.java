@@ -27,6 +27,7 @@ import org.assertj.core.api.Assertions;
 import org.jeasy.flows.action.DefaultActionReport;
 import org.jeasy.flows.action.ActionContext;
 import org.jeasy.flows.action.ActionStatus;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -58,4 +59,24 @@ public class ParallelFlowReportTest {
 	public void testGetReports() {
 		Assertions.assertThat(parallelFlowReport.getReports()).hasSize(2);
 	}
+
+	@Test
+	public void testGetActionContextMergesLazyEntriesWithoutComputingThem() {
+		AtomicInteger computations = new AtomicInteger();
+		ActionContext left = new ActionContext();
+		left.putLazy("total", computations::incrementAndGet);
+		ActionContext right = new ActionContext();
+		right.put("count", 2);
+		ParallelFlowReport report = new ParallelFlowReport();
+		report.add(new DefaultActionReport(ActionStatus.COMPLETED, left));
+		report.add(new DefaultActionReport(ActionStatus.COMPLETED, right));
+
+		ActionContext actionContext = report.getActionContext();
+
+		Assertions.assertThat(computations.get()).isZero();
+		Assertions.assertThat(actionContext.get("count")).isEqualTo(2);
+		Assertions.assertThat(actionContext.get("total")).isEqualTo(1);
+		Assertions.assertThat(left.get("total")).isEqualTo(1);
+		Assertions.assertThat(computations.get()).isEqualTo(1);
+	}
 }
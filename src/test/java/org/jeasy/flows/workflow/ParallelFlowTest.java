@@ -26,14 +26,33 @@ package org.jeasy.flows.workflow;
 import org.assertj.core.api.Assertions;
 import org.jeasy.flows.action.Action;
 import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.workflow.ParallelFlowReport.UnitState;
+import org.junit.After;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ParallelFlowTest {
 
+    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    private final ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+        singleThreadExecutor.shutdownNow();
+    }
+
     @Test
     public void testExecute() {
         // given
@@ -52,4 +71,150 @@ public class ParallelFlowTest {
         Mockito.verify(parallelFlowExecutor).executeInParallel(works, actionContext);
     }
 
+    @Test
+    public void anyCompletesWithTheFirstSuccessfulUnit() {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicBoolean queuedUnitExecuted = new AtomicBoolean();
+        Action blocking = context -> {
+            started.countDown();
+            awaitUninterruptibly(released);
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        Action fast = context -> {
+            awaitUninterruptibly(started);
+            context.put("replica", "fast");
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        Action queued = context -> {
+            queuedUnitExecuted.set(true);
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        ParallelFlow parallelFlow = ParallelFlow.Builder.aNewParallelFlow()
+                .execute(blocking, fast, blocking, queued) // the thread running the fast unit then blocks
+                .with(executorService)
+                .completeWhen(CompletionPolicy.any())
+                .build();
+
+        // when
+        ParallelFlowReport parallelFlowReport = parallelFlow.execute(new ActionContext());
+        released.countDown();
+
+        // then
+        Assertions.assertThat(parallelFlowReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(parallelFlowReport.getReports()).hasSize(1);
+        Assertions.assertThat(parallelFlowReport.getActionContext().get("replica")).isEqualTo("fast");
+        Assertions.assertThat(parallelFlowReport.getUnits(UnitState.COUNTED)).containsExactly(1);
+        Assertions.assertThat(parallelFlowReport.getUnitStates().get(0)).isEqualTo(UnitState.PENDING);
+        Assertions.assertThat(parallelFlowReport.getUnitStates().get(3)).isEqualTo(UnitState.CANCELLED);
+        Assertions.assertThat(queuedUnitExecuted).isFalse();
+    }
+
+    @Test
+    public void asynchronousExecutionCountsUnitsWithoutHoldingTheCallingThread() {
+        // given
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch fastReleased = new CountDownLatch(1);
+        AtomicBoolean queuedUnitExecuted = new AtomicBoolean();
+        Action blocking = context -> {
+            awaitUninterruptibly(released);
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        Action fast = context -> {
+            awaitUninterruptibly(fastReleased);
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        Action queued = context -> {
+            queuedUnitExecuted.set(true);
+            return new DefaultActionReport(ActionStatus.COMPLETED, context);
+        };
+        ParallelFlow parallelFlow = ParallelFlow.Builder.aNewParallelFlow()
+                .execute(blocking, fast, queued)
+                .with(executorService)
+                .completeWhen(CompletionPolicy.any())
+                .build();
+
+        // when
+        CompletableFuture<ActionReport> future = parallelFlow.executeAsync(new ActionContext()).toCompletableFuture();
+        boolean completedBeforeAnyUnit = future.isDone();
+        fastReleased.countDown();
+        ParallelFlowReport parallelFlowReport = (ParallelFlowReport) future.join();
+        released.countDown();
+
+        // then
+        Assertions.assertThat(completedBeforeAnyUnit).isFalse();
+        Assertions.assertThat(parallelFlowReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(parallelFlowReport.getUnits(UnitState.COUNTED)).containsExactly(1);
+        Assertions.assertThat(parallelFlowReport.getUnitStates().get(0)).isEqualTo(UnitState.PENDING);
+        Assertions.assertThat(parallelFlowReport.getUnitStates().get(2)).isEqualTo(UnitState.CANCELLED);
+        Assertions.assertThat(queuedUnitExecuted).isFalse();
+    }
+
+    @Test
+    public void quorumIgnoresMinorityFailures() {
+        // given
+        Action success = context -> new DefaultActionReport(ActionStatus.COMPLETED, context);
+        Action failure = context -> new DefaultActionReport(ActionStatus.FAILED, context, new Exception("unreachable"));
+        ParallelFlow parallelFlow = ParallelFlow.Builder.aNewParallelFlow()
+                .execute(success, failure, success, success, success)
+                .with(singleThreadExecutor)
+                .completeWhen(CompletionPolicy.quorum())
+                .build();
+
+        // when
+        ParallelFlowReport parallelFlowReport = parallelFlow.execute(new ActionContext());
+
+        // then
+        Assertions.assertThat(parallelFlowReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(parallelFlowReport.getUnits(UnitState.COUNTED)).containsExactly(0, 1, 2, 3);
+        Assertions.assertThat(parallelFlowReport.getUnitStates().get(4)).isNotEqualTo(UnitState.COUNTED);
+    }
+
+    @Test
+    public void quorumFailsAsSoonAsItCannotBeMet() {
+        // given
+        Action success = context -> new DefaultActionReport(ActionStatus.COMPLETED, context);
+        Action failure = context -> {
+            throw new IllegalStateException("unreachable");
+        };
+        ParallelFlow parallelFlow = ParallelFlow.Builder.aNewParallelFlow()
+                .execute(failure, failure, success)
+                .with(singleThreadExecutor)
+                .completeWhen(CompletionPolicy.quorum())
+                .build();
+
+        // when
+        ParallelFlowReport parallelFlowReport = parallelFlow.execute(new ActionContext());
+
+        // then
+        Assertions.assertThat(parallelFlowReport.getStatus()).isEqualTo(ActionStatus.FAILED);
+        Assertions.assertThat(parallelFlowReport.getError()).isInstanceOf(IllegalStateException.class);
+        Assertions.assertThat(parallelFlowReport.getUnits(UnitState.COUNTED)).containsExactly(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void completionPolicyMustBeAchievable() {
+        Action action = Mockito.mock(Action.class);
+        ParallelFlow.Builder.aNewParallelFlow()
+                .execute(action, action)
+                .completeWhen(CompletionPolicy.firstSuccessful(3))
+                .build();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
 }
@@ -23,12 +23,19 @@
  */
 package org.jeasy.flows.workflow;
 
+import org.assertj.core.api.Assertions;
 import org.jeasy.flows.action.Action;
 import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionReport;
 import org.jeasy.flows.action.ActionReportPredicate;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.jeasy.flows.action.PersistentActionContext;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class RepeatFlowTest {
 
     @Test
@@ -66,4 +73,53 @@ public class RepeatFlowTest {
         Mockito.verify(action, Mockito.times(3)).execute(actionContext);
     }
 
+    @Test
+    public void testRepeatTimesWhenExecutedMoreThanOnce() {
+        // given
+        Action action = Mockito.mock(Action.class);
+        ActionContext actionContext = Mockito.mock(ActionContext.class);
+        RepeatFlow repeatFlow = RepeatFlow.Builder.aNewRepeatFlow()
+                .repeat(action)
+                .times(2)
+                .build();
+
+        // when
+        repeatFlow.execute(actionContext);
+        repeatFlow.execute(actionContext);
+
+        // then
+        Mockito.verify(action, Mockito.times(4)).execute(actionContext);
+    }
+
+    @Test
+    public void failedRepetitionsAreRolledBack() {
+        // given
+        AtomicInteger attempts = new AtomicInteger();
+        Action action = context -> {
+            int attempt = attempts.incrementAndGet() % 3;
+            context.put("attempt-" + attempt, true);
+            return new DefaultActionReport(attempt == 0 ? ActionStatus.COMPLETED : ActionStatus.FAILED, context);
+        };
+        RepeatFlow repeatFlow = RepeatFlow.Builder.aNewRepeatFlow()
+                .repeat(action)
+                .until(ActionReportPredicate.FAILED) // repeats while the action fails
+                .rollbackOnFailure()
+                .build();
+        ActionContext actionContext = new PersistentActionContext();
+        ActionContext interpretedContext = new PersistentActionContext();
+
+        // when
+        ActionReport actionReport = repeatFlow.execute(actionContext);
+        ActionReport interpretedReport = FlowInterpreter.execute(repeatFlow, interpretedContext);
+
+        // then
+        Assertions.assertThat(actionReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(interpretedReport.getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(attempts.get()).isEqualTo(6);
+        for (ActionContext context : new ActionContext[]{actionContext, interpretedContext}) {
+            Assertions.assertThat(context.getEntrySet()).hasSize(1);
+            Assertions.assertThat(context.get("attempt-0")).isEqualTo(true);
+        }
+    }
+
 }
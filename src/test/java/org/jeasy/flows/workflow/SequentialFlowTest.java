@@ -23,11 +23,16 @@
  */
 package org.jeasy.flows.workflow;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.List;
 
+import org.assertj.core.api.Assertions;
 import org.jeasy.flows.action.Action;
 import org.jeasy.flows.action.ActionContext;
+import org.jeasy.flows.action.ActionStatus;
+import org.jeasy.flows.action.DefaultActionReport;
+import org.junit.Assume;
 import org.junit.Test;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
@@ -85,4 +90,34 @@ public class SequentialFlowTest {
         inOrder.verify(work4, Mockito.times(1)).execute(actionContext);
     }
 
+    @Test
+    public void successfulExecutionDoesNotAllocate() {
+        // given
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+        Action action = DefaultActionReport::completed;
+        SequentialFlow.Builder.ThenStep builder = SequentialFlow.Builder.aNewSequentialFlow().execute(action);
+        for (int i = 1; i < 10; i++) {
+            builder = builder.then(action);
+        }
+        SequentialFlow sequentialFlow = builder.build();
+        ActionContext actionContext = new ActionContext();
+        for (int i = 0; i < 100_000; i++) {
+            sequentialFlow.execute(actionContext);
+        }
+        long threadId = Thread.currentThread().getId();
+
+        // when
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            sequentialFlow.execute(actionContext);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        // then
+        Assertions.assertThat(sequentialFlow.execute(actionContext).getStatus()).isEqualTo(ActionStatus.COMPLETED);
+        Assertions.assertThat(allocated).isLessThan(1024);
+    }
+
 }
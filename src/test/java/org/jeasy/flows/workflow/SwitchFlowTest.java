@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ *  Copyright (c) 2020, Mahmoud Ben Hassine (mahmoud.benhassine@icloud.com)
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package org.jeasy.flows.workflow;
+
+import org.jeasy.flows.action.Action;
+import org.jeasy.flows.action.ActionContext;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class SwitchFlowTest {
+
+    @Test
+    public void executeMatchingCase() {
+        // given
+        Action euAction = Mockito.mock(Action.class);
+        Action usAction = Mockito.mock(Action.class);
+        Action defaultAction = Mockito.mock(Action.class);
+        ActionContext actionContext = new ActionContext();
+        actionContext.put("region", "us");
+        SwitchFlow switchFlow = SwitchFlow.Builder.aNewSwitchFlow()
+                .named("route by region")
+                .on("region")
+                .when("eu", euAction)
+                .when("us", usAction)
+                .otherwise(defaultAction)
+                .build();
+
+        // when
+        switchFlow.execute(actionContext);
+
+        // then
+        Mockito.verify(usAction, Mockito.times(1)).execute(actionContext);
+        Mockito.verify(euAction, Mockito.never()).execute(actionContext);
+        Mockito.verify(defaultAction, Mockito.never()).execute(actionContext);
+    }
+
+    @Test
+    public void executeDefaultBranchWhenNoCaseMatches() {
+        // given
+        Action euAction = Mockito.mock(Action.class);
+        Action defaultAction = Mockito.mock(Action.class);
+        ActionContext actionContext = new ActionContext();
+        SwitchFlow switchFlow = SwitchFlow.Builder.aNewSwitchFlow()
+                .on(context -> context.get("region"))
+                .when("eu", euAction)
+                .otherwise(defaultAction)
+                .build();
+
+        // when
+        switchFlow.execute(actionContext);
+
+        // then
+        Mockito.verify(defaultAction, Mockito.times(1)).execute(actionContext);
+        Mockito.verify(euAction, Mockito.never()).execute(actionContext);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateCasesAreRejected() {
+        SwitchFlow.Builder.aNewSwitchFlow()
+                .on("region")
+                .when("eu", Mockito.mock(Action.class))
+                .when("eu", Mockito.mock(Action.class));
+    }
+
+}